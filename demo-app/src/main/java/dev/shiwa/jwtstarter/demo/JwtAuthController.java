@@ -9,12 +9,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties;
-import dev.shiwa.jwtstarter.core.JwtTokenGenerator;
-import dev.shiwa.jwtstarter.core.JwtTokenVerifier;
 import dev.shiwa.jwtstarter.core.refresh.RefreshTokenService;
-import dev.shiwa.jwtstarter.core.refresh.RefreshTokenStore;
-import io.jsonwebtoken.Claims;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
@@ -80,19 +75,10 @@ import jakarta.validation.constraints.NotBlank;
 @Tag(name = "Authentication", description = "Login & Token Generation")
 public class JwtAuthController {
 
-    private final JwtTokenGenerator generator;
-    private final JwtTokenVerifier verifier;
     private final RefreshTokenService refreshService;
-    private final RefreshTokenStore store;
-    private final JwtAuthProperties jwtAuthProperties;
 
-    public JwtAuthController(JwtTokenGenerator g, JwtTokenVerifier v, RefreshTokenService rs, RefreshTokenStore s,
-	    JwtAuthProperties jwtAuthProperties) {
-	this.generator = g;
-	this.verifier = v;
+    public JwtAuthController(RefreshTokenService rs) {
 	this.refreshService = rs;
-	this.store = s;
-	this.jwtAuthProperties = jwtAuthProperties;
     }
 
     /**
@@ -102,6 +88,8 @@ public class JwtAuthController {
      * The endpoint accepts a username and password. If the credentials match the
      * hardcoded values ("admin" / "password"), both an access token and a refresh
      * token are returned. The access token includes the roles "USER" and "ADMIN".
+     * The refresh token is a JWT or, with
+     * {@code jwt.auth.refresh-token-format=OPAQUE}, a random string.
      * </p>
      *
      * @param loginRequest the login credentials provided in the request body
@@ -116,16 +104,9 @@ public class JwtAuthController {
 	if (!"admin".equals(loginRequest.username()) || !"password".equals(loginRequest.password()))
 	    return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
-	List<String> roles = List.of("ADMIN", "USER");
-	String access = generator.generateAccessToken("admin", roles);
-	String refresh = generator.generateRefreshToken("admin");
-
-	Claims rt = verifier.parse(refresh);
-	store.save(rt.getId(), rt.getSubject(), rt.getExpiration().toInstant());
-
-	long expAt = System.currentTimeMillis() + jwtAuthProperties.getAccessTtlMillis();
-
-	return ResponseEntity.ok(new LoginResponse(access, refresh, expAt));
+	// the login starts a new token family
+	RefreshTokenService.Tokens t = refreshService.issue("admin", List.of("ADMIN", "USER"));
+	return ResponseEntity.ok(new LoginResponse(t.accessToken(), t.refreshToken(), t.accessTokenExpiresAtMillis()));
     }
 
     /**
@@ -2,12 +2,14 @@ package dev.shiwa.jwtstarter.demo;
 
 import java.util.Map;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
 import dev.shiwa.jwtstarter.core.error.JwtAuthException;
+import dev.shiwa.jwtstarter.core.error.RefreshThrottledException;
 
 @RestControllerAdvice
 public class JwtExceptionHandler {
@@ -16,13 +18,20 @@ public class JwtExceptionHandler {
     public ResponseEntity<Map<String, Object>> handleJwtAuthException(JwtAuthException ex) {
 
 	HttpStatus status = switch (ex.getErrorCode()) {
-	case EXPIRED_TOKEN, INVALID_TOKEN, INVALID_TOKEN_TYPE, REFRESH_REUSE_DETECTED -> HttpStatus.UNAUTHORIZED;
+	case EXPIRED_TOKEN, INVALID_TOKEN, INVALID_TOKEN_TYPE, REFRESH_REUSE_DETECTED, NOT_AUTHENTICATED ->
+	    HttpStatus.UNAUTHORIZED;
 	case REFRESH_DISABLED -> HttpStatus.BAD_REQUEST;
+	case REFRESH_THROTTLED -> HttpStatus.TOO_MANY_REQUESTS;
 	default -> HttpStatus.INTERNAL_SERVER_ERROR;
 	};
 
 	Map<String, Object> body = Map.of("error", ex.getErrorCode().name(), "message", ex.getMessage());
 
+	if (ex instanceof RefreshThrottledException throttled) {
+	    // Retry-After is given in whole seconds
+	    long seconds = (throttled.getRetryAfterMillis() + 999) / 1000;
+	    return ResponseEntity.status(status).header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds)).body(body);
+	}
 	return ResponseEntity.status(status).body(body);
     }
 }
\ No newline at end of file
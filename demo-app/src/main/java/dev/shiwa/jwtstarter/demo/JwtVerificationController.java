@@ -13,6 +13,8 @@ import org.springframework.web.bind.annotation.RestController;
 import dev.shiwa.jwtstarter.core.JwtAuthentication;
 import dev.shiwa.jwtstarter.core.JwtTokenGenerator;
 import dev.shiwa.jwtstarter.core.JwtTokenVerifier;
+import dev.shiwa.jwtstarter.web.CurrentJwt;
+import dev.shiwa.jwtstarter.web.RequireRoles;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -74,40 +76,56 @@ public class JwtVerificationController {
     /**
      * Checks if the JWT token contains the "ADMIN" role.
      *
-     * @param token the JWT token from the Authorization header
+     * @param authentication the authentication verified by the JWT filter
      * @return HTTP 200 with true/false depending on role presence
      */
     @GetMapping("/is-admin")
     @Operation(summary = "Check for ADMIN role", description = "Returns true if the token contains the 'ADMIN' role.")
     @ApiResponses(value = { @ApiResponse(responseCode = "200", description = "Role check completed") })
-    public ResponseEntity<?> isAdmin(@Parameter(hidden = true) @RequestHeader("Authorization") String token) {
-	return ResponseEntity.ok(verifier.parseToken(token).hasRole("ADMIN"));
+    public ResponseEntity<?> isAdmin(@Parameter(hidden = true) JwtAuthentication authentication) {
+	return ResponseEntity.ok(authentication.hasRole("ADMIN"));
+    }
+
+    /**
+     * Endpoint restricted to tokens with the "ADMIN" role by
+     * {@link RequireRoles}; other tokens are rejected with HTTP 403 before the
+     * handler runs.
+     *
+     * @return HTTP 200 with true
+     */
+    @GetMapping("/admin")
+    @RequireRoles("ADMIN")
+    @Operation(summary = "Admin only", description = "Only accessible with the 'ADMIN' role.")
+    @ApiResponses(value = { @ApiResponse(responseCode = "200", description = "Caller has the ADMIN role"),
+	    @ApiResponse(responseCode = "403", description = "Caller lacks the ADMIN role") })
+    public ResponseEntity<?> admin() {
+	return ResponseEntity.ok(true);
     }
 
     /**
      * Checks if the JWT token contains any of the given roles.
      *
-     * @param token the JWT token from the Authorization header
-     * @param roles a list of roles to check against the token
+     * @param authentication the authentication verified by the JWT filter
+     * @param roles          a list of roles to check against the token
      * @return HTTP 200 with true if at least one role is found, false otherwise
      */
     @GetMapping("/has-role")
     @Operation(summary = "Check for any role", description = "Checks whether the token contains any of the specified roles.")
     @ApiResponses(value = { @ApiResponse(responseCode = "200", description = "Role(s) checked successfully") })
-    public ResponseEntity<?> hasAnyRole(@Parameter(hidden = true) @RequestHeader("Authorization") String token,
+    public ResponseEntity<?> hasAnyRole(@Parameter(hidden = true) JwtAuthentication authentication,
 	    @Parameter(description = "Liste von Rollen, die geprüft werden sollen") @RequestParam(name = "roles") List<String> roles) {
-	return ResponseEntity.ok(verifier.parseToken(token).hasAnyRole(roles.toArray(new String[0])));
+	return ResponseEntity.ok(authentication.hasAnyRole(roles.toArray(new String[0])));
     }
 
     /**
      * Returns authentication information extracted from the JWT token.
      *
-     * @param token the JWT token from the Authorization header
+     * @param authentication the authentication verified by the JWT filter
      * @return the parsed authentication data
      */
     @GetMapping("/me")
-    public JwtAuthentication me(@Parameter(hidden = true) @RequestHeader("Authorization") String token) {
-	return verifier.parseToken(token);
+    public JwtAuthentication me(@Parameter(hidden = true) @CurrentJwt JwtAuthentication authentication) {
+	return authentication;
     }
 
 }
\ No newline at end of file
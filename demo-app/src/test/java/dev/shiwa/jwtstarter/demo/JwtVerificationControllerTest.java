@@ -101,6 +101,22 @@ class JwtVerificationControllerTest {
 	assertTokenValid(token, false, "is-admin");
     }
 
+    @Test
+    void admin_tokenWithAdminRoleIsAccepted() {
+	String token = generateTokenWithRoles("USER", "ADMIN");
+
+	assertTokenValid(token, true, "admin");
+    }
+
+    @Test
+    void admin_tokenWithoutAdminRoleIsForbidden() {
+	String token = generateTokenWithRoles("USER");
+
+	final var response = performAuthenticatedRequest("admin", token, String.class);
+
+	assertEquals(HttpStatus.FORBIDDEN, response.getStatusCode());
+    }
+
     @Test
     void hasRole_userWithMatchingRoleReturnsTrue() {
 	// Token mit Rollen: USER, ADMIN
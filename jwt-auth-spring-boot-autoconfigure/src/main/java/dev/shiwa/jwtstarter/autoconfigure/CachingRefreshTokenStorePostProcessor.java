@@ -0,0 +1,64 @@
+package dev.shiwa.jwtstarter.autoconfigure;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+
+import dev.shiwa.jwtstarter.core.refresh.CachingRefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.RefreshTokenStore;
+import dev.shiwa.jwtstarter.core.revocation.RevocationEvent;
+import dev.shiwa.jwtstarter.core.revocation.RevocationEventBus;
+
+/**
+ * Wraps every {@link RefreshTokenStore} bean, including user-supplied ones, in
+ * a {@link CachingRefreshTokenStore}.
+ *
+ * <p>
+ * If a {@link RevocationEventBus} exists, revocations received from other
+ * instances invalidate the affected cache entries.
+ */
+final class CachingRefreshTokenStorePostProcessor implements BeanPostProcessor, Ordered {
+
+    /** Runs before {@link SessionCapRefreshTokenStorePostProcessor}. */
+    static final int ORDER = Ordered.LOWEST_PRECEDENCE - 10;
+
+    private final ObjectProvider<JwtAuthProperties> properties;
+    private final ObjectProvider<RevocationEventBus> bus;
+
+    CachingRefreshTokenStorePostProcessor(ObjectProvider<JwtAuthProperties> properties,
+	    ObjectProvider<RevocationEventBus> bus) {
+	this.properties = properties;
+	this.bus = bus;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+	if (!(bean instanceof RefreshTokenStore store) || bean instanceof CachingRefreshTokenStore)
+	    return bean;
+
+	JwtAuthProperties p = properties.getObject();
+	CachingRefreshTokenStore cache = new CachingRefreshTokenStore(store, p.getRefreshStoreCacheMaxEntries(),
+		Duration.ofMillis(p.getRefreshStoreCacheTtlMillis()));
+	RevocationEventBus b = bus.getIfAvailable();
+	if (b != null)
+	    b.subscribe(event -> invalidate(cache, event));
+	return cache;
+    }
+
+    @Override
+    public int getOrder() {
+	return ORDER;
+    }
+
+    private static void invalidate(CachingRefreshTokenStore cache, RevocationEvent event) {
+	switch (event.type()) {
+	case REFRESH_TOKEN -> cache.invalidate(event.key());
+	case REFRESH_SUBJECT -> cache.invalidateSubject(event.key());
+	case REFRESH_FAMILY -> cache.invalidateFamily(event.key());
+	default -> {
+	}
+	}
+    }
+}
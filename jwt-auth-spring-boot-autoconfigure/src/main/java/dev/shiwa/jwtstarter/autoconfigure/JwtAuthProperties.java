@@ -1,6 +1,7 @@
 package dev.shiwa.jwtstarter.autoconfigure;
 
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
@@ -48,6 +49,14 @@ public class JwtAuthProperties {
      */
     private String secret;
 
+    /**
+     * Further issuers whose tokens are accepted by the
+     * {@code JwtVerifierRegistry}, each with its own keys. Tokens of the own
+     * issuer keep being accepted; revocations of further issuers are keyed by
+     * issuer.
+     */
+    private List<IssuerProfile> issuers = List.of();
+
     /**
      * Token expiration time in milliseconds. Determines how long a generated JWT is
      * valid.
@@ -55,10 +64,218 @@ public class JwtAuthProperties {
     private long accessTtlMillis;
 
     private long refreshTtlMillis = 7L * 24 * 60 * 60 * 1000; // 7 days
+
+    /**
+     * Fraction (0 to 1) of the TTL by which access and refresh token lifetimes
+     * are randomly shortened, so that tokens issued together do not expire
+     * together. {@code 0} disables the jitter.
+     */
+    private double ttlJitterRatio = 0;
     private boolean refreshEnabled = true;
     private boolean refreshRotate = true; // rotation on refresh
     private boolean reuseDetection = true; // detect reuse of old RTs
 
+    /**
+     * Window in milliseconds during which repeated refreshes with the same
+     * refresh token return the same tokens instead of triggering reuse
+     * detection; concurrent duplicates share one computation. {@code 0}
+     * disables the window.
+     */
+    private long refreshGraceWindowMillis = 0;
+
+    /**
+     * Refreshes per second admitted across all subjects; excess refreshes are
+     * rejected with a retry-after before they reach the store. {@code 0}
+     * disables the limit.
+     */
+    private double refreshRateLimit = 0;
+
+    /**
+     * Number of refreshes admitted at once across all subjects.
+     */
+    private int refreshRateLimitBurst = 100;
+
+    /**
+     * Refreshes per second admitted for a single subject. {@code 0} disables
+     * the limit.
+     */
+    private double refreshSubjectRateLimit = 0;
+
+    /**
+     * Number of refreshes of a single subject admitted at once.
+     */
+    private int refreshSubjectRateLimitBurst = 5;
+
+    /**
+     * Format of issued refresh tokens. {@code OPAQUE} tokens are random strings
+     * looked up by their SHA-256 in the refresh token store, which also keeps
+     * the roles for refreshed access tokens. Requires a store that implements
+     * {@code RefreshTokenStore#find} with roles and expiry; the {@code COMPACT}
+     * and {@code MAPPED} stores are rejected at startup.
+     */
+    private RefreshTokenFormat refreshTokenFormat = RefreshTokenFormat.JWT;
+
+    /**
+     * Implementation of the default refresh token store. Ignored if the
+     * application defines its own {@code RefreshTokenStore} bean.
+     */
+    private RefreshStoreType refreshStoreType = RefreshStoreType.IN_MEMORY;
+
+    /**
+     * File backing a persistent refresh token store ({@code MAPPED} or
+     * {@code JOURNAL}).
+     */
+    private String refreshStorePath = "refresh-tokens.db";
+
+    /**
+     * Initial number of slots of a newly created {@code MAPPED} store. The store
+     * grows automatically.
+     */
+    private int refreshStoreInitialCapacity = 65_536;
+
+    /**
+     * Number of journal records after which the {@code JOURNAL} store writes a
+     * snapshot in the background and then truncates its journal.
+     */
+    private int refreshStoreCompactionThreshold = 100_000;
+
+    /**
+     * Number of shards of the {@code SHARDED} store, rounded up to a power of
+     * two.
+     */
+    private int refreshStoreShards = 64;
+
+    /**
+     * Table used by the {@code JDBC} store, optionally schema-qualified.
+     */
+    private String refreshStoreJdbcTable = "jwt_refresh_token";
+
+    /**
+     * Whether the {@code JDBC} store creates its table and indexes on startup if
+     * the table does not exist.
+     */
+    private boolean refreshStoreJdbcInitializeSchema = true;
+
+    /**
+     * Time in milliseconds the {@code JDBC} store waits for further writes before
+     * committing a batch.
+     */
+    private long refreshStoreJdbcBatchLingerMillis = 2;
+
+    /**
+     * Interval in milliseconds at which the refresh token store evicts expired
+     * tokens. Also used as the bucket width of the in-memory expiry index.
+     */
+    private long refreshStoreSweepIntervalMillis = 60_000;
+
+    /**
+     * Maximum number of expired refresh tokens evicted per sweep tick.
+     */
+    private int refreshStoreSweepBatchSize = 10_000;
+
+    /**
+     * Maximum number of refresh tokens held by the {@code IN_MEMORY} store.
+     * {@code 0} means unbounded.
+     */
+    private int refreshStoreMaxEntries = 0;
+
+    /**
+     * Policy selecting which refresh tokens are evicted once
+     * {@link #refreshStoreMaxEntries} is exceeded.
+     */
+    private EvictionPolicy refreshStoreEvictionPolicy = EvictionPolicy.SOONEST_EXPIRY;
+
+    /**
+     * Maximum number of concurrent refresh token sessions (token families) per
+     * subject, enforced for every store type by a
+     * {@code SessionCapRefreshTokenStore}. Once exceeded, the subject's oldest
+     * session is revoked. {@code 0} means unlimited. The limit is enforced per
+     * instance and only counts sessions started since it was created. A
+     * user-supplied store must be declared as {@code RefreshTokenStore}; one
+     * declared with its concrete type is not wrapped, and the limit does not
+     * apply to it.
+     */
+    private int maxSessionsPerSubject = 0;
+
+    /**
+     * Whether the refresh token store (including a user-supplied one) is wrapped
+     * in a {@code CachingRefreshTokenStore}. Useful for remote stores such as
+     * JDBC.
+     */
+    private boolean refreshStoreCacheEnabled = false;
+
+    /**
+     * Maximum number of refresh tokens held by the store cache.
+     */
+    private int refreshStoreCacheMaxEntries = 10_000;
+
+    /**
+     * Safety window in milliseconds for which a cached refresh token state is
+     * trusted; revocations made on other instances become visible after at
+     * most this long.
+     */
+    private long refreshStoreCacheTtlMillis = 1_000;
+
+    /**
+     * Whether access tokens can be revoked before they expire. Enables an
+     * {@code AccessTokenDenylist} consulted by the token verifier.
+     */
+    private boolean accessTokenDenylistEnabled = false;
+
+    /**
+     * Number of concurrently revoked access tokens the denylist's Bloom filter
+     * is sized for.
+     */
+    private int accessTokenDenylistExpectedEntries = 100_000;
+
+    /**
+     * Interval in milliseconds at which expired access tokens are evicted from
+     * the denylist.
+     */
+    private long accessTokenDenylistSweepIntervalMillis = 60_000;
+
+    /**
+     * Whether all tokens of a subject can be invalidated at once ("issued before
+     * T"). Enables {@code SubjectRevocationEpochs} consulted by the token
+     * verifier and updated on refresh token reuse.
+     */
+    private boolean subjectRevocationEnabled = false;
+
+    /**
+     * Interval in milliseconds at which subject revocation epochs older than the
+     * access token TTL are dropped.
+     */
+    private long subjectRevocationSweepIntervalMillis = 60_000;
+
+    /**
+     * Event bus propagating revocations between instances. Defaults to
+     * {@code NONE} (revocations stay local).
+     */
+    private RevocationBusType revocationBus = RevocationBusType.NONE;
+
+    /**
+     * Local UDP port the revocation bus receives on.
+     */
+    private int revocationBusPort = 7946;
+
+    /**
+     * Targets ({@code host:port}) revocation events are sent to: a multicast
+     * group and/or the other instances.
+     */
+    private List<String> revocationBusTargets = List.of();
+
+    /**
+     * Time in milliseconds the revocation bus waits for more events before
+     * sending a batch.
+     */
+    private long revocationBusLingerMillis = 20;
+
+    /**
+     * Shared secret the revocation bus derives its datagram signing key from.
+     * Defaults to the JWT secret; the derived key differs from it either way.
+     */
+    private String revocationBusSecret;
+
     /**
      * The HTTP header used to transmit the JWT token. Defaults to "Authorization".
      */
@@ -76,6 +293,49 @@ public class JwtAuthProperties {
      */
     private List<String> excludedPaths = List.of();
 
+    /**
+     * Role requirements per path and HTTP method, enforced by
+     * {@code JwtAuthFilter} on protected paths. Requests matching no rule only
+     * need a valid token.
+     *
+     * <p>
+     * Rules only apply to requests the filter checks: paths outside
+     * {@link #protectedPaths} or inside {@link #excludedPaths} pass without
+     * them. Rules outside every protected path are logged at startup.
+     */
+    private List<RouteRule> routeRules = List.of();
+
+    /**
+     * Remaining lifetime in milliseconds below which {@code JwtAuthFilter}
+     * returns a freshly minted access token in the
+     * {@link #slidingRefreshHeader} response header. {@code 0} disables
+     * sliding refresh.
+     *
+     * <p>
+     * Renewed tokens are only checked against the access token denylist and
+     * the subject revocation epochs; revoking a refresh token family does not
+     * end a session that keeps sliding. Sliding stops {@link #refreshTtlMillis}
+     * after the first access token of the session was issued.
+     */
+    private long slidingRefreshWindowMillis = 0;
+
+    /**
+     * Response header carrying the access token minted by sliding refresh.
+     */
+    private String slidingRefreshHeader = "X-Access-Token";
+
+    /**
+     * How long in milliseconds a token minted by sliding refresh is shared by
+     * further requests of the same subject and roles.
+     */
+    private long slidingRefreshCacheMillis = 1_000;
+
+    /**
+     * Prefix of the Spring Security authorities created from token roles, so
+     * that {@code hasRole("ADMIN")} matches the role {@code ADMIN}.
+     */
+    private String authorityPrefix = "ROLE_";
+
     public String getIssuer() {
 	return issuer;
     }
@@ -102,6 +362,14 @@ public class JwtAuthProperties {
 	this.secret = secret;
     }
 
+    public List<IssuerProfile> getIssuers() {
+	return issuers;
+    }
+
+    public void setIssuers(List<IssuerProfile> issuers) {
+	this.issuers = issuers;
+    }
+
     /**
      * Returns the time-to-live for a JWT token in milliseconds.
      *
@@ -128,6 +396,14 @@ public class JwtAuthProperties {
 	this.refreshTtlMillis = refreshTtlMillis;
     }
 
+    public double getTtlJitterRatio() {
+	return ttlJitterRatio;
+    }
+
+    public void setTtlJitterRatio(double ttlJitterRatio) {
+	this.ttlJitterRatio = ttlJitterRatio;
+    }
+
     public boolean isRefreshEnabled() {
 	return refreshEnabled;
     }
@@ -152,6 +428,262 @@ public class JwtAuthProperties {
 	this.reuseDetection = reuseDetection;
     }
 
+    public long getRefreshGraceWindowMillis() {
+	return refreshGraceWindowMillis;
+    }
+
+    public void setRefreshGraceWindowMillis(long refreshGraceWindowMillis) {
+	this.refreshGraceWindowMillis = refreshGraceWindowMillis;
+    }
+
+    public double getRefreshRateLimit() {
+	return refreshRateLimit;
+    }
+
+    public void setRefreshRateLimit(double refreshRateLimit) {
+	this.refreshRateLimit = refreshRateLimit;
+    }
+
+    public int getRefreshRateLimitBurst() {
+	return refreshRateLimitBurst;
+    }
+
+    public void setRefreshRateLimitBurst(int refreshRateLimitBurst) {
+	this.refreshRateLimitBurst = refreshRateLimitBurst;
+    }
+
+    public double getRefreshSubjectRateLimit() {
+	return refreshSubjectRateLimit;
+    }
+
+    public void setRefreshSubjectRateLimit(double refreshSubjectRateLimit) {
+	this.refreshSubjectRateLimit = refreshSubjectRateLimit;
+    }
+
+    public int getRefreshSubjectRateLimitBurst() {
+	return refreshSubjectRateLimitBurst;
+    }
+
+    public void setRefreshSubjectRateLimitBurst(int refreshSubjectRateLimitBurst) {
+	this.refreshSubjectRateLimitBurst = refreshSubjectRateLimitBurst;
+    }
+
+    public RefreshTokenFormat getRefreshTokenFormat() {
+	return refreshTokenFormat;
+    }
+
+    public void setRefreshTokenFormat(RefreshTokenFormat refreshTokenFormat) {
+	this.refreshTokenFormat = refreshTokenFormat;
+    }
+
+    public RefreshStoreType getRefreshStoreType() {
+	return refreshStoreType;
+    }
+
+    public void setRefreshStoreType(RefreshStoreType refreshStoreType) {
+	this.refreshStoreType = refreshStoreType;
+    }
+
+    public String getRefreshStorePath() {
+	return refreshStorePath;
+    }
+
+    public void setRefreshStorePath(String refreshStorePath) {
+	this.refreshStorePath = refreshStorePath;
+    }
+
+    public int getRefreshStoreInitialCapacity() {
+	return refreshStoreInitialCapacity;
+    }
+
+    public void setRefreshStoreInitialCapacity(int refreshStoreInitialCapacity) {
+	this.refreshStoreInitialCapacity = refreshStoreInitialCapacity;
+    }
+
+    public int getRefreshStoreShards() {
+	return refreshStoreShards;
+    }
+
+    public void setRefreshStoreShards(int refreshStoreShards) {
+	this.refreshStoreShards = refreshStoreShards;
+    }
+
+    public int getRefreshStoreCompactionThreshold() {
+	return refreshStoreCompactionThreshold;
+    }
+
+    public void setRefreshStoreCompactionThreshold(int refreshStoreCompactionThreshold) {
+	this.refreshStoreCompactionThreshold = refreshStoreCompactionThreshold;
+    }
+
+    public String getRefreshStoreJdbcTable() {
+	return refreshStoreJdbcTable;
+    }
+
+    public void setRefreshStoreJdbcTable(String refreshStoreJdbcTable) {
+	this.refreshStoreJdbcTable = refreshStoreJdbcTable;
+    }
+
+    public boolean isRefreshStoreJdbcInitializeSchema() {
+	return refreshStoreJdbcInitializeSchema;
+    }
+
+    public void setRefreshStoreJdbcInitializeSchema(boolean refreshStoreJdbcInitializeSchema) {
+	this.refreshStoreJdbcInitializeSchema = refreshStoreJdbcInitializeSchema;
+    }
+
+    public long getRefreshStoreJdbcBatchLingerMillis() {
+	return refreshStoreJdbcBatchLingerMillis;
+    }
+
+    public void setRefreshStoreJdbcBatchLingerMillis(long refreshStoreJdbcBatchLingerMillis) {
+	this.refreshStoreJdbcBatchLingerMillis = refreshStoreJdbcBatchLingerMillis;
+    }
+
+    public long getRefreshStoreSweepIntervalMillis() {
+	return refreshStoreSweepIntervalMillis;
+    }
+
+    public void setRefreshStoreSweepIntervalMillis(long refreshStoreSweepIntervalMillis) {
+	this.refreshStoreSweepIntervalMillis = refreshStoreSweepIntervalMillis;
+    }
+
+    public int getRefreshStoreSweepBatchSize() {
+	return refreshStoreSweepBatchSize;
+    }
+
+    public void setRefreshStoreSweepBatchSize(int refreshStoreSweepBatchSize) {
+	this.refreshStoreSweepBatchSize = refreshStoreSweepBatchSize;
+    }
+
+    public int getRefreshStoreMaxEntries() {
+	return refreshStoreMaxEntries;
+    }
+
+    public void setRefreshStoreMaxEntries(int refreshStoreMaxEntries) {
+	this.refreshStoreMaxEntries = refreshStoreMaxEntries;
+    }
+
+    public EvictionPolicy getRefreshStoreEvictionPolicy() {
+	return refreshStoreEvictionPolicy;
+    }
+
+    public void setRefreshStoreEvictionPolicy(EvictionPolicy refreshStoreEvictionPolicy) {
+	this.refreshStoreEvictionPolicy = refreshStoreEvictionPolicy;
+    }
+
+    public int getMaxSessionsPerSubject() {
+	return maxSessionsPerSubject;
+    }
+
+    public void setMaxSessionsPerSubject(int maxSessionsPerSubject) {
+	this.maxSessionsPerSubject = maxSessionsPerSubject;
+    }
+
+    public boolean isRefreshStoreCacheEnabled() {
+	return refreshStoreCacheEnabled;
+    }
+
+    public void setRefreshStoreCacheEnabled(boolean refreshStoreCacheEnabled) {
+	this.refreshStoreCacheEnabled = refreshStoreCacheEnabled;
+    }
+
+    public int getRefreshStoreCacheMaxEntries() {
+	return refreshStoreCacheMaxEntries;
+    }
+
+    public void setRefreshStoreCacheMaxEntries(int refreshStoreCacheMaxEntries) {
+	this.refreshStoreCacheMaxEntries = refreshStoreCacheMaxEntries;
+    }
+
+    public long getRefreshStoreCacheTtlMillis() {
+	return refreshStoreCacheTtlMillis;
+    }
+
+    public void setRefreshStoreCacheTtlMillis(long refreshStoreCacheTtlMillis) {
+	this.refreshStoreCacheTtlMillis = refreshStoreCacheTtlMillis;
+    }
+
+    public boolean isAccessTokenDenylistEnabled() {
+	return accessTokenDenylistEnabled;
+    }
+
+    public void setAccessTokenDenylistEnabled(boolean accessTokenDenylistEnabled) {
+	this.accessTokenDenylistEnabled = accessTokenDenylistEnabled;
+    }
+
+    public int getAccessTokenDenylistExpectedEntries() {
+	return accessTokenDenylistExpectedEntries;
+    }
+
+    public void setAccessTokenDenylistExpectedEntries(int accessTokenDenylistExpectedEntries) {
+	this.accessTokenDenylistExpectedEntries = accessTokenDenylistExpectedEntries;
+    }
+
+    public long getAccessTokenDenylistSweepIntervalMillis() {
+	return accessTokenDenylistSweepIntervalMillis;
+    }
+
+    public void setAccessTokenDenylistSweepIntervalMillis(long accessTokenDenylistSweepIntervalMillis) {
+	this.accessTokenDenylistSweepIntervalMillis = accessTokenDenylistSweepIntervalMillis;
+    }
+
+    public boolean isSubjectRevocationEnabled() {
+	return subjectRevocationEnabled;
+    }
+
+    public void setSubjectRevocationEnabled(boolean subjectRevocationEnabled) {
+	this.subjectRevocationEnabled = subjectRevocationEnabled;
+    }
+
+    public long getSubjectRevocationSweepIntervalMillis() {
+	return subjectRevocationSweepIntervalMillis;
+    }
+
+    public void setSubjectRevocationSweepIntervalMillis(long subjectRevocationSweepIntervalMillis) {
+	this.subjectRevocationSweepIntervalMillis = subjectRevocationSweepIntervalMillis;
+    }
+
+    public RevocationBusType getRevocationBus() {
+	return revocationBus;
+    }
+
+    public void setRevocationBus(RevocationBusType revocationBus) {
+	this.revocationBus = revocationBus;
+    }
+
+    public int getRevocationBusPort() {
+	return revocationBusPort;
+    }
+
+    public void setRevocationBusPort(int revocationBusPort) {
+	this.revocationBusPort = revocationBusPort;
+    }
+
+    public List<String> getRevocationBusTargets() {
+	return revocationBusTargets;
+    }
+
+    public void setRevocationBusTargets(List<String> revocationBusTargets) {
+	this.revocationBusTargets = revocationBusTargets;
+    }
+
+    public long getRevocationBusLingerMillis() {
+	return revocationBusLingerMillis;
+    }
+
+    public void setRevocationBusLingerMillis(long revocationBusLingerMillis) {
+	this.revocationBusLingerMillis = revocationBusLingerMillis;
+    }
+
+    public String getRevocationBusSecret() {
+	return revocationBusSecret;
+    }
+
+    public void setRevocationBusSecret(String revocationBusSecret) {
+	this.revocationBusSecret = revocationBusSecret;
+    }
+
     /**
      * Returns the name of the HTTP header used to carry the JWT token.
      *
@@ -205,4 +737,192 @@ public class JwtAuthProperties {
     public void setExcludedPaths(List<String> excludedPaths) {
 	this.excludedPaths = excludedPaths;
     }
+
+    public List<RouteRule> getRouteRules() {
+	return routeRules;
+    }
+
+    public void setRouteRules(List<RouteRule> routeRules) {
+	this.routeRules = routeRules;
+    }
+
+    public long getSlidingRefreshWindowMillis() {
+	return slidingRefreshWindowMillis;
+    }
+
+    public void setSlidingRefreshWindowMillis(long slidingRefreshWindowMillis) {
+	this.slidingRefreshWindowMillis = slidingRefreshWindowMillis;
+    }
+
+    public String getSlidingRefreshHeader() {
+	return slidingRefreshHeader;
+    }
+
+    public void setSlidingRefreshHeader(String slidingRefreshHeader) {
+	this.slidingRefreshHeader = slidingRefreshHeader;
+    }
+
+    public long getSlidingRefreshCacheMillis() {
+	return slidingRefreshCacheMillis;
+    }
+
+    public void setSlidingRefreshCacheMillis(long slidingRefreshCacheMillis) {
+	this.slidingRefreshCacheMillis = slidingRefreshCacheMillis;
+    }
+
+    public String getAuthorityPrefix() {
+	return authorityPrefix;
+    }
+
+    public void setAuthorityPrefix(String authorityPrefix) {
+	this.authorityPrefix = authorityPrefix;
+    }
+
+    /**
+     * A role requirement for requests to a path pattern.
+     *
+     * <p>
+     * Patterns are split into segments: {@code *} matches exactly one segment
+     * and a trailing {@code **} any number of remaining segments, e.g.
+     * {@code /api/admin/**}. The most specific rule wins: literal segments
+     * before {@code *} before {@code **}.
+     */
+    public static class RouteRule {
+
+	/** Ant-style path pattern, e.g. {@code /api/orders/*}. */
+	private String pattern;
+
+	/** HTTP methods the rule applies to; empty for all methods. */
+	private List<String> methods = List.of();
+
+	/** Roles of which the token needs at least one (or all, see below). */
+	private List<String> roles = List.of();
+
+	/** Whether the token needs all of the roles instead of any. */
+	private boolean requireAll = false;
+
+	public String getPattern() {
+	    return pattern;
+	}
+
+	public void setPattern(String pattern) {
+	    this.pattern = pattern;
+	}
+
+	public List<String> getMethods() {
+	    return methods;
+	}
+
+	public void setMethods(List<String> methods) {
+	    this.methods = methods;
+	}
+
+	public List<String> getRoles() {
+	    return roles;
+	}
+
+	public void setRoles(List<String> roles) {
+	    this.roles = roles;
+	}
+
+	public boolean isRequireAll() {
+	    return requireAll;
+	}
+
+	public void setRequireAll(boolean requireAll) {
+	    this.requireAll = requireAll;
+	}
+    }
+
+    /**
+     * An issuer accepted by the {@code JwtVerifierRegistry}.
+     *
+     * <p>
+     * Tokens with a {@code kid} header are verified with the key of that id
+     * from {@link #keys}, which allows rotating keys per issuer; tokens without
+     * one are verified with {@link #secret}.
+     */
+    public static class IssuerProfile {
+
+	/** The expected 'iss' claim. */
+	private String issuer;
+
+	/** Key for tokens without a 'kid' header; optional. */
+	private String secret;
+
+	/** Keys by 'kid' header value. */
+	private Map<String, String> keys = Map.of();
+
+	public String getIssuer() {
+	    return issuer;
+	}
+
+	public void setIssuer(String issuer) {
+	    this.issuer = issuer;
+	}
+
+	public String getSecret() {
+	    return secret;
+	}
+
+	public void setSecret(String secret) {
+	    this.secret = secret;
+	}
+
+	public Map<String, String> getKeys() {
+	    return keys;
+	}
+
+	public void setKeys(Map<String, String> keys) {
+	    this.keys = keys;
+	}
+    }
+
+    /**
+     * Refresh token formats.
+     */
+    public enum RefreshTokenFormat {
+	/** Signed JWT verified and parsed before the store lookup. */
+	JWT,
+	/** 256-bit random string; the store is keyed by its SHA-256. */
+	OPAQUE
+    }
+
+    /**
+     * Built-in refresh token store implementations.
+     */
+    public enum RefreshStoreType {
+	/** Map-based in-memory store supporting capacity limits and eviction. */
+	IN_MEMORY,
+	/** In-memory store split into independently locked and resized shards. */
+	SHARDED,
+	/** Memory-compact in-memory store based on primitive arrays. */
+	COMPACT,
+	/** Off-heap store in a memory-mapped file that survives restarts. */
+	MAPPED,
+	/** In-memory index backed by a synced journal and snapshots. */
+	JOURNAL,
+	/** Relational database table; requires a {@code DataSource} bean. */
+	JDBC
+    }
+
+    /**
+     * Revocation event bus implementations.
+     */
+    public enum RevocationBusType {
+	/** Revocations are only applied on the instance handling them. */
+	NONE,
+	/** UDP datagrams to a multicast group or a static list of peers. */
+	UDP
+    }
+
+    /**
+     * Eviction policies for a bounded in-memory refresh token store.
+     */
+    public enum EvictionPolicy {
+	/** Evict the token closest to its expiration first. */
+	SOONEST_EXPIRY,
+	/** Evict the token that was saved or refreshed least recently. */
+	LEAST_RECENTLY_REFRESHED
+    }
 }
\ No newline at end of file
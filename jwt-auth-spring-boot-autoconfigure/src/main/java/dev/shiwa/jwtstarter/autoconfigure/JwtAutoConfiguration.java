@@ -1,16 +1,44 @@
 package dev.shiwa.jwtstarter.autoconfigure;
 
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 
+import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties.RefreshStoreType;
+import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties.RefreshTokenFormat;
+import dev.shiwa.jwtstarter.core.AccessTokenVerifier;
 import dev.shiwa.jwtstarter.core.JwtTokenGenerator;
 import dev.shiwa.jwtstarter.core.JwtTokenVerifier;
+import dev.shiwa.jwtstarter.core.JwtVerifierRegistry;
+import dev.shiwa.jwtstarter.core.refresh.AsyncRefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.CachingRefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.CompactRefreshTokenStore;
 import dev.shiwa.jwtstarter.core.refresh.InMemoryRefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.JournalRefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.MappedRefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.RefreshAdmission;
 import dev.shiwa.jwtstarter.core.refresh.RefreshTokenService;
 import dev.shiwa.jwtstarter.core.refresh.RefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.ReplicatingRefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.SessionCapRefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.ShardedRefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.eviction.LeastRecentlyRefreshedEvictionPolicy;
+import dev.shiwa.jwtstarter.core.refresh.eviction.RefreshTokenEvictionPolicy;
+import dev.shiwa.jwtstarter.core.refresh.eviction.SoonestExpiryEvictionPolicy;
+import dev.shiwa.jwtstarter.core.revocation.AccessTokenDenylist;
+import dev.shiwa.jwtstarter.core.revocation.RevocationEventBus;
+import dev.shiwa.jwtstarter.core.revocation.SubjectRevocationEpochs;
+import dev.shiwa.jwtstarter.core.revocation.UdpRevocationEventBus;
 
 /**
  * Auto-configuration class for JWT token verification.
@@ -42,15 +70,119 @@ public class JwtAutoConfiguration {
      *
      * <p>
      * The verifier uses the configured secret and validation settings from
-     * {@link JwtAuthProperties}.
+     * {@link JwtAuthProperties}, and rejects revoked tokens if an
+     * {@link AccessTokenDenylist} or {@link SubjectRevocationEpochs} bean exists.
      *
      * @param properties the JWT authentication properties containing the secret
+     * @param denylist   the optional access token denylist
+     * @param epochs     the optional per-subject revocation epochs
      * @return a {@link JwtTokenVerifier} initialized with the configured secret
      */
     @ConditionalOnMissingBean
     @Bean
-    JwtTokenVerifier jwtTokenVerifier(JwtAuthProperties properties) {
-	return new JwtTokenVerifier(properties);
+    JwtTokenVerifier jwtTokenVerifier(JwtAuthProperties properties, ObjectProvider<AccessTokenDenylist> denylist,
+	    ObjectProvider<SubjectRevocationEpochs> epochs) {
+	return new JwtTokenVerifier(properties, denylist.getIfAvailable(), epochs.getIfAvailable());
+    }
+
+    /**
+     * Registers a {@link JwtVerifierRegistry} for the issuers configured in
+     * {@link JwtAuthProperties#getIssuers()}.
+     *
+     * <p>
+     * The own issuer keeps being verified by the primary verifier.
+     *
+     * @param properties the JWT authentication properties
+     * @param verifier   the verifier of tokens from the own issuer
+     * @param denylist   the optional access token denylist
+     * @param epochs     the optional per-subject revocation epochs
+     * @return the verifier registry
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "jwt.auth", name = "issuers[0].issuer")
+    public JwtVerifierRegistry jwtVerifierRegistry(JwtAuthProperties properties, JwtTokenVerifier verifier,
+	    ObjectProvider<AccessTokenDenylist> denylist, ObjectProvider<SubjectRevocationEpochs> epochs) {
+	return new JwtVerifierRegistry(properties.getIssuers(), properties.getIssuer(), verifier,
+		denylist.getIfAvailable(), epochs.getIfAvailable());
+    }
+
+    /**
+     * Returns the verifier for incoming access tokens: the
+     * {@link JwtVerifierRegistry} if issuers are configured, the primary
+     * verifier otherwise.
+     */
+    static AccessTokenVerifier accessTokenVerifier(JwtTokenVerifier verifier,
+	    ObjectProvider<JwtVerifierRegistry> registry) {
+	JwtVerifierRegistry r = registry.getIfAvailable();
+	return r != null ? r : verifier;
+    }
+
+    /**
+     * Registers a {@link UdpRevocationEventBus} if
+     * {@link JwtAuthProperties#getRevocationBus()} is {@code UDP}. Datagrams are
+     * authenticated with a key derived from
+     * {@link JwtAuthProperties#getRevocationBusSecret()}, or from the JWT secret
+     * if none is set.
+     *
+     * @param p the JWT authentication properties
+     * @return the revocation event bus
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "jwt.auth", name = "revocation-bus", havingValue = "UDP")
+    public RevocationEventBus revocationEventBus(JwtAuthProperties p) {
+	List<InetSocketAddress> targets = p.getRevocationBusTargets().stream().map(JwtAutoConfiguration::address)
+		.toList();
+	String secret = p.getRevocationBusSecret() != null && !p.getRevocationBusSecret().isBlank()
+		? p.getRevocationBusSecret()
+		: p.getSecret();
+	return new UdpRevocationEventBus(p.getRevocationBusPort(), targets, secret.getBytes(StandardCharsets.UTF_8),
+		Duration.ofMillis(p.getRevocationBusLingerMillis()));
+    }
+
+    private static InetSocketAddress address(String hostAndPort) {
+	int colon = hostAndPort.lastIndexOf(':');
+	if (colon <= 0)
+	    throw new IllegalArgumentException(
+		    "jwt.auth.revocationBusTargets entries must be host:port, got: " + hostAndPort);
+	return new InetSocketAddress(hostAndPort.substring(0, colon),
+		Integer.parseInt(hostAndPort.substring(colon + 1)));
+    }
+
+    /**
+     * Registers an {@link AccessTokenDenylist} if
+     * {@link JwtAuthProperties#isAccessTokenDenylistEnabled()} is set.
+     *
+     * @param p   the JWT authentication properties
+     * @param bus the optional revocation event bus
+     * @return the access token denylist
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "jwt.auth", name = "access-token-denylist-enabled", havingValue = "true")
+    public AccessTokenDenylist accessTokenDenylist(JwtAuthProperties p, ObjectProvider<RevocationEventBus> bus) {
+	return new AccessTokenDenylist(p.getAccessTokenDenylistExpectedEntries(),
+		Duration.ofMillis(p.getAccessTokenDenylistSweepIntervalMillis()), p.getRefreshStoreSweepBatchSize(),
+		bus.getIfAvailable());
+    }
+
+    /**
+     * Registers {@link SubjectRevocationEpochs} if
+     * {@link JwtAuthProperties#isSubjectRevocationEnabled()} is set. Epochs are
+     * kept for the access token TTL.
+     *
+     * @param p   the JWT authentication properties
+     * @param bus the optional revocation event bus
+     * @return the subject revocation epochs
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "jwt.auth", name = "subject-revocation-enabled", havingValue = "true")
+    public SubjectRevocationEpochs subjectRevocationEpochs(JwtAuthProperties p,
+	    ObjectProvider<RevocationEventBus> bus) {
+	return new SubjectRevocationEpochs(Duration.ofMillis(p.getAccessTtlMillis()),
+		Duration.ofMillis(p.getSubjectRevocationSweepIntervalMillis()), bus.getIfAvailable());
     }
 
     /**
@@ -71,16 +203,121 @@ public class JwtAutoConfiguration {
 	return new JwtTokenGenerator(properties);
     }
 
+    /**
+     * Registers the default {@link RefreshTokenStore} if none exists in the
+     * application context.
+     *
+     * <p>
+     * The implementation is selected via
+     * {@link JwtAuthProperties#getRefreshStoreType()}. The store evicts expired
+     * tokens on a background thread, configured via
+     * {@link JwtAuthProperties#getRefreshStoreSweepIntervalMillis()} and
+     * {@link JwtAuthProperties#getRefreshStoreSweepBatchSize()}. If
+     * {@link JwtAuthProperties#getRefreshStoreMaxEntries()} is set, the store is
+     * bounded and evicts tokens according to the configured policy. If a
+     * {@link RevocationEventBus} exists, the store is wrapped in a
+     * {@link ReplicatingRefreshTokenStore}.
+     *
+     * @param p   the JWT authentication properties
+     * @param bus the optional revocation event bus
+     * @return the configured refresh token store
+     * @throws IllegalStateException if opaque refresh tokens are configured with
+     *                               a store that keeps neither roles nor expiry
+     *                               ({@code COMPACT} or {@code MAPPED})
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public RefreshTokenStore refreshTokenStore(JwtAuthProperties p, ObjectProvider<RevocationEventBus> bus) {
+	RefreshTokenStore store = localRefreshTokenStore(p);
+	RevocationEventBus b = bus.getIfAvailable();
+	return b != null ? new ReplicatingRefreshTokenStore(store, b) : store;
+    }
+
+    private static RefreshTokenStore localRefreshTokenStore(JwtAuthProperties p) {
+	if (p.getRefreshTokenFormat() == RefreshTokenFormat.OPAQUE && (p.getRefreshStoreType() == RefreshStoreType.COMPACT
+		|| p.getRefreshStoreType() == RefreshStoreType.MAPPED))
+	    throw new IllegalStateException("jwt.auth.refreshTokenFormat=OPAQUE requires a refresh store that keeps "
+		    + "roles and expiry, not " + p.getRefreshStoreType());
+	Duration sweepInterval = Duration.ofMillis(p.getRefreshStoreSweepIntervalMillis());
+	return switch (p.getRefreshStoreType()) {
+	case COMPACT -> new CompactRefreshTokenStore(64, sweepInterval);
+	case SHARDED -> new ShardedRefreshTokenStore(p.getRefreshStoreShards(), sweepInterval,
+		p.getRefreshStoreSweepBatchSize());
+	case MAPPED -> new MappedRefreshTokenStore(Path.of(p.getRefreshStorePath()), p.getRefreshStoreInitialCapacity(),
+		sweepInterval);
+	case JOURNAL -> new JournalRefreshTokenStore(Path.of(p.getRefreshStorePath()),
+		p.getRefreshStoreCompactionThreshold(), sweepInterval, p.getRefreshStoreSweepBatchSize());
+	case JDBC -> throw new IllegalStateException(
+		"jwt.auth.refreshStoreType=JDBC requires a single DataSource bean");
+	case IN_MEMORY -> inMemoryRefreshTokenStore(p);
+	};
+    }
+
+    private static InMemoryRefreshTokenStore inMemoryRefreshTokenStore(JwtAuthProperties p) {
+	return new InMemoryRefreshTokenStore(Duration.ofMillis(p.getRefreshStoreSweepIntervalMillis()),
+		p.getRefreshStoreSweepBatchSize(), p.getRefreshStoreMaxEntries(), evictionPolicy(p));
+    }
+
+    private static RefreshTokenEvictionPolicy evictionPolicy(JwtAuthProperties p) {
+	if (p.getRefreshStoreMaxEntries() <= 0)
+	    return null;
+
+	return switch (p.getRefreshStoreEvictionPolicy()) {
+	case SOONEST_EXPIRY -> new SoonestExpiryEvictionPolicy();
+	case LEAST_RECENTLY_REFRESHED -> new LeastRecentlyRefreshedEvictionPolicy();
+	};
+    }
+
+    /**
+     * Wraps the {@link RefreshTokenStore} bean, whether auto-configured or
+     * user-supplied, in a {@link SessionCapRefreshTokenStore} if
+     * {@link JwtAuthProperties#getMaxSessionsPerSubject()} is set.
+     *
+     * @param properties the JWT authentication properties
+     * @return the post-processor wrapping the store
+     */
+    @Bean
+    static SessionCapRefreshTokenStorePostProcessor sessionCapRefreshTokenStorePostProcessor(
+	    ObjectProvider<JwtAuthProperties> properties) {
+	return new SessionCapRefreshTokenStorePostProcessor(properties);
+    }
+
+    /**
+     * Wraps the {@link RefreshTokenStore} bean, whether auto-configured or
+     * user-supplied, in a {@link CachingRefreshTokenStore} if
+     * {@link JwtAuthProperties#isRefreshStoreCacheEnabled()} is set.
+     *
+     * @param properties the JWT authentication properties
+     * @param bus        the optional revocation event bus invalidating the cache
+     * @return the post-processor wrapping the store
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "jwt.auth", name = "refresh-store-cache-enabled", havingValue = "true")
+    static CachingRefreshTokenStorePostProcessor cachingRefreshTokenStorePostProcessor(
+	    ObjectProvider<JwtAuthProperties> properties, ObjectProvider<RevocationEventBus> bus) {
+	return new CachingRefreshTokenStorePostProcessor(properties, bus);
+    }
+
+    /**
+     * Registers the admission control of refreshes. Without configured rate
+     * limits it admits every refresh and only counts them.
+     *
+     * @param p the JWT authentication properties
+     * @return the refresh admission control
+     */
     @Bean
     @ConditionalOnMissingBean
-    public RefreshTokenStore refreshTokenStore() {
-	return new InMemoryRefreshTokenStore();
+    public RefreshAdmission refreshAdmission(JwtAuthProperties p) {
+	return new RefreshAdmission(p.getRefreshRateLimit(), p.getRefreshRateLimitBurst(),
+		p.getRefreshSubjectRateLimit(), p.getRefreshSubjectRateLimitBurst());
     }
 
     @Bean
     @ConditionalOnMissingBean
     public RefreshTokenService refreshTokenService(JwtTokenVerifier v, JwtTokenGenerator g, RefreshTokenStore s,
-	    JwtAuthProperties p) {
-	return new RefreshTokenService(v, g, s, p);
+	    JwtAuthProperties p, ObjectProvider<SubjectRevocationEpochs> epochs,
+	    ObjectProvider<RefreshAdmission> admission) {
+	return new RefreshTokenService(v, g, s, AsyncRefreshTokenStore.of(s, Runnable::run), p,
+		epochs.getIfAvailable(), admission.getIfAvailable());
     }
 }
\ No newline at end of file
@@ -1,13 +1,22 @@
 package dev.shiwa.jwtstarter.autoconfigure;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import dev.shiwa.jwtstarter.core.AccessTokenRenewer;
+import dev.shiwa.jwtstarter.core.AccessTokenVerifier;
+import dev.shiwa.jwtstarter.core.JwtTokenGenerator;
 import dev.shiwa.jwtstarter.core.JwtTokenVerifier;
+import dev.shiwa.jwtstarter.core.JwtVerifierRegistry;
+import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties.RouteRule;
 import dev.shiwa.jwtstarter.filter.JwtAuthFilter;
+import dev.shiwa.jwtstarter.filter.RouteAuthorizationTable;
 
 /**
  * Auto-configuration for registering the {@link JwtAuthFilter} as a servlet
@@ -25,11 +34,21 @@ import dev.shiwa.jwtstarter.filter.JwtAuthFilter;
  * <p>
  * The URL patterns to secure are configured via
  * {@link JwtAuthProperties#getProtectedPaths()}.
+ *
+ * <p>
+ * Route rules that no protected path can reach are reported with a warning at
+ * startup, since the filter never sees their requests.
+ *
+ * <p>
+ * With {@code jwt.auth.slidingRefreshWindowMillis > 0}, the filter also renews
+ * access tokens that are about to expire.
  */
 @Configuration
 @ConditionalOnProperty(name = "jwt.filter.enabled", havingValue = "true", matchIfMissing = false)
 public class JwtFilterAutoConfiguration {
 
+    private static final Logger log = LoggerFactory.getLogger(JwtFilterAutoConfiguration.class);
+
     /**
      * Registers the {@link JwtAuthFilter} to intercept and validate JWT tokens on
      * incoming requests.
@@ -42,21 +61,49 @@ public class JwtFilterAutoConfiguration {
      * This bean will only be created if no other {@link JwtAuthFilter}
      * {@code FilterRegistrationBean} is present in the context.
      *
-     * @param verifier the JWT token verifier used to validate tokens
-     * @param props    the authentication properties including URL patterns
+     * @param verifier  the JWT token verifier used to validate tokens
+     * @param registry  the verifier registry used instead, if issuers are
+     *                  configured
+     * @param generator the generator used for sliding refresh, if available
+     * @param props     the authentication properties including URL patterns
      * @return a filter registration bean for {@link JwtAuthFilter}
      */
     @Bean
     @ConditionalOnMissingBean
-    FilterRegistrationBean<JwtAuthFilter> jwtFilter(JwtTokenVerifier verifier, JwtAuthProperties props) {
+    FilterRegistrationBean<JwtAuthFilter> jwtFilter(JwtTokenVerifier verifier,
+	    ObjectProvider<JwtVerifierRegistry> registry, ObjectProvider<JwtTokenGenerator> generator,
+	    JwtAuthProperties props) {
+	AccessTokenRenewer renewer = null;
+	JwtTokenGenerator g = generator.getIfAvailable();
+	if (props.getSlidingRefreshWindowMillis() > 0 && g != null)
+	    renewer = new AccessTokenRenewer(g, props.getSlidingRefreshCacheMillis());
+
+	AccessTokenVerifier v = JwtAutoConfiguration.accessTokenVerifier(verifier, registry);
 	FilterRegistrationBean<JwtAuthFilter> registration = new FilterRegistrationBean<>();
-	registration.setFilter(new JwtAuthFilter(verifier, props));
+	registration.setFilter(new JwtAuthFilter(v, props, renewer));
 	registration.setOrder(1);
 
 	for (String pattern : props.getProtectedPaths()) {
 	    registration.addUrlPatterns(pattern);
 	}
+	warnAboutUnreachableRules(props);
 
 	return registration;
     }
+
+    /**
+     * Route rules are only checked by the filter, so a rule outside every
+     * protected path would silently never apply.
+     */
+    private static void warnAboutUnreachableRules(JwtAuthProperties props) {
+	for (RouteRule rule : props.getRouteRules()) {
+	    boolean reachable = false;
+	    for (String pattern : props.getProtectedPaths()) {
+		reachable |= RouteAuthorizationTable.overlaps(rule.getPattern(), pattern);
+	    }
+	    if (!reachable)
+		log.warn("⚠️ Route rule '{}' is never applied: it is outside jwt.auth.protectedPaths {}",
+			rule.getPattern(), props.getProtectedPaths());
+	}
+    }
 }
@@ -0,0 +1,50 @@
+package dev.shiwa.jwtstarter.autoconfigure;
+
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnSingleCandidate;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+
+import dev.shiwa.jwtstarter.core.refresh.JdbcRefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.RefreshTokenStore;
+
+/**
+ * Auto-configuration for the JDBC-backed {@link RefreshTokenStore}.
+ *
+ * <p>
+ * Activated by {@code jwt.auth.refreshStoreType=JDBC} when the application
+ * context contains a single {@link DataSource}. Runs before
+ * {@link JwtAutoConfiguration}, so the store replaces the default one.
+ */
+@AutoConfiguration(before = JwtAutoConfiguration.class,
+	afterName = "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration")
+@ConditionalOnProperty(prefix = "jwt.auth", name = "refresh-store-type", havingValue = "JDBC")
+@ConditionalOnSingleCandidate(DataSource.class)
+@EnableConfigurationProperties(JwtAuthProperties.class)
+public class JwtJdbcAutoConfiguration {
+
+    /**
+     * Registers a {@link JdbcRefreshTokenStore} and creates its table if
+     * {@link JwtAuthProperties#isRefreshStoreJdbcInitializeSchema()} is set.
+     *
+     * @param dataSource the application data source
+     * @param p          the JWT authentication properties
+     * @return the JDBC refresh token store
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public RefreshTokenStore jdbcRefreshTokenStore(DataSource dataSource, JwtAuthProperties p) {
+	JdbcRefreshTokenStore store = new JdbcRefreshTokenStore(dataSource, p.getRefreshStoreJdbcTable(),
+		Duration.ofMillis(p.getRefreshStoreJdbcBatchLingerMillis()),
+		Duration.ofMillis(p.getRefreshStoreSweepIntervalMillis()));
+	if (p.isRefreshStoreJdbcInitializeSchema())
+	    store.initializeSchema();
+	return store;
+    }
+}
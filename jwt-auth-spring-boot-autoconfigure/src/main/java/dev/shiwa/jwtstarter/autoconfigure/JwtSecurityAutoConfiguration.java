@@ -0,0 +1,82 @@
+package dev.shiwa.jwtstarter.autoconfigure;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.web.SecurityFilterChain;
+
+import dev.shiwa.jwtstarter.core.JwtTokenVerifier;
+import dev.shiwa.jwtstarter.core.JwtVerifierRegistry;
+import dev.shiwa.jwtstarter.security.JwtAuthenticationProvider;
+import dev.shiwa.jwtstarter.security.JwtBearerTokenFilter;
+import dev.shiwa.jwtstarter.security.RoleAuthorities;
+
+/**
+ * Auto-configuration for the Spring Security integration.
+ *
+ * <p>
+ * Active when Spring Security's web support is on the classpath. Registers a
+ * {@link JwtBearerTokenFilter} that applications add to their security filter
+ * chain. Token roles become authorities with the prefix
+ * {@link JwtAuthProperties#getAuthorityPrefix()}.
+ *
+ * <p>
+ * The filter authenticates with its own {@link JwtAuthenticationProvider},
+ * which is not a bean: Spring Security builds the global
+ * {@code AuthenticationManager} from a single {@code AuthenticationProvider}
+ * bean instead of the application's {@code UserDetailsService}, so publishing
+ * one would break form and basic login.
+ */
+@AutoConfiguration(after = JwtAutoConfiguration.class)
+@ConditionalOnClass(SecurityFilterChain.class)
+public class JwtSecurityAutoConfiguration {
+
+    private static final int MAX_CACHED_ROLE_PROFILES = 1024;
+
+    /**
+     * Registers the mapping from token roles to cached authority lists.
+     *
+     * @param p the JWT authentication properties
+     * @return the role to authority mapping
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public RoleAuthorities jwtRoleAuthorities(JwtAuthProperties p) {
+	return new RoleAuthorities(p.getAuthorityPrefix(), MAX_CACHED_ROLE_PROFILES);
+    }
+
+    /**
+     * Registers the bearer token filter for use in a security filter chain.
+     *
+     * @param verifier    the token verifier
+     * @param registry    the verifier registry used instead, if issuers are
+     *                    configured
+     * @param authorities the role to authority mapping
+     * @return the filter
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public JwtBearerTokenFilter jwtBearerTokenFilter(JwtTokenVerifier verifier,
+	    ObjectProvider<JwtVerifierRegistry> registry, RoleAuthorities authorities) {
+	return new JwtBearerTokenFilter(new ProviderManager(
+		new JwtAuthenticationProvider(JwtAutoConfiguration.accessTokenVerifier(verifier, registry), authorities)));
+    }
+
+    /**
+     * Keeps the servlet container from running the bearer token filter outside
+     * the security filter chain.
+     *
+     * @param filter the bearer token filter
+     * @return a disabled registration for the filter
+     */
+    @Bean
+    FilterRegistrationBean<JwtBearerTokenFilter> jwtBearerTokenFilterRegistration(JwtBearerTokenFilter filter) {
+	FilterRegistrationBean<JwtBearerTokenFilter> registration = new FilterRegistrationBean<>(filter);
+	registration.setEnabled(false);
+	return registration;
+    }
+}
@@ -0,0 +1,136 @@
+package dev.shiwa.jwtstarter.autoconfigure;
+
+import java.util.List;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import dev.shiwa.jwtstarter.core.JwtAuthentication;
+import dev.shiwa.jwtstarter.core.JwtTokenVerifier;
+import dev.shiwa.jwtstarter.core.JwtVerifierRegistry;
+import dev.shiwa.jwtstarter.core.error.JwtAuthException;
+import dev.shiwa.jwtstarter.web.CurrentJwtArgumentResolver;
+import dev.shiwa.jwtstarter.web.JwtAuthExceptionResolver;
+import dev.shiwa.jwtstarter.web.RequireAnyRole;
+import dev.shiwa.jwtstarter.web.RequireRoles;
+import dev.shiwa.jwtstarter.web.RoleCheckInterceptor;
+
+/**
+ * Auto-configuration for the Spring MVC integration.
+ *
+ * <p>
+ * Active in servlet web applications with Spring MVC on the classpath.
+ * Registers a {@link RoleCheckInterceptor} enforcing {@link RequireRoles} and
+ * {@link RequireAnyRole}, whose annotations are resolved for all request
+ * mappings once the context has started, and a
+ * {@link CurrentJwtArgumentResolver} that injects the {@link JwtAuthentication}
+ * of the request into handler methods.
+ *
+ * <p>
+ * A {@link JwtAuthExceptionResolver} answers {@link JwtAuthException}s that no
+ * {@code @ExceptionHandler} handles, so a required {@link JwtAuthentication}
+ * parameter without a token yields HTTP 401 rather than 500.
+ */
+@AutoConfiguration(after = JwtAutoConfiguration.class)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnClass(WebMvcConfigurer.class)
+public class JwtWebMvcAutoConfiguration {
+
+    /**
+     * Registers the interceptor enforcing the role annotations.
+     *
+     * @param verifier the verifier used if the filter did not run
+     * @param registry the verifier registry used instead, if issuers are
+     *                 configured
+     * @return the role check interceptor
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public RoleCheckInterceptor roleCheckInterceptor(JwtTokenVerifier verifier,
+	    ObjectProvider<JwtVerifierRegistry> registry) {
+	return new RoleCheckInterceptor(JwtAutoConfiguration.accessTokenVerifier(verifier, registry));
+    }
+
+    /**
+     * Registers the resolver for {@link JwtAuthentication} handler parameters.
+     *
+     * @param verifier the verifier used if the filter did not run
+     * @param registry the verifier registry used instead, if issuers are
+     *                 configured
+     * @return the argument resolver
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public CurrentJwtArgumentResolver currentJwtArgumentResolver(JwtTokenVerifier verifier,
+	    ObjectProvider<JwtVerifierRegistry> registry) {
+	return new CurrentJwtArgumentResolver(JwtAutoConfiguration.accessTokenVerifier(verifier, registry));
+    }
+
+    /**
+     * Registers the fallback mapping of {@link JwtAuthException}s to HTTP
+     * statuses.
+     *
+     * @return the exception resolver
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public JwtAuthExceptionResolver jwtAuthExceptionResolver() {
+	return new JwtAuthExceptionResolver();
+    }
+
+    /**
+     * Adds the {@link RoleCheckInterceptor}, the
+     * {@link CurrentJwtArgumentResolver} and the {@link JwtAuthExceptionResolver}
+     * to Spring MVC.
+     *
+     * @param interceptor the role check interceptor
+     * @param resolver    the argument resolver
+     * @param exceptions  the exception resolver, added after Spring's own ones
+     * @return the MVC configurer
+     */
+    @Bean
+    WebMvcConfigurer jwtWebMvcConfigurer(RoleCheckInterceptor interceptor, CurrentJwtArgumentResolver resolver,
+	    JwtAuthExceptionResolver exceptions) {
+	return new WebMvcConfigurer() {
+	    @Override
+	    public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(interceptor);
+	    }
+
+	    @Override
+	    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+		resolvers.add(resolver);
+	    }
+
+	    @Override
+	    public void extendHandlerExceptionResolvers(List<HandlerExceptionResolver> resolvers) {
+		resolvers.add(exceptions);
+	    }
+	};
+    }
+
+    /**
+     * Resolves the role annotations of all request mappings once every
+     * singleton, including the handler mappings, has been created.
+     *
+     * @param interceptor the role check interceptor
+     * @param mappings    the request mapping handler mappings
+     * @return the initializer
+     */
+    @Bean
+    SmartInitializingSingleton roleCheckInterceptorInitializer(RoleCheckInterceptor interceptor,
+	    ObjectProvider<RequestMappingHandlerMapping> mappings) {
+	return () -> interceptor.resolve(
+		mappings.orderedStream().flatMap(m -> m.getHandlerMethods().values().stream()).toList());
+    }
+}
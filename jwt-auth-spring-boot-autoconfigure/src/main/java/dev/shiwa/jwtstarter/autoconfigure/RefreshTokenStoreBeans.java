@@ -0,0 +1,32 @@
+package dev.shiwa.jwtstarter.autoconfigure;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+/**
+ * Helpers for the post-processors wrapping {@code RefreshTokenStore} beans.
+ */
+final class RefreshTokenStoreBeans {
+
+    private RefreshTokenStoreBeans() {
+    }
+
+    /**
+     * Returns whether a bean can be replaced by a wrapper without breaking
+     * injection, i.e. whether the wrapper is assignable to the type the bean is
+     * declared with. A store declared with its concrete type, e.g. an
+     * {@code @Bean} method returning {@code JdbcRefreshTokenStore}, cannot be
+     * wrapped.
+     *
+     * @param beanFactory the bean factory holding the bean definition
+     * @param beanName    the name of the bean
+     * @param wrapper     the class of the wrapper
+     * @return {@code true} if the wrapper can replace the bean
+     */
+    static boolean isWrappable(BeanFactory beanFactory, String beanName, Class<?> wrapper) {
+	if (!(beanFactory instanceof ConfigurableListableBeanFactory bf) || !bf.containsBeanDefinition(beanName))
+	    return false;
+	Class<?> declared = bf.getMergedBeanDefinition(beanName).getResolvableType().resolve();
+	return declared != null && declared.isAssignableFrom(wrapper);
+    }
+}
@@ -0,0 +1,65 @@
+package dev.shiwa.jwtstarter.autoconfigure;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+
+import dev.shiwa.jwtstarter.core.refresh.RefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.SessionCapRefreshTokenStore;
+
+/**
+ * Wraps every {@link RefreshTokenStore} bean, including user-supplied ones, in
+ * a {@link SessionCapRefreshTokenStore} if
+ * {@link JwtAuthProperties#getMaxSessionsPerSubject()} is set.
+ *
+ * <p>
+ * Only beans declared as {@link RefreshTokenStore} (or another type the
+ * wrapper implements) are wrapped, so injection by the declared type keeps
+ * working. A store declared with its concrete type is left as it is, with a
+ * warning that the limit does not apply to it.
+ *
+ * <p>
+ * It wraps a {@code CachingRefreshTokenStore} rather than the other way round,
+ * so that sessions revoked over the limit are also dropped from the cache.
+ */
+final class SessionCapRefreshTokenStorePostProcessor implements BeanPostProcessor, BeanFactoryAware, Ordered {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionCapRefreshTokenStorePostProcessor.class);
+
+    private final ObjectProvider<JwtAuthProperties> properties;
+    private BeanFactory beanFactory;
+
+    SessionCapRefreshTokenStorePostProcessor(ObjectProvider<JwtAuthProperties> properties) {
+	this.properties = properties;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+	this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+	if (!(bean instanceof RefreshTokenStore store) || bean instanceof SessionCapRefreshTokenStore)
+	    return bean;
+
+	int max = properties.getObject().getMaxSessionsPerSubject();
+	if (max <= 0)
+	    return bean;
+	if (!RefreshTokenStoreBeans.isWrappable(beanFactory, beanName, SessionCapRefreshTokenStore.class)) {
+	    log.warn("⚠️ jwt.auth.maxSessionsPerSubject is not enforced for bean '{}': declare it as RefreshTokenStore",
+		    beanName);
+	    return bean;
+	}
+	return new SessionCapRefreshTokenStore(store, max);
+    }
+
+    @Override
+    public int getOrder() {
+	return CachingRefreshTokenStorePostProcessor.ORDER + 1;
+    }
+}
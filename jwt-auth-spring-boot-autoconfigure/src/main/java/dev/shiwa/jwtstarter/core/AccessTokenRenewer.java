@@ -0,0 +1,111 @@
+package dev.shiwa.jwtstarter.core;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Mints replacement access tokens for the sliding refresh of
+ * {@code JwtAuthFilter}.
+ *
+ * <p>
+ * A client usually sends several requests in parallel, and all of them carry
+ * the same access token once it enters the refresh window. The token minted
+ * for a subject and role set is therefore kept for {@code cacheMillis}, and
+ * parallel requests share one signing: the first one mints the token while
+ * holding the map entry, the others wait for it and receive the same token.
+ *
+ * <p>
+ * Renewed tokens carry the start of the session they continue, and never
+ * expire later than the refresh token TTL after it, so a session cannot be
+ * kept alive by sliding alone.
+ *
+ * <p>
+ * Entries are not swept by a background thread; expired ones are dropped when
+ * the map has grown past twice its live size.
+ */
+public class AccessTokenRenewer {
+
+    private static final int MIN_PURGE_THRESHOLD = 1024;
+
+    private final JwtTokenGenerator generator;
+    private final long cacheMillis;
+    private final ConcurrentMap<Key, Minted> minted = new ConcurrentHashMap<>();
+    private final AtomicBoolean purging = new AtomicBoolean();
+    private volatile int purgeThreshold = MIN_PURGE_THRESHOLD;
+
+    /**
+     * Creates a renewer.
+     *
+     * @param generator   the generator used to sign the new tokens
+     * @param cacheMillis how long a minted token is handed out to further
+     *                    requests of the same subject and roles
+     */
+    public AccessTokenRenewer(JwtTokenGenerator generator, long cacheMillis) {
+	if (cacheMillis < 0)
+	    throw new IllegalArgumentException("cacheMillis must be >= 0");
+	this.generator = generator;
+	this.cacheMillis = cacheMillis;
+    }
+
+    /**
+     * Returns a fresh access token for the given subject and roles, minting one
+     * unless a recently minted token can be shared. The token expires after the
+     * access token TTL, but no later than the refresh token TTL after
+     * {@code authTimeMillis}.
+     *
+     * @param subject        the token subject
+     * @param roles          the roles of the token being replaced
+     * @param authTimeMillis the start of the session in epoch milliseconds
+     * @return a signed access token
+     */
+    public String renew(String subject, List<String> roles, long authTimeMillis) {
+	Key key = new Key(subject, roles, authTimeMillis);
+	Minted current = minted.get(key);
+	if (current != null && current.validUntil > System.currentTimeMillis())
+	    return current.token;
+
+	// the entry stays locked while signing, so concurrent callers share the result
+	Minted result = minted.compute(key, (k, existing) -> {
+	    if (existing != null && existing.validUntil > System.currentTimeMillis())
+		return existing;
+	    long expiresAt = Math.min(System.currentTimeMillis() + generator.accessTtlMillis(),
+		    authTimeMillis + generator.refreshTtlMillis());
+	    String token = generator.generateAccessToken(subject, roles, expiresAt, authTimeMillis);
+	    return new Minted(token, System.currentTimeMillis() + cacheMillis);
+	});
+
+	if (minted.size() > purgeThreshold)
+	    purge();
+	return result.token;
+    }
+
+    /**
+     * Returns the number of cached tokens, including expired ones not purged
+     * yet.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+	return minted.size();
+    }
+
+    private void purge() {
+	if (!purging.compareAndSet(false, true))
+	    return;
+	try {
+	    long nowMillis = System.currentTimeMillis();
+	    minted.values().removeIf(m -> m.validUntil < nowMillis);
+	    purgeThreshold = Math.max(MIN_PURGE_THRESHOLD, minted.size() * 2);
+	} finally {
+	    purging.set(false);
+	}
+    }
+
+    private record Key(String subject, List<String> roles, long authTimeMillis) {
+    }
+
+    private record Minted(String token, long validUntil) {
+    }
+}
@@ -0,0 +1,24 @@
+package dev.shiwa.jwtstarter.core;
+
+import io.jsonwebtoken.Claims;
+
+/**
+ * Verifies access tokens for the request-side integrations: the servlet
+ * filter, the MVC interceptor and argument resolver, and the Spring Security
+ * provider.
+ *
+ * <p>
+ * Implemented by {@link JwtTokenVerifier} for the application's own issuer and
+ * by {@link JwtVerifierRegistry} for several issuers.
+ */
+public interface AccessTokenVerifier {
+
+    /**
+     * Validates a token and returns its claims.
+     *
+     * @param token the JWT token string (with or without "Bearer" prefix)
+     * @return the verified claims, or {@code null} if the token is invalid,
+     *         revoked or expired
+     */
+    Claims verify(String token);
+}
@@ -3,6 +3,8 @@ package dev.shiwa.jwtstarter.core;
 import java.time.Instant;
 import java.util.List;
 
+import io.jsonwebtoken.Claims;
+
 /**
  * Represents the authentication information extracted from a JWT token.
  *
@@ -10,6 +12,7 @@ import java.util.List;
  * This includes:
  * <ul>
  * <li>The subject (usually a user identifier)</li>
+ * <li>The issuer of the token</li>
  * <li>A list of granted roles</li>
  * <li>The token's issue and expiration timestamps</li>
  * </ul>
@@ -17,10 +20,16 @@ import java.util.List;
  * <p>
  * This class is typically used as the result of token parsing and verification,
  * e.g. {@code JwtTokenVerifier#parseToken(...)}.
+ *
+ * <p>
+ * Subjects are only unique per issuer: with further issuers accepted by the
+ * {@code JwtVerifierRegistry}, a user is identified by issuer and subject
+ * together.
  */
 public class JwtAuthentication {
 
     private String subject;
+    private String issuer;
     private List<String> roles;
     private Instant issuedAt;
     private Instant expiration;
@@ -42,12 +51,41 @@ public class JwtAuthentication {
      * @param expiration the expiration timestamp of the token
      */
     public JwtAuthentication(String subject, List<String> roles, Instant issuedAt, Instant expiration) {
+	this(subject, null, roles, issuedAt, expiration);
+    }
+
+    /**
+     * Constructs a new JwtAuthentication instance with subject, issuer, roles,
+     * and timestamps.
+     *
+     * @param subject    the token subject (typically the username or user ID)
+     * @param issuer     the issuer of the token
+     * @param roles      a list of roles associated with the subject
+     * @param issuedAt   the timestamp at which the token was issued
+     * @param expiration the expiration timestamp of the token
+     */
+    public JwtAuthentication(String subject, String issuer, List<String> roles, Instant issuedAt,
+	    Instant expiration) {
 	this.subject = subject;
+	this.issuer = issuer;
 	this.roles = roles;
 	this.issuedAt = issuedAt;
 	this.expiration = expiration;
     }
 
+    /**
+     * Creates an instance from verified token claims.
+     *
+     * @param claims the claims of a verified token
+     * @return the authentication information of the token
+     */
+    @SuppressWarnings("unchecked")
+    public static JwtAuthentication from(Claims claims) {
+	return new JwtAuthentication(claims.getSubject(), claims.getIssuer(), claims.get("roles", List.class),
+		claims.getIssuedAt() != null ? claims.getIssuedAt().toInstant() : null,
+		claims.getExpiration() != null ? claims.getExpiration().toInstant() : null);
+    }
+
     /**
      * Returns the subject (user identifier) of the JWT token.
      *
@@ -66,6 +104,24 @@ public class JwtAuthentication {
 	this.subject = subject;
     }
 
+    /**
+     * Returns the issuer of the JWT token. Subjects are only unique per issuer.
+     *
+     * @return the issuer, or {@code null} if the token has none
+     */
+    public String getIssuer() {
+	return issuer;
+    }
+
+    /**
+     * Sets the issuer of the JWT token.
+     *
+     * @param issuer the issuer to set
+     */
+    public void setIssuer(String issuer) {
+	this.issuer = issuer;
+    }
+
     /**
      * Returns the list of roles granted to the subject.
      *
@@ -3,6 +3,7 @@ package dev.shiwa.jwtstarter.core;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.crypto.SecretKey;
 
@@ -30,9 +31,38 @@ import io.jsonwebtoken.security.Keys;
  * It uses the secret key and expiration settings defined in
  * {@link JwtAuthProperties}. This class is typically used after successful
  * authentication (e.g., login) to generate a token for the client.
+ *
+ * <p>
+ * With {@link JwtAuthProperties#getTtlJitterRatio()}, every token lifetime is
+ * shortened by a random fraction of up to that ratio. Tokens issued in the
+ * same moment, e.g. when all clients log in again after an outage, then
+ * expire spread out instead of sending all their refreshes in the same
+ * second, round after round.
  */
 public class JwtTokenGenerator {
 
+    /** Claim holding the token family id of a refresh token. */
+    public static final String FAMILY_CLAIM = "fid";
+
+    /**
+     * Claim holding the issue time in epoch milliseconds; {@code iat} only has
+     * second precision.
+     */
+    public static final String ISSUED_AT_MILLIS_CLAIM = "iat_ms";
+
+    /**
+     * Claim holding the time in epoch milliseconds at which the session of a
+     * renewed access token started, so sliding refresh can stop renewing it.
+     */
+    public static final String AUTH_TIME_MILLIS_CLAIM = "auth_ms";
+
+    /**
+     * Claim holding the roles that access tokens obtained with a refresh token
+     * are granted. Kept apart from {@code roles}, so a refresh token presented
+     * as an access token grants none.
+     */
+    public static final String REFRESH_ROLES_CLAIM = "rt_roles";
+
     /** Logger for monitoring token generation and debugging. */
     private static final Logger log = LoggerFactory.getLogger(JwtTokenGenerator.class);
 
@@ -67,8 +97,10 @@ public class JwtTokenGenerator {
      * <li>{@code sub}: the subject (user ID or username)</li>
      * <li>{@code roles}: a list of roles as custom claim</li>
      * <li>{@code iss}: the issuer</li>
-     * <li>{@code iat}: issued-at timestamp</li>
+     * <li>{@code iat}: issued-at timestamp, and {@value #ISSUED_AT_MILLIS_CLAIM}
+     * with millisecond precision</li>
      * <li>{@code exp}: expiration timestamp</li>
+     * <li>{@code jti}: unique token id, used to revoke the token early</li>
      * </ul>
      *
      * @param subject the user identity (typically email or username)
@@ -77,17 +109,57 @@ public class JwtTokenGenerator {
      * @throws RuntimeException if token creation fails
      */
     public String generateAccessToken(String subject, List<String> roles) {
+	return generateAccessToken(subject, roles, System.currentTimeMillis() + accessTtlMillis());
+    }
+
+    /**
+     * Generates a signed JWT token with the given expiration, see
+     * {@link #generateAccessToken(String, List)}.
+     *
+     * @param subject         the user identity (typically email or username)
+     * @param roles           the roles granted to the user
+     * @param expiresAtMillis the expiration timestamp in epoch milliseconds,
+     *                        usually now plus {@link #accessTtlMillis()}
+     * @return a signed JWT token string
+     * @throws RuntimeException if token creation fails
+     */
+    public String generateAccessToken(String subject, List<String> roles, long expiresAtMillis) {
+	return generateAccessToken(subject, roles, expiresAtMillis, null);
+    }
+
+    /**
+     * Generates a signed JWT token that continues an earlier session, see
+     * {@link #generateAccessToken(String, List, long)}. The token carries the
+     * session start in the {@value #AUTH_TIME_MILLIS_CLAIM} claim.
+     *
+     * @param subject         the user identity (typically email or username)
+     * @param roles           the roles granted to the user
+     * @param expiresAtMillis the expiration timestamp in epoch milliseconds
+     * @param authTimeMillis  the session start in epoch milliseconds
+     * @return a signed JWT token string
+     * @throws RuntimeException if token creation fails
+     */
+    public String generateAccessToken(String subject, List<String> roles, long expiresAtMillis,
+	    long authTimeMillis) {
+	return generateAccessToken(subject, roles, expiresAtMillis, Long.valueOf(authTimeMillis));
+    }
+
+    private String generateAccessToken(String subject, List<String> roles, long expiresAtMillis,
+	    Long authTimeMillis) {
 	try {
 	    long nowMillis = System.currentTimeMillis();
 	    Date now = new Date(nowMillis);
-	    Date expiry = new Date(nowMillis + properties.getAccessTtlMillis());
+	    Date expiry = new Date(expiresAtMillis);
 
-	    final var token = Jwts.builder().setSubject(subject).claim("roles", roles).claim("type", "access")
-		    .setIssuer(properties.getIssuer()).setIssuedAt(now).setExpiration(expiry)
-		    .signWith(secretKey, SignatureAlgorithm.HS256).compact();
+	    var builder = Jwts.builder().setSubject(subject).claim("roles", roles).claim("type", "access")
+		    .setIssuer(properties.getIssuer()).setId(UUID.randomUUID().toString()).setIssuedAt(now)
+		    .claim(ISSUED_AT_MILLIS_CLAIM, nowMillis).setExpiration(expiry);
+	    if (authTimeMillis != null)
+		builder.claim(AUTH_TIME_MILLIS_CLAIM, authTimeMillis);
+	    final var token = builder.signWith(secretKey, SignatureAlgorithm.HS256).compact();
 
 	    log.info("🔐 Token generated for subject: {}", subject);
-	    log.debug("→ roles={}, expiresIn={}s", roles, properties.getAccessTtlMillis());
+	    log.debug("→ roles={}, expiresIn={}ms", roles, expiresAtMillis - nowMillis);
 
 	    return token;
 	} catch (Exception e) {
@@ -96,12 +168,77 @@ public class JwtTokenGenerator {
 	}
     }
 
+    /**
+     * Generates a refresh token that starts a new token family.
+     *
+     * @param subject the user identity
+     * @return a signed refresh token string
+     * @see #generateRefreshToken(String, String)
+     */
     public String generateRefreshToken(String subject) {
+	return generateRefreshToken(subject, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Generates a refresh token belonging to the given token family.
+     *
+     * <p>
+     * A family is started at login and carried over by every rotated refresh
+     * token in the {@value #FAMILY_CLAIM} claim, so reuse of a stolen token can
+     * be answered by revoking just that login session.
+     *
+     * @param subject  the user identity
+     * @param familyId the token family id
+     * @return a signed refresh token string
+     */
+    public String generateRefreshToken(String subject, String familyId) {
+	return generateRefreshToken(subject, familyId, null);
+    }
+
+    /**
+     * Generates a refresh token belonging to the given token family that
+     * carries the roles of the access tokens refreshed with it in the
+     * {@value #REFRESH_ROLES_CLAIM} claim.
+     *
+     * @param subject  the user identity
+     * @param familyId the token family id
+     * @param roles    the roles granted on refresh, or {@code null}
+     * @return a signed refresh token string
+     */
+    public String generateRefreshToken(String subject, String familyId, List<String> roles) {
 	long now = System.currentTimeMillis();
 	String jti = UUID.randomUUID().toString();
 	return Jwts.builder().setSubject(subject).setIssuer(properties.getIssuer()).setId(jti) // jti für
 											       // Store/Revocation
-		.setIssuedAt(new Date(now)).setExpiration(new Date(now + properties.getRefreshTtlMillis()))
-		.claim("type", "refresh").signWith(secretKey, SignatureAlgorithm.HS256).compact();
+		.setIssuedAt(new Date(now)).setExpiration(new Date(now + refreshTtlMillis()))
+		.claim("type", "refresh").claim(FAMILY_CLAIM, familyId).claim(REFRESH_ROLES_CLAIM, roles)
+		.signWith(secretKey, SignatureAlgorithm.HS256).compact();
+    }
+
+    /**
+     * Returns the lifetime of the next access token: the configured TTL,
+     * shortened by the jitter if configured.
+     *
+     * @return the TTL in milliseconds
+     */
+    public long accessTtlMillis() {
+	return jitter(properties.getAccessTtlMillis());
+    }
+
+    /**
+     * Returns the lifetime of the next refresh token: the configured TTL,
+     * shortened by the jitter if configured.
+     *
+     * @return the TTL in milliseconds
+     */
+    public long refreshTtlMillis() {
+	return jitter(properties.getRefreshTtlMillis());
+    }
+
+    private long jitter(long ttlMillis) {
+	double ratio = Math.min(1, properties.getTtlJitterRatio());
+	if (ratio <= 0 || ttlMillis <= 0)
+	    return ttlMillis;
+	return ttlMillis - (long) (ThreadLocalRandom.current().nextDouble() * ratio * ttlMillis);
     }
 }
@@ -1,8 +1,6 @@
 package dev.shiwa.jwtstarter.core;
 
-import java.time.Instant;
 import java.util.Date;
-import java.util.List;
 
 import javax.crypto.SecretKey;
 
@@ -10,10 +8,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties;
+import dev.shiwa.jwtstarter.core.revocation.AccessTokenDenylist;
+import dev.shiwa.jwtstarter.core.revocation.SubjectRevocationEpochs;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.Jws;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 
@@ -25,6 +26,8 @@ import io.jsonwebtoken.security.Keys;
  * <ul>
  * <li>Validating the token signature</li>
  * <li>Checking expiration and issuer</li>
+ * <li>Rejecting revoked tokens, if an {@link AccessTokenDenylist} or
+ * {@link SubjectRevocationEpochs} are configured</li>
  * <li>Extracting authentication details such as subject and roles</li>
  * </ul>
  *
@@ -32,17 +35,38 @@ import io.jsonwebtoken.security.Keys;
  * Only tokens signed with a secure HMAC secret (minimum 256 bits) are
  * supported.
  */
-public class JwtTokenVerifier {
+public class JwtTokenVerifier implements AccessTokenVerifier {
 
     /** Logger for verification events and errors. */
     private final Logger log = LoggerFactory.getLogger(JwtTokenVerifier.class);
 
-    /** Secret key used to verify the JWT signature. */
-    private final SecretKey secretKey;
+    /**
+     * Parser verifying signatures with the secret key, built once; jjwt parsers
+     * are immutable and thread-safe.
+     */
+    private final JwtParser parser;
+
+    /**
+     * Parser additionally requiring the configured issuer, or {@link #parser}
+     * if none is configured.
+     */
+    private final JwtParser issuerParser;
 
     /** Configuration properties containing issuer, secret, and token rules. */
     private final JwtAuthProperties jwtAuthProperties;
 
+    /** Optional denylist of revoked access tokens. */
+    private final AccessTokenDenylist denylist;
+
+    /** Optional per-subject revocation epochs. */
+    private final SubjectRevocationEpochs epochs;
+
+    /**
+     * Issuer qualifying the denylist and epoch keys, or {@code null} for the
+     * application's own tokens.
+     */
+    private final String revocationIssuer;
+
     /**
      * Constructs a new {@code JwtTokenVerifier} using the given secret key.
      *
@@ -51,13 +75,61 @@ public class JwtTokenVerifier {
      *                                  characters
      */
     public JwtTokenVerifier(JwtAuthProperties jwtAuthProperties) {
+	this(jwtAuthProperties, null);
+    }
+
+    /**
+     * Constructs a new {@code JwtTokenVerifier} that additionally rejects tokens
+     * whose {@code jti} is on the given denylist.
+     *
+     * @param jwtAuthProperties the JWT configuration including secret and issuer
+     * @param denylist          the denylist of revoked access tokens, or
+     *                          {@code null}
+     * @throws IllegalArgumentException if the secret is null or shorter than 32
+     *                                  characters
+     */
+    public JwtTokenVerifier(JwtAuthProperties jwtAuthProperties, AccessTokenDenylist denylist) {
+	this(jwtAuthProperties, denylist, null);
+    }
+
+    /**
+     * Constructs a new {@code JwtTokenVerifier} that additionally rejects tokens
+     * on the denylist and tokens issued before their subject's revocation epoch.
+     *
+     * @param jwtAuthProperties the JWT configuration including secret and issuer
+     * @param denylist          the denylist of revoked access tokens, or
+     *                          {@code null}
+     * @param epochs            the per-subject revocation epochs, or
+     *                          {@code null}
+     * @throws IllegalArgumentException if the secret is null or shorter than 32
+     *                                  characters
+     */
+    public JwtTokenVerifier(JwtAuthProperties jwtAuthProperties, AccessTokenDenylist denylist,
+	    SubjectRevocationEpochs epochs) {
+	this(jwtAuthProperties, denylist, epochs, null);
+    }
+
+    /**
+     * Constructs a verifier for a further issuer of a
+     * {@link JwtVerifierRegistry}, whose denylist and epoch entries are keyed
+     * by that issuer.
+     */
+    JwtTokenVerifier(JwtAuthProperties jwtAuthProperties, AccessTokenDenylist denylist,
+	    SubjectRevocationEpochs epochs, String revocationIssuer) {
 	this.jwtAuthProperties = jwtAuthProperties;
+	this.denylist = denylist;
+	this.epochs = epochs;
+	this.revocationIssuer = revocationIssuer;
 
 	final var secret = jwtAuthProperties.getSecret();
 	if (secret == null || secret.length() < 32) {
 	    throw new IllegalArgumentException("JWT secret must be at least 32 characters long (256 bits) for HS256.");
 	}
-	this.secretKey = Keys.hmacShaKeyFor(secret.getBytes());
+	SecretKey secretKey = Keys.hmacShaKeyFor(secret.getBytes());
+	this.parser = Jwts.parserBuilder().setSigningKey(secretKey).build();
+	this.issuerParser = jwtAuthProperties.getIssuer() != null
+		? Jwts.parserBuilder().requireIssuer(jwtAuthProperties.getIssuer()).setSigningKey(secretKey).build()
+		: parser;
     }
 
     /**
@@ -69,23 +141,17 @@ public class JwtTokenVerifier {
      *
      * @param token the JWT token (optionally prefixed with "Bearer ")
      * @return a {@link JwtAuthentication} object representing the parsed token
-     * @throws JwtException if the token is invalid or cannot be parsed
+     * @throws JwtException if the token is invalid, revoked or cannot be parsed
      */
     public JwtAuthentication parseToken(String token) {
-	Claims claims = Jwts.parserBuilder().setSigningKey(secretKey).build().parseClaimsJws(stripBearerPrefix(token))
-		.getBody();
+	Claims claims = parser.parseClaimsJws(stripBearerPrefix(token)).getBody();
+	checkNotRevoked(claims);
 
-	String subject = claims.getSubject();
-	List<String> roles = claims.get("roles", List.class);
-	Instant issuedAt = claims.getIssuedAt().toInstant();
-	Instant expiration = claims.getExpiration().toInstant();
-
-	return new JwtAuthentication(subject, roles, issuedAt, expiration);
+	return JwtAuthentication.from(claims);
     }
 
     public Claims parse(String token) {
-	return Jwts.parserBuilder().requireIssuer(jwtAuthProperties.getIssuer()).setSigningKey(secretKey).build()
-		.parseClaimsJws(stripBearerPrefix(token)).getBody();
+	return issuerParser.parseClaimsJws(stripBearerPrefix(token)).getBody();
     }
 
     /**
@@ -94,6 +160,7 @@ public class JwtTokenVerifier {
      * <li>its signature</li>
      * <li>its expiration timestamp</li>
      * <li>its issuer claim matches the configured issuer</li>
+     * <li>it has not been revoked</li>
      * </ul>
      *
      * @param token the JWT token string (with or without "Bearer" prefix)
@@ -101,27 +168,39 @@ public class JwtTokenVerifier {
      *         otherwise
      */
     public boolean isValid(String token) {
+	return verify(token) != null;
+    }
+
+    /**
+     * Validates the given JWT token like {@link #isValid(String)} and returns
+     * its claims, so that callers needing both parse the token only once.
+     *
+     * @param token the JWT token string (with or without "Bearer" prefix)
+     * @return the verified claims, or {@code null} if the token is invalid,
+     *         revoked or expired
+     */
+    @Override
+    public Claims verify(String token) {
 	if (token == null)
-	    return false;
+	    return null;
 
 	try {
-	    Jws<Claims> claims = Jwts.parserBuilder().setSigningKey(secretKey).build()
-		    .parseClaimsJws(cleanToken(token));
+	    Jws<Claims> claims = parser.parseClaimsJws(cleanToken(token));
 
 	    String issuer = claims.getBody().getIssuer();
 
 	    if (!jwtAuthProperties.getIssuer().equals(issuer)) {
 		throw new JwtException("Invalid token issuer");
 	    }
+	    checkNotRevoked(claims.getBody());
 
 	    Date expiration = claims.getBody().getExpiration();
 	    final var valid = expiration == null || expiration.after(new Date());
 
 	    if (valid) {
 		log.debug("✅ Token valid for subject: {}", claims.getBody().getSubject());
+		return claims.getBody();
 	    }
-
-	    return valid;
 	} catch (ExpiredJwtException e) {
 	    log.warn("❌ Token expired: subject={}, expiredAt={}", e.getClaims().getSubject(),
 		    e.getClaims().getExpiration());
@@ -129,7 +208,7 @@ public class JwtTokenVerifier {
 	    log.warn("❌ Invalid token: {}", e.getMessage());
 	}
 
-	return false;
+	return null;
     }
 
     public boolean isAccessToken(String token) {
@@ -148,6 +227,31 @@ public class JwtTokenVerifier {
 	}
     }
 
+    /**
+     * Rejects tokens whose {@code jti} is on the denylist or that were issued
+     * before their subject's revocation epoch.
+     *
+     * @param claims the verified claims
+     * @throws JwtException if the token has been revoked
+     */
+    private void checkNotRevoked(Claims claims) {
+	if (denylist != null && denylist.isRevoked(revocationIssuer, claims.getId()))
+	    throw new JwtException("Token has been revoked");
+	if (epochs != null && isRevokedByEpoch(claims))
+	    throw new JwtException("Token issued before the subject's sessions were revoked");
+    }
+
+    /**
+     * Compares the millisecond issue time if the token carries one, so tokens
+     * issued right after the cutoff are not rejected for its whole second.
+     */
+    private boolean isRevokedByEpoch(Claims claims) {
+	Object issuedAtMillis = claims.get(JwtTokenGenerator.ISSUED_AT_MILLIS_CLAIM);
+	if (issuedAtMillis instanceof Number millis)
+	    return epochs.isRevoked(revocationIssuer, claims.getSubject(), millis.longValue());
+	return epochs.isRevoked(revocationIssuer, claims.getSubject(), claims.getIssuedAt());
+    }
+
     /**
      * Removes "Bearer" prefix from the token if present.
      *
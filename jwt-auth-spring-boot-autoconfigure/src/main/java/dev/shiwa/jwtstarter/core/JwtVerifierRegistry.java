@@ -0,0 +1,359 @@
+package dev.shiwa.jwtstarter.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties;
+import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties.IssuerProfile;
+import dev.shiwa.jwtstarter.core.revocation.AccessTokenDenylist;
+import dev.shiwa.jwtstarter.core.revocation.SubjectRevocationEpochs;
+import io.jsonwebtoken.Claims;
+
+/**
+ * Verifies tokens of several issuers, each with its own keys.
+ *
+ * <p>
+ * A {@link JwtTokenVerifier} is created at construction for every key of every
+ * {@link IssuerProfile}. To verify a token, its {@code kid} header and
+ * {@code iss} claim are read from the unverified header and payload with a
+ * small scanner, without a full parse, and the token is handed to exactly one
+ * verifier, found with two hash lookups. That verifier checks the signature
+ * and the issuer, so a forged {@code iss} or {@code kid} only selects a
+ * verifier that rejects the token. Tokens of unknown issuers or key ids are
+ * rejected without any signature check.
+ *
+ * <p>
+ * With a primary verifier, tokens of the application's own issuer are handed
+ * to it unless that issuer is configured as a profile. Denylist and epoch
+ * entries of all other issuers are keyed by issuer, so a token id or subject
+ * revoked for one issuer does not affect another.
+ *
+ * <p>
+ * Verified and rejected tokens are counted per issuer.
+ */
+public class JwtVerifierRegistry implements AccessTokenVerifier {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtVerifierRegistry.class);
+
+    private final Map<String, Tenant> tenants;
+    private final LongAdder unknown = new LongAdder();
+
+    /**
+     * Creates a registry.
+     *
+     * @param profiles the accepted issuers
+     * @throws IllegalArgumentException if an issuer is missing or configured
+     *                                  twice, or a key is shorter than 32
+     *                                  characters
+     */
+    public JwtVerifierRegistry(List<IssuerProfile> profiles) {
+	this(profiles, null, null);
+    }
+
+    /**
+     * Creates a registry whose verifiers also check the denylist and the
+     * revocation epochs.
+     *
+     * @param profiles the accepted issuers
+     * @param denylist the denylist of revoked access tokens, or {@code null}
+     * @param epochs   the per-subject revocation epochs, or {@code null}
+     * @throws IllegalArgumentException if an issuer is missing or configured
+     *                                  twice, or a key is shorter than 32
+     *                                  characters
+     */
+    public JwtVerifierRegistry(List<IssuerProfile> profiles, AccessTokenDenylist denylist,
+	    SubjectRevocationEpochs epochs) {
+	this(profiles, null, null, denylist, epochs);
+    }
+
+    /**
+     * Creates a registry that also accepts the application's own tokens.
+     *
+     * @param profiles      the further accepted issuers
+     * @param primaryIssuer the application's own issuer, or {@code null}
+     * @param primary       the verifier of the application's own tokens, or
+     *                      {@code null}
+     * @param denylist      the denylist of revoked access tokens, or
+     *                      {@code null}
+     * @param epochs        the per-subject revocation epochs, or {@code null}
+     * @throws IllegalArgumentException if an issuer is missing or configured
+     *                                  twice, or a key is shorter than 32
+     *                                  characters
+     */
+    public JwtVerifierRegistry(List<IssuerProfile> profiles, String primaryIssuer, JwtTokenVerifier primary,
+	    AccessTokenDenylist denylist, SubjectRevocationEpochs epochs) {
+	Map<String, Tenant> byIssuer = new HashMap<>();
+	for (IssuerProfile profile : profiles) {
+	    String issuer = profile.getIssuer();
+	    if (issuer == null || issuer.isBlank())
+		throw new IllegalArgumentException("Issuer profile without issuer");
+	    if (byIssuer.containsKey(issuer))
+		throw new IllegalArgumentException("Issuer configured twice: " + issuer);
+
+	    String scope = issuer.equals(primaryIssuer) ? null : issuer;
+	    JwtTokenVerifier defaultVerifier = profile.getSecret() != null
+		    ? new JwtTokenVerifier(properties(issuer, profile.getSecret()), denylist, epochs, scope)
+		    : null;
+	    Map<String, JwtTokenVerifier> byKid = new HashMap<>();
+	    profile.getKeys().forEach((kid, secret) -> byKid.put(kid,
+		    new JwtTokenVerifier(properties(issuer, secret), denylist, epochs, scope)));
+	    byIssuer.put(issuer, new Tenant(defaultVerifier, Map.copyOf(byKid)));
+	}
+	if (primaryIssuer != null && primary != null)
+	    byIssuer.putIfAbsent(primaryIssuer, new Tenant(primary, Map.of()));
+	this.tenants = Map.copyOf(byIssuer);
+    }
+
+    private static JwtAuthProperties properties(String issuer, String secret) {
+	JwtAuthProperties properties = new JwtAuthProperties();
+	properties.setIssuer(issuer);
+	properties.setSecret(secret);
+	return properties;
+    }
+
+    /**
+     * Verifies a token with the verifier of its issuer and key id.
+     *
+     * @param token the JWT token string (with or without "Bearer" prefix)
+     * @return the verified claims, or {@code null} if the token is invalid,
+     *         revoked, expired or of an unknown issuer or key
+     */
+    @Override
+    public Claims verify(String token) {
+	if (token == null)
+	    return null;
+	String jwt = token.startsWith("Bearer ") ? token.substring(7).trim() : token.trim();
+
+	int headerEnd = jwt.indexOf('.');
+	int payloadEnd = headerEnd < 0 ? -1 : jwt.indexOf('.', headerEnd + 1);
+	String issuer = payloadEnd < 0 ? null : stringField(decode(jwt, headerEnd + 1, payloadEnd), "iss");
+	Tenant tenant = issuer != null ? tenants.get(issuer) : null;
+	if (tenant == null) {
+	    unknown.increment();
+	    log.debug("❌ Token of unknown issuer: {}", escape(issuer));
+	    return null;
+	}
+
+	String kid = stringField(decode(jwt, 0, headerEnd), "kid");
+	JwtTokenVerifier verifier = kid != null ? tenant.byKid.get(kid) : tenant.defaultVerifier;
+	Claims claims = verifier != null ? verifier.verify(jwt) : null;
+	if (claims == null) {
+	    if (verifier == null)
+		log.debug("❌ Token of issuer {} with unknown key id: {}", issuer, escape(kid));
+	    tenant.rejected.increment();
+	    return null;
+	}
+	tenant.verified.increment();
+	return claims;
+    }
+
+    /**
+     * Checks a token like {@link #verify(String)}.
+     *
+     * @param token the JWT token string (with or without "Bearer" prefix)
+     * @return {@code true} if the token is valid
+     */
+    public boolean isValid(String token) {
+	return verify(token) != null;
+    }
+
+    /**
+     * Returns the number of tokens of the given issuer that were verified.
+     *
+     * @param issuer the issuer
+     * @return the number of verified tokens, {@code 0} for unknown issuers
+     */
+    public long getVerifiedCount(String issuer) {
+	Tenant tenant = tenants.get(issuer);
+	return tenant != null ? tenant.verified.sum() : 0;
+    }
+
+    /**
+     * Returns the number of tokens of the given issuer that were rejected,
+     * including tokens with an unknown key id.
+     *
+     * @param issuer the issuer
+     * @return the number of rejected tokens, {@code 0} for unknown issuers
+     */
+    public long getRejectedCount(String issuer) {
+	Tenant tenant = tenants.get(issuer);
+	return tenant != null ? tenant.rejected.sum() : 0;
+    }
+
+    /**
+     * Returns the number of tokens rejected because their issuer is unknown
+     * or could not be read.
+     *
+     * @return the number of tokens of unknown issuers
+     */
+    public long getUnknownIssuerCount() {
+	return unknown.sum();
+    }
+
+    /**
+     * Escapes control characters of an unverified header or claim value, so it
+     * cannot forge log lines.
+     */
+    private static String escape(String value) {
+	if (value == null)
+	    return null;
+	StringBuilder sb = new StringBuilder(value.length());
+	for (int i = 0; i < value.length(); i++) {
+	    char c = value.charAt(i);
+	    if (Character.isISOControl(c))
+		sb.append(String.format("\\u%04x", (int) c));
+	    else
+		sb.append(c);
+	}
+	return sb.toString();
+    }
+
+    /**
+     * Decodes a Base64URL section of a token, or returns {@code null} if it is
+     * malformed.
+     */
+    private static String decode(String jwt, int from, int to) {
+	if (to <= from)
+	    return null;
+	try {
+	    byte[] bytes = Base64.getUrlDecoder().decode(jwt.substring(from, to));
+	    return new String(bytes, StandardCharsets.UTF_8);
+	} catch (IllegalArgumentException e) {
+	    return null;
+	}
+    }
+
+    /**
+     * Reads a top-level string member of a JSON object. Returns {@code null} if
+     * the member is missing, not a string, or the JSON is malformed.
+     */
+    static String stringField(String json, String name) {
+	if (json == null)
+	    return null;
+	int[] pos = { skipWhitespace(json, 0) };
+	if (pos[0] >= json.length() || json.charAt(pos[0]) != '{')
+	    return null;
+	pos[0]++;
+	while (true) {
+	    pos[0] = skipWhitespace(json, pos[0]);
+	    if (pos[0] >= json.length() || json.charAt(pos[0]) != '"')
+		return null;
+	    String key = readString(json, pos);
+	    pos[0] = skipWhitespace(json, pos[0]);
+	    if (key == null || pos[0] >= json.length() || json.charAt(pos[0]) != ':')
+		return null;
+	    pos[0] = skipWhitespace(json, pos[0] + 1);
+	    if (pos[0] >= json.length())
+		return null;
+
+	    if (json.charAt(pos[0]) == '"') {
+		String value = readString(json, pos);
+		if (value == null || key.equals(name))
+		    return value;
+	    } else if (key.equals(name) || !skipValue(json, pos)) {
+		return null;
+	    }
+
+	    pos[0] = skipWhitespace(json, pos[0]);
+	    if (pos[0] >= json.length() || json.charAt(pos[0]) != ',')
+		return null;
+	    pos[0]++;
+	}
+    }
+
+    private static int skipWhitespace(String json, int i) {
+	while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+	    i++;
+	}
+	return i;
+    }
+
+    /** Reads the string starting at the quote at {@code pos[0]}. */
+    private static String readString(String json, int[] pos) {
+	StringBuilder sb = null;
+	int start = pos[0] + 1;
+	for (int i = start; i < json.length(); i++) {
+	    char c = json.charAt(i);
+	    if (c == '"') {
+		pos[0] = i + 1;
+		return sb == null ? json.substring(start, i) : sb.toString();
+	    }
+	    if (c != '\\') {
+		if (sb != null)
+		    sb.append(c);
+		continue;
+	    }
+	    if (sb == null)
+		sb = new StringBuilder(json.substring(start, i));
+	    if (++i >= json.length())
+		return null;
+	    char e = json.charAt(i);
+	    switch (e) {
+	    case 'b' -> sb.append('\b');
+	    case 'f' -> sb.append('\f');
+	    case 'n' -> sb.append('\n');
+	    case 'r' -> sb.append('\r');
+	    case 't' -> sb.append('\t');
+	    case 'u' -> {
+		if (i + 4 >= json.length())
+		    return null;
+		try {
+		    sb.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+		} catch (NumberFormatException ex) {
+		    return null;
+		}
+		i += 4;
+	    }
+	    default -> sb.append(e);
+	    }
+	}
+	return null;
+    }
+
+    /** Skips a non-string value: a number, literal, object or array. */
+    private static boolean skipValue(String json, int[] pos) {
+	int depth = 0;
+	int i = pos[0];
+	while (i < json.length()) {
+	    char c = json.charAt(i);
+	    if (c == '"') {
+		pos[0] = i;
+		if (readString(json, pos) == null)
+		    return false;
+		i = pos[0];
+		continue;
+	    }
+	    if (c == '{' || c == '[') {
+		depth++;
+	    } else if (c == '}' || c == ']') {
+		if (depth == 0)
+		    break;
+		depth--;
+	    } else if (c == ',' && depth == 0) {
+		break;
+	    }
+	    i++;
+	}
+	pos[0] = i;
+	return depth == 0;
+    }
+
+    private static final class Tenant {
+	private final JwtTokenVerifier defaultVerifier;
+	private final Map<String, JwtTokenVerifier> byKid;
+	private final LongAdder verified = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	Tenant(JwtTokenVerifier defaultVerifier, Map<String, JwtTokenVerifier> byKid) {
+	    this.defaultVerifier = defaultVerifier;
+	    this.byKid = byKid;
+	}
+    }
+}
@@ -0,0 +1,21 @@
+package dev.shiwa.jwtstarter.core.error;
+
+/**
+ * Thrown when a refresh is rejected by admission control; the client should
+ * retry after {@link #getRetryAfterMillis()}.
+ */
+public class RefreshThrottledException extends JwtAuthException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMillis;
+
+    public RefreshThrottledException(String message, long retryAfterMillis) {
+	super(JwtErrorCode.REFRESH_THROTTLED, message);
+	this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+	return retryAfterMillis;
+    }
+}
@@ -0,0 +1,134 @@
+package dev.shiwa.jwtstarter.core.expiry;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Time-bucketed index of keys ordered by their expiration time.
+ *
+ * <p>
+ * Keys are grouped into buckets of a fixed width ({@code bucketMillis}). A
+ * bucket is only visited once every key in it has expired, so draining the
+ * index costs {@code O(expired)} instead of a scan over the whole key space.
+ *
+ * <p>
+ * The index is append-only from the caller's point of view: keys that are
+ * removed from the owning map early (e.g. revoked tokens) simply stay in their
+ * bucket until it expires and are then handed to the {@link ExpiryHandler},
+ * which is expected to ignore keys it no longer knows.
+ *
+ * <p>
+ * All operations are thread-safe and lock-free.
+ *
+ * @param <K> the key type
+ */
+public class ExpiryIndex<K> {
+
+    private final long bucketMillis;
+    private final ConcurrentSkipListMap<Long, Queue<Node<K>>> buckets = new ConcurrentSkipListMap<>();
+
+    /**
+     * Creates a new index.
+     *
+     * @param bucketMillis the width of a bucket in milliseconds; usually the
+     *                     sweep interval
+     * @throws IllegalArgumentException if {@code bucketMillis} is not positive
+     */
+    public ExpiryIndex(long bucketMillis) {
+	if (bucketMillis <= 0)
+	    throw new IllegalArgumentException("bucketMillis must be > 0");
+	this.bucketMillis = bucketMillis;
+    }
+
+    /**
+     * Registers a key with its expiration time.
+     *
+     * @param key             the key
+     * @param expiresAtMillis the expiration timestamp (epoch millis)
+     */
+    public void add(K key, long expiresAtMillis) {
+	long bucket = Math.floorDiv(expiresAtMillis, bucketMillis) + 1;
+	buckets.computeIfAbsent(bucket, b -> new ConcurrentLinkedQueue<>()).add(new Node<>(key, expiresAtMillis));
+    }
+
+    /**
+     * Hands up to {@code maxEntries} expired keys to the given handler.
+     *
+     * <p>
+     * Only buckets whose upper bound lies at or before {@code nowMillis} are
+     * visited; keys in the current bucket are picked up on a later call.
+     *
+     * @param nowMillis  the current time (epoch millis)
+     * @param maxEntries the maximum number of keys to process
+     * @param handler    callback deciding whether a key was actually evicted
+     * @return the number of keys for which the handler returned {@code true}
+     */
+    public int pollExpired(long nowMillis, int maxEntries, ExpiryHandler<K> handler) {
+	long lastExpiredBucket = Math.floorDiv(nowMillis, bucketMillis);
+	int processed = 0;
+	int evicted = 0;
+
+	while (processed < maxEntries) {
+	    Map.Entry<Long, Queue<Node<K>>> head = buckets.firstEntry();
+	    if (head == null || head.getKey() > lastExpiredBucket)
+		break;
+
+	    Queue<Node<K>> queue = head.getValue();
+	    Node<K> node;
+	    while (processed < maxEntries && (node = queue.poll()) != null) {
+		processed++;
+		if (handler.onExpired(node.key, node.expiresAtMillis))
+		    evicted++;
+	    }
+
+	    if (queue.isEmpty()) {
+		buckets.remove(head.getKey(), queue);
+		// a late add() may have raced with the removal; keep draining the detached queue
+		while (processed < maxEntries && (node = queue.poll()) != null) {
+		    processed++;
+		    if (handler.onExpired(node.key, node.expiresAtMillis))
+			evicted++;
+		}
+		if (!queue.isEmpty())
+		    buckets.merge(head.getKey(), queue, (a, b) -> {
+			a.addAll(b);
+			return a;
+		    });
+	    }
+	}
+	return evicted;
+    }
+
+    /**
+     * Returns {@code true} if the index holds no keys.
+     *
+     * @return whether the index is empty
+     */
+    public boolean isEmpty() {
+	return buckets.isEmpty();
+    }
+
+    /**
+     * Callback invoked for every expired key drained from the index.
+     *
+     * @param <K> the key type
+     */
+    @FunctionalInterface
+    public interface ExpiryHandler<K> {
+
+	/**
+	 * Handles an expired key.
+	 *
+	 * @param key             the key
+	 * @param expiresAtMillis the expiration time the key was registered with
+	 * @return {@code true} if the key was evicted, {@code false} if it was
+	 *         already gone or has been renewed in the meantime
+	 */
+	boolean onExpired(K key, long expiresAtMillis);
+    }
+
+    private record Node<K>(K key, long expiresAtMillis) {
+    }
+}
@@ -0,0 +1,59 @@
+package dev.shiwa.jwtstarter.core.expiry;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a sweep task periodically on a single daemon thread.
+ *
+ * <p>
+ * Exceptions thrown by the task are logged and do not cancel subsequent runs.
+ * The sweeper is stopped via {@link #close()}.
+ */
+public class ExpirySweeper implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpirySweeper.class);
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Starts a new sweeper.
+     *
+     * @param name     the thread name
+     * @param interval the delay between two runs
+     * @param task     the sweep task
+     * @throws IllegalArgumentException if {@code interval} is not positive
+     */
+    public ExpirySweeper(String name, Duration interval, Runnable task) {
+	if (interval.isZero() || interval.isNegative())
+	    throw new IllegalArgumentException("Sweep interval must be > 0");
+
+	this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+	    Thread t = new Thread(r, name);
+	    t.setDaemon(true);
+	    return t;
+	});
+
+	long millis = interval.toMillis();
+	executor.scheduleWithFixedDelay(() -> {
+	    try {
+		task.run();
+	    } catch (RuntimeException e) {
+		log.warn("⚠️ Sweep '{}' failed: {}", name, e.getMessage(), e);
+	    }
+	}, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the sweeper thread. Runs already in progress are allowed to finish.
+     */
+    @Override
+    public void close() {
+	executor.shutdown();
+    }
+}
@@ -0,0 +1,175 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Non-blocking variant of {@link RefreshTokenStore}.
+ * <p>
+ * Each operation returns a {@link CompletableFuture} that completes once the
+ * operation has been applied, so independent operations can be issued
+ * concurrently instead of paying one round-trip each. Implementations backed
+ * by a remote system should implement this interface natively; synchronous
+ * stores can be adapted via {@link #of(RefreshTokenStore, Executor)}, and
+ * {@link BlockingRefreshTokenStore} adapts in the other direction.
+ */
+public interface AsyncRefreshTokenStore {
+
+    /**
+     * Saves a new refresh token identifier (JTI) for a subject.
+     *
+     * @param jti       the unique token identifier (JWT ID)
+     * @param subject   the subject associated with the token
+     * @param expiresAt the expiration timestamp of the refresh token
+     * @return a future completed once the token is stored
+     */
+    CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt);
+
+    /**
+     * Saves a new refresh token that belongs to a token family, see
+     * {@link RefreshTokenStore#save(String, String, Instant, String)}. The
+     * default implementation ignores the family.
+     *
+     * @param jti       the unique token identifier (JWT ID)
+     * @param subject   the subject associated with the token
+     * @param expiresAt the expiration timestamp of the refresh token
+     * @param familyId  the token family id, or {@code null}
+     * @return a future completed once the token is stored
+     */
+    default CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt, String familyId) {
+	return saveAsync(jti, subject, expiresAt);
+    }
+
+    /**
+     * Saves a new refresh token together with roles, see
+     * {@link RefreshTokenStore#save(String, String, Instant, String, List)}.
+     * The default implementation ignores the roles.
+     *
+     * @param jti       the unique token identifier
+     * @param subject   the subject associated with the token
+     * @param expiresAt the expiration timestamp of the refresh token
+     * @param familyId  the token family id, or {@code null}
+     * @param roles     the roles, or {@code null}
+     * @return a future completed once the token is stored
+     */
+    default CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt, String familyId,
+	    List<String> roles) {
+	return saveAsync(jti, subject, expiresAt, familyId);
+    }
+
+    /**
+     * Checks whether the given refresh token identifier (JTI) is still active.
+     *
+     * @param jti the token identifier to check
+     * @return a future completed with {@code true} if the token is active
+     */
+    CompletableFuture<Boolean> isActiveAsync(String jti);
+
+    /**
+     * Resolves the subject associated with a given refresh token identifier.
+     *
+     * @param jti the token identifier
+     * @return a future completed with the subject, or with {@code null} if not
+     *         found
+     */
+    CompletableFuture<String> subjectForAsync(String jti);
+
+    /**
+     * Looks up a refresh token, see {@link RefreshTokenStore#find(String)}. The
+     * default implementation only resolves the subject.
+     *
+     * @param jti the token identifier
+     * @return a future completed with the token, or with {@code null} if it is
+     *         unknown, revoked or expired
+     */
+    default CompletableFuture<StoredRefreshToken> findAsync(String jti) {
+	return subjectForAsync(jti)
+		.thenApply(subject -> subject != null ? new StoredRefreshToken(jti, subject, null, null) : null);
+    }
+
+    /**
+     * Revokes a specific refresh token.
+     *
+     * @param jti the token identifier to revoke
+     * @return a future completed once the token is revoked
+     */
+    CompletableFuture<Void> revokeAsync(String jti);
+
+    /**
+     * Revokes all refresh tokens belonging to a given subject.
+     *
+     * @param subject the subject whose refresh tokens should be revoked
+     * @return a future completed once the tokens are revoked
+     */
+    CompletableFuture<Void> revokeAllForSubjectAsync(String subject);
+
+    /**
+     * Revokes the current refresh token of a token family, see
+     * {@link RefreshTokenStore#revokeFamily(String, String)}. The default
+     * implementation revokes all refresh tokens of the subject.
+     *
+     * @param familyId the token family id
+     * @param subject  the subject owning the family
+     * @return a future completed once the family is revoked
+     */
+    default CompletableFuture<Void> revokeFamilyAsync(String familyId, String subject) {
+	return revokeAllForSubjectAsync(subject);
+    }
+
+    /**
+     * Atomically consumes an active refresh token and saves its successor, see
+     * {@link RefreshTokenStore#rotate(String, String, String, Instant)}.
+     * <p>
+     * The default implementation is not atomic: it checks the old token and then
+     * revokes it and saves the new one concurrently, reporting every inactive
+     * token as {@link RotationOutcome#REUSED}.
+     *
+     * @param oldJti    the identifier of the presented refresh token
+     * @param newJti    the identifier of the replacement token
+     * @param subject   the subject of both tokens
+     * @param expiresAt the expiration timestamp of the replacement token
+     * @return a future completed with the outcome
+     */
+    default CompletableFuture<RotationOutcome> rotateAsync(String oldJti, String newJti, String subject,
+	    Instant expiresAt) {
+	return rotateAsync(oldJti, newJti, subject, expiresAt, null);
+    }
+
+    /**
+     * Like {@link #rotateAsync(String, String, String, Instant)}, but makes the
+     * new token the current token of the given family.
+     *
+     * @param oldJti    the identifier of the presented refresh token
+     * @param newJti    the identifier of the replacement token
+     * @param subject   the subject of both tokens
+     * @param expiresAt the expiration timestamp of the replacement token
+     * @param familyId  the token family id, or {@code null}
+     * @return a future completed with the outcome
+     */
+    default CompletableFuture<RotationOutcome> rotateAsync(String oldJti, String newJti, String subject,
+	    Instant expiresAt, String familyId) {
+	return isActiveAsync(oldJti).thenCompose(active -> {
+	    if (!active)
+		return CompletableFuture.completedFuture(RotationOutcome.REUSED);
+	    return CompletableFuture.allOf(revokeAsync(oldJti), saveAsync(newJti, subject, expiresAt, familyId))
+		    .thenApply(v -> RotationOutcome.ROTATED);
+	});
+    }
+
+    /**
+     * Returns an asynchronous view of a store. If the store implements this
+     * interface itself, it is returned as is; otherwise its operations are run
+     * on the given executor.
+     *
+     * @param store    the store
+     * @param executor the executor running blocking operations
+     * @return an asynchronous store
+     */
+    static AsyncRefreshTokenStore of(RefreshTokenStore store, Executor executor) {
+	if (store instanceof AsyncRefreshTokenStore async)
+	    return async;
+	return new ExecutorAsyncRefreshTokenStore(store, executor);
+    }
+}
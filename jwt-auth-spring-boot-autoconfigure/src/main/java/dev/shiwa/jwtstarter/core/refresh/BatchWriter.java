@@ -0,0 +1,198 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Single-threaded writer that coalesces writes from concurrent callers into
+ * batches (group commit).
+ *
+ * <p>
+ * Callers submit items and block until the batch containing their item has
+ * been flushed. While one batch is being flushed, new items queue up and form
+ * the next batch, so the cost of a flush (e.g. an {@code fsync} or a database
+ * round-trip) is shared by all writers that arrived in the meantime. An
+ * optional linger time waits for more items before flushing. A flush either
+ * fails as a whole or rejects single items, which fails only their callers.
+ *
+ * @param <T> the item type
+ */
+final class BatchWriter<T> implements AutoCloseable {
+
+    private final BlockingQueue<Pending<T>> queue = new LinkedBlockingQueue<>();
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final Flusher<T> flusher;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Starts a new writer thread.
+     *
+     * @param name         the thread name
+     * @param maxBatchSize the maximum number of items per flush
+     * @param linger       how long to wait for more items before flushing; zero
+     *                     flushes as soon as the previous flush has completed
+     * @param flusher      writes a batch; called from the writer thread only
+     */
+    BatchWriter(String name, int maxBatchSize, Duration linger, Flusher<T> flusher) {
+	if (maxBatchSize <= 0)
+	    throw new IllegalArgumentException("maxBatchSize must be > 0");
+	this.maxBatchSize = maxBatchSize;
+	this.lingerNanos = linger.toNanos();
+	this.flusher = flusher;
+	this.thread = new Thread(this::run, name);
+	this.thread.setDaemon(true);
+	this.thread.start();
+    }
+
+    /**
+     * Submits an item without waiting for it to be flushed.
+     *
+     * @param item the item
+     * @return a future completed once the item's batch has been flushed
+     * @throws IllegalStateException if the writer has been closed
+     */
+    CompletableFuture<Void> submit(T item) {
+	if (!running)
+	    throw new IllegalStateException("Writer '" + thread.getName() + "' is closed");
+	Pending<T> pending = new Pending<>(item, new CompletableFuture<>());
+	queue.add(pending);
+	// the writer may have drained the queue and exited after the check above
+	if (!running && queue.remove(pending))
+	    throw new IllegalStateException("Writer '" + thread.getName() + "' is closed");
+	return pending.future;
+    }
+
+    /**
+     * Submits an item and waits until it has been flushed.
+     *
+     * @param item the item
+     * @throws RuntimeException if the flush failed
+     */
+    void write(T item) {
+	await(submit(item));
+    }
+
+    /**
+     * Submits several items and waits until all of them have been flushed.
+     *
+     * @param items the items
+     * @throws RuntimeException if a flush failed
+     */
+    void writeAll(List<T> items) {
+	List<CompletableFuture<Void>> futures = new ArrayList<>(items.size());
+	for (T item : items) {
+	    futures.add(submit(item));
+	}
+	await(CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)));
+    }
+
+    /**
+     * Stops accepting items, flushes everything queued so far and stops the
+     * writer thread.
+     */
+    @Override
+    public void close() {
+	running = false;
+	try {
+	    thread.join();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+
+    private void run() {
+	List<Pending<T>> batch = new ArrayList<>(maxBatchSize);
+	List<T> items = new ArrayList<>(maxBatchSize);
+
+	while (running || !queue.isEmpty()) {
+	    try {
+		Pending<T> first = queue.poll(100, TimeUnit.MILLISECONDS);
+		if (first == null)
+		    continue;
+		batch.add(first);
+
+		if (lingerNanos > 0) {
+		    long deadline = System.nanoTime() + lingerNanos;
+		    Pending<T> next;
+		    while (batch.size() < maxBatchSize && (next = queue.poll(deadline - System.nanoTime(),
+			    TimeUnit.NANOSECONDS)) != null) {
+			batch.add(next);
+		    }
+		}
+		queue.drainTo(batch, maxBatchSize - batch.size());
+	    } catch (InterruptedException e) {
+		// keep draining until closed
+	    }
+
+	    if (batch.isEmpty())
+		continue;
+
+	    for (Pending<T> p : batch) {
+		items.add(p.item);
+	    }
+	    Exception[] rejected = new Exception[batch.size()];
+	    try {
+		flusher.flush(items, (cause, index) -> rejected[index] = cause);
+		for (int i = 0; i < batch.size(); i++) {
+		    if (rejected[i] != null)
+			batch.get(i).future.completeExceptionally(rejected[i]);
+		    else
+			batch.get(i).future.complete(null);
+		}
+	    } catch (Exception e) {
+		batch.forEach(p -> p.future.completeExceptionally(e));
+	    }
+	    batch.clear();
+	    items.clear();
+	}
+
+	// items that raced with close()
+	IllegalStateException closed = new IllegalStateException("Writer '" + thread.getName() + "' is closed");
+	Pending<T> late;
+	while ((late = queue.poll()) != null) {
+	    late.future.completeExceptionally(closed);
+	}
+    }
+
+    private static void await(CompletableFuture<Void> future) {
+	try {
+	    future.join();
+	} catch (CompletionException e) {
+	    if (e.getCause() instanceof RuntimeException re)
+		throw re;
+	    throw e;
+	}
+    }
+
+    /**
+     * Writes a batch of items.
+     *
+     * @param <T> the item type
+     */
+    @FunctionalInterface
+    interface Flusher<T> {
+
+	/**
+	 * Writes the given items. Throwing fails every item of the batch, while
+	 * {@code rejected} fails a single item and lets the others succeed.
+	 *
+	 * @param items    the items, in submission order
+	 * @param rejected receives the cause and the index of an item that could
+	 *                 not be written
+	 * @throws Exception if the batch could not be written
+	 */
+	void flush(List<T> items, ObjIntConsumer<Exception> rejected) throws Exception;
+    }
+
+    private record Pending<T>(T item, CompletableFuture<Void> future) {
+    }
+}
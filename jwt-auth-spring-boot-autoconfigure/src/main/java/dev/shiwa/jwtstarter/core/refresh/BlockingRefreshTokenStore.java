@@ -0,0 +1,87 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Adapts an {@link AsyncRefreshTokenStore} to the synchronous
+ * {@link RefreshTokenStore} contract by waiting for each operation.
+ * <p>
+ * Runtime exceptions that fail an operation are rethrown unwrapped.
+ */
+public final class BlockingRefreshTokenStore implements RefreshTokenStore {
+
+    private final AsyncRefreshTokenStore store;
+
+    /**
+     * Creates a new adapter.
+     *
+     * @param store the asynchronous store
+     */
+    public BlockingRefreshTokenStore(AsyncRefreshTokenStore store) {
+	this.store = store;
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt) {
+	await(store.saveAsync(jti, subject, expiresAt));
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt, String familyId) {
+	await(store.saveAsync(jti, subject, expiresAt, familyId));
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt, String familyId, List<String> roles) {
+	await(store.saveAsync(jti, subject, expiresAt, familyId, roles));
+    }
+
+    @Override
+    public boolean isActive(String jti) {
+	return Boolean.TRUE.equals(await(store.isActiveAsync(jti)));
+    }
+
+    @Override
+    public String subjectFor(String jti) {
+	return await(store.subjectForAsync(jti));
+    }
+
+    @Override
+    public StoredRefreshToken find(String jti) {
+	return await(store.findAsync(jti));
+    }
+
+    @Override
+    public void revoke(String jti) {
+	await(store.revokeAsync(jti));
+    }
+
+    @Override
+    public void revokeAllForSubject(String subject) {
+	await(store.revokeAllForSubjectAsync(subject));
+    }
+
+    @Override
+    public void revokeFamily(String familyId, String subject) {
+	await(store.revokeFamilyAsync(familyId, subject));
+    }
+
+    @Override
+    public RotationOutcome rotate(String oldJti, String newJti, String subject, Instant expiresAt,
+	    String familyId) {
+	return await(store.rotateAsync(oldJti, newJti, subject, expiresAt, familyId));
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+	try {
+	    return future.join();
+	} catch (CompletionException e) {
+	    if (e.getCause() instanceof RuntimeException re)
+		throw re;
+	    throw e;
+	}
+    }
+}
@@ -0,0 +1,511 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Near-cache decorator for a remote {@link RefreshTokenStore} (e.g. JDBC),
+ * answering repeated {@link #find(String)}, {@link #isActive(String)} and
+ * {@link #subjectFor(String)} calls from a bounded local map.
+ *
+ * <p>
+ * On the refresh path, the lookup of an opaque refresh token is answered from
+ * the tokens saved or rotated through this instance, so the delegate only
+ * sees the {@link #rotate} itself. Rotations are always passed to the
+ * delegate, which stays authoritative: a token revoked elsewhere but still
+ * cached is rejected there.
+ *
+ * <p>
+ * Every cached result, positive or negative, is trusted for at most
+ * {@code ttl} (the safety window) and never beyond the token's expiry, so a
+ * revocation performed elsewhere becomes visible within the window. Local
+ * revocations take effect immediately: they mark the token inactive, or drop
+ * every entry that might belong to the revoked subject or family. A cached
+ * "inactive" is never replaced by a concurrently loaded "active".
+ * {@link #invalidate(String)}, {@link #invalidateSubject(String)},
+ * {@link #invalidateFamily(String)} and {@link #invalidateAll()} let other
+ * sources of revocations (e.g. a revocation event bus) invalidate entries.
+ *
+ * <p>
+ * When the cache exceeds {@code maxEntries}, expired entries and then
+ * arbitrary ones are dropped until it is an eighth below the limit. Writes are
+ * always passed to the delegate; the asynchronous operations use the
+ * delegate's {@link AsyncRefreshTokenStore} view.
+ */
+public class CachingRefreshTokenStore implements RefreshTokenStore, AsyncRefreshTokenStore, AutoCloseable {
+
+    private final RefreshTokenStore delegate;
+    private final AsyncRefreshTokenStore asyncDelegate;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a new caching decorator.
+     *
+     * @param delegate   the store being cached
+     * @param maxEntries the maximum number of cached tokens
+     * @param ttl        the safety window: how long a cached result is trusted
+     */
+    public CachingRefreshTokenStore(RefreshTokenStore delegate, int maxEntries, Duration ttl) {
+	this.delegate = delegate;
+	this.asyncDelegate = AsyncRefreshTokenStore.of(delegate, Runnable::run);
+	this.maxEntries = Math.max(1, maxEntries);
+	this.ttlMillis = ttl.toMillis();
+    }
+
+    // ---------- synchronous ----------
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt) {
+	save(jti, subject, expiresAt, null);
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt, String familyId) {
+	delegate.save(jti, subject, expiresAt, familyId);
+	remember(new StoredRefreshToken(jti, subject, expiresAt, familyId));
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt, String familyId, List<String> roles) {
+	delegate.save(jti, subject, expiresAt, familyId, roles);
+	remember(new StoredRefreshToken(jti, subject, expiresAt, familyId, roles));
+    }
+
+    /**
+     * Answers tokens saved, rotated or found before from the cache. Tokens
+     * known to be inactive are looked up in the delegate, which may still
+     * return them for reuse detection.
+     */
+    @Override
+    public StoredRefreshToken find(String jti) {
+	StoredRefreshToken cached = cachedToken(jti);
+	if (cached != null)
+	    return cached;
+	StoredRefreshToken token = delegate.find(jti);
+	if (token != null)
+	    remember(jti, null, token.subject(), token.familyId(), expiryOf(token), token);
+	return token;
+    }
+
+    @Override
+    public boolean isActive(String jti) {
+	Boolean cached = cachedActive(jti);
+	if (cached != null)
+	    return cached;
+	boolean active = delegate.isActive(jti);
+	remember(jti, active, null, null, Long.MAX_VALUE);
+	return active;
+    }
+
+    @Override
+    public String subjectFor(String jti) {
+	Entry e = lookup(jti);
+	if (e != null && (e.subject() != null || Boolean.FALSE.equals(e.active()))) {
+	    hits.increment();
+	    return Boolean.FALSE.equals(e.active()) ? null : e.subject();
+	}
+	misses.increment();
+	String subject = delegate.subjectFor(jti);
+	if (subject != null)
+	    remember(jti, null, subject, null, Long.MAX_VALUE);
+	return subject;
+    }
+
+    @Override
+    public void revoke(String jti) {
+	delegate.revoke(jti);
+	remember(jti, Boolean.FALSE, null, null, Long.MAX_VALUE);
+    }
+
+    @Override
+    public void revokeAllForSubject(String subject) {
+	delegate.revokeAllForSubject(subject);
+	invalidateSubject(subject);
+    }
+
+    @Override
+    public void revokeFamily(String familyId, String subject) {
+	delegate.revokeFamily(familyId, subject);
+	invalidateFamily(familyId);
+    }
+
+    @Override
+    public void saveAll(Collection<StoredRefreshToken> tokens) {
+	delegate.saveAll(tokens);
+	for (StoredRefreshToken t : tokens) {
+	    remember(t);
+	}
+    }
+
+    @Override
+    public void revokeAll(Collection<String> jtis) {
+	delegate.revokeAll(jtis);
+	for (String jti : jtis) {
+	    remember(jti, Boolean.FALSE, null, null, Long.MAX_VALUE);
+	}
+    }
+
+    /**
+     * Answers cached tokens locally and checks the others with a single
+     * {@link RefreshTokenStore#isActiveAll} call on the delegate.
+     *
+     * @param jtis the token identifiers to check
+     * @return whether each token is active, keyed by its identifier
+     */
+    @Override
+    public Map<String, Boolean> isActiveAll(Collection<String> jtis) {
+	Map<String, Boolean> result = new HashMap<>(Math.max(16, jtis.size() * 4 / 3 + 1));
+	List<String> missing = new ArrayList<>();
+	for (String jti : jtis) {
+	    Boolean cached = cachedActive(jti);
+	    if (cached != null)
+		result.put(jti, cached);
+	    else
+		missing.add(jti);
+	}
+	if (missing.isEmpty())
+	    return result;
+
+	delegate.isActiveAll(missing).forEach((jti, active) -> {
+	    remember(jti, active, null, null, Long.MAX_VALUE);
+	    result.put(jti, active);
+	});
+	return result;
+    }
+
+    @Override
+    public void forEachToken(Consumer<StoredRefreshToken> action) {
+	delegate.forEachToken(action);
+    }
+
+    @Override
+    public RotationOutcome rotate(String oldJti, String newJti, String subject, Instant expiresAt,
+	    String familyId) {
+	RotationOutcome outcome = delegate.rotate(oldJti, newJti, subject, expiresAt, familyId);
+	rotated(outcome, oldJti, newJti, subject, expiresAt, familyId);
+	return outcome;
+    }
+
+    // ---------- asynchronous ----------
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt) {
+	return saveAsync(jti, subject, expiresAt, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt, String familyId) {
+	return asyncDelegate.saveAsync(jti, subject, expiresAt, familyId)
+		.thenRun(() -> remember(new StoredRefreshToken(jti, subject, expiresAt, familyId)));
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt, String familyId,
+	    List<String> roles) {
+	return asyncDelegate.saveAsync(jti, subject, expiresAt, familyId, roles)
+		.thenRun(() -> remember(new StoredRefreshToken(jti, subject, expiresAt, familyId, roles)));
+    }
+
+    @Override
+    public CompletableFuture<StoredRefreshToken> findAsync(String jti) {
+	StoredRefreshToken cached = cachedToken(jti);
+	if (cached != null)
+	    return CompletableFuture.completedFuture(cached);
+	return asyncDelegate.findAsync(jti).thenApply(token -> {
+	    if (token != null)
+		remember(jti, null, token.subject(), token.familyId(), expiryOf(token), token);
+	    return token;
+	});
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isActiveAsync(String jti) {
+	Boolean cached = cachedActive(jti);
+	if (cached != null)
+	    return CompletableFuture.completedFuture(cached);
+	return asyncDelegate.isActiveAsync(jti).thenApply(active -> {
+	    remember(jti, active, null, null, Long.MAX_VALUE);
+	    return active;
+	});
+    }
+
+    @Override
+    public CompletableFuture<String> subjectForAsync(String jti) {
+	Entry e = lookup(jti);
+	if (e != null && (e.subject() != null || Boolean.FALSE.equals(e.active()))) {
+	    hits.increment();
+	    return CompletableFuture.completedFuture(Boolean.FALSE.equals(e.active()) ? null : e.subject());
+	}
+	misses.increment();
+	return asyncDelegate.subjectForAsync(jti).thenApply(subject -> {
+	    if (subject != null)
+		remember(jti, null, subject, null, Long.MAX_VALUE);
+	    return subject;
+	});
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeAsync(String jti) {
+	return asyncDelegate.revokeAsync(jti).thenRun(() -> remember(jti, Boolean.FALSE, null, null, Long.MAX_VALUE));
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeAllForSubjectAsync(String subject) {
+	return asyncDelegate.revokeAllForSubjectAsync(subject).thenRun(() -> invalidateSubject(subject));
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeFamilyAsync(String familyId, String subject) {
+	return asyncDelegate.revokeFamilyAsync(familyId, subject).thenRun(() -> invalidateFamily(familyId));
+    }
+
+    @Override
+    public CompletableFuture<RotationOutcome> rotateAsync(String oldJti, String newJti, String subject,
+	    Instant expiresAt, String familyId) {
+	return asyncDelegate.rotateAsync(oldJti, newJti, subject, expiresAt, familyId).thenApply(outcome -> {
+	    rotated(outcome, oldJti, newJti, subject, expiresAt, familyId);
+	    return outcome;
+	});
+    }
+
+    // ---------- invalidation ----------
+
+    /**
+     * Drops the cached state of a token.
+     *
+     * @param jti the token identifier
+     */
+    public void invalidate(String jti) {
+	cache.remove(jti);
+    }
+
+    /**
+     * Drops every cached token of a subject, including active tokens whose
+     * subject is not known to the cache.
+     *
+     * @param subject the subject
+     */
+    public void invalidateSubject(String subject) {
+	invalidateIf(e -> subject.equals(e.subject()) || e.subject() == null && !Boolean.FALSE.equals(e.active()));
+    }
+
+    /**
+     * Drops every cached token of a family, including active tokens whose
+     * family is not known to the cache.
+     *
+     * @param familyId the token family id
+     */
+    public void invalidateFamily(String familyId) {
+	invalidateIf(e -> familyId.equals(e.family()) || e.family() == null && !Boolean.FALSE.equals(e.active()));
+    }
+
+    /**
+     * Drops all cached tokens.
+     */
+    public void invalidateAll() {
+	cache.clear();
+    }
+
+    // ---------- statistics ----------
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+	return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups passed to the delegate.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+	return misses.sum();
+    }
+
+    /**
+     * Returns the fraction of lookups answered from the cache.
+     *
+     * @return the hit rate between 0 and 1, or 0 before the first lookup
+     */
+    public double getHitRate() {
+	long h = hits.sum();
+	long total = h + misses.sum();
+	return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Returns the number of cached tokens, including expired ones not yet
+     * dropped.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+	return cache.size();
+    }
+
+    /**
+     * Returns the cached store.
+     *
+     * @return the delegate
+     */
+    public RefreshTokenStore getDelegate() {
+	return delegate;
+    }
+
+    /**
+     * Closes the delegate if it is {@link AutoCloseable}.
+     *
+     * @throws IllegalStateException if closing the delegate fails with a
+     *                               checked exception
+     */
+    @Override
+    public void close() {
+	if (delegate instanceof AutoCloseable closeable) {
+	    try {
+		closeable.close();
+	    } catch (RuntimeException e) {
+		throw e;
+	    } catch (Exception e) {
+		throw new IllegalStateException("Failed to close refresh token store", e);
+	    }
+	}
+    }
+
+    // ---------- internals ----------
+
+    private Boolean cachedActive(String jti) {
+	Entry e = lookup(jti);
+	if (e != null && e.active() != null) {
+	    hits.increment();
+	    return e.active();
+	}
+	misses.increment();
+	return null;
+    }
+
+    /** Returns a cached token that is not known to be inactive. */
+    private StoredRefreshToken cachedToken(String jti) {
+	Entry e = lookup(jti);
+	if (e != null && e.token() != null && !Boolean.FALSE.equals(e.active())) {
+	    hits.increment();
+	    return e.token();
+	}
+	misses.increment();
+	return null;
+    }
+
+    /**
+     * Marks the old token inactive and caches its successor, which inherits
+     * the roles of the old token if they are cached.
+     */
+    private void rotated(RotationOutcome outcome, String oldJti, String newJti, String subject, Instant expiresAt,
+	    String familyId) {
+	Entry old = lookup(oldJti);
+	remember(oldJti, Boolean.FALSE, null, null, Long.MAX_VALUE);
+	if (outcome != RotationOutcome.ROTATED)
+	    return;
+	StoredRefreshToken token = old != null && old.token() != null
+		? new StoredRefreshToken(newJti, subject, expiresAt, familyId, old.token().roles())
+		: null;
+	remember(newJti, Boolean.TRUE, subject, familyId, expiresAt.toEpochMilli(), token);
+    }
+
+    private void remember(StoredRefreshToken token) {
+	remember(token.jti(), Boolean.TRUE, token.subject(), token.familyId(), expiryOf(token), token);
+    }
+
+    private static long expiryOf(StoredRefreshToken token) {
+	return token.expiresAt() != null ? token.expiresAt().toEpochMilli() : Long.MAX_VALUE;
+    }
+
+    /** Returns the live entry of a token, dropping it if it is outdated. */
+    private Entry lookup(String jti) {
+	Entry e = cache.get(jti);
+	if (e == null)
+	    return null;
+	if (e.validUntil() <= System.currentTimeMillis()) {
+	    cache.remove(jti, e);
+	    return null;
+	}
+	return e;
+    }
+
+    private void remember(String jti, Boolean active, String subject, String family, long expiresAt) {
+	remember(jti, active, subject, family, expiresAt, null);
+    }
+
+    /**
+     * Caches what is known about a token. A known subject, family or stored
+     * token is kept from a live entry since it never changes; the active state
+     * is only trusted for the safety window, and an "inactive" is never
+     * replaced by "active".
+     */
+    private void remember(String jti, Boolean active, String subject, String family, long expiresAt,
+	    StoredRefreshToken token) {
+	long now = System.currentTimeMillis();
+	long until = Math.min(now + ttlMillis, expiresAt);
+	if (until <= now)
+	    return;
+	cache.compute(jti, (k, old) -> {
+	    if (old == null || old.validUntil() <= now)
+		return new Entry(active, subject, family, token, until);
+	    String s = subject != null ? subject : old.subject();
+	    String f = family != null ? family : old.family();
+	    StoredRefreshToken t = token != null ? token : old.token();
+	    if (active == null || Boolean.FALSE.equals(old.active()) && active)
+		return new Entry(old.active(), s, f, t, old.validUntil());
+	    return new Entry(active, s, f, t, until);
+	});
+	if (cache.size() > maxEntries)
+	    evict();
+    }
+
+    private void invalidateIf(Predicate<Entry> predicate) {
+	cache.values().removeIf(predicate);
+    }
+
+    private void evict() {
+	if (!evicting.compareAndSet(false, true))
+	    return;
+	try {
+	    long now = System.currentTimeMillis();
+	    int target = maxEntries - maxEntries / 8;
+	    cache.values().removeIf(e -> e.validUntil() <= now);
+	    Iterator<Entry> it = cache.values().iterator();
+	    while (cache.size() > target && it.hasNext()) {
+		it.next();
+		it.remove();
+	    }
+	} finally {
+	    evicting.set(false);
+	}
+    }
+
+    /**
+     * Cached state of a token; {@code null} fields are unknown.
+     */
+    private record Entry(Boolean active, String subject, String family, StoredRefreshToken token, long validUntil) {
+    }
+}
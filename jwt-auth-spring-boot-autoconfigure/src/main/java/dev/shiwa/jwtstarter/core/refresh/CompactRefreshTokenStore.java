@@ -0,0 +1,589 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.shiwa.jwtstarter.core.expiry.ExpirySweeper;
+
+/**
+ * A memory-compact in-memory implementation of {@link RefreshTokenStore}.
+ *
+ * <p>
+ * Instead of map nodes, string keys and boxed {@link Instant}s, every session
+ * occupies one slot in a set of parallel primitive arrays:
+ * <ul>
+ * <li>the JTI as two {@code long}s (UUID bits, or a 128-bit SHA-256 prefix for
+ * non-UUID identifiers)</li>
+ * <li>an interned subject id ({@code int})</li>
+ * <li>the expiry in epoch seconds ({@code long})</li>
+ * </ul>
+ * That is 28 bytes per slot, or about 40 to 60 bytes per session depending on
+ * the table load, compared to roughly 250 bytes per session (including the JTI
+ * string) in {@link InMemoryRefreshTokenStore}.
+ *
+ * <p>
+ * The table is split into independently locked segments using open addressing
+ * with linear probing. Reads are optimistic ({@link StampedLock}) and do not
+ * block each other or writers.
+ *
+ * <p>
+ * Subjects are interned to dense ids. {@link #evictExpired(Instant)} releases
+ * the ids of subjects without sessions for reuse, so the subject table only
+ * grows with the subjects holding sessions. Writes hold a shared lock on the
+ * subject table so that an id cannot be released between interning and
+ * storing it. Capacity limits and eviction policies of
+ * {@link InMemoryRefreshTokenStore} are not supported.
+ *
+ * <p>
+ * A rotated token keeps its slot as a consumed marker until it expires, so a
+ * second rotation is reported as {@link RotationOutcome#REUSED} while expired
+ * or never stored tokens are {@link RotationOutcome#UNKNOWN}.
+ */
+public class CompactRefreshTokenStore implements RefreshTokenStore, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CompactRefreshTokenStore.class);
+
+    private static final int DEFAULT_SEGMENTS = 64;
+    private static final int INITIAL_SEGMENT_CAPACITY = 64;
+
+    /** Marks an unused slot. */
+    private static final int EMPTY = 0;
+    /** Marks a slot whose session was removed; keeps probe chains intact. */
+    private static final int DELETED = -1;
+    /** Consumed tokens store {@code CONSUMED - subjectId}, below {@link #DELETED}. */
+    private static final int CONSUMED = -1;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final SubjectTable subjects = new SubjectTable();
+    /** Shared by writers and subject lookups, exclusive while releasing ids. */
+    private final StampedLock subjectsLock = new StampedLock();
+    private final LongAdder evicted = new LongAdder();
+    private final ExpirySweeper sweeper;
+
+    /**
+     * Creates a store with the default number of segments and no background
+     * sweeper.
+     */
+    public CompactRefreshTokenStore() {
+	this(DEFAULT_SEGMENTS, null);
+    }
+
+    /**
+     * Creates a store.
+     *
+     * @param segments      the number of independently locked segments; rounded
+     *                      up to a power of two
+     * @param sweepInterval the interval at which expired sessions are purged, or
+     *                      {@code null} to disable the background sweeper
+     */
+    public CompactRefreshTokenStore(int segments, Duration sweepInterval) {
+	if (segments <= 0)
+	    throw new IllegalArgumentException("segments must be > 0");
+
+	int count = 1;
+	while (count < segments) {
+	    count <<= 1;
+	}
+	this.segments = new Segment[count];
+	for (int i = 0; i < count; i++) {
+	    this.segments[i] = new Segment();
+	}
+	this.segmentMask = count - 1;
+
+	this.sweeper = sweepInterval == null ? null
+		: new ExpirySweeper("compact-refresh-token-sweeper", sweepInterval, () -> {
+		    int purged = evictExpired(Instant.now());
+		    if (purged > 0)
+			log.debug("🧹 Evicted {} expired refresh tokens, {} remaining", purged, size());
+		});
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt) {
+	long stamp = subjectsLock.readLock();
+	try {
+	    put(jti, subject, expiresAt);
+	} finally {
+	    subjectsLock.unlockRead(stamp);
+	}
+    }
+
+    /** Stores a session; the caller holds {@link #subjectsLock}. */
+    private void put(String jti, String subject, Instant expiresAt) {
+	UUID key = JtiKeys.key(jti);
+	int subjectId = subjects.intern(subject);
+	segmentFor(key).put(key.getMostSignificantBits(), key.getLeastSignificantBits(), subjectId,
+		expiresAt.getEpochSecond());
+    }
+
+    @Override
+    public boolean isActive(String jti) {
+	UUID key = JtiKeys.key(jti);
+	long exp = segmentFor(key).expiry(key.getMostSignificantBits(), key.getLeastSignificantBits());
+	return exp != Long.MIN_VALUE && Instant.now().getEpochSecond() < exp;
+    }
+
+    @Override
+    public String subjectFor(String jti) {
+	UUID key = JtiKeys.key(jti);
+	Segment segment = segmentFor(key);
+	long stamp = subjectsLock.tryOptimisticRead();
+	int subjectId = segment.subject(key.getMostSignificantBits(), key.getLeastSignificantBits());
+	String name = subjectId > 0 ? subjects.name(subjectId) : null;
+	if (subjectsLock.validate(stamp))
+	    return name;
+
+	stamp = subjectsLock.readLock();
+	try {
+	    subjectId = segment.subject(key.getMostSignificantBits(), key.getLeastSignificantBits());
+	    return subjectId > 0 ? subjects.name(subjectId) : null;
+	} finally {
+	    subjectsLock.unlockRead(stamp);
+	}
+    }
+
+    @Override
+    public void revoke(String jti) {
+	UUID key = JtiKeys.key(jti);
+	segmentFor(key).remove(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    /**
+     * Consumes the old token under its segment's write lock, then saves the new
+     * one. Token families are not tracked.
+     */
+    @Override
+    public RotationOutcome rotate(String oldJti, String newJti, String subject, Instant expiresAt,
+	    String familyId) {
+	UUID key = JtiKeys.key(oldJti);
+	long stamp = subjectsLock.readLock();
+	try {
+	    int subjectId = subjects.idOf(subject);
+	    if (subjectId <= 0)
+		return RotationOutcome.UNKNOWN;
+	    RotationOutcome outcome = segmentFor(key).consume(key.getMostSignificantBits(),
+		    key.getLeastSignificantBits(), subjectId, Instant.now().getEpochSecond());
+	    if (outcome == RotationOutcome.ROTATED)
+		put(newJti, subject, expiresAt);
+	    return outcome;
+	} finally {
+	    subjectsLock.unlockRead(stamp);
+	}
+    }
+
+    @Override
+    public void revokeAllForSubject(String subject) {
+	long stamp = subjectsLock.readLock();
+	try {
+	    int subjectId = subjects.idOf(subject);
+	    if (subjectId <= 0)
+		return;
+	    for (Segment segment : segments) {
+		segment.removeSubject(subjectId);
+	    }
+	} finally {
+	    subjectsLock.unlockRead(stamp);
+	}
+    }
+
+    /**
+     * Removes all sessions that expired before {@code now} and releases the ids
+     * of subjects left without sessions.
+     *
+     * <p>
+     * Each segment is scanned linearly; with primitive arrays this is a sequential
+     * memory sweep. Releasing subject ids scans the segments a second time while
+     * writers are held off.
+     *
+     * @param now the reference time
+     * @return the number of removed sessions
+     */
+    public int evictExpired(Instant now) {
+	long nowSeconds = now.getEpochSecond();
+	int count = 0;
+	for (Segment segment : segments) {
+	    count += segment.removeExpired(nowSeconds);
+	}
+	evicted.add(count);
+	releaseSubjects();
+	return count;
+    }
+
+    private void releaseSubjects() {
+	long stamp = subjectsLock.writeLock();
+	try {
+	    BitSet live = new BitSet();
+	    for (Segment segment : segments) {
+		segment.collectSubjects(live);
+	    }
+	    subjects.release(live);
+	} finally {
+	    subjectsLock.unlockWrite(stamp);
+	}
+    }
+
+    /**
+     * Returns the number of interned subjects.
+     *
+     * @return the number of subjects
+     */
+    public int getSubjectCount() {
+	return subjects.size();
+    }
+
+    /**
+     * Returns the number of stored sessions, including expired sessions and
+     * consumed tokens that have not been evicted yet.
+     *
+     * @return the number of sessions
+     */
+    public int size() {
+	int size = 0;
+	for (Segment segment : segments) {
+	    size += segment.size();
+	}
+	return size;
+    }
+
+    /**
+     * Returns the total number of expired sessions evicted since creation.
+     *
+     * @return the eviction count
+     */
+    public long getEvictedCount() {
+	return evicted.sum();
+    }
+
+    /**
+     * Stops the background sweeper, if any.
+     */
+    @Override
+    public void close() {
+	if (sweeper != null)
+	    sweeper.close();
+    }
+
+    private Segment segmentFor(UUID key) {
+	long hash = JtiKeys.mix(key.getMostSignificantBits(), key.getLeastSignificantBits());
+	return segments[(int) (hash >>> 40) & segmentMask];
+    }
+
+    // ---------- segments ----------
+
+    /**
+     * Parallel primitive arrays forming one open-addressing table. Replaced as a
+     * whole on resize, so optimistic readers always see arrays of equal length.
+     */
+    private static final class Table {
+	final long[] hi;
+	final long[] lo;
+	final int[] subject;
+	final long[] exp;
+	final int mask;
+
+	Table(int capacity) {
+	    hi = new long[capacity];
+	    lo = new long[capacity];
+	    subject = new int[capacity];
+	    exp = new long[capacity];
+	    mask = capacity - 1;
+	}
+    }
+
+    private static final class Segment {
+	private final StampedLock lock = new StampedLock();
+	private volatile Table table = new Table(INITIAL_SEGMENT_CAPACITY);
+	private int size;
+	private int deleted;
+
+	void put(long hi, long lo, int subjectId, long expSeconds) {
+	    long stamp = lock.writeLock();
+	    try {
+		if ((size + deleted + 1) * 4 > table.hi.length * 3)
+		    rehash();
+
+		Table t = table;
+		int firstDeleted = -1;
+		int i = slot(t, hi, lo);
+		while (true) {
+		    int s = t.subject[i];
+		    if (s == EMPTY)
+			break;
+		    if (s == DELETED) {
+			if (firstDeleted < 0)
+			    firstDeleted = i;
+		    } else if (t.hi[i] == hi && t.lo[i] == lo) {
+			t.subject[i] = subjectId;
+			t.exp[i] = expSeconds;
+			return;
+		    }
+		    i = (i + 1) & t.mask;
+		}
+
+		if (firstDeleted >= 0) {
+		    i = firstDeleted;
+		    deleted--;
+		}
+		t.hi[i] = hi;
+		t.lo[i] = lo;
+		t.exp[i] = expSeconds;
+		t.subject[i] = subjectId;
+		size++;
+	    } finally {
+		lock.unlockWrite(stamp);
+	    }
+	}
+
+	/** Returns the expiry in epoch seconds, or {@link Long#MIN_VALUE} if absent. */
+	long expiry(long hi, long lo) {
+	    long stamp = lock.tryOptimisticRead();
+	    long result = readExpiry(table, hi, lo);
+	    if (lock.validate(stamp))
+		return result;
+
+	    stamp = lock.readLock();
+	    try {
+		return readExpiry(table, hi, lo);
+	    } finally {
+		lock.unlockRead(stamp);
+	    }
+	}
+
+	/** Returns the subject id, or {@link #EMPTY} if absent. */
+	int subject(long hi, long lo) {
+	    long stamp = lock.tryOptimisticRead();
+	    int result = readSubject(table, hi, lo);
+	    if (lock.validate(stamp))
+		return result;
+
+	    stamp = lock.readLock();
+	    try {
+		return readSubject(table, hi, lo);
+	    } finally {
+		lock.unlockRead(stamp);
+	    }
+	}
+
+	void remove(long hi, long lo) {
+	    long stamp = lock.writeLock();
+	    try {
+		Table t = table;
+		int i = find(t, hi, lo);
+		if (i >= 0)
+		    clear(t, i);
+	    } finally {
+		lock.unlockWrite(stamp);
+	    }
+	}
+
+	RotationOutcome consume(long hi, long lo, int subjectId, long nowSeconds) {
+	    long stamp = lock.writeLock();
+	    try {
+		Table t = table;
+		int i = find(t, hi, lo);
+		if (i >= 0 && t.subject[i] == CONSUMED - subjectId)
+		    return RotationOutcome.REUSED;
+		if (i < 0 || t.subject[i] != subjectId || t.exp[i] <= nowSeconds)
+		    return RotationOutcome.UNKNOWN;
+		t.subject[i] = CONSUMED - subjectId;
+		return RotationOutcome.ROTATED;
+	    } finally {
+		lock.unlockWrite(stamp);
+	    }
+	}
+
+	void removeSubject(int subjectId) {
+	    long stamp = lock.writeLock();
+	    try {
+		Table t = table;
+		for (int i = 0; i < t.subject.length; i++) {
+		    if (t.subject[i] == subjectId || t.subject[i] == CONSUMED - subjectId)
+			clear(t, i);
+		}
+	    } finally {
+		lock.unlockWrite(stamp);
+	    }
+	}
+
+	int removeExpired(long nowSeconds) {
+	    long stamp = lock.writeLock();
+	    try {
+		Table t = table;
+		int count = 0;
+		for (int i = 0; i < t.subject.length; i++) {
+		    if (isUsed(t.subject[i]) && t.exp[i] <= nowSeconds) {
+			clear(t, i);
+			count++;
+		    }
+		}
+		return count;
+	    } finally {
+		lock.unlockWrite(stamp);
+	    }
+	}
+
+	void collectSubjects(BitSet live) {
+	    long stamp = lock.readLock();
+	    try {
+		int[] subject = table.subject;
+		for (int s : subject) {
+		    if (s > 0)
+			live.set(s);
+		    else if (s < DELETED)
+			live.set(CONSUMED - s);
+		}
+	    } finally {
+		lock.unlockRead(stamp);
+	    }
+	}
+
+	int size() {
+	    long stamp = lock.readLock();
+	    try {
+		return size;
+	    } finally {
+		lock.unlockRead(stamp);
+	    }
+	}
+
+	private void clear(Table t, int i) {
+	    t.subject[i] = DELETED;
+	    size--;
+	    deleted++;
+	}
+
+	/** Rebuilds the table, dropping tombstones and growing it if needed. */
+	private void rehash() {
+	    Table old = table;
+	    int capacity = old.hi.length;
+	    while ((size + 1) * 2 > capacity) {
+		capacity <<= 1;
+	    }
+
+	    Table t = new Table(capacity);
+	    for (int i = 0; i < old.subject.length; i++) {
+		if (isUsed(old.subject[i])) {
+		    int j = slot(t, old.hi[i], old.lo[i]);
+		    while (t.subject[j] != EMPTY) {
+			j = (j + 1) & t.mask;
+		    }
+		    t.hi[j] = old.hi[i];
+		    t.lo[j] = old.lo[i];
+		    t.subject[j] = old.subject[i];
+		    t.exp[j] = old.exp[i];
+		}
+	    }
+	    deleted = 0;
+	    table = t;
+	}
+
+	/** Returns whether a slot holds a session or a consumed token. */
+	private static boolean isUsed(int subject) {
+	    return subject != EMPTY && subject != DELETED;
+	}
+
+	/** Consumed tokens have no expiry, so they are never active. */
+	private static long readExpiry(Table t, long hi, long lo) {
+	    int i = find(t, hi, lo);
+	    return i >= 0 && t.subject[i] > 0 ? t.exp[i] : Long.MIN_VALUE;
+	}
+
+	private static int readSubject(Table t, long hi, long lo) {
+	    int i = find(t, hi, lo);
+	    return i >= 0 ? t.subject[i] : EMPTY;
+	}
+
+	private static int find(Table t, long hi, long lo) {
+	    int i = slot(t, hi, lo);
+	    // bounded probe: an optimistic reader may observe a table being modified
+	    for (int n = 0; n <= t.mask; n++) {
+		int s = t.subject[i];
+		if (s == EMPTY)
+		    return -1;
+		if (s != DELETED && t.hi[i] == hi && t.lo[i] == lo)
+		    return i;
+		i = (i + 1) & t.mask;
+	    }
+	    return -1;
+	}
+
+	private static int slot(Table t, long hi, long lo) {
+	    return (int) JtiKeys.mix(hi, lo) & t.mask;
+	}
+    }
+
+    // ---------- subject interning ----------
+
+    /**
+     * Maps subjects to dense positive ids. Lookups by id are a plain array read;
+     * interning a new subject takes a short lock. Released ids are reused.
+     */
+    private static final class SubjectTable {
+	private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+	private volatile String[] names = new String[1024];
+	private int next = 1;
+	private int[] free = new int[16];
+	private int freeCount;
+
+	int intern(String subject) {
+	    Integer id = ids.get(subject);
+	    if (id != null)
+		return id;
+
+	    synchronized (this) {
+		id = ids.get(subject);
+		if (id != null)
+		    return id;
+
+		int newId = freeCount > 0 ? free[--freeCount] : next++;
+		String[] current = names;
+		if (newId >= current.length)
+		    current = Arrays.copyOf(current, current.length * 2);
+		current[newId] = subject;
+		names = current;
+		ids.put(subject, newId);
+		return newId;
+	    }
+	}
+
+	int idOf(String subject) {
+	    Integer id = ids.get(subject);
+	    return id != null ? id : EMPTY;
+	}
+
+	String name(int id) {
+	    String[] current = names;
+	    return id < current.length ? current[id] : null;
+	}
+
+	int size() {
+	    return ids.size();
+	}
+
+	/** Releases the ids not set in {@code live}. */
+	synchronized void release(BitSet live) {
+	    String[] current = names;
+	    for (int id = 1; id < next; id++) {
+		String name = current[id];
+		if (name == null || live.get(id))
+		    continue;
+		ids.remove(name);
+		current[id] = null;
+		if (freeCount == free.length)
+		    free = Arrays.copyOf(free, free.length * 2);
+		free[freeCount++] = id;
+	    }
+	}
+    }
+}
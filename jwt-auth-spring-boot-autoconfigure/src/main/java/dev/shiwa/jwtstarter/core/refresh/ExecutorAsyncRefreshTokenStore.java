@@ -0,0 +1,93 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Adapts a synchronous {@link RefreshTokenStore} to
+ * {@link AsyncRefreshTokenStore} by running each operation on an
+ * {@link Executor}.
+ * <p>
+ * With a direct executor ({@code Runnable::run}) operations run on the calling
+ * thread, which is the cheapest option for in-memory stores.
+ */
+public final class ExecutorAsyncRefreshTokenStore implements AsyncRefreshTokenStore {
+
+    private final RefreshTokenStore store;
+    private final Executor executor;
+
+    /**
+     * Creates a new adapter.
+     *
+     * @param store    the synchronous store
+     * @param executor the executor running the store operations
+     */
+    public ExecutorAsyncRefreshTokenStore(RefreshTokenStore store, Executor executor) {
+	this.store = store;
+	this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt) {
+	return CompletableFuture.runAsync(() -> store.save(jti, subject, expiresAt), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt, String familyId) {
+	return CompletableFuture.runAsync(() -> store.save(jti, subject, expiresAt, familyId), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt, String familyId,
+	    List<String> roles) {
+	return CompletableFuture.runAsync(() -> store.save(jti, subject, expiresAt, familyId, roles), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isActiveAsync(String jti) {
+	return CompletableFuture.supplyAsync(() -> store.isActive(jti), executor);
+    }
+
+    @Override
+    public CompletableFuture<String> subjectForAsync(String jti) {
+	return CompletableFuture.supplyAsync(() -> store.subjectFor(jti), executor);
+    }
+
+    @Override
+    public CompletableFuture<StoredRefreshToken> findAsync(String jti) {
+	return CompletableFuture.supplyAsync(() -> store.find(jti), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeAsync(String jti) {
+	return CompletableFuture.runAsync(() -> store.revoke(jti), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeAllForSubjectAsync(String subject) {
+	return CompletableFuture.runAsync(() -> store.revokeAllForSubject(subject), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeFamilyAsync(String familyId, String subject) {
+	return CompletableFuture.runAsync(() -> store.revokeFamily(familyId, subject), executor);
+    }
+
+    @Override
+    public CompletableFuture<RotationOutcome> rotateAsync(String oldJti, String newJti, String subject,
+	    Instant expiresAt, String familyId) {
+	return CompletableFuture.supplyAsync(() -> store.rotate(oldJti, newJti, subject, expiresAt, familyId),
+		executor);
+    }
+
+    /**
+     * Returns the adapted store.
+     *
+     * @return the synchronous store
+     */
+    public RefreshTokenStore getDelegate() {
+	return store;
+    }
+}
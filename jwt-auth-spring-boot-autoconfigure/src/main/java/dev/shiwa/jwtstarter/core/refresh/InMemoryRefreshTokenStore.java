@@ -1,15 +1,60 @@
 package dev.shiwa.jwtstarter.core.refresh;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.shiwa.jwtstarter.core.expiry.ExpiryIndex;
+import dev.shiwa.jwtstarter.core.expiry.ExpirySweeper;
+import dev.shiwa.jwtstarter.core.refresh.eviction.RefreshTokenEvictionPolicy;
 
 /**
  * An in-memory implementation of {@link RefreshTokenStore}.
  * <p>
- * Stores refresh tokens in thread-safe maps, mapping token IDs (JTI) to
- * subjects and their expiration times.
+ * Stores refresh tokens in a thread-safe map, mapping token IDs (JTI) to their
+ * subject and expiration time. Every saved token is additionally registered in
+ * a time-bucketed {@link ExpiryIndex}, so expired tokens can be evicted in
+ * {@code O(expired)} without scanning the whole map.
+ * </p>
+ *
+ * <p>
+ * When created with a sweep interval, a single background thread evicts up to
+ * {@code sweepBatchSize} expired tokens per tick. Without a sweep interval,
+ * {@link #evictExpired(Instant, int)} has to be called by the owner.
+ * </p>
+ *
+ * <p>
+ * Optionally, the store can be bounded to a maximum number of entries. Once the
+ * capacity is exceeded, a {@link RefreshTokenEvictionPolicy} selects the tokens
+ * to drop, and every such eviction is counted as an overflow (see
+ * {@link #getOverflowCount()}).
+ * </p>
+ *
+ * <p>
+ * {@link #rotate(String, String, String, Instant)} marks the old token as
+ * consumed with a compare-and-set instead of removing it. The consumed marker
+ * is kept until the old token expires, so a later presentation is reported as
+ * {@link RotationOutcome#REUSED} rather than {@link RotationOutcome#UNKNOWN}.
+ * </p>
+ *
+ * <p>
+ * Tokens saved with a family id are tracked in a second map from family to
+ * current JTI, so {@link #revokeFamily(String, String)} is a single key
+ * removal.
  * </p>
  *
  * <h3>⚠ Limitations</h3>
@@ -22,10 +67,72 @@ import java.util.concurrent.ConcurrentMap;
  * or another distributed cache.</li>
  * </ul>
  */
-public class InMemoryRefreshTokenStore implements RefreshTokenStore {
+public class InMemoryRefreshTokenStore implements RefreshTokenStore, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(InMemoryRefreshTokenStore.class);
+
+    /** Bucket width of the expiry index if no sweeper is configured. */
+    private static final long DEFAULT_BUCKET_MILLIS = 60_000;
+
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> families = new ConcurrentHashMap<>();
+    private final ExpiryIndex<String> expiryIndex;
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final AtomicInteger consumed = new AtomicInteger();
+    private final ExpirySweeper sweeper;
+    private final int capacity;
+    private final RefreshTokenEvictionPolicy evictionPolicy;
+
+    /**
+     * Creates a store without a background sweeper.
+     */
+    public InMemoryRefreshTokenStore() {
+	this.expiryIndex = new ExpiryIndex<>(DEFAULT_BUCKET_MILLIS);
+	this.sweeper = null;
+	this.capacity = 0;
+	this.evictionPolicy = null;
+    }
+
+    /**
+     * Creates a store with a background sweeper that evicts expired tokens.
+     *
+     * @param sweepInterval  the sweep tick; also used as bucket width of the
+     *                       expiry index
+     * @param sweepBatchSize the maximum number of tokens evicted per tick
+     */
+    public InMemoryRefreshTokenStore(Duration sweepInterval, int sweepBatchSize) {
+	this(sweepInterval, sweepBatchSize, 0, null);
+    }
+
+    /**
+     * Creates a bounded store with a background sweeper.
+     *
+     * @param sweepInterval  the sweep tick; also used as bucket width of the
+     *                       expiry index
+     * @param sweepBatchSize the maximum number of tokens evicted per tick
+     * @param capacity       the maximum number of stored tokens, or {@code 0} for
+     *                       no limit
+     * @param evictionPolicy the policy selecting tokens to evict; may be
+     *                       {@code null} only if no limit applies
+     */
+    public InMemoryRefreshTokenStore(Duration sweepInterval, int sweepBatchSize, int capacity,
+	    RefreshTokenEvictionPolicy evictionPolicy) {
+	if (sweepBatchSize <= 0)
+	    throw new IllegalArgumentException("sweepBatchSize must be > 0");
+	if (capacity > 0 && evictionPolicy == null)
+	    throw new IllegalArgumentException("A bounded store requires an eviction policy");
 
-    private final ConcurrentMap<String, String> jtiToSubject = new ConcurrentHashMap<>();
-    private final ConcurrentMap<String, Instant> jtiToExpiry = new ConcurrentHashMap<>();
+	this.capacity = Math.max(capacity, 0);
+	this.evictionPolicy = evictionPolicy;
+
+	this.expiryIndex = new ExpiryIndex<>(sweepInterval.toMillis());
+	this.sweeper = new ExpirySweeper("refresh-token-sweeper", sweepInterval, () -> {
+	    int count = evictExpired(Instant.now(), sweepBatchSize);
+	    if (count > 0)
+		log.debug("🧹 Evicted {} expired refresh tokens, {} remaining", count, size());
+	});
+    }
 
     /**
      * Saves a refresh token identifier (JTI) along with its subject and expiry.
@@ -37,8 +144,81 @@ public class InMemoryRefreshTokenStore implements RefreshTokenStore {
      */
     @Override
     public void save(String jti, String subject, Instant exp) {
-	jtiToSubject.put(jti, subject);
-	jtiToExpiry.put(jti, exp);
+	save(jti, subject, exp, null);
+    }
+
+    /**
+     * Saves a refresh token and makes it the current token of its family.
+     *
+     * @param jti      the unique token identifier
+     * @param subject  the subject associated with the token
+     * @param exp      the expiration timestamp of the refresh token
+     * @param familyId the token family id, or {@code null}
+     */
+    @Override
+    public void save(String jti, String subject, Instant exp, String familyId) {
+	save(jti, subject, exp, familyId, null);
+    }
+
+    /**
+     * Saves a refresh token with the roles of the access tokens it is exchanged
+     * for.
+     *
+     * @param jti      the unique token identifier
+     * @param subject  the subject associated with the token
+     * @param exp      the expiration timestamp of the refresh token
+     * @param familyId the token family id, or {@code null}
+     * @param roles    the roles, or {@code null}
+     */
+    @Override
+    public void save(String jti, String subject, Instant exp, String familyId, List<String> roles) {
+	put(jti, subject, exp, familyId, roles);
+	if (evictionPolicy != null)
+	    evictOverflow(subject);
+    }
+
+    /**
+     * Saves several tokens. A bounded store enforces its capacity once per
+     * batch and subject instead of after every token.
+     *
+     * @param tokens the tokens to save
+     */
+    @Override
+    public void saveAll(Collection<StoredRefreshToken> tokens) {
+	Set<String> subjects = evictionPolicy != null ? new LinkedHashSet<>() : null;
+	for (StoredRefreshToken t : tokens) {
+	    put(t.jti(), t.subject(), t.expiresAt(), t.familyId(), t.roles());
+	    if (subjects != null)
+		subjects.add(t.subject());
+	}
+	if (subjects != null)
+	    subjects.forEach(this::evictOverflow);
+    }
+
+    private void put(String jti, String subject, Instant exp, String familyId, List<String> roles) {
+	putSession(jti, subject, exp, familyId, roles);
+	if (familyId != null)
+	    families.put(familyId, jti);
+    }
+
+    private void putSession(String jti, String subject, Instant exp, String familyId, List<String> roles) {
+	Session previous = sessions.put(jti, new Session(subject, exp, false, familyId, roles));
+	expiryIndex.add(jti, exp.toEpochMilli());
+	if (previous != null)
+	    removed(jti, previous);
+	if (evictionPolicy != null)
+	    evictionPolicy.recordSave(jti, subject, exp);
+    }
+
+    private void evictOverflow(String subject) {
+	String victim;
+	while ((victim = evictionPolicy.nextVictim(subject, sessions.size() - consumed.get(), capacity)) != null) {
+	    Session session = sessions.remove(victim);
+	    if (session != null) {
+		removed(victim, session);
+		overflows.increment();
+	    }
+	}
     }
 
     /**
@@ -48,7 +228,6 @@ public class InMemoryRefreshTokenStore implements RefreshTokenStore {
      * <ul>
      * <li>It exists in the store</li>
      * <li>Its expiry time is in the future</li>
-     * <li>A subject mapping still exists</li>
      * </ul>
      *
      * @param jti the token identifier
@@ -56,8 +235,29 @@ public class InMemoryRefreshTokenStore implements RefreshTokenStore {
      */
     @Override
     public boolean isActive(String jti) {
-	Instant exp = jtiToExpiry.get(jti);
-	return exp != null && Instant.now().isBefore(exp) && jtiToSubject.containsKey(jti);
+	Session session = sessions.get(jti);
+	if (session == null || session.consumed() || !Instant.now().isBefore(session.expiresAt()))
+	    return false;
+	if (evictionPolicy != null)
+	    evictionPolicy.recordAccess(jti);
+	return true;
+    }
+
+    /**
+     * Checks several tokens against a single reading of the clock.
+     *
+     * @param jtis the token identifiers to check
+     * @return whether each token is active, keyed by its identifier
+     */
+    @Override
+    public Map<String, Boolean> isActiveAll(Collection<String> jtis) {
+	Instant now = Instant.now();
+	Map<String, Boolean> result = new HashMap<>(Math.max(16, jtis.size() * 4 / 3 + 1));
+	for (String jti : jtis) {
+	    Session session = sessions.get(jti);
+	    result.put(jti, session != null && !session.consumed() && now.isBefore(session.expiresAt()));
+	}
+	return result;
     }
 
     /**
@@ -68,7 +268,44 @@ public class InMemoryRefreshTokenStore implements RefreshTokenStore {
      */
     @Override
     public String subjectFor(String jti) {
-	return jtiToSubject.get(jti);
+	Session session = sessions.get(jti);
+	return session != null && !session.consumed() ? session.subject() : null;
+    }
+
+    /**
+     * Looks up a token, including a consumed marker of a rotated token.
+     *
+     * @param jti the token identifier
+     * @return the token, or {@code null} if it is unknown, revoked or expired
+     */
+    @Override
+    public StoredRefreshToken find(String jti) {
+	Session session = sessions.get(jti);
+	if (session == null || !Instant.now().isBefore(session.expiresAt()))
+	    return null;
+	return new StoredRefreshToken(jti, session.subject(), session.expiresAt(), session.family(),
+		session.roles());
+    }
+
+    /**
+     * Returns whether a token is the consumed marker of a rotated token.
+     *
+     * @param jti the token identifier
+     * @return {@code true} if the token has been rotated
+     */
+    boolean isConsumed(String jti) {
+	Session session = sessions.get(jti);
+	return session != null && session.consumed();
+    }
+
+    /**
+     * Returns the current token of a family.
+     *
+     * @param familyId the token family id
+     * @return the current token identifier, or {@code null}
+     */
+    String currentOfFamily(String familyId) {
+	return families.get(familyId);
     }
 
     /**
@@ -78,26 +315,197 @@ public class InMemoryRefreshTokenStore implements RefreshTokenStore {
      */
     @Override
     public void revoke(String jti) {
-	jtiToSubject.remove(jti);
-	jtiToExpiry.remove(jti);
+	Session session = sessions.remove(jti);
+	if (session != null)
+	    removed(jti, session);
     }
 
     /**
      * Revokes all refresh tokens belonging to a specific subject.
      * <p>
      * Iterates through all stored JTIs and removes those associated with the given
-     * subject.
+     * subject. Consumed markers are kept, so later reuse is still detected.
      *
      * @param subject the subject whose refresh tokens should be revoked
      */
     @Override
     public void revokeAllForSubject(String subject) {
-	jtiToSubject.entrySet().removeIf(e -> {
-	    if (Objects.equals(e.getValue(), subject)) {
-		jtiToExpiry.remove(e.getKey());
-		return true;
+	for (Map.Entry<String, Session> e : sessions.entrySet()) {
+	    if (Objects.equals(e.getValue().subject(), subject) && !e.getValue().consumed()
+		    && sessions.remove(e.getKey(), e.getValue()))
+		removed(e.getKey(), e.getValue());
+	}
+    }
+
+    /**
+     * Consumes the old token with a compare-and-set on its map entry and saves
+     * the new one with the old token's roles. The old entry stays as a consumed
+     * marker until it expires. The family is handed over from the old token to
+     * the new one with a compare-and-set as well, so a concurrent
+     * {@code revokeFamily} either finds the old token or the new one; if it
+     * took the family in between, the new token is revoked again.
+     */
+    @Override
+    public RotationOutcome rotate(String oldJti, String newJti, String subject, Instant expiresAt,
+	    String familyId) {
+	while (true) {
+	    Session current = sessions.get(oldJti);
+	    if (current == null || !Objects.equals(current.subject(), subject))
+		return RotationOutcome.UNKNOWN;
+	    if (current.consumed())
+		return RotationOutcome.REUSED;
+	    if (!Instant.now().isBefore(current.expiresAt()))
+		return RotationOutcome.UNKNOWN;
+
+	    Session marker = new Session(current.subject(), current.expiresAt(), true, current.family(),
+		    current.roles());
+	    if (sessions.replace(oldJti, current, marker)) {
+		consumed.incrementAndGet();
+		String family = familyId != null ? familyId : current.family();
+		putSession(newJti, subject, expiresAt, family, current.roles());
+		boolean handedOver = true;
+		if (family != null && family.equals(current.family())) {
+		    handedOver = families.replace(family, oldJti, newJti);
+		} else {
+		    if (current.family() != null)
+			families.remove(current.family(), oldJti);
+		    if (family != null)
+			families.put(family, newJti);
+		}
+		if (evictionPolicy != null)
+		    evictionPolicy.recordRemoval(oldJti, current.subject());
+		if (!handedOver) {
+		    revoke(newJti);
+		    return RotationOutcome.UNKNOWN;
+		}
+		if (evictionPolicy != null)
+		    evictOverflow(subject);
+		return RotationOutcome.ROTATED;
 	    }
-	    return false;
+	    // changed concurrently (rotated, revoked or re-saved): re-evaluate
+	}
+    }
+
+    /**
+     * Revokes the current token of a family with a single key removal.
+     *
+     * @param familyId the token family id
+     * @param subject  ignored; families are tracked by id
+     */
+    @Override
+    public void revokeFamily(String familyId, String subject) {
+	String jti = families.remove(familyId);
+	if (jti != null)
+	    revoke(jti);
+    }
+
+    /**
+     * Evicts up to {@code maxEntries} tokens that expired before {@code now}.
+     * <p>
+     * Only the expired part of the expiry index is visited. Tokens that were
+     * revoked or re-saved with a later expiry in the meantime are skipped.
+     *
+     * @param now        the reference time
+     * @param maxEntries the maximum number of index entries to process
+     * @return the number of evicted tokens
+     */
+    public int evictExpired(Instant now, int maxEntries) {
+	int count = expiryIndex.pollExpired(now.toEpochMilli(), maxEntries, (jti, expMillis) -> {
+	    Session session = sessions.get(jti);
+	    if (session == null || session.expiresAt().isAfter(now) || !sessions.remove(jti, session))
+		return false;
+	    removed(jti, session);
+	    evicted.increment();
+	    return true;
+	});
+	return count;
+    }
+
+    /**
+     * Visits all stored tokens, including expired tokens that have not been
+     * evicted yet, but excluding consumed markers.
+     *
+     * @param visitor the callback receiving each token
+     */
+    void forEachSession(SessionVisitor visitor) {
+	sessions.forEach((jti, s) -> {
+	    if (!s.consumed())
+		visitor.visit(jti, s.subject(), s.expiresAt(), s.family(), s.roles());
 	});
     }
-}
\ No newline at end of file
+
+    /**
+     * Visits all unexpired tokens, excluding consumed markers.
+     *
+     * @param action the callback receiving each token
+     */
+    @Override
+    public void forEachToken(Consumer<StoredRefreshToken> action) {
+	Instant now = Instant.now();
+	forEachSession((jti, subject, exp, family, roles) -> {
+	    if (now.isBefore(exp))
+		action.accept(new StoredRefreshToken(jti, subject, exp, family, roles));
+	});
+    }
+
+    /**
+     * Returns the number of tokens currently held, including expired tokens and
+     * consumed markers that have not been evicted yet.
+     *
+     * @return the number of stored tokens
+     */
+    public int size() {
+	return sessions.size();
+    }
+
+    /**
+     * Returns the total number of expired tokens evicted since creation.
+     *
+     * @return the eviction count
+     */
+    public long getEvictedCount() {
+	return evicted.sum();
+    }
+
+    /**
+     * Returns the total number of tokens evicted because the store was over
+     * capacity.
+     *
+     * @return the overflow eviction count
+     */
+    public long getOverflowCount() {
+	return overflows.sum();
+    }
+
+    /**
+     * Stops the background sweeper, if any.
+     */
+    @Override
+    public void close() {
+	if (sweeper != null)
+	    sweeper.close();
+    }
+
+    private void removed(String jti, Session session) {
+	if (session.consumed()) {
+	    consumed.decrementAndGet();
+	    return;
+	}
+	if (session.family() != null)
+	    families.remove(session.family(), jti);
+	if (evictionPolicy != null)
+	    evictionPolicy.recordRemoval(jti, session.subject());
+    }
+
+    /**
+     * Callback for {@link InMemoryRefreshTokenStore#forEachSession(SessionVisitor)}.
+     */
+    @FunctionalInterface
+    interface SessionVisitor {
+	void visit(String jti, String subject, Instant expiresAt, String familyId, List<String> roles);
+    }
+
+    private record Session(String subject, Instant expiresAt, boolean consumed, String family,
+	    List<String> roles) {
+    }
+}
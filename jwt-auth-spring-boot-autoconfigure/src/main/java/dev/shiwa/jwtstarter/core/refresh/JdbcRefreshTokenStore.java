@@ -0,0 +1,568 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.shiwa.jwtstarter.core.expiry.ExpirySweeper;
+
+/**
+ * A {@link RefreshTokenStore} backed by a relational database table accessed
+ * via plain JDBC.
+ *
+ * <p>
+ * Table layout (created on demand, see {@link #initializeSchema()}):
+ *
+ * <pre>
+ * jti        VARCHAR(255) PRIMARY KEY
+ * subject    VARCHAR(255) NOT NULL   -- indexed
+ * expires_at BIGINT       NOT NULL   -- epoch millis, indexed
+ * family_id  VARCHAR(64)             -- token family, indexed
+ * roles      VARCHAR(1024)           -- comma-separated roles
+ * </pre>
+ *
+ * <p>
+ * Saves and revocations are handed to a single writer thread that collects
+ * all writes arriving within a short linger window and commits them in one
+ * transaction, using one prepared statement per operation type with JDBC
+ * batching. Callers block until their write has been committed, so reads
+ * always observe earlier writes of the same caller.
+ * {@code revokeAllForSubject} and {@code revokeFamily} are single set-based
+ * {@code DELETE}s, and expired rows are purged in bulk by a background
+ * sweeper.
+ *
+ * <p>
+ * The {@link AsyncRefreshTokenStore} write methods return as soon as the write
+ * is queued, so a revocation and a save issued back to back end up in the same
+ * transaction. Reads always run on the calling thread.
+ *
+ * <p>
+ * {@link #rotate(String, String, String, Instant)} consumes the old token with
+ * a single conditional {@code UPDATE} inside the writer's transaction that
+ * re-keys its row to the new token, so subject and roles are carried over
+ * without reading them first. Consumed rows are not kept, so every inactive
+ * token is reported as {@link RotationOutcome#REUSED}.
+ */
+public class JdbcRefreshTokenStore implements RefreshTokenStore, AsyncRefreshTokenStore, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(JdbcRefreshTokenStore.class);
+
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final int MAX_IN_LIST_SIZE = 500;
+
+    private final DataSource dataSource;
+    private final String table;
+    private final String insertSql;
+    private final String deleteSql;
+    private final String deleteSubjectSql;
+    private final String deleteFamilySql;
+    private final String consumeSql;
+    private final String selectSql;
+    private final String findSql;
+    private final String purgeSql;
+    private final String selectAllSql;
+    private final BatchWriter<Op> writer;
+    private final ExpirySweeper sweeper;
+
+    /**
+     * Creates a store using the given table.
+     *
+     * @param dataSource    the data source
+     * @param table         the table name, optionally schema-qualified
+     * @param linger        how long the writer waits for more writes before
+     *                      committing a batch
+     * @param purgeInterval the interval at which expired rows are deleted;
+     *                      {@code null} disables purging
+     * @throws IllegalArgumentException if the table name is not a plain
+     *                                  identifier
+     */
+    public JdbcRefreshTokenStore(DataSource dataSource, String table, Duration linger, Duration purgeInterval) {
+	if (!TABLE_NAME.matcher(table).matches())
+	    throw new IllegalArgumentException("Invalid refresh token table name: " + table);
+
+	this.dataSource = dataSource;
+	this.table = table;
+	this.insertSql = "INSERT INTO " + table + " (jti, subject, expires_at, family_id, roles) VALUES (?, ?, ?, ?, ?)";
+	this.deleteSql = "DELETE FROM " + table + " WHERE jti = ?";
+	this.deleteSubjectSql = "DELETE FROM " + table + " WHERE subject = ?";
+	this.deleteFamilySql = "DELETE FROM " + table + " WHERE family_id = ?";
+	this.consumeSql = "UPDATE " + table + " SET jti = ?, expires_at = ?, family_id = COALESCE(?, family_id)"
+		+ " WHERE jti = ? AND subject = ? AND expires_at > ?";
+	this.selectSql = "SELECT subject FROM " + table + " WHERE jti = ? AND expires_at > ?";
+	this.findSql = "SELECT subject, expires_at, family_id, roles FROM " + table + " WHERE jti = ? AND expires_at > ?";
+	this.purgeSql = "DELETE FROM " + table + " WHERE expires_at <= ?";
+	this.selectAllSql = "SELECT jti, subject, expires_at, family_id, roles FROM " + table + " WHERE expires_at > ?";
+
+	this.writer = new BatchWriter<>("refresh-token-jdbc-writer", MAX_BATCH_SIZE, linger, (ops, rejected) -> {
+	    try {
+		flush(ops);
+	    } catch (SQLException e) {
+		throw new IllegalStateException("Cannot write refresh tokens", e);
+	    }
+	});
+	this.sweeper = purgeInterval != null
+		? new ExpirySweeper("refresh-token-jdbc-purge", purgeInterval, () -> purgeExpired(Instant.now()))
+		: null;
+    }
+
+    /**
+     * Creates the table and its indexes unless the table already exists. An
+     * existing table without the {@code roles} column gets it added.
+     *
+     * @throws IllegalStateException if the schema cannot be created
+     */
+    public void initializeSchema() {
+	try (Connection c = dataSource.getConnection()) {
+	    if (tableExists(c.getMetaData())) {
+		addRolesColumn(c);
+		return;
+	    }
+
+	    String indexPrefix = table.replace('.', '_');
+	    try (Statement st = c.createStatement()) {
+		st.execute("CREATE TABLE " + table + " (jti VARCHAR(255) NOT NULL PRIMARY KEY,"
+			+ " subject VARCHAR(255) NOT NULL, expires_at BIGINT NOT NULL, family_id VARCHAR(64),"
+			+ " roles VARCHAR(1024))");
+		st.execute("CREATE INDEX " + indexPrefix + "_subject_idx ON " + table + " (subject)");
+		st.execute("CREATE INDEX " + indexPrefix + "_expires_idx ON " + table + " (expires_at)");
+		st.execute("CREATE INDEX " + indexPrefix + "_family_idx ON " + table + " (family_id)");
+	    }
+	    if (!c.getAutoCommit())
+		c.commit();
+	    log.info("🗄️ Created refresh token table {}", table);
+	} catch (SQLException e) {
+	    throw new IllegalStateException("Cannot create refresh token table " + table, e);
+	}
+    }
+
+    private void addRolesColumn(Connection c) throws SQLException {
+	try (Statement st = c.createStatement();
+		ResultSet rs = st.executeQuery("SELECT * FROM " + table + " WHERE 1 = 0")) {
+	    ResultSetMetaData meta = rs.getMetaData();
+	    for (int i = 1; i <= meta.getColumnCount(); i++) {
+		if ("roles".equalsIgnoreCase(meta.getColumnName(i)))
+		    return;
+	    }
+	}
+	try (Statement st = c.createStatement()) {
+	    st.execute("ALTER TABLE " + table + " ADD COLUMN roles VARCHAR(1024)");
+	}
+	if (!c.getAutoCommit())
+	    c.commit();
+	log.info("🗄️ Added roles column to refresh token table {}", table);
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt) {
+	save(jti, subject, expiresAt, null);
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt, String familyId) {
+	save(jti, subject, expiresAt, familyId, null);
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt, String familyId, List<String> roles) {
+	writer.write(Op.save(jti, subject, expiresAt.toEpochMilli(), familyId, roles));
+    }
+
+    @Override
+    public boolean isActive(String jti) {
+	return subjectFor(jti) != null;
+    }
+
+    @Override
+    public String subjectFor(String jti) {
+	try (Connection c = dataSource.getConnection(); PreparedStatement ps = c.prepareStatement(selectSql)) {
+	    ps.setString(1, jti);
+	    ps.setLong(2, System.currentTimeMillis());
+	    try (ResultSet rs = ps.executeQuery()) {
+		return rs.next() ? rs.getString(1) : null;
+	    }
+	} catch (SQLException e) {
+	    throw new IllegalStateException("Cannot read refresh token", e);
+	}
+    }
+
+    @Override
+    public StoredRefreshToken find(String jti) {
+	try (Connection c = dataSource.getConnection(); PreparedStatement ps = c.prepareStatement(findSql)) {
+	    ps.setString(1, jti);
+	    ps.setLong(2, System.currentTimeMillis());
+	    try (ResultSet rs = ps.executeQuery()) {
+		if (!rs.next())
+		    return null;
+		return new StoredRefreshToken(jti, rs.getString(1), Instant.ofEpochMilli(rs.getLong(2)),
+			rs.getString(3), decodeRoles(rs.getString(4)));
+	    }
+	} catch (SQLException e) {
+	    throw new IllegalStateException("Cannot read refresh token", e);
+	}
+    }
+
+    @Override
+    public void revoke(String jti) {
+	writer.write(new Op(Op.REVOKE, jti, null, 0));
+    }
+
+    @Override
+    public void revokeAllForSubject(String subject) {
+	writer.write(new Op(Op.REVOKE_SUBJECT, null, subject, 0));
+    }
+
+    @Override
+    public void revokeFamily(String familyId, String subject) {
+	writer.write(new Op(Op.REVOKE_FAMILY, null, subject, 0, familyId));
+    }
+
+    /**
+     * Queues all saves at once, so they are committed in as few transactions
+     * and JDBC batches as the writer's batch size allows.
+     *
+     * @param tokens the tokens to save
+     */
+    @Override
+    public void saveAll(Collection<StoredRefreshToken> tokens) {
+	List<Op> ops = new ArrayList<>(tokens.size());
+	for (StoredRefreshToken t : tokens) {
+	    ops.add(Op.save(t.jti(), t.subject(), t.expiresAt().toEpochMilli(), t.familyId(), t.roles()));
+	}
+	writer.writeAll(ops);
+    }
+
+    /**
+     * Queues all revocations at once, so they are committed in as few
+     * transactions and JDBC batches as the writer's batch size allows.
+     *
+     * @param jtis the token identifiers to revoke
+     */
+    @Override
+    public void revokeAll(Collection<String> jtis) {
+	List<Op> ops = new ArrayList<>(jtis.size());
+	for (String jti : jtis) {
+	    ops.add(new Op(Op.REVOKE, jti, null, 0));
+	}
+	writer.writeAll(ops);
+    }
+
+    /**
+     * Checks the tokens with one {@code SELECT ... WHERE jti IN (...)} per
+     * chunk of up to 500 identifiers.
+     *
+     * @param jtis the token identifiers to check
+     * @return whether each token is active, keyed by its identifier
+     */
+    @Override
+    public Map<String, Boolean> isActiveAll(Collection<String> jtis) {
+	Map<String, Boolean> result = new HashMap<>(Math.max(16, jtis.size() * 4 / 3 + 1));
+	List<String> all = List.copyOf(jtis);
+	long nowMillis = System.currentTimeMillis();
+	try (Connection c = dataSource.getConnection()) {
+	    for (int from = 0; from < all.size(); from += MAX_IN_LIST_SIZE) {
+		List<String> chunk = all.subList(from, Math.min(all.size(), from + MAX_IN_LIST_SIZE));
+		String sql = "SELECT jti FROM " + table + " WHERE expires_at > ? AND jti IN ("
+			+ "?,".repeat(chunk.size() - 1) + "?)";
+		try (PreparedStatement ps = c.prepareStatement(sql)) {
+		    ps.setLong(1, nowMillis);
+		    for (int i = 0; i < chunk.size(); i++) {
+			ps.setString(i + 2, chunk.get(i));
+			result.put(chunk.get(i), Boolean.FALSE);
+		    }
+		    try (ResultSet rs = ps.executeQuery()) {
+			while (rs.next()) {
+			    result.put(rs.getString(1), Boolean.TRUE);
+			}
+		    }
+		}
+	    }
+	} catch (SQLException e) {
+	    throw new IllegalStateException("Cannot read refresh tokens", e);
+	}
+	return result;
+    }
+
+    /**
+     * Streams all unexpired rows with a single query.
+     *
+     * @param action the callback receiving each token
+     */
+    @Override
+    public void forEachToken(Consumer<StoredRefreshToken> action) {
+	try (Connection c = dataSource.getConnection(); PreparedStatement ps = c.prepareStatement(selectAllSql)) {
+	    ps.setLong(1, System.currentTimeMillis());
+	    ps.setFetchSize(MAX_BATCH_SIZE);
+	    try (ResultSet rs = ps.executeQuery()) {
+		while (rs.next()) {
+		    action.accept(new StoredRefreshToken(rs.getString(1), rs.getString(2),
+			    Instant.ofEpochMilli(rs.getLong(3)), rs.getString(4), decodeRoles(rs.getString(5))));
+		}
+	    }
+	} catch (SQLException e) {
+	    throw new IllegalStateException("Cannot read refresh tokens", e);
+	}
+    }
+
+    @Override
+    public RotationOutcome rotate(String oldJti, String newJti, String subject, Instant expiresAt,
+	    String familyId) {
+	Op op = Op.rotate(oldJti, newJti, subject, expiresAt, familyId);
+	writer.write(op);
+	return op.outcome.join();
+    }
+
+    @Override
+    public CompletableFuture<RotationOutcome> rotateAsync(String oldJti, String newJti, String subject,
+	    Instant expiresAt, String familyId) {
+	Op op = Op.rotate(oldJti, newJti, subject, expiresAt, familyId);
+	return writer.submit(op).thenCompose(v -> op.outcome);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt) {
+	return saveAsync(jti, subject, expiresAt, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt, String familyId) {
+	return saveAsync(jti, subject, expiresAt, familyId, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt, String familyId,
+	    List<String> roles) {
+	return writer.submit(Op.save(jti, subject, expiresAt.toEpochMilli(), familyId, roles));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isActiveAsync(String jti) {
+	return CompletableFuture.completedFuture(isActive(jti));
+    }
+
+    @Override
+    public CompletableFuture<String> subjectForAsync(String jti) {
+	return CompletableFuture.completedFuture(subjectFor(jti));
+    }
+
+    @Override
+    public CompletableFuture<StoredRefreshToken> findAsync(String jti) {
+	return CompletableFuture.completedFuture(find(jti));
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeAsync(String jti) {
+	return writer.submit(new Op(Op.REVOKE, jti, null, 0));
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeAllForSubjectAsync(String subject) {
+	return writer.submit(new Op(Op.REVOKE_SUBJECT, null, subject, 0));
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeFamilyAsync(String familyId, String subject) {
+	return writer.submit(new Op(Op.REVOKE_FAMILY, null, subject, 0, familyId));
+    }
+
+    /**
+     * Deletes all rows that expired at or before the given instant.
+     *
+     * @param now the reference time
+     * @return the number of deleted rows
+     */
+    public int purgeExpired(Instant now) {
+	try (Connection c = dataSource.getConnection(); PreparedStatement ps = c.prepareStatement(purgeSql)) {
+	    ps.setLong(1, now.toEpochMilli());
+	    int purged = ps.executeUpdate();
+	    if (!c.getAutoCommit())
+		c.commit();
+	    if (purged > 0)
+		log.debug("🧹 Purged {} expired refresh tokens from {}", purged, table);
+	    return purged;
+	} catch (SQLException e) {
+	    throw new IllegalStateException("Cannot purge expired refresh tokens", e);
+	}
+    }
+
+    /**
+     * Commits pending writes and stops the writer and purge threads.
+     */
+    @Override
+    public void close() {
+	writer.close();
+	if (sweeper != null)
+	    sweeper.close();
+    }
+
+    /**
+     * Writes a batch in one transaction. Consecutive operations of the same type
+     * are sent as one JDBC batch; a type change flushes the previous batch so
+     * the original order is preserved. Saves run all deletes before all
+     * inserts, so a jti saved twice also flushes the run before the second save.
+     */
+    private void flush(List<Op> ops) throws SQLException {
+	try (Connection c = dataSource.getConnection();
+		PreparedStatement insert = c.prepareStatement(insertSql);
+		PreparedStatement delete = c.prepareStatement(deleteSql);
+		PreparedStatement deleteSubject = c.prepareStatement(deleteSubjectSql);
+		PreparedStatement deleteFamily = c.prepareStatement(deleteFamilySql)) {
+	    boolean autoCommit = c.getAutoCommit();
+	    c.setAutoCommit(false);
+	    PreparedStatement consume = null;
+	    List<Runnable> completions = new ArrayList<>();
+	    try {
+		byte pending = 0;
+		Set<String> saved = new HashSet<>();
+		for (Op op : ops) {
+		    if (op.type != pending || op.type == Op.SAVE && !saved.add(op.jti)) {
+			executePending(pending, insert, delete, deleteSubject, deleteFamily);
+			pending = op.type;
+			saved.clear();
+			if (op.type == Op.SAVE)
+			    saved.add(op.jti);
+		    }
+		    switch (op.type) {
+		    case Op.SAVE -> {
+			// re-saving a jti replaces its row
+			delete.setString(1, op.jti);
+			delete.addBatch();
+			insert.setString(1, op.jti);
+			insert.setString(2, op.subject);
+			insert.setLong(3, op.expiresAtMillis);
+			insert.setString(4, op.family);
+			insert.setString(5, encodeRoles(op.roles));
+			insert.addBatch();
+		    }
+		    case Op.REVOKE -> {
+			delete.setString(1, op.jti);
+			delete.addBatch();
+		    }
+		    case Op.REVOKE_SUBJECT -> {
+			deleteSubject.setString(1, op.subject);
+			deleteSubject.addBatch();
+		    }
+		    case Op.REVOKE_FAMILY -> {
+			deleteFamily.setString(1, op.family);
+			deleteFamily.addBatch();
+		    }
+		    case Op.ROTATE -> {
+			if (consume == null)
+			    consume = c.prepareStatement(consumeSql);
+			consume.setString(1, op.newJti);
+			consume.setLong(2, op.expiresAtMillis);
+			consume.setString(3, op.family);
+			consume.setString(4, op.jti);
+			consume.setString(5, op.subject);
+			consume.setLong(6, System.currentTimeMillis());
+			RotationOutcome result = consume.executeUpdate() > 0 ? RotationOutcome.ROTATED
+				: RotationOutcome.REUSED;
+			completions.add(() -> op.outcome.complete(result));
+		    }
+		    default -> throw new IllegalStateException("Unknown operation " + op.type);
+		    }
+		}
+		executePending(pending, insert, delete, deleteSubject, deleteFamily);
+		c.commit();
+		completions.forEach(Runnable::run);
+	    } catch (SQLException | RuntimeException e) {
+		c.rollback();
+		throw e;
+	    } finally {
+		if (consume != null)
+		    consume.close();
+		c.setAutoCommit(autoCommit);
+	    }
+	}
+    }
+
+    private static void executePending(byte type, PreparedStatement insert, PreparedStatement delete,
+	    PreparedStatement deleteSubject, PreparedStatement deleteFamily) throws SQLException {
+	switch (type) {
+	case Op.SAVE -> {
+	    delete.executeBatch();
+	    insert.executeBatch();
+	}
+	case Op.REVOKE -> delete.executeBatch();
+	case Op.REVOKE_SUBJECT -> deleteSubject.executeBatch();
+	case Op.REVOKE_FAMILY -> deleteFamily.executeBatch();
+	default -> {
+	}
+	}
+    }
+
+    private static String encodeRoles(List<String> roles) {
+	return roles != null ? String.join(",", roles) : null;
+    }
+
+    private static List<String> decodeRoles(String roles) {
+	if (roles == null)
+	    return null;
+	return roles.isEmpty() ? List.of() : List.of(roles.split(","));
+    }
+
+    /** Looks the table up as given, in upper case and in lower case. */
+    private boolean tableExists(DatabaseMetaData meta) throws SQLException {
+	for (String candidate : new String[] { table, table.toUpperCase(Locale.ROOT), table.toLowerCase(Locale.ROOT) }) {
+	    int dot = candidate.indexOf('.');
+	    String schema = dot < 0 ? null : candidate.substring(0, dot);
+	    try (ResultSet rs = meta.getTables(null, schema, candidate.substring(dot + 1), new String[] { "TABLE" })) {
+		if (rs.next())
+		    return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * A queued write. For {@code ROTATE}, {@code jti} is the old token and
+     * {@code expiresAtMillis} the expiry of the new one.
+     */
+    private record Op(byte type, String jti, String subject, long expiresAtMillis, String newJti, String family,
+	    List<String> roles, CompletableFuture<RotationOutcome> outcome) {
+	static final byte SAVE = 1;
+	static final byte REVOKE = 2;
+	static final byte REVOKE_SUBJECT = 3;
+	static final byte ROTATE = 4;
+	static final byte REVOKE_FAMILY = 5;
+
+	Op(byte type, String jti, String subject, long expiresAtMillis) {
+	    this(type, jti, subject, expiresAtMillis, null);
+	}
+
+	Op(byte type, String jti, String subject, long expiresAtMillis, String family) {
+	    this(type, jti, subject, expiresAtMillis, null, family, null, null);
+	}
+
+	static Op save(String jti, String subject, long expiresAtMillis, String family, List<String> roles) {
+	    return new Op(SAVE, jti, subject, expiresAtMillis, null, family, roles, null);
+	}
+
+	static Op rotate(String oldJti, String newJti, String subject, Instant expiresAt, String family) {
+	    return new Op(ROTATE, oldJti, subject, expiresAt.toEpochMilli(), newJti, family, null,
+		    new CompletableFuture<>());
+	}
+    }
+}
@@ -0,0 +1,868 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A durable {@link RefreshTokenStore} based on an append-only journal and
+ * periodic snapshots.
+ *
+ * <p>
+ * Every mutation is appended to a write-ahead journal ({@code <path>.journal})
+ * and {@code fsync}ed before the call returns. Concurrent writers are coalesced
+ * by a single writer thread, so one {@code fsync} commits all mutations that
+ * arrived while the previous one was in progress (group commit). Reads are
+ * served from an {@link InMemoryRefreshTokenStore} index that the writer thread
+ * updates in journal order once a batch has been synced, so a failed write
+ * never becomes visible; callers are acknowledged right after. A single write
+ * that cannot be journaled, e.g. because its record would exceed
+ * {@value #MAX_RECORD_SIZE} bytes, fails on its own without affecting the
+ * other writes of its batch.
+ *
+ * <p>
+ * Once the journal holds {@code compactionThreshold} records, the index is
+ * written to a snapshot ({@code <path>.snapshot}) on a background thread while
+ * writes continue. Afterwards, the writer thread replaces the journal with the
+ * records appended since the snapshot started, so writes only stall for
+ * copying those. The snapshot may already contain some of them; replaying the
+ * journal on top of it yields the same state, which also holds after a crash
+ * between the two steps. A failed compaction is logged and retried after
+ * another {@code compactionThreshold} records; the writes themselves are
+ * unaffected.
+ *
+ * <p>
+ * The snapshot is split into independent parts that are replayed in parallel
+ * on startup, followed by a streaming replay of the journal. A torn record at
+ * the end of the journal (e.g. after a crash) is discarded.
+ *
+ * <p>
+ * The {@link AsyncRefreshTokenStore} write methods return a future completed
+ * once the write is durable instead of blocking the caller.
+ *
+ * <p>
+ * The files must not be shared between processes.
+ */
+public class JournalRefreshTokenStore implements RefreshTokenStore, AsyncRefreshTokenStore, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(JournalRefreshTokenStore.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x4A525353; // "JRSS"
+    private static final int MAX_BATCH_SIZE = 4096;
+    /** Maximum size of a record payload; larger ones would be read as torn. */
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    private static final byte SAVE = 1;
+    private static final byte REVOKE = 2;
+    private static final byte REVOKE_SUBJECT = 3;
+    private static final byte ROTATE = 4;
+    private static final byte REVOKE_FAMILY = 5;
+
+    private final Path journalFile;
+    private final Path snapshotFile;
+    private final int compactionThreshold;
+    private final InMemoryRefreshTokenStore index;
+    private final BatchWriter<Op> writer;
+    // the following fields are only used by the writer thread
+    private FileChannel journal;
+    private int journalRecords;
+    /** Number of journal records at which the next compaction starts. */
+    private int compactAt;
+    /** The running compaction, or {@code null}. */
+    private Compaction compaction;
+
+    /**
+     * Opens or creates a store and replays existing snapshot and journal files.
+     *
+     * @param path                the base path; {@code .journal} and
+     *                            {@code .snapshot} are appended
+     * @param compactionThreshold the number of journal records after which a
+     *                            snapshot is taken
+     * @param sweepInterval       the interval at which expired tokens are evicted
+     *                            from the index
+     * @param sweepBatchSize      the maximum number of tokens evicted per tick
+     * @throws UncheckedIOException if the files cannot be read or written
+     */
+    public JournalRefreshTokenStore(Path path, int compactionThreshold, Duration sweepInterval,
+	    int sweepBatchSize) {
+	if (compactionThreshold <= 0)
+	    throw new IllegalArgumentException("compactionThreshold must be > 0");
+
+	Path base = path.toAbsolutePath();
+	this.journalFile = base.resolveSibling(base.getFileName() + ".journal");
+	this.snapshotFile = base.resolveSibling(base.getFileName() + ".snapshot");
+	this.compactionThreshold = compactionThreshold;
+	this.compactAt = compactionThreshold;
+	this.index = new InMemoryRefreshTokenStore(sweepInterval, sweepBatchSize);
+
+	try {
+	    long start = System.nanoTime();
+	    int restored = replaySnapshot();
+	    this.journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+		    StandardOpenOption.WRITE);
+	    this.journalRecords = replayJournal();
+	    log.info("📂 Restored {} refresh token sessions from {} ({} snapshot, {} journal records) in {} ms",
+		    index.size(), base, restored, journalRecords, (System.nanoTime() - start) / 1_000_000);
+	} catch (IOException e) {
+	    index.close();
+	    throw new UncheckedIOException("Cannot open refresh token journal " + journalFile, e);
+	}
+
+	this.writer = new BatchWriter<>("refresh-token-journal", MAX_BATCH_SIZE, Duration.ZERO, this::commit);
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt) {
+	save(jti, subject, expiresAt, null);
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt, String familyId) {
+	save(jti, subject, expiresAt, familyId, null);
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt, String familyId, List<String> roles) {
+	writer.write(Op.save(jti, subject, expiresAt.toEpochMilli(), familyId, roles));
+    }
+
+    @Override
+    public boolean isActive(String jti) {
+	return index.isActive(jti);
+    }
+
+    @Override
+    public String subjectFor(String jti) {
+	return index.subjectFor(jti);
+    }
+
+    @Override
+    public StoredRefreshToken find(String jti) {
+	return index.find(jti);
+    }
+
+    @Override
+    public void revoke(String jti) {
+	writer.write(new Op(REVOKE, jti, null, 0));
+    }
+
+    @Override
+    public void revokeAllForSubject(String subject) {
+	writer.write(new Op(REVOKE_SUBJECT, null, subject, 0));
+    }
+
+    @Override
+    public void revokeFamily(String familyId, String subject) {
+	writer.write(new Op(REVOKE_FAMILY, null, subject, 0, familyId));
+    }
+
+    /**
+     * Journals all tokens with as few {@code fsync}s as the writer's batch size
+     * allows.
+     *
+     * @param tokens the tokens to save
+     */
+    @Override
+    public void saveAll(Collection<StoredRefreshToken> tokens) {
+	List<Op> ops = new ArrayList<>(tokens.size());
+	for (StoredRefreshToken t : tokens) {
+	    ops.add(Op.save(t.jti(), t.subject(), t.expiresAt().toEpochMilli(), t.familyId(), t.roles()));
+	}
+	writer.writeAll(ops);
+    }
+
+    /**
+     * Journals all revocations with as few {@code fsync}s as the writer's batch
+     * size allows.
+     *
+     * @param jtis the token identifiers to revoke
+     */
+    @Override
+    public void revokeAll(Collection<String> jtis) {
+	List<Op> ops = new ArrayList<>(jtis.size());
+	for (String jti : jtis) {
+	    ops.add(new Op(REVOKE, jti, null, 0));
+	}
+	writer.writeAll(ops);
+    }
+
+    @Override
+    public Map<String, Boolean> isActiveAll(Collection<String> jtis) {
+	return index.isActiveAll(jtis);
+    }
+
+    @Override
+    public void forEachToken(Consumer<StoredRefreshToken> action) {
+	index.forEachToken(action);
+    }
+
+    /**
+     * Rotates on the writer thread, which serializes it against all other
+     * writes. Only successful rotations are journaled.
+     */
+    @Override
+    public RotationOutcome rotate(String oldJti, String newJti, String subject, Instant expiresAt,
+	    String familyId) {
+	Op op = Op.rotate(oldJti, newJti, subject, expiresAt, familyId);
+	writer.write(op);
+	return op.outcome.join();
+    }
+
+    @Override
+    public CompletableFuture<RotationOutcome> rotateAsync(String oldJti, String newJti, String subject,
+	    Instant expiresAt, String familyId) {
+	Op op = Op.rotate(oldJti, newJti, subject, expiresAt, familyId);
+	return writer.submit(op).thenCompose(v -> op.outcome);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt) {
+	return saveAsync(jti, subject, expiresAt, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt, String familyId) {
+	return saveAsync(jti, subject, expiresAt, familyId, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt, String familyId,
+	    List<String> roles) {
+	return writer.submit(Op.save(jti, subject, expiresAt.toEpochMilli(), familyId, roles));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isActiveAsync(String jti) {
+	return CompletableFuture.completedFuture(isActive(jti));
+    }
+
+    @Override
+    public CompletableFuture<String> subjectForAsync(String jti) {
+	return CompletableFuture.completedFuture(subjectFor(jti));
+    }
+
+    @Override
+    public CompletableFuture<StoredRefreshToken> findAsync(String jti) {
+	return CompletableFuture.completedFuture(find(jti));
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeAsync(String jti) {
+	return writer.submit(new Op(REVOKE, jti, null, 0));
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeAllForSubjectAsync(String subject) {
+	return writer.submit(new Op(REVOKE_SUBJECT, null, subject, 0));
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeFamilyAsync(String familyId, String subject) {
+	return writer.submit(new Op(REVOKE_FAMILY, null, subject, 0, familyId));
+    }
+
+    /**
+     * Returns the number of stored tokens.
+     *
+     * @return the number of tokens in the index
+     */
+    public int size() {
+	return index.size();
+    }
+
+    /**
+     * Flushes pending writes, waits for a running compaction, stops the writer
+     * and sweeper threads and closes the journal.
+     */
+    @Override
+    public void close() {
+	writer.close();
+	// the writer thread has stopped, so its compaction can be finished here
+	if (compaction != null) {
+	    compaction.snapshot().handle((written, e) -> null).join();
+	    compactIfDue();
+	}
+	index.close();
+	try {
+	    journal.close();
+	} catch (IOException e) {
+	    log.warn("⚠️ Failed to close refresh token journal {}: {}", journalFile, e.getMessage());
+	}
+    }
+
+    // ---------- writing ----------
+
+    /**
+     * Appends a batch to the journal, syncs it and then applies it to the index.
+     * Rotation outcomes are decided against a {@link StagedIndex} first because
+     * they decide whether a rotation is journaled at all; a journaled rotation
+     * records the roles the new token inherited, so it replays even after the
+     * old token has expired. An operation whose record cannot be encoded is
+     * rejected before it is staged. If the write fails, the journal is
+     * truncated back and the index is left untouched.
+     */
+    private void commit(List<Op> ops, ObjIntConsumer<Exception> rejected) throws IOException {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream(ops.size() * 96);
+	StagedIndex staged = new StagedIndex(index);
+	List<Op> records = new ArrayList<>(ops.size());
+	for (int i = 0; i < ops.size(); i++) {
+	    Op op = ops.get(i);
+	    // a rotated token inherits the roles of the old one
+	    Op record = op.type == ROTATE ? op.withRoles(staged.rolesOf(op.jti)) : op;
+	    byte[] encoded;
+	    try {
+		encoded = encode(record);
+	    } catch (IOException e) {
+		rejected.accept(new IllegalArgumentException("Cannot journal refresh token: " + e.getMessage(), e), i);
+		continue;
+	    }
+	    RotationOutcome outcome = staged.apply(op);
+	    if (outcome == RotationOutcome.ROTATED) {
+		bytes.write(encoded);
+		records.add(record);
+	    } else {
+		op.outcome.complete(outcome);
+	    }
+	}
+	if (records.isEmpty())
+	    return;
+
+	long end = journal.size();
+	try {
+	    ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+	    while (buf.hasRemaining()) {
+		journal.write(buf, journal.size());
+	    }
+	    journal.force(false);
+	} catch (IOException e) {
+	    try {
+		journal.truncate(end);
+	    } catch (IOException suppressed) {
+		e.addSuppressed(suppressed);
+	    }
+	    throw e;
+	}
+
+	for (Op record : records) {
+	    if (record.type == ROTATE) {
+		// the sweeper may have evicted the old token in the meantime; the
+		// rotation is durable, so save the new token as replay would
+		if (apply(record) != RotationOutcome.ROTATED)
+		    index.save(record.newJti, record.subject, Instant.ofEpochMilli(record.expiresAtMillis),
+			    record.family, record.roles);
+		record.outcome.complete(RotationOutcome.ROTATED);
+	    } else {
+		apply(record);
+	    }
+	}
+	journalRecords += records.size();
+	compactIfDue();
+    }
+
+    /**
+     * Starts a compaction once the journal has reached the threshold, or
+     * finishes the running one once its snapshot is written. Failures are only
+     * logged: the journal stays complete, and the writes of the batch are
+     * durable already.
+     */
+    private void compactIfDue() {
+	try {
+	    if (compaction == null && journalRecords >= compactAt)
+		compaction = startCompaction();
+	    else if (compaction != null && compaction.snapshot().isDone())
+		finishCompaction();
+	} catch (IOException | RuntimeException e) {
+	    compaction = null;
+	    compactAt = journalRecords + compactionThreshold;
+	    log.warn("⚠️ Failed to compact refresh token journal {}, retrying after {} more records: {}", journalFile,
+		    compactionThreshold, e.getMessage());
+	}
+    }
+
+    /**
+     * Writes the snapshot on a background thread. All records up to the
+     * current end of the journal have been applied to the index.
+     */
+    private Compaction startCompaction() throws IOException {
+	Compaction started = new Compaction(journal.size(), journalRecords, System.nanoTime(),
+		new CompletableFuture<>());
+	Thread thread = new Thread(() -> {
+	    try {
+		started.snapshot().complete(writeSnapshot());
+	    } catch (IOException | RuntimeException e) {
+		started.snapshot().completeExceptionally(e);
+	    }
+	}, "refresh-token-journal-compaction");
+	thread.setDaemon(true);
+	thread.start();
+	return started;
+    }
+
+    /**
+     * Replaces the journal with the records appended since the snapshot
+     * started. The new journal is written next to the old one and atomically
+     * moved over it.
+     */
+    private void finishCompaction() throws IOException {
+	Compaction finished = compaction;
+	compaction = null;
+	int written = finished.snapshot().join();
+
+	Path tmp = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+	FileChannel next = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+		StandardOpenOption.READ, StandardOpenOption.WRITE);
+	try {
+	    long position = finished.journalSize();
+	    long size = journal.size();
+	    while (position < size) {
+		position += journal.transferTo(position, size - position, next);
+	    }
+	    next.force(true);
+	    Files.move(tmp, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	} catch (IOException e) {
+	    next.close();
+	    throw e;
+	}
+
+	FileChannel old = journal;
+	journal = next;
+	journalRecords -= finished.journalRecords();
+	compactAt = compactionThreshold;
+	try {
+	    old.close();
+	} catch (IOException e) {
+	    log.warn("⚠️ Failed to close replaced refresh token journal: {}", e.getMessage());
+	}
+	log.info("🗜️ Compacted refresh token journal into snapshot with {} sessions in {} ms", written,
+		(System.nanoTime() - finished.startNanos()) / 1_000_000);
+    }
+
+    /**
+     * Writes the index to a new snapshot, concurrently with the writer thread.
+     *
+     * @return the number of sessions written
+     */
+    private int writeSnapshot() throws IOException {
+	int parts = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 16));
+	Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+	long nowMillis = System.currentTimeMillis();
+	AtomicInteger written = new AtomicInteger();
+
+	try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+		StandardOpenOption.WRITE)) {
+	    int headerSize = 8 + parts * 16;
+	    ByteBuffer header = ByteBuffer.allocate(headerSize);
+	    header.putInt(SNAPSHOT_MAGIC).putInt(parts);
+	    ch.position(headerSize);
+
+	    OutputStream raw = Channels.newOutputStream(ch);
+	    for (int part = 0; part < parts; part++) {
+		long offset = ch.position();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(raw, 64 * 1024));
+		int p = part;
+		index.forEachSession((jti, subject, exp, family, roles) -> {
+		    if (Math.floorMod(jti.hashCode(), parts) != p || exp.toEpochMilli() <= nowMillis)
+			return;
+		    try {
+			writeRecord(out, Op.save(jti, subject, exp.toEpochMilli(), family, roles));
+			written.incrementAndGet();
+		    } catch (IOException e) {
+			throw new UncheckedIOException(e);
+		    }
+		});
+		out.flush();
+		header.putLong(offset).putLong(ch.position() - offset);
+	    }
+
+	    header.flip();
+	    ch.write(header, 0);
+	    ch.force(true);
+	} catch (UncheckedIOException e) {
+	    throw e.getCause();
+	}
+
+	Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	return written.get();
+    }
+
+    /**
+     * A compaction whose snapshot is being written.
+     *
+     * @param journalSize    the journal size when the snapshot started
+     * @param journalRecords the number of records up to that size
+     * @param startNanos     the start time
+     * @param snapshot       completed with the number of sessions written
+     */
+    private record Compaction(long journalSize, int journalRecords, long startNanos,
+	    CompletableFuture<Integer> snapshot) {
+    }
+
+    /**
+     * Applies an operation to the index. Returns the rotation outcome for
+     * {@code ROTATE}, and {@link RotationOutcome#ROTATED} for all other
+     * operations, which are always journaled.
+     */
+    private RotationOutcome apply(Op op) {
+	switch (op.type) {
+	case SAVE -> index.save(op.jti, op.subject, Instant.ofEpochMilli(op.expiresAtMillis), op.family, op.roles);
+	case REVOKE -> index.revoke(op.jti);
+	case REVOKE_SUBJECT -> index.revokeAllForSubject(op.subject);
+	case REVOKE_FAMILY -> index.revokeFamily(op.family, op.subject);
+	case ROTATE -> {
+	    return index.rotate(op.jti, op.newJti, op.subject, Instant.ofEpochMilli(op.expiresAtMillis), op.family);
+	}
+	default -> throw new IllegalStateException("Unknown journal record type " + op.type);
+	}
+	return RotationOutcome.ROTATED;
+    }
+
+    /**
+     * The index as it will look once the operations of a batch have been
+     * applied, overlaid on the real index without changing it. Only the writer
+     * thread changes the index, so it cannot change underneath the overlay,
+     * apart from the sweeper evicting expired tokens.
+     */
+    private static final class StagedIndex {
+	private final InMemoryRefreshTokenStore index;
+	private final long nowMillis = System.currentTimeMillis();
+	/** Staged tokens; a {@code null} value marks a removed token. */
+	private final Map<String, Entry> tokens = new HashMap<>();
+	/** Staged family heads; a {@code null} value marks a revoked family. */
+	private final Map<String, String> families = new HashMap<>();
+	private final Set<String> revokedSubjects = new HashSet<>();
+
+	StagedIndex(InMemoryRefreshTokenStore index) {
+	    this.index = index;
+	}
+
+	/** Stages an operation, with the same outcome the index would report. */
+	RotationOutcome apply(Op op) {
+	    switch (op.type) {
+	    case SAVE -> put(op.jti, new Entry(op.subject, op.expiresAtMillis, false, op.family, op.roles));
+	    case REVOKE -> tokens.put(op.jti, null);
+	    case REVOKE_SUBJECT -> {
+		revokedSubjects.add(op.subject);
+		tokens.replaceAll((jti, e) -> e != null && !e.consumed() && Objects.equals(e.subject(), op.subject)
+			? null
+			: e);
+	    }
+	    case REVOKE_FAMILY -> {
+		String head = families.containsKey(op.family) ? families.get(op.family)
+			: index.currentOfFamily(op.family);
+		families.put(op.family, null);
+		if (head != null)
+		    tokens.put(head, null);
+	    }
+	    case ROTATE -> {
+		return rotate(op);
+	    }
+	    default -> throw new IllegalStateException("Unknown journal record type " + op.type);
+	    }
+	    return RotationOutcome.ROTATED;
+	}
+
+	/** Returns the roles of a staged or indexed token. */
+	List<String> rolesOf(String jti) {
+	    Entry entry = lookup(jti);
+	    return entry != null ? entry.roles() : null;
+	}
+
+	private RotationOutcome rotate(Op op) {
+	    Entry current = lookup(op.jti);
+	    if (current == null || !Objects.equals(current.subject(), op.subject))
+		return RotationOutcome.UNKNOWN;
+	    if (current.consumed())
+		return RotationOutcome.REUSED;
+	    if (nowMillis >= current.expiresAtMillis())
+		return RotationOutcome.UNKNOWN;
+
+	    tokens.put(op.jti, new Entry(current.subject(), current.expiresAtMillis(), true, current.family(),
+		    current.roles()));
+	    put(op.newJti, new Entry(op.subject, op.expiresAtMillis, false,
+		    op.family != null ? op.family : current.family(), current.roles()));
+	    return RotationOutcome.ROTATED;
+	}
+
+	private void put(String jti, Entry entry) {
+	    tokens.put(jti, entry);
+	    if (entry.family() != null)
+		families.put(entry.family(), jti);
+	}
+
+	private Entry lookup(String jti) {
+	    if (tokens.containsKey(jti))
+		return tokens.get(jti);
+	    StoredRefreshToken token = index.find(jti);
+	    if (token == null)
+		return null;
+	    boolean consumed = index.isConsumed(jti);
+	    if (!consumed && revokedSubjects.contains(token.subject()))
+		return null;
+	    return new Entry(token.subject(), token.expiresAt().toEpochMilli(), consumed, token.familyId(),
+		    token.roles());
+	}
+
+	private record Entry(String subject, long expiresAtMillis, boolean consumed, String family,
+		List<String> roles) {
+	}
+    }
+
+    // ---------- replay ----------
+
+    /** Loads all snapshot parts in parallel. */
+    private int replaySnapshot() throws IOException {
+	if (!Files.exists(snapshotFile))
+	    return 0;
+
+	long[][] parts;
+	try (FileChannel ch = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+	    ByteBuffer head = ByteBuffer.allocate(8);
+	    ch.read(head, 0);
+	    head.flip();
+	    if (head.remaining() < 8 || head.getInt() != SNAPSHOT_MAGIC)
+		throw new IOException("Invalid refresh token snapshot " + snapshotFile);
+
+	    int count = head.getInt();
+	    ByteBuffer table = ByteBuffer.allocate(count * 16);
+	    ch.read(table, 8);
+	    table.flip();
+	    parts = new long[count][2];
+	    for (int i = 0; i < count; i++) {
+		parts[i][0] = table.getLong();
+		parts[i][1] = table.getLong();
+	    }
+	}
+
+	long nowMillis = System.currentTimeMillis();
+	AtomicInteger restored = new AtomicInteger();
+	IntStream.range(0, parts.length).parallel().forEach(i -> {
+	    try (FileChannel ch = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+		ch.position(parts[i][0]);
+		RecordReader reader = new RecordReader(Channels.newInputStream(ch), parts[i][1]);
+		Op op;
+		while ((op = reader.next()) != null) {
+		    if (op.expiresAtMillis > nowMillis) {
+			index.save(op.jti, op.subject, Instant.ofEpochMilli(op.expiresAtMillis), op.family, op.roles);
+			restored.incrementAndGet();
+		    }
+		}
+		if (reader.isTorn())
+		    throw new IOException("Corrupt refresh token snapshot part " + i);
+	    } catch (IOException e) {
+		throw new UncheckedIOException(e);
+	    }
+	});
+	return restored.get();
+    }
+
+    /** Streams the journal and applies it in order; drops a torn tail. */
+    private int replayJournal() throws IOException {
+	long nowMillis = System.currentTimeMillis();
+	RecordReader reader = new RecordReader(Channels.newInputStream(journal.position(0)), Long.MAX_VALUE);
+	int records = 0;
+	Op op;
+	while ((op = reader.next()) != null) {
+	    records++;
+	    if (op.type == ROTATE) {
+		// the rotation succeeded when it was journaled, even if the old token
+		// has expired since
+		if (apply(op) != RotationOutcome.ROTATED && op.expiresAtMillis > nowMillis)
+		    index.save(op.newJti, op.subject, Instant.ofEpochMilli(op.expiresAtMillis), op.family,
+			    op.roles);
+	    } else if (op.type != SAVE || op.expiresAtMillis > nowMillis) {
+		apply(op);
+	    }
+	}
+
+	if (reader.isTorn()) {
+	    log.warn("⚠️ Discarding torn tail of refresh token journal {} at offset {}", journalFile,
+		    reader.validBytes());
+	    journal.truncate(reader.validBytes());
+	    journal.force(true);
+	}
+	return records;
+    }
+
+    // ---------- record format ----------
+
+    /**
+     * Writes a framed record:
+     * {@code [length][crc32][type][jti][subject][exp]([newJti])[family]([roles])}.
+     * The family and the roles are optional when reading, so records written
+     * before they were introduced still replay. Roles are written as a count
+     * followed by the role names.
+     */
+    private static void writeRecord(DataOutputStream out, Op op) throws IOException {
+	out.write(encode(op));
+    }
+
+    /**
+     * Encodes a framed record, see {@link #writeRecord}.
+     *
+     * @throws IOException if a field or the record is too large
+     */
+    private static byte[] encode(Op op) throws IOException {
+	ByteArrayOutputStream payload = new ByteArrayOutputStream(80);
+	DataOutputStream p = new DataOutputStream(payload);
+	p.writeByte(op.type);
+	p.writeUTF(op.jti != null ? op.jti : "");
+	p.writeUTF(op.subject != null ? op.subject : "");
+	p.writeLong(op.expiresAtMillis);
+	if (op.type == ROTATE)
+	    p.writeUTF(op.newJti);
+	p.writeUTF(op.family != null ? op.family : "");
+	if (op.roles != null) {
+	    p.writeShort(op.roles.size());
+	    for (String role : op.roles) {
+		p.writeUTF(role);
+	    }
+	}
+
+	byte[] data = payload.toByteArray();
+	if (data.length > MAX_RECORD_SIZE)
+	    throw new IOException("Refresh token journal record exceeds " + MAX_RECORD_SIZE + " bytes");
+	CRC32 crc = new CRC32();
+	crc.update(data);
+	ByteBuffer record = ByteBuffer.allocate(8 + data.length);
+	record.putInt(data.length).putInt((int) crc.getValue()).put(data);
+	return record.array();
+    }
+
+    /** Streaming reader for framed records. */
+    private static final class RecordReader {
+	private final DataInputStream in;
+	private final long limit;
+	private long validBytes;
+	private boolean torn;
+
+	RecordReader(InputStream in, long limit) {
+	    this.in = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+	    this.limit = limit;
+	}
+
+	/** Returns the next record, or {@code null} at the end or at a torn record. */
+	Op next() throws IOException {
+	    if (torn || validBytes >= limit)
+		return null;
+	    try {
+		int length;
+		try {
+		    length = in.readInt();
+		} catch (EOFException e) {
+		    return null;
+		}
+		int checksum = in.readInt();
+		if (length <= 0 || length > MAX_RECORD_SIZE || validBytes + 8 + length > limit) {
+		    torn = true;
+		    return null;
+		}
+		byte[] data = new byte[length];
+		in.readFully(data);
+
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		if ((int) crc.getValue() != checksum) {
+		    torn = true;
+		    return null;
+		}
+
+		DataInputStream p = new DataInputStream(new ByteArrayInputStream(data));
+		byte type = p.readByte();
+		String jti = emptyToNull(p.readUTF());
+		String subject = emptyToNull(p.readUTF());
+		long expiresAtMillis = p.readLong();
+		String newJti = type == ROTATE ? p.readUTF() : null;
+		String family = p.available() > 0 ? emptyToNull(p.readUTF()) : null;
+		List<String> roles = null;
+		if (p.available() > 0) {
+		    String[] names = new String[p.readUnsignedShort()];
+		    for (int i = 0; i < names.length; i++) {
+			names[i] = p.readUTF();
+		    }
+		    roles = List.of(names);
+		}
+		Op op = new Op(type, jti, subject, expiresAtMillis, newJti, family, roles, null);
+		validBytes += 8 + length;
+		return op;
+	    } catch (EOFException e) {
+		torn = true;
+		return null;
+	    }
+	}
+
+	boolean isTorn() {
+	    return torn;
+	}
+
+	long validBytes() {
+	    return validBytes;
+	}
+
+	private static String emptyToNull(String s) {
+	    return s.isEmpty() ? null : s;
+	}
+    }
+
+    /**
+     * A journaled operation. For {@code ROTATE}, {@code jti} is the old token
+     * and {@code expiresAtMillis} the expiry of the new one.
+     */
+    private record Op(byte type, String jti, String subject, long expiresAtMillis, String newJti, String family,
+	    List<String> roles, CompletableFuture<RotationOutcome> outcome) {
+
+	Op(byte type, String jti, String subject, long expiresAtMillis) {
+	    this(type, jti, subject, expiresAtMillis, null);
+	}
+
+	Op(byte type, String jti, String subject, long expiresAtMillis, String family) {
+	    this(type, jti, subject, expiresAtMillis, null, family, null, null);
+	}
+
+	static Op save(String jti, String subject, long expiresAtMillis, String family, List<String> roles) {
+	    return new Op(SAVE, jti, subject, expiresAtMillis, null, family, roles, null);
+	}
+
+	static Op rotate(String oldJti, String newJti, String subject, Instant expiresAt, String family) {
+	    return new Op(ROTATE, oldJti, subject, expiresAt.toEpochMilli(), newJti, family, null,
+		    new CompletableFuture<>());
+	}
+
+	Op withRoles(List<String> roles) {
+	    return new Op(type, jti, subject, expiresAtMillis, newJti, family, roles, outcome);
+	}
+    }
+}
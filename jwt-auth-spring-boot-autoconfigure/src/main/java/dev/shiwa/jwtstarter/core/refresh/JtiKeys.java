@@ -0,0 +1,63 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+
+/**
+ * Encodes token identifiers (JTI) as fixed-width 128-bit keys for the
+ * primitive and off-heap stores.
+ */
+final class JtiKeys {
+
+    private JtiKeys() {
+    }
+
+    /**
+     * Encodes a JTI as 128 bits: the UUID itself, or the first 128 bits of its
+     * SHA-256 digest for other identifier formats.
+     *
+     * @param jti the token identifier
+     * @return the 128-bit key
+     */
+    static UUID key(String jti) {
+	if (isUuid(jti)) {
+	    try {
+		return UUID.fromString(jti);
+	    } catch (IllegalArgumentException e) {
+		// not hex, fall through to hashing
+	    }
+	}
+
+	ByteBuffer hash = ByteBuffer.wrap(sha256(jti));
+	return new UUID(hash.getLong(), hash.getLong());
+    }
+
+    /**
+     * Spreads the bits of a 128-bit key for use as a hash table index.
+     *
+     * @param hi the most significant bits
+     * @param lo the least significant bits
+     * @return the mixed hash
+     */
+    static long mix(long hi, long lo) {
+	long h = hi ^ Long.rotateLeft(lo, 32);
+	h *= 0x9E3779B97F4A7C15L;
+	return h ^ (h >>> 29);
+    }
+
+    private static boolean isUuid(String jti) {
+	return jti.length() == 36 && jti.charAt(8) == '-' && jti.charAt(13) == '-' && jti.charAt(18) == '-'
+		&& jti.charAt(23) == '-';
+    }
+
+    private static byte[] sha256(String value) {
+	try {
+	    return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+	} catch (NoSuchAlgorithmException e) {
+	    throw new IllegalStateException("SHA-256 not available", e);
+	}
+    }
+}
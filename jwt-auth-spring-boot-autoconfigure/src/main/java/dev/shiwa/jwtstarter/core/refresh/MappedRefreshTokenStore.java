@@ -0,0 +1,491 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.shiwa.jwtstarter.core.expiry.ExpirySweeper;
+
+/**
+ * A {@link RefreshTokenStore} backed by a memory-mapped file.
+ *
+ * <p>
+ * Sessions live off heap in a fixed-slot, open-addressing hash table inside the
+ * mapped file, so the store adds no GC pressure and its content survives
+ * application restarts. Each slot has a fixed size of {@value #SLOT_SIZE}
+ * bytes:
+ *
+ * <pre>
+ *  0  state (1 byte)      empty / used / deleted
+ *  4  crc32 (4 bytes)     checksum over bytes 8..(34 + subject length)
+ *  8  key (16 bytes)      128-bit JTI key (UUID bits or SHA-256 prefix)
+ * 24  expiry (8 bytes)    epoch millis
+ * 32  length (2 bytes)    subject length in UTF-8 bytes
+ * 34  subject             up to {@value #MAX_SUBJECT_BYTES} bytes
+ * </pre>
+ *
+ * <p>
+ * On startup, every used slot is validated against its checksum; torn or
+ * expired entries are skipped and the remaining sessions are rehashed into a
+ * fresh file. The table grows by writing a larger file and remapping it, up to
+ * {@link #MAX_CAPACITY} slots, the most a single mapped buffer can address.
+ *
+ * <p>
+ * Writes go to the OS page cache and are flushed on {@link #close()}; they
+ * survive a process restart, but not necessarily a machine crash. The file
+ * must not be shared between processes.
+ */
+public class MappedRefreshTokenStore implements RefreshTokenStore, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedRefreshTokenStore.class);
+
+    /** Size of a slot in bytes. */
+    public static final int SLOT_SIZE = 128;
+
+    /** Maximum length of a subject in UTF-8 bytes. */
+    public static final int MAX_SUBJECT_BYTES = SLOT_SIZE - 34;
+
+    private static final int MAGIC = 0x4A525453; // "JRTS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    /** Maximum number of slots; a mapped buffer is indexed by {@code int}. */
+    public static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE;
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private static final byte EMPTY = 0;
+    private static final byte USED = 1;
+    private static final byte DELETED = 2;
+
+    private final Path file;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongAdder evicted = new LongAdder();
+    private final ExpirySweeper sweeper;
+
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+    private int deleted;
+
+    /**
+     * Opens or creates a store without a background sweeper.
+     *
+     * @param file            the backing file
+     * @param initialCapacity the initial number of slots for a new file
+     */
+    public MappedRefreshTokenStore(Path file, int initialCapacity) {
+	this(file, initialCapacity, null);
+    }
+
+    /**
+     * Opens or creates a store.
+     *
+     * <p>
+     * If the file exists, its live sessions are loaded and rehashed into a fresh
+     * table; expired and corrupt entries are dropped.
+     *
+     * @param file            the backing file
+     * @param initialCapacity the initial number of slots for a new file
+     * @param sweepInterval   the interval at which expired sessions are purged, or
+     *                        {@code null} to disable the background sweeper
+     * @throws UncheckedIOException     if the file cannot be read or written
+     * @throws IllegalArgumentException if {@code initialCapacity} exceeds
+     *                                  {@link #MAX_CAPACITY}
+     */
+    public MappedRefreshTokenStore(Path file, int initialCapacity, Duration sweepInterval) {
+	if (initialCapacity > MAX_CAPACITY)
+	    throw new IllegalArgumentException("initialCapacity must be <= " + MAX_CAPACITY);
+	this.file = file.toAbsolutePath();
+
+	long start = System.nanoTime();
+	List<Entry> live = load();
+	rebuild((int) Math.min(MAX_CAPACITY, Math.max(initialCapacity, live.size() * 2L)), live);
+	log.info("📂 Loaded {} refresh token sessions from {} in {} ms", live.size(), this.file,
+		(System.nanoTime() - start) / 1_000_000);
+
+	this.sweeper = sweepInterval == null ? null
+		: new ExpirySweeper("mapped-refresh-token-sweeper", sweepInterval, () -> {
+		    int purged = evictExpired(Instant.now());
+		    if (purged > 0)
+			log.debug("🧹 Evicted {} expired refresh tokens, {} remaining", purged, size());
+		});
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt) {
+	byte[] subjectBytes = subject.getBytes(StandardCharsets.UTF_8);
+	if (subjectBytes.length > MAX_SUBJECT_BYTES)
+	    throw new IllegalArgumentException("Subject exceeds " + MAX_SUBJECT_BYTES + " bytes: " + subject);
+
+	UUID key = JtiKeys.key(jti);
+	lock.writeLock().lock();
+	try {
+	    if ((size + deleted + 1) * 10L > capacity * 7L)
+		rebuild(grownCapacity(), liveEntries(System.currentTimeMillis()));
+
+	    int firstDeleted = -1;
+	    int i = slot(key.getMostSignificantBits(), key.getLeastSignificantBits());
+	    while (true) {
+		byte state = buffer.get(offset(i));
+		if (state == EMPTY)
+		    break;
+		if (state == DELETED) {
+		    if (firstDeleted < 0)
+			firstDeleted = i;
+		} else if (matches(i, key)) {
+		    writeSlot(i, key, expiresAt.toEpochMilli(), subjectBytes);
+		    return;
+		}
+		i = (i + 1) % capacity;
+	    }
+
+	    if (firstDeleted >= 0) {
+		i = firstDeleted;
+		deleted--;
+	    }
+	    writeSlot(i, key, expiresAt.toEpochMilli(), subjectBytes);
+	    size++;
+	} finally {
+	    lock.writeLock().unlock();
+	}
+    }
+
+    @Override
+    public boolean isActive(String jti) {
+	UUID key = JtiKeys.key(jti);
+	lock.readLock().lock();
+	try {
+	    int i = find(key);
+	    return i >= 0 && System.currentTimeMillis() < buffer.getLong(offset(i) + 24);
+	} finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    @Override
+    public String subjectFor(String jti) {
+	UUID key = JtiKeys.key(jti);
+	lock.readLock().lock();
+	try {
+	    int i = find(key);
+	    return i >= 0 ? readSubject(i) : null;
+	} finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    @Override
+    public void revoke(String jti) {
+	UUID key = JtiKeys.key(jti);
+	lock.writeLock().lock();
+	try {
+	    int i = find(key);
+	    if (i >= 0)
+		clear(i);
+	} finally {
+	    lock.writeLock().unlock();
+	}
+    }
+
+    /**
+     * Consumes the old token and saves the new one under a single write lock.
+     * The new token is written first, so a save that fails (e.g. because the
+     * store is full) leaves the old token usable. Consumed tokens are not
+     * remembered, so every inactive token is reported as
+     * {@link RotationOutcome#REUSED}. Token families are not tracked.
+     */
+    @Override
+    public RotationOutcome rotate(String oldJti, String newJti, String subject, Instant expiresAt,
+	    String familyId) {
+	UUID key = JtiKeys.key(oldJti);
+	byte[] subjectBytes = subject.getBytes(StandardCharsets.UTF_8);
+	lock.writeLock().lock();
+	try {
+	    int i = find(key);
+	    if (i < 0 || System.currentTimeMillis() >= buffer.getLong(offset(i) + 24) || !subjectEquals(i, subjectBytes))
+		return RotationOutcome.REUSED;
+	    // saving may rebuild the table and move the old slot
+	    save(newJti, subject, expiresAt);
+	    clear(find(key));
+	    return RotationOutcome.ROTATED;
+	} finally {
+	    lock.writeLock().unlock();
+	}
+    }
+
+    @Override
+    public void revokeAllForSubject(String subject) {
+	byte[] subjectBytes = subject.getBytes(StandardCharsets.UTF_8);
+	lock.writeLock().lock();
+	try {
+	    for (int i = 0; i < capacity; i++) {
+		if (buffer.get(offset(i)) == USED && subjectEquals(i, subjectBytes))
+		    clear(i);
+	    }
+	} finally {
+	    lock.writeLock().unlock();
+	}
+    }
+
+    /**
+     * Removes all sessions that expired before {@code now}.
+     *
+     * @param now the reference time
+     * @return the number of removed sessions
+     */
+    public int evictExpired(Instant now) {
+	long nowMillis = now.toEpochMilli();
+	int count = 0;
+	lock.writeLock().lock();
+	try {
+	    for (int i = 0; i < capacity; i++) {
+		int off = offset(i);
+		if (buffer.get(off) == USED && buffer.getLong(off + 24) <= nowMillis) {
+		    clear(i);
+		    count++;
+		}
+	    }
+	} finally {
+	    lock.writeLock().unlock();
+	}
+	evicted.add(count);
+	return count;
+    }
+
+    /**
+     * Returns the number of stored sessions, including expired sessions that
+     * have not been evicted yet.
+     *
+     * @return the number of sessions
+     */
+    public int size() {
+	lock.readLock().lock();
+	try {
+	    return size;
+	} finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    /**
+     * Returns the total number of expired sessions evicted since creation.
+     *
+     * @return the eviction count
+     */
+    public long getEvictedCount() {
+	return evicted.sum();
+    }
+
+    /**
+     * Stops the background sweeper and flushes the mapped file to disk.
+     */
+    @Override
+    public void close() {
+	if (sweeper != null)
+	    sweeper.close();
+	lock.writeLock().lock();
+	try {
+	    buffer.force();
+	} finally {
+	    lock.writeLock().unlock();
+	}
+    }
+
+    // ---------- file handling ----------
+
+    /** Reads all valid, unexpired sessions from an existing file. */
+    private List<Entry> load() {
+	if (!Files.exists(file))
+	    return List.of();
+
+	try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+	    if (ch.size() < HEADER_SIZE || ch.size() > HEADER_SIZE + (long) MAX_CAPACITY * SLOT_SIZE) {
+		log.warn("⚠️ Ignoring refresh token store {} of unsupported size {}", file, ch.size());
+		return List.of();
+	    }
+	    MappedByteBuffer existing = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+	    if (existing.getInt(0) != MAGIC || existing.getInt(4) != VERSION
+		    || ch.size() != HEADER_SIZE + (long) existing.getInt(8) * SLOT_SIZE) {
+		log.warn("⚠️ Ignoring refresh token store {} with unknown or damaged header", file);
+		return List.of();
+	    }
+
+	    this.buffer = existing;
+	    this.capacity = existing.getInt(8);
+	    List<Entry> entries = liveEntries(System.currentTimeMillis());
+	    this.buffer = null;
+	    return entries;
+	} catch (IOException e) {
+	    throw new UncheckedIOException("Cannot read refresh token store " + file, e);
+	}
+    }
+
+    /**
+     * Collects all used slots with a valid checksum whose expiry lies after
+     * {@code notExpiredAt}.
+     */
+    private List<Entry> liveEntries(long notExpiredAt) {
+	List<Entry> entries = new ArrayList<>();
+	int corrupt = 0;
+	for (int i = 0; i < capacity; i++) {
+	    int off = offset(i);
+	    if (buffer.get(off) != USED)
+		continue;
+	    if (buffer.getInt(off + 4) != checksum(off)) {
+		corrupt++;
+		continue;
+	    }
+	    long exp = buffer.getLong(off + 24);
+	    if (exp > notExpiredAt)
+		entries.add(new Entry(new UUID(buffer.getLong(off + 8), buffer.getLong(off + 16)), exp,
+			readSubjectBytes(i)));
+	}
+	if (corrupt > 0)
+	    log.warn("⚠️ Skipped {} corrupt refresh token slots in {}", corrupt, file);
+	return entries;
+    }
+
+    /**
+     * Returns the capacity to grow to, or fails if the table cannot grow any
+     * further.
+     */
+    private int grownCapacity() {
+	if ((size + 1L) * 10 > MAX_CAPACITY * 7L)
+	    throw new IllegalStateException("Refresh token store " + file + " is full (" + size + " sessions)");
+	return (int) Math.min(MAX_CAPACITY, Math.max(capacity, (size + 1L) * 2));
+    }
+
+    /**
+     * Writes the given entries into a new file with the given capacity and
+     * atomically replaces the current file with it.
+     */
+    private void rebuild(int newCapacity, List<Entry> entries) {
+	int slots = Math.max(MIN_CAPACITY, newCapacity);
+	Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+	try {
+	    Files.deleteIfExists(tmp);
+	    try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+		    StandardOpenOption.WRITE)) {
+		MappedByteBuffer next = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * SLOT_SIZE);
+		next.putInt(0, MAGIC);
+		next.putInt(4, VERSION);
+		next.putInt(8, slots);
+
+		this.buffer = next;
+		this.capacity = slots;
+		this.size = 0;
+		this.deleted = 0;
+		for (Entry e : entries) {
+		    int i = slot(e.key.getMostSignificantBits(), e.key.getLeastSignificantBits());
+		    while (buffer.get(offset(i)) != EMPTY) {
+			i = (i + 1) % capacity;
+		    }
+		    writeSlot(i, e.key, e.expiresAtMillis, e.subject);
+		    size++;
+		}
+		next.force();
+	    }
+	    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	} catch (IOException e) {
+	    throw new UncheckedIOException("Cannot write refresh token store " + file, e);
+	}
+    }
+
+    // ---------- slot access ----------
+
+    private int find(UUID key) {
+	int i = slot(key.getMostSignificantBits(), key.getLeastSignificantBits());
+	for (int n = 0; n < capacity; n++) {
+	    byte state = buffer.get(offset(i));
+	    if (state == EMPTY)
+		return -1;
+	    if (state == USED && matches(i, key))
+		return i;
+	    i = (i + 1) % capacity;
+	}
+	return -1;
+    }
+
+    private boolean matches(int i, UUID key) {
+	int off = offset(i);
+	return buffer.getLong(off + 8) == key.getMostSignificantBits()
+		&& buffer.getLong(off + 16) == key.getLeastSignificantBits();
+    }
+
+    private void writeSlot(int i, UUID key, long expiresAtMillis, byte[] subject) {
+	int off = offset(i);
+	buffer.putLong(off + 8, key.getMostSignificantBits());
+	buffer.putLong(off + 16, key.getLeastSignificantBits());
+	buffer.putLong(off + 24, expiresAtMillis);
+	buffer.putShort(off + 32, (short) subject.length);
+	buffer.put(off + 34, subject);
+	buffer.putInt(off + 4, checksum(off));
+	buffer.put(off, USED);
+    }
+
+    private void clear(int i) {
+	buffer.put(offset(i), DELETED);
+	size--;
+	deleted++;
+    }
+
+    private String readSubject(int i) {
+	return new String(readSubjectBytes(i), StandardCharsets.UTF_8);
+    }
+
+    private byte[] readSubjectBytes(int i) {
+	int off = offset(i);
+	byte[] subject = new byte[Math.min(buffer.getShort(off + 32), MAX_SUBJECT_BYTES)];
+	buffer.get(off + 34, subject);
+	return subject;
+    }
+
+    private boolean subjectEquals(int i, byte[] subject) {
+	int off = offset(i);
+	if (buffer.getShort(off + 32) != subject.length)
+	    return false;
+	for (int b = 0; b < subject.length; b++) {
+	    if (buffer.get(off + 34 + b) != subject[b])
+		return false;
+	}
+	return true;
+    }
+
+    private int checksum(int off) {
+	int length = Math.min(Math.max(buffer.getShort(off + 32), 0), MAX_SUBJECT_BYTES);
+	CRC32 crc = new CRC32();
+	crc.update(buffer.slice(off + 8, 26 + length));
+	return (int) crc.getValue();
+    }
+
+    private int slot(long hi, long lo) {
+	return (int) Long.remainderUnsigned(JtiKeys.mix(hi, lo), capacity);
+    }
+
+    private static int offset(int slot) {
+	// below MAX_CAPACITY, the long offset fits the int index of the buffer
+	return (int) (HEADER_SIZE + (long) slot * SLOT_SIZE);
+    }
+
+    private record Entry(UUID key, long expiresAtMillis, byte[] subject) {
+    }
+}
@@ -0,0 +1,75 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Opaque refresh tokens: 256-bit random strings without claims or signature.
+ *
+ * <p>
+ * The store only ever sees the SHA-256 of a token (its key), so a leaked store
+ * does not reveal usable tokens. A refresh then costs one hash and one store
+ * lookup instead of verifying and parsing a JWT, and the token is 43
+ * characters instead of several hundred.
+ */
+public final class OpaqueRefreshTokens {
+
+    /** Length of a token: 32 random bytes in unpadded base64url. */
+    public static final int TOKEN_LENGTH = 43;
+
+    private static final int TOKEN_BYTES = 32;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+	try {
+	    return MessageDigest.getInstance("SHA-256");
+	} catch (NoSuchAlgorithmException e) {
+	    throw new IllegalStateException("SHA-256 not available", e);
+	}
+    });
+
+    private OpaqueRefreshTokens() {
+    }
+
+    /**
+     * Generates a new token.
+     *
+     * @return 32 random bytes from a {@link SecureRandom} in unpadded base64url
+     */
+    public static String generate() {
+	byte[] bytes = new byte[TOKEN_BYTES];
+	RANDOM.nextBytes(bytes);
+	return ENCODER.encodeToString(bytes);
+    }
+
+    /**
+     * Computes the store key of a token.
+     *
+     * @param token the token
+     * @return the SHA-256 of the token in unpadded base64url
+     */
+    public static String key(String token) {
+	return ENCODER.encodeToString(SHA_256.get().digest(token.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * Checks whether a string has the shape of a token, so malformed input is
+     * rejected without a store lookup.
+     *
+     * @param token the presented token, may be {@code null}
+     * @return {@code true} if it is 43 base64url characters
+     */
+    public static boolean isWellFormed(String token) {
+	if (token == null || token.length() != TOKEN_LENGTH)
+	    return false;
+	for (int i = 0; i < TOKEN_LENGTH; i++) {
+	    char c = token.charAt(i);
+	    if (!(c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '-' || c == '_'))
+		return false;
+	}
+	return true;
+    }
+}
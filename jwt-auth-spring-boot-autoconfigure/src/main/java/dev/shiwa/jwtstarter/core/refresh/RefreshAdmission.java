@@ -0,0 +1,152 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import dev.shiwa.jwtstarter.core.error.RefreshThrottledException;
+
+/**
+ * Admission control for {@link RefreshTokenService}: a global and a
+ * per-subject {@link TokenBucket}.
+ *
+ * <p>
+ * When many clients refresh at the same moment, e.g. after all of them logged
+ * in during the same minute, the global bucket sheds the excess before the
+ * store is updated and tells the clients when to come back. The per-subject
+ * buckets stop a single misbehaving client from refreshing in a tight loop.
+ * They are checked first, so a client throttled by its own limit does not use
+ * up the global one. A rate of {@code 0} disables the respective bucket.
+ *
+ * <p>
+ * Subject buckets are created on first use and dropped, once full again, when
+ * the map has grown past twice its last size after a purge. The counters make
+ * refresh storms visible.
+ */
+public class RefreshAdmission {
+
+    private static final int MIN_PURGE_THRESHOLD = 1024;
+
+    private final TokenBucket global;
+    private final double subjectPermitsPerSecond;
+    private final int subjectBurst;
+    private final ConcurrentMap<String, TokenBucket> subjects = new ConcurrentHashMap<>();
+    private final AtomicBoolean purging = new AtomicBoolean();
+    private volatile int purgeThreshold = MIN_PURGE_THRESHOLD;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder globalRejected = new LongAdder();
+    private final LongAdder subjectRejected = new LongAdder();
+
+    /**
+     * Creates an admission controller.
+     *
+     * @param globalPermitsPerSecond  refreshes per second across all subjects,
+     *                                or {@code 0} for no limit
+     * @param globalBurst             the number of refreshes admitted at once
+     *                                across all subjects
+     * @param subjectPermitsPerSecond refreshes per second of a single subject,
+     *                                or {@code 0} for no limit
+     * @param subjectBurst            the number of refreshes of a single
+     *                                subject admitted at once
+     */
+    public RefreshAdmission(double globalPermitsPerSecond, int globalBurst, double subjectPermitsPerSecond,
+	    int subjectBurst) {
+	this.global = globalPermitsPerSecond > 0 ? new TokenBucket(globalPermitsPerSecond, globalBurst) : null;
+	if (subjectPermitsPerSecond > 0 && subjectBurst <= 0)
+	    throw new IllegalArgumentException("subjectBurst must be > 0");
+	this.subjectPermitsPerSecond = subjectPermitsPerSecond;
+	this.subjectBurst = subjectBurst;
+    }
+
+    /**
+     * Admits a refresh of the given subject against the per-subject and then
+     * the global limit and counts it as admitted. Called once the subject is
+     * known and before the store is updated. If the global limit rejects the
+     * refresh, the subject's permit is returned.
+     *
+     * @param subject the subject of the refresh token
+     * @throws RefreshThrottledException if either limit is exhausted
+     */
+    public void acquire(String subject) {
+	TokenBucket bucket = subjectBucket(subject);
+	if (bucket != null) {
+	    long retryAfter = bucket.tryAcquire();
+	    if (retryAfter > 0) {
+		subjectRejected.increment();
+		throw new RefreshThrottledException("Too many refreshes for this subject, retry later", retryAfter);
+	    }
+	}
+	if (global != null) {
+	    long retryAfter = global.tryAcquire();
+	    if (retryAfter > 0) {
+		globalRejected.increment();
+		if (bucket != null)
+		    bucket.release();
+		throw new RefreshThrottledException("Too many refreshes, retry later", retryAfter);
+	    }
+	}
+	admitted.increment();
+    }
+
+    private TokenBucket subjectBucket(String subject) {
+	if (subjectPermitsPerSecond <= 0 || subject == null)
+	    return null;
+	TokenBucket bucket = subjects.get(subject);
+	if (bucket == null) {
+	    bucket = subjects.computeIfAbsent(subject, s -> new TokenBucket(subjectPermitsPerSecond, subjectBurst));
+	    if (subjects.size() > purgeThreshold)
+		purge();
+	}
+	return bucket;
+    }
+
+    private void purge() {
+	if (!purging.compareAndSet(false, true))
+	    return;
+	try {
+	    subjects.values().removeIf(TokenBucket::isFull);
+	    purgeThreshold = Math.max(MIN_PURGE_THRESHOLD, subjects.size() * 2);
+	} finally {
+	    purging.set(false);
+	}
+    }
+
+    /**
+     * Returns the number of refreshes that passed both limits.
+     *
+     * @return the number of admitted refreshes
+     */
+    public long getAdmittedCount() {
+	return admitted.sum();
+    }
+
+    /**
+     * Returns the number of refreshes rejected by the global limit.
+     *
+     * @return the number of rejections
+     */
+    public long getGlobalRejectedCount() {
+	return globalRejected.sum();
+    }
+
+    /**
+     * Returns the number of refreshes rejected by a per-subject limit.
+     *
+     * @return the number of rejections
+     */
+    public long getSubjectRejectedCount() {
+	return subjectRejected.sum();
+    }
+
+    /**
+     * Returns the number of subjects with a bucket, including full ones not
+     * purged yet.
+     *
+     * @return the number of tracked subjects
+     */
+    public int getTrackedSubjectCount() {
+	return subjects.size();
+    }
+}
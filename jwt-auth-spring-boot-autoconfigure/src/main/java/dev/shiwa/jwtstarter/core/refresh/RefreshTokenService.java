@@ -1,24 +1,60 @@
 package dev.shiwa.jwtstarter.core.refresh;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties;
+import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties.RefreshTokenFormat;
 import dev.shiwa.jwtstarter.core.JwtTokenGenerator;
 import dev.shiwa.jwtstarter.core.JwtTokenVerifier;
 import dev.shiwa.jwtstarter.core.error.JwtAuthException;
 import dev.shiwa.jwtstarter.core.error.JwtErrorCode;
+import dev.shiwa.jwtstarter.core.error.RefreshThrottledException;
+import dev.shiwa.jwtstarter.core.revocation.SubjectRevocationEpochs;
 import io.jsonwebtoken.Claims;
 
 /**
  * Service for handling refresh token flows, including rotation, reuse
  * detection, and issuing new access/refresh tokens.
+ *
+ * <p>
+ * With a grace window ({@code jwt.auth.refreshGraceWindowMillis}), the result
+ * of a refresh is kept for that long, keyed by the presented refresh token.
+ * Repeated refreshes with the same token, e.g. client retries on a flaky
+ * network, receive the same tokens instead of being treated as reuse, and
+ * concurrent duplicates wait for the one refresh in flight (single flight).
+ * Failed refreshes are not kept.
+ *
+ * <p>
+ * With a {@link RefreshAdmission}, a refresh first takes a permit from the
+ * global bucket and, once the subject is known, from the subject's bucket.
+ * JWT refresh tokens are verified before, so forged or expired tokens cannot
+ * drain the global bucket; opaque ones take the permit before the store
+ * lookup. Refreshes over the limit fail with a {@link RefreshThrottledException}
+ * carrying a retry-after. Duplicates served from the grace window take no
+ * permit.
  */
 public class RefreshTokenService {
 
+    /** Minimum number of grace entries before expired ones are purged. */
+    private static final int GRACE_PURGE_THRESHOLD = 1024;
+
     private final JwtTokenVerifier verifier;
     private final JwtTokenGenerator generator;
     private final RefreshTokenStore store;
+    private final AsyncRefreshTokenStore asyncStore;
     private final JwtAuthProperties props;
+    private final SubjectRevocationEpochs epochs;
+    private final RefreshAdmission admission;
+    private final ConcurrentMap<String, GraceEntry> grace = new ConcurrentHashMap<>();
+    private final AtomicBoolean purging = new AtomicBoolean();
+    private volatile int gracePurgeThreshold = GRACE_PURGE_THRESHOLD;
 
     /**
      * Creates a new {@link RefreshTokenService}.
@@ -29,10 +65,93 @@ public class RefreshTokenService {
      * @param p the JWT auth properties (configuration flags)
      */
     public RefreshTokenService(JwtTokenVerifier v, JwtTokenGenerator g, RefreshTokenStore s, JwtAuthProperties p) {
+	this(v, g, s, AsyncRefreshTokenStore.of(s, Runnable::run), p);
+    }
+
+    /**
+     * Creates a new {@link RefreshTokenService} with a dedicated asynchronous
+     * view of the store, used by {@link #refreshAsync(String)}.
+     *
+     * @param v the JWT verifier used to validate and parse tokens
+     * @param g the JWT generator used to create new tokens
+     * @param s the refresh token store used for persistence and revocation
+     * @param a the asynchronous view of the same store
+     * @param p the JWT auth properties (configuration flags)
+     */
+    public RefreshTokenService(JwtTokenVerifier v, JwtTokenGenerator g, RefreshTokenStore s, AsyncRefreshTokenStore a,
+	    JwtAuthProperties p) {
+	this(v, g, s, a, p, null);
+    }
+
+    /**
+     * Creates a new {@link RefreshTokenService} that also invalidates the
+     * subject's access tokens when refresh token reuse is detected.
+     *
+     * @param v the JWT verifier used to validate and parse tokens
+     * @param g the JWT generator used to create new tokens
+     * @param s the refresh token store used for persistence and revocation
+     * @param a the asynchronous view of the same store
+     * @param p the JWT auth properties (configuration flags)
+     * @param e the per-subject revocation epochs checked by the verifier, or
+     *          {@code null}
+     */
+    public RefreshTokenService(JwtTokenVerifier v, JwtTokenGenerator g, RefreshTokenStore s, AsyncRefreshTokenStore a,
+	    JwtAuthProperties p, SubjectRevocationEpochs e) {
+	this(v, g, s, a, p, e, null);
+    }
+
+    /**
+     * Creates a new {@link RefreshTokenService} whose refreshes pass admission
+     * control.
+     *
+     * @param v the JWT verifier used to validate and parse tokens
+     * @param g the JWT generator used to create new tokens
+     * @param s the refresh token store used for persistence and revocation
+     * @param a the asynchronous view of the same store
+     * @param p the JWT auth properties (configuration flags)
+     * @param e the per-subject revocation epochs checked by the verifier, or
+     *          {@code null}
+     * @param r the admission control applied to refreshes, or {@code null}
+     */
+    public RefreshTokenService(JwtTokenVerifier v, JwtTokenGenerator g, RefreshTokenStore s, AsyncRefreshTokenStore a,
+	    JwtAuthProperties p, SubjectRevocationEpochs e, RefreshAdmission r) {
 	this.verifier = v;
 	this.generator = g;
 	this.store = s;
+	this.asyncStore = a;
 	this.props = p;
+	this.epochs = e;
+	this.admission = r;
+    }
+
+    /**
+     * Issues the tokens of a new login session: an access token with the given
+     * roles and a refresh token starting a new token family, which is saved to
+     * the store.
+     * <p>
+     * With {@link RefreshTokenFormat#OPAQUE}, the refresh token is a random
+     * string (see {@link OpaqueRefreshTokens}) and the store keeps its key
+     * together with subject, roles and expiry. Otherwise it is a signed JWT
+     * carrying the roles in {@link JwtTokenGenerator#REFRESH_ROLES_CLAIM}.
+     *
+     * @param subject the authenticated subject
+     * @param roles   the roles granted to the subject
+     * @return a {@link Tokens} record containing the access and refresh tokens
+     */
+    public Tokens issue(String subject, List<String> roles) {
+	long accessExp = accessExpiry();
+	String access = generator.generateAccessToken(subject, roles, accessExp);
+	String family = UUID.randomUUID().toString();
+	if (isOpaque()) {
+	    String refresh = OpaqueRefreshTokens.generate();
+	    store.save(OpaqueRefreshTokens.key(refresh), subject, opaqueExpiry(), family, roles);
+	    return tokens(access, refresh, accessExp);
+	}
+
+	String refresh = generator.generateRefreshToken(subject, family, roles);
+	Claims rt = verifier.parse(refresh);
+	store.save(rt.getId(), subject, rt.getExpiration().toInstant(), family);
+	return tokens(access, refresh, accessExp);
     }
 
     /**
@@ -41,21 +160,380 @@ public class RefreshTokenService {
      * This method performs the following:
      * <ul>
      * <li>Validates that refresh token flow is enabled</li>
-     * <li>Parses and validates the refresh token</li>
+     * <li>Parses and validates the refresh token, or for opaque refresh tokens
+     * looks up its key in the store</li>
      * <li>Checks token type</li>
-     * <li>Performs reuse detection (if enabled)</li>
-     * <li>Rotates refresh tokens (if enabled)</li>
      * <li>Generates a new access token and refresh token</li>
-     * <li>Stores the new refresh token JTI</li>
+     * <li>Rotates the refresh token (if enabled) with a single atomic
+     * {@link RefreshTokenStore#rotate} call, so of several concurrent refreshes
+     * with the same token only one succeeds</li>
+     * <li>Otherwise, performs reuse detection (if enabled) and stores the new
+     * refresh token JTI</li>
      * </ul>
+     * <p>
+     * The new refresh token inherits the token family of the presented one (see
+     * {@link JwtTokenGenerator#FAMILY_CLAIM}). A token that was already rotated
+     * triggers reuse detection: if enabled, its family is revoked, or all
+     * sessions of the subject for tokens issued without a family. If revocation
+     * epochs are configured, all access tokens of the subject issued so far are
+     * invalidated as well; other devices obtain new ones with their still valid
+     * refresh tokens. A token unknown to the store, or a rotated one while reuse
+     * detection is disabled, is rejected as invalid without touching other
+     * sessions.
+     * <p>
+     * The new access token keeps the roles of the session: JWT refresh tokens
+     * carry them in {@link JwtTokenGenerator#REFRESH_ROLES_CLAIM}, opaque ones
+     * in the store. Reuse of a rotated opaque token is only detected by stores
+     * that keep consumed tokens, other stores reject it as unknown.
      *
      * @param refreshToken the refresh token provided by the client
      * @return a {@link Tokens} record containing the new access and refresh tokens
      * @throws JwtAuthException if refresh flow is disabled, token is
-     *                          invalid/expired, token type is incorrect, or reuse
-     *                          is detected
+     *                          invalid/expired/unknown, token type is incorrect,
+     *                          reuse is detected, or the refresh is throttled
      */
     public Tokens refresh(String refreshToken) {
+	if (props.getRefreshGraceWindowMillis() <= 0)
+	    return doRefresh(refreshToken);
+
+	GraceEntry candidate = new GraceEntry();
+	GraceEntry entry = joinGrace(refreshToken, candidate);
+	if (entry != candidate)
+	    return awaitGrace(entry);
+	try {
+	    Tokens tokens = doRefresh(refreshToken);
+	    completeGrace(refreshToken, entry, tokens, null);
+	    return tokens;
+	} catch (RuntimeException e) {
+	    completeGrace(refreshToken, entry, null, e);
+	    throw e;
+	}
+    }
+
+    private Tokens doRefresh(String refreshToken) {
+	if (isOpaque())
+	    return refreshOpaque(opaqueKey(refreshToken));
+
+	Claims claims = parseRefreshToken(refreshToken);
+
+	String jti = claims.getId();
+	String subject = claims.getSubject();
+
+	String family = claims.get(JwtTokenGenerator.FAMILY_CLAIM, String.class);
+
+	admit(subject);
+	List<String> roles = rolesOf(claims);
+	long accessExp = accessExpiry();
+	String access = generator.generateAccessToken(subject, roles, accessExp);
+	String refresh = generator.generateRefreshToken(subject,
+		family != null ? family : UUID.randomUUID().toString(), roles);
+	Claims newRtClaims = verifier.parse(refresh);
+	String newJti = newRtClaims.getId();
+	Instant newExp = newRtClaims.getExpiration().toInstant();
+
+	replace(jti, newJti, subject, newExp, family, null);
+	return tokens(access, refresh, accessExp);
+    }
+
+    private Tokens refreshOpaque(String key) {
+	StoredRefreshToken current = store.find(key);
+	if (current == null)
+	    throw unknownTokenException();
+
+	admit(current.subject());
+	long accessExp = accessExpiry();
+	String access = generator.generateAccessToken(current.subject(), current.roles(), accessExp);
+	String refresh = OpaqueRefreshTokens.generate();
+	replace(current.jti(), OpaqueRefreshTokens.key(refresh), current.subject(), opaqueExpiry(),
+		current.familyId(), current.roles());
+	return tokens(access, refresh, accessExp);
+    }
+
+    /**
+     * Consumes the presented refresh token and saves its successor, see
+     * {@link #refresh(String)}.
+     */
+    private void replace(String jti, String newJti, String subject, Instant newExp, String family,
+	    List<String> roles) {
+	if (props.isRefreshRotate()) {
+	    // consume old RT and save new one in one step
+	    checkRotation(store.rotate(jti, newJti, subject, newExp, family), subject, family);
+	} else {
+	    if (props.isReuseDetection() && !store.isActive(jti))
+		reuseDetected(subject, family);
+	    store.save(newJti, subject, newExp, family, roles);
+	}
+    }
+
+    /**
+     * Asynchronous variant of {@link #refresh(String)}.
+     * <p>
+     * Uses the {@link AsyncRefreshTokenStore} view of the store. With rotation
+     * enabled, the refresh is a single
+     * {@link AsyncRefreshTokenStore#rotateAsync} call, preceded by a
+     * {@link AsyncRefreshTokenStore#findAsync} lookup for opaque refresh
+     * tokens.
+     *
+     * @param refreshToken the refresh token provided by the client
+     * @return a future completed with the new tokens, or completed exceptionally
+     *         with a {@link JwtAuthException} for the same reasons as
+     *         {@link #refresh(String)}
+     */
+    public CompletableFuture<Tokens> refreshAsync(String refreshToken) {
+	if (props.getRefreshGraceWindowMillis() <= 0)
+	    return doRefreshAsync(refreshToken);
+
+	GraceEntry candidate = new GraceEntry();
+	GraceEntry entry = joinGrace(refreshToken, candidate);
+	if (entry != candidate)
+	    return entry.tokens.copy();
+	CompletableFuture<Tokens> result;
+	try {
+	    result = doRefreshAsync(refreshToken);
+	} catch (RuntimeException e) {
+	    result = CompletableFuture.failedFuture(e);
+	}
+	return result.whenComplete((tokens, error) -> completeGrace(refreshToken, entry, tokens,
+		error instanceof CompletionException && error.getCause() != null ? error.getCause() : error));
+    }
+
+    private CompletableFuture<Tokens> doRefreshAsync(String refreshToken) {
+	if (isOpaque())
+	    return refreshOpaqueAsync(refreshToken);
+
+	final Claims claims;
+	try {
+	    claims = parseRefreshToken(refreshToken);
+	    admit(claims.getSubject());
+	} catch (JwtAuthException e) {
+	    return CompletableFuture.failedFuture(e);
+	}
+
+	String jti = claims.getId();
+	String subject = claims.getSubject();
+
+	String family = claims.get(JwtTokenGenerator.FAMILY_CLAIM, String.class);
+
+	List<String> roles = rolesOf(claims);
+	long accessExp = accessExpiry();
+	String access = generator.generateAccessToken(subject, roles, accessExp);
+	String refresh = generator.generateRefreshToken(subject,
+		family != null ? family : UUID.randomUUID().toString(), roles);
+	Claims newRtClaims = verifier.parse(refresh);
+	String newJti = newRtClaims.getId();
+	Instant newExp = newRtClaims.getExpiration().toInstant();
+
+	return replaceAsync(jti, newJti, subject, newExp, family, null)
+		.thenApply(v -> tokens(access, refresh, accessExp));
+    }
+
+    private CompletableFuture<Tokens> refreshOpaqueAsync(String refreshToken) {
+	final String key;
+	try {
+	    key = opaqueKey(refreshToken);
+	} catch (JwtAuthException e) {
+	    return CompletableFuture.failedFuture(e);
+	}
+
+	return asyncStore.findAsync(key).thenCompose(current -> {
+	    if (current == null)
+		throw unknownTokenException();
+
+	    admit(current.subject());
+	    long accessExp = accessExpiry();
+	    String access = generator.generateAccessToken(current.subject(), current.roles(), accessExp);
+	    String refresh = OpaqueRefreshTokens.generate();
+	    return replaceAsync(current.jti(), OpaqueRefreshTokens.key(refresh), current.subject(), opaqueExpiry(),
+		    current.familyId(), current.roles()).thenApply(v -> tokens(access, refresh, accessExp));
+	});
+    }
+
+    private CompletableFuture<Void> replaceAsync(String jti, String newJti, String subject, Instant newExp,
+	    String family, List<String> roles) {
+	if (props.isRefreshRotate()) {
+	    return asyncStore.rotateAsync(jti, newJti, subject, newExp, family)
+		    .thenCompose(outcome -> outcome == RotationOutcome.REUSED && props.isReuseDetection()
+			    ? revokeFamilyAsync(subject, family).thenApply(v -> outcome)
+			    : CompletableFuture.completedFuture(outcome))
+		    .thenAccept(this::checkOutcome);
+	}
+
+	CompletableFuture<Boolean> active = props.isReuseDetection() ? asyncStore.isActiveAsync(jti)
+		: CompletableFuture.completedFuture(true);
+	return active.thenCompose(isActive -> {
+	    if (!isActive) {
+		return revokeFamilyAsync(subject, family).thenApply(v -> {
+		    throw reuseException();
+		});
+	    }
+	    return asyncStore.saveAsync(newJti, subject, newExp, family, roles);
+	});
+    }
+
+    // ---------- grace window ----------
+
+    /**
+     * Returns the live entry for a token, or installs the candidate, in which
+     * case the caller performs the refresh.
+     */
+    private GraceEntry joinGrace(String refreshToken, GraceEntry candidate) {
+	long now = System.currentTimeMillis();
+	GraceEntry entry = grace.compute(graceKey(refreshToken),
+		(k, current) -> current != null && now < current.validUntil ? current : candidate);
+	if (entry == candidate && grace.size() > gracePurgeThreshold)
+	    purgeGrace(now);
+	return entry;
+    }
+
+    /** Keeps a successful result for the window; drops a failed one. */
+    private void completeGrace(String refreshToken, GraceEntry entry, Tokens tokens, Throwable error) {
+	if (error != null) {
+	    grace.remove(graceKey(refreshToken), entry);
+	    entry.tokens.completeExceptionally(error);
+	} else {
+	    entry.validUntil = System.currentTimeMillis() + props.getRefreshGraceWindowMillis();
+	    entry.tokens.complete(tokens);
+	}
+    }
+
+    private static Tokens awaitGrace(GraceEntry entry) {
+	try {
+	    return entry.tokens.join();
+	} catch (CompletionException e) {
+	    if (e.getCause() instanceof RuntimeException re)
+		throw re;
+	    throw e;
+	}
+    }
+
+    /** Drops expired entries; the threshold doubles with the live entries. */
+    private void purgeGrace(long now) {
+	if (!purging.compareAndSet(false, true))
+	    return;
+	try {
+	    grace.values().removeIf(e -> e.validUntil <= now);
+	    gracePurgeThreshold = Math.max(GRACE_PURGE_THRESHOLD, grace.size() * 2);
+	} finally {
+	    purging.set(false);
+	}
+    }
+
+    private static String graceKey(String refreshToken) {
+	return refreshToken != null && refreshToken.startsWith("Bearer ") ? refreshToken.substring(7)
+		: String.valueOf(refreshToken);
+    }
+
+    /**
+     * A refresh result shared by duplicates: in flight until its future
+     * completes, then valid until the end of the grace window.
+     */
+    private static final class GraceEntry {
+	final CompletableFuture<Tokens> tokens = new CompletableFuture<>();
+	volatile long validUntil = Long.MAX_VALUE;
+    }
+
+    /**
+     * Handles a rotation outcome, revoking the token family if reuse is
+     * detected.
+     */
+    private void checkRotation(RotationOutcome outcome, String subject, String family) {
+	if (outcome == RotationOutcome.REUSED && props.isReuseDetection())
+	    reuseDetected(subject, family);
+	checkOutcome(outcome);
+    }
+
+    /**
+     * Throws for a failed rotation. Without reuse detection, a reused token is
+     * reported like any other invalid one.
+     */
+    private void checkOutcome(RotationOutcome outcome) {
+	switch (outcome) {
+	case ROTATED -> {
+	}
+	case REUSED -> throw props.isReuseDetection() ? reuseException() : unknownTokenException();
+	case UNKNOWN -> throw unknownTokenException();
+	}
+    }
+
+    private static JwtAuthException unknownTokenException() {
+	return new JwtAuthException(JwtErrorCode.INVALID_TOKEN, "Unknown or revoked refresh token");
+    }
+
+    /**
+     * Logs a subject out everywhere: revokes all of its refresh tokens and, if
+     * revocation epochs are configured, all access tokens issued until now.
+     *
+     * @param subject the subject
+     */
+    public void revokeAllSessions(String subject) {
+	store.revokeAllForSubject(subject);
+	revokeAccessTokens(subject);
+    }
+
+    private void revokeAccessTokens(String subject) {
+	if (epochs != null)
+	    epochs.revokeIssuedBefore(subject, Instant.now());
+    }
+
+    private void reuseDetected(String subject, String family) {
+	revokeAccessTokens(subject);
+	// kill the compromised session, or all sessions of tokens without a family
+	if (family != null)
+	    store.revokeFamily(family, subject);
+	else
+	    store.revokeAllForSubject(subject);
+	throw reuseException();
+    }
+
+    private CompletableFuture<Void> revokeFamilyAsync(String subject, String family) {
+	revokeAccessTokens(subject);
+	return family != null ? asyncStore.revokeFamilyAsync(family, subject)
+		: asyncStore.revokeAllForSubjectAsync(subject);
+    }
+
+    private static JwtAuthException reuseException() {
+	return new JwtAuthException(JwtErrorCode.REFRESH_REUSE_DETECTED, "Refresh token reuse detected");
+    }
+
+    private void admit(String subject) {
+	if (admission != null)
+	    admission.acquire(subject);
+    }
+
+    private boolean isOpaque() {
+	return props.getRefreshTokenFormat() == RefreshTokenFormat.OPAQUE;
+    }
+
+    private Instant opaqueExpiry() {
+	return Instant.now().plusMillis(generator.refreshTtlMillis());
+    }
+
+    private long accessExpiry() {
+	return System.currentTimeMillis() + generator.accessTtlMillis();
+    }
+
+    private static Tokens tokens(String access, String refresh, long accessExp) {
+	return new Tokens(access, refresh, accessExp);
+    }
+
+    /**
+     * Checks that the refresh flow is enabled and computes the store key of an
+     * opaque refresh token, optionally prefixed with "Bearer " like a JWT.
+     */
+    private String opaqueKey(String refreshToken) {
+	if (!props.isRefreshEnabled())
+	    throw new JwtAuthException(JwtErrorCode.REFRESH_DISABLED, "Refresh token flow is disabled");
+	if (refreshToken != null && refreshToken.startsWith("Bearer "))
+	    refreshToken = refreshToken.substring(7);
+	if (!OpaqueRefreshTokens.isWellFormed(refreshToken))
+	    throw new JwtAuthException(JwtErrorCode.INVALID_TOKEN, "Invalid refresh token");
+	return OpaqueRefreshTokens.key(refreshToken);
+    }
+
+    /**
+     * Checks that the refresh flow is enabled and parses a refresh token.
+     */
+    private Claims parseRefreshToken(String refreshToken) {
 	if (!props.isRefreshEnabled())
 	    throw new JwtAuthException(JwtErrorCode.REFRESH_DISABLED, "Refresh token flow is disabled");
 
@@ -70,29 +548,16 @@ public class RefreshTokenService {
 
 	if (!"refresh".equals(claims.get("type", String.class)))
 	    throw new JwtAuthException(JwtErrorCode.INVALID_TOKEN_TYPE, "Token type must be 'refresh'");
+	return claims;
+    }
 
-	String jti = claims.getId();
-	String subject = claims.getSubject();
-
-	// Reuse detection
-	if (props.isReuseDetection() && !store.isActive(jti)) {
-	    // kill all sessions of this subject
-	    store.revokeAllForSubject(subject);
-	    throw new JwtAuthException(JwtErrorCode.REFRESH_REUSE_DETECTED, "Refresh token reuse detected");
-	}
-
-	// Rotation: invalidate old RT, generate new one
-	if (props.isRefreshRotate())
-	    store.revoke(jti);
-
-	String access = generator.generateAccessToken(subject, claims.get("roles", List.class));
-	String refresh = generator.generateRefreshToken(subject);
-
-	// save new jti
-	Claims newRtClaims = verifier.parse(refresh);
-	store.save(newRtClaims.getId(), subject, newRtClaims.getExpiration().toInstant());
-
-	return new Tokens(access, refresh, System.currentTimeMillis() + props.getAccessTtlMillis());
+    /**
+     * Returns the roles that a refreshed access token inherits from the
+     * refresh token, see {@link JwtTokenGenerator#REFRESH_ROLES_CLAIM}.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<String> rolesOf(Claims claims) {
+	return claims.get(JwtTokenGenerator.REFRESH_ROLES_CLAIM, List.class);
     }
 
     /**
@@ -1,6 +1,11 @@
 package dev.shiwa.jwtstarter.core.refresh;
 
 import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Contract for managing refresh tokens in a persistent or in-memory store.
@@ -20,6 +25,54 @@ public interface RefreshTokenStore {
      */
     void save(String jti, String subject, Instant expiresAt);
 
+    /**
+     * Saves a new refresh token that belongs to a token family (one login
+     * session, see {@link #revokeFamily(String, String)}).
+     * <p>
+     * The default implementation ignores the family.
+     *
+     * @param jti       the unique token identifier (JWT ID)
+     * @param subject   the subject associated with the token
+     * @param expiresAt the expiration timestamp of the refresh token
+     * @param familyId  the token family id, or {@code null}
+     */
+    default void save(String jti, String subject, Instant expiresAt, String familyId) {
+	save(jti, subject, expiresAt);
+    }
+
+    /**
+     * Saves a new refresh token together with the roles of the access tokens
+     * it is exchanged for. Used for opaque refresh tokens, which, unlike
+     * refresh JWTs, carry no claims themselves.
+     * <p>
+     * The default implementation ignores the roles.
+     *
+     * @param jti       the unique token identifier
+     * @param subject   the subject associated with the token
+     * @param expiresAt the expiration timestamp of the refresh token
+     * @param familyId  the token family id, or {@code null}
+     * @param roles     the roles, or {@code null}
+     */
+    default void save(String jti, String subject, Instant expiresAt, String familyId, List<String> roles) {
+	save(jti, subject, expiresAt, familyId);
+    }
+
+    /**
+     * Looks up a refresh token with everything the store holds about it.
+     * <p>
+     * Stores that keep consumed tokens for reuse detection also return those,
+     * so that a following {@link #rotate} can report
+     * {@link RotationOutcome#REUSED}. The default implementation only knows the
+     * subject and returns the token without expiry, family or roles.
+     *
+     * @param jti the token identifier
+     * @return the token, or {@code null} if it is unknown, revoked or expired
+     */
+    default StoredRefreshToken find(String jti) {
+	String subject = subjectFor(jti);
+	return subject != null ? new StoredRefreshToken(jti, subject, null, null) : null;
+    }
+
     /**
      * Checks whether the given refresh token identifier (JTI) is still active (not
      * revoked and not expired).
@@ -51,4 +104,117 @@ public interface RefreshTokenStore {
      * @param subject the subject whose refresh tokens should be revoked
      */
     void revokeAllForSubject(String subject);
-}
\ No newline at end of file
+
+    /**
+     * Revokes the current refresh token of a token family, ending that login
+     * session while other sessions of the subject stay valid.
+     * <p>
+     * The default implementation does not track families and revokes all
+     * refresh tokens of the subject instead.
+     *
+     * @param familyId the token family id
+     * @param subject  the subject owning the family
+     */
+    default void revokeFamily(String familyId, String subject) {
+	revokeAllForSubject(subject);
+    }
+
+    /**
+     * Atomically consumes an active refresh token and saves its successor.
+     * Stores that keep roles carry them over to the successor.
+     * <p>
+     * Of several concurrent rotations of the same token, exactly one returns
+     * {@link RotationOutcome#ROTATED}. The default implementation is not atomic
+     * and cannot tell consumed from unknown tokens, so it reports every inactive
+     * token as {@link RotationOutcome#REUSED}; stores should override it.
+     *
+     * @param oldJti    the identifier of the presented refresh token
+     * @param newJti    the identifier of the replacement token
+     * @param subject   the subject of both tokens
+     * @param expiresAt the expiration timestamp of the replacement token
+     * @return the outcome; the new token is only saved on
+     *         {@link RotationOutcome#ROTATED}
+     */
+    default RotationOutcome rotate(String oldJti, String newJti, String subject, Instant expiresAt) {
+	return rotate(oldJti, newJti, subject, expiresAt, null);
+    }
+
+    /**
+     * Like {@link #rotate(String, String, String, Instant)}, but makes the new
+     * token the current token of the given family.
+     *
+     * @param oldJti    the identifier of the presented refresh token
+     * @param newJti    the identifier of the replacement token
+     * @param subject   the subject of both tokens
+     * @param expiresAt the expiration timestamp of the replacement token
+     * @param familyId  the token family id, or {@code null}
+     * @return the outcome; the new token is only saved on
+     *         {@link RotationOutcome#ROTATED}
+     */
+    default RotationOutcome rotate(String oldJti, String newJti, String subject, Instant expiresAt,
+	    String familyId) {
+	if (!isActive(oldJti))
+	    return RotationOutcome.REUSED;
+	revoke(oldJti);
+	save(newJti, subject, expiresAt, familyId);
+	return RotationOutcome.ROTATED;
+    }
+
+    /**
+     * Saves several refresh tokens, e.g. when importing sessions.
+     * <p>
+     * The default implementation saves them one by one; stores override it
+     * with bulk map operations or batched writes.
+     *
+     * @param tokens the tokens to save
+     */
+    default void saveAll(Collection<StoredRefreshToken> tokens) {
+	for (StoredRefreshToken t : tokens) {
+	    save(t.jti(), t.subject(), t.expiresAt(), t.familyId(), t.roles());
+	}
+    }
+
+    /**
+     * Revokes several refresh tokens.
+     * <p>
+     * The default implementation revokes them one by one.
+     *
+     * @param jtis the token identifiers to revoke
+     */
+    default void revokeAll(Collection<String> jtis) {
+	for (String jti : jtis) {
+	    revoke(jti);
+	}
+    }
+
+    /**
+     * Checks several refresh tokens at once.
+     * <p>
+     * The default implementation checks them one by one.
+     *
+     * @param jtis the token identifiers to check
+     * @return whether each token is active, keyed by its identifier
+     */
+    default Map<String, Boolean> isActiveAll(Collection<String> jtis) {
+	Map<String, Boolean> result = new HashMap<>(Math.max(16, jtis.size() * 4 / 3 + 1));
+	for (String jti : jtis) {
+	    result.put(jti, isActive(jti));
+	}
+	return result;
+    }
+
+    /**
+     * Visits every active refresh token, e.g. to export the store's sessions
+     * with {@link RefreshTokenTransfer}.
+     * <p>
+     * The default implementation is not supported; stores that keep token
+     * identifiers in their original form override it.
+     *
+     * @param action the callback receiving each token
+     * @throws UnsupportedOperationException if the store cannot enumerate its
+     *                                       tokens
+     */
+    default void forEachToken(Consumer<StoredRefreshToken> action) {
+	throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot enumerate its tokens");
+    }
+}
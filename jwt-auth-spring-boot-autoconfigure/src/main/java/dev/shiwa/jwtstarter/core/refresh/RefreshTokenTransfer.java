@@ -0,0 +1,150 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams refresh token sessions between stores, e.g. when migrating from one
+ * store implementation to another.
+ *
+ * <p>
+ * The format is a binary stream: a magic number and a version byte, then one
+ * record per token (a {@code 1} marker, JTI, subject, expiry in epoch millis,
+ * family id, empty if none, and the number of roles followed by the roles, or
+ * {@code -1} if the store holds none), terminated by a {@code 0} marker. Neither
+ * side holds more than one import batch in memory.
+ *
+ * <pre>{@code
+ * try (OutputStream out = Files.newOutputStream(file)) {
+ *     RefreshTokenTransfer.export(oldStore, out);
+ * }
+ * try (InputStream in = Files.newInputStream(file)) {
+ *     RefreshTokenTransfer.importInto(in, newStore, 10_000);
+ * }
+ * }</pre>
+ */
+public final class RefreshTokenTransfer {
+
+    private static final int MAGIC = 0x4A525458; // "JRTX"
+    private static final byte VERSION = 1;
+    private static final byte RECORD = 1;
+    private static final byte END = 0;
+
+    private RefreshTokenTransfer() {
+    }
+
+    /**
+     * Writes every active token of a store to a stream. The stream is flushed
+     * but not closed.
+     *
+     * @param store the source store; must support
+     *              {@link RefreshTokenStore#forEachToken}
+     * @param out   the target stream
+     * @return the number of exported tokens
+     * @throws IOException                   if writing fails
+     * @throws UnsupportedOperationException if the store cannot enumerate its
+     *                                       tokens
+     */
+    public static long export(RefreshTokenStore store, OutputStream out) throws IOException {
+	DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+	data.writeInt(MAGIC);
+	data.writeByte(VERSION);
+	long[] count = new long[1];
+	try {
+	    store.forEachToken(token -> {
+		try {
+		    data.writeByte(RECORD);
+		    data.writeUTF(token.jti());
+		    data.writeUTF(token.subject());
+		    data.writeLong(token.expiresAt().toEpochMilli());
+		    data.writeUTF(token.familyId() != null ? token.familyId() : "");
+		    List<String> roles = token.roles();
+		    data.writeShort(roles != null ? roles.size() : -1);
+		    if (roles != null) {
+			for (String role : roles) {
+			    data.writeUTF(role);
+			}
+		    }
+		    count[0]++;
+		} catch (IOException e) {
+		    throw new UncheckedIOException(e);
+		}
+	    });
+	} catch (UncheckedIOException e) {
+	    throw e.getCause();
+	}
+	data.writeByte(END);
+	data.flush();
+	return count[0];
+    }
+
+    /**
+     * Reads tokens from a stream and saves them with
+     * {@link RefreshTokenStore#saveAll} in batches. Tokens that expired in the
+     * meantime are skipped. The stream is not closed.
+     *
+     * @param in        the source stream
+     * @param store     the target store
+     * @param batchSize the number of tokens per {@code saveAll} call
+     * @return the number of imported tokens
+     * @throws IOException if reading fails or the stream is not in the
+     *                     expected format
+     */
+    public static long importInto(InputStream in, RefreshTokenStore store, int batchSize) throws IOException {
+	if (batchSize <= 0)
+	    throw new IllegalArgumentException("batchSize must be > 0");
+
+	DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+	if (data.readInt() != MAGIC)
+	    throw new IOException("Not a refresh token export");
+	byte version = data.readByte();
+	if (version != VERSION)
+	    throw new IOException("Unsupported refresh token export version " + version);
+
+	long nowMillis = System.currentTimeMillis();
+	long imported = 0;
+	List<StoredRefreshToken> batch = new ArrayList<>(batchSize);
+	while (data.readByte() == RECORD) {
+	    String jti = data.readUTF();
+	    String subject = data.readUTF();
+	    long expiresAtMillis = data.readLong();
+	    String family = data.readUTF();
+	    List<String> roles = readRoles(data);
+	    if (expiresAtMillis <= nowMillis)
+		continue;
+
+	    batch.add(new StoredRefreshToken(jti, subject, Instant.ofEpochMilli(expiresAtMillis),
+		    family.isEmpty() ? null : family, roles));
+	    if (batch.size() == batchSize) {
+		store.saveAll(batch);
+		imported += batch.size();
+		batch.clear();
+	    }
+	}
+	if (!batch.isEmpty()) {
+	    store.saveAll(batch);
+	    imported += batch.size();
+	}
+	return imported;
+    }
+
+    private static List<String> readRoles(DataInputStream data) throws IOException {
+	int count = data.readShort();
+	if (count < 0)
+	    return null;
+	String[] roles = new String[count];
+	for (int i = 0; i < count; i++) {
+	    roles[i] = data.readUTF();
+	}
+	return List.of(roles);
+    }
+}
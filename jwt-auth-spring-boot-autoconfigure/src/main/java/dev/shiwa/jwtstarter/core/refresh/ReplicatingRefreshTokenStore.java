@@ -0,0 +1,223 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import dev.shiwa.jwtstarter.core.revocation.RevocationEvent;
+import dev.shiwa.jwtstarter.core.revocation.RevocationEventBus;
+
+/**
+ * Decorates a {@link RefreshTokenStore} so that revocations are propagated to
+ * the stores of other instances via a {@link RevocationEventBus}.
+ *
+ * <p>
+ * {@link #revoke(String)}, {@link #revokeAllForSubject(String)} and
+ * {@link #revokeFamily(String, String)} are applied to the delegate and then
+ * published. Events received from other instances are applied to the
+ * delegate directly, so they are not published again. All other operations
+ * are passed through unchanged. The asynchronous operations use the
+ * delegate's {@link AsyncRefreshTokenStore} view; revocations are published
+ * once they have completed.
+ */
+public class ReplicatingRefreshTokenStore implements RefreshTokenStore, AsyncRefreshTokenStore, AutoCloseable {
+
+    private final RefreshTokenStore delegate;
+    private final AsyncRefreshTokenStore asyncDelegate;
+    private final RevocationEventBus bus;
+
+    /**
+     * Creates a new decorator and subscribes it to the bus.
+     *
+     * @param delegate the local store
+     * @param bus      the revocation event bus
+     */
+    public ReplicatingRefreshTokenStore(RefreshTokenStore delegate, RevocationEventBus bus) {
+	this.delegate = delegate;
+	this.asyncDelegate = AsyncRefreshTokenStore.of(delegate, Runnable::run);
+	this.bus = bus;
+	bus.subscribe(this::apply);
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt) {
+	delegate.save(jti, subject, expiresAt);
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt, String familyId) {
+	delegate.save(jti, subject, expiresAt, familyId);
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt, String familyId, List<String> roles) {
+	delegate.save(jti, subject, expiresAt, familyId, roles);
+    }
+
+    @Override
+    public boolean isActive(String jti) {
+	return delegate.isActive(jti);
+    }
+
+    @Override
+    public String subjectFor(String jti) {
+	return delegate.subjectFor(jti);
+    }
+
+    @Override
+    public StoredRefreshToken find(String jti) {
+	return delegate.find(jti);
+    }
+
+    @Override
+    public void revoke(String jti) {
+	delegate.revoke(jti);
+	publishToken(jti);
+    }
+
+    @Override
+    public void revokeAllForSubject(String subject) {
+	delegate.revokeAllForSubject(subject);
+	publishSubject(subject);
+    }
+
+    @Override
+    public void revokeFamily(String familyId, String subject) {
+	delegate.revokeFamily(familyId, subject);
+	publishFamily(familyId, subject);
+    }
+
+    @Override
+    public void saveAll(Collection<StoredRefreshToken> tokens) {
+	delegate.saveAll(tokens);
+    }
+
+    @Override
+    public void revokeAll(Collection<String> jtis) {
+	delegate.revokeAll(jtis);
+	jtis.forEach(this::publishToken);
+    }
+
+    @Override
+    public Map<String, Boolean> isActiveAll(Collection<String> jtis) {
+	return delegate.isActiveAll(jtis);
+    }
+
+    @Override
+    public void forEachToken(Consumer<StoredRefreshToken> action) {
+	delegate.forEachToken(action);
+    }
+
+    @Override
+    public RotationOutcome rotate(String oldJti, String newJti, String subject, Instant expiresAt,
+	    String familyId) {
+	return delegate.rotate(oldJti, newJti, subject, expiresAt, familyId);
+    }
+
+    // ---------- asynchronous ----------
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt) {
+	return asyncDelegate.saveAsync(jti, subject, expiresAt);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt, String familyId) {
+	return asyncDelegate.saveAsync(jti, subject, expiresAt, familyId);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt, String familyId,
+	    List<String> roles) {
+	return asyncDelegate.saveAsync(jti, subject, expiresAt, familyId, roles);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isActiveAsync(String jti) {
+	return asyncDelegate.isActiveAsync(jti);
+    }
+
+    @Override
+    public CompletableFuture<String> subjectForAsync(String jti) {
+	return asyncDelegate.subjectForAsync(jti);
+    }
+
+    @Override
+    public CompletableFuture<StoredRefreshToken> findAsync(String jti) {
+	return asyncDelegate.findAsync(jti);
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeAsync(String jti) {
+	return asyncDelegate.revokeAsync(jti).thenRun(() -> publishToken(jti));
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeAllForSubjectAsync(String subject) {
+	return asyncDelegate.revokeAllForSubjectAsync(subject).thenRun(() -> publishSubject(subject));
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeFamilyAsync(String familyId, String subject) {
+	return asyncDelegate.revokeFamilyAsync(familyId, subject).thenRun(() -> publishFamily(familyId, subject));
+    }
+
+    @Override
+    public CompletableFuture<RotationOutcome> rotateAsync(String oldJti, String newJti, String subject,
+	    Instant expiresAt, String familyId) {
+	return asyncDelegate.rotateAsync(oldJti, newJti, subject, expiresAt, familyId);
+    }
+
+    /**
+     * Returns the decorated store.
+     *
+     * @return the local store
+     */
+    public RefreshTokenStore getDelegate() {
+	return delegate;
+    }
+
+    /**
+     * Closes the delegate if it is {@link AutoCloseable}.
+     *
+     * @throws IllegalStateException if closing the delegate fails with a
+     *                               checked exception
+     */
+    @Override
+    public void close() {
+	if (delegate instanceof AutoCloseable closeable) {
+	    try {
+		closeable.close();
+	    } catch (RuntimeException e) {
+		throw e;
+	    } catch (Exception e) {
+		throw new IllegalStateException("Failed to close refresh token store", e);
+	    }
+	}
+    }
+
+    private void publishToken(String jti) {
+	bus.publish(new RevocationEvent(RevocationEvent.Type.REFRESH_TOKEN, jti, null, 0));
+    }
+
+    private void publishSubject(String subject) {
+	bus.publish(new RevocationEvent(RevocationEvent.Type.REFRESH_SUBJECT, subject, subject, 0));
+    }
+
+    private void publishFamily(String familyId, String subject) {
+	bus.publish(new RevocationEvent(RevocationEvent.Type.REFRESH_FAMILY, familyId, subject, 0));
+    }
+
+    private void apply(RevocationEvent event) {
+	switch (event.type()) {
+	case REFRESH_TOKEN -> delegate.revoke(event.key());
+	case REFRESH_SUBJECT -> delegate.revokeAllForSubject(event.key());
+	case REFRESH_FAMILY -> delegate.revokeFamily(event.key(), event.subject());
+	default -> {
+	}
+	}
+    }
+}
@@ -0,0 +1,23 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+/**
+ * Result of {@link RefreshTokenStore#rotate(String, String, String, java.time.Instant)}.
+ */
+public enum RotationOutcome {
+
+    /** The old token was active and has been replaced by the new one. */
+    ROTATED,
+
+    /**
+     * The old token was already consumed by an earlier rotation, or lost the race
+     * against a concurrent one. Stores that do not remember consumed tokens also
+     * report inactive tokens as reused.
+     */
+    REUSED,
+
+    /**
+     * The old token is not known to the store (never saved, revoked, expired or
+     * belonging to another subject).
+     */
+    UNKNOWN
+}
@@ -0,0 +1,431 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decorates a {@link RefreshTokenStore} with a limit on the number of
+ * concurrent sessions per subject. Once a subject exceeds the limit, its
+ * oldest sessions are revoked.
+ *
+ * <p>
+ * A session is a token family, i.e. a login and all refresh tokens rotated
+ * from it, so rotation does not change a session's place in line. Tokens saved
+ * without a family count as a session of their own and move to the end of the
+ * line when rotated.
+ *
+ * <p>
+ * The sessions of a subject are kept in a {@link LinkedHashSet} in the order
+ * of their first save, guarded by a lock per subject, so checking whether a
+ * session is already known and appending it is a single constant-time step;
+ * the map is only updated for the first session of a subject. Saving threads
+ * claim the sessions over the limit from the head of the line under the same
+ * lock, so every surplus session is claimed by exactly one thread. It is then
+ * revoked outside the lock with
+ * {@link RefreshTokenStore#revokeFamily(String, String)} or, without a family,
+ * {@link RefreshTokenStore#revoke(String)}.
+ *
+ * <p>
+ * Sessions that end on their own, by expiry or eviction in the delegate, stay
+ * in the line until they are the oldest and get polled; revoking them again
+ * is harmless. Subjects whose sessions have all expired are dropped once the
+ * map has grown past twice its last size after a purge.
+ *
+ * <p>
+ * The index only covers sessions saved through this instance since it was
+ * created, so the limit holds per instance: sessions that survived a restart
+ * in a persistent delegate, or that were saved by other instances sharing it,
+ * are not counted.
+ *
+ * <p>
+ * The asynchronous operations use the delegate's
+ * {@link AsyncRefreshTokenStore} view and update the index once they have
+ * completed; surplus sessions are then revoked asynchronously as well.
+ */
+public class SessionCapRefreshTokenStore implements RefreshTokenStore, AsyncRefreshTokenStore, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionCapRefreshTokenStore.class);
+
+    private static final int MIN_PURGE_THRESHOLD = 1024;
+
+    private final RefreshTokenStore delegate;
+    private final AsyncRefreshTokenStore asyncDelegate;
+    private final int maxSessionsPerSubject;
+    private final ConcurrentMap<String, Sessions> bySubject = new ConcurrentHashMap<>();
+    private final LongAdder evicted = new LongAdder();
+    private final AtomicBoolean purging = new AtomicBoolean();
+    private volatile int purgeThreshold = MIN_PURGE_THRESHOLD;
+
+    /**
+     * Creates a new decorator.
+     *
+     * @param delegate              the store holding the tokens
+     * @param maxSessionsPerSubject the maximum number of sessions per subject
+     */
+    public SessionCapRefreshTokenStore(RefreshTokenStore delegate, int maxSessionsPerSubject) {
+	if (maxSessionsPerSubject <= 0)
+	    throw new IllegalArgumentException("maxSessionsPerSubject must be > 0");
+	this.delegate = delegate;
+	this.asyncDelegate = AsyncRefreshTokenStore.of(delegate, Runnable::run);
+	this.maxSessionsPerSubject = maxSessionsPerSubject;
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt) {
+	save(jti, subject, expiresAt, null, null);
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt, String familyId) {
+	save(jti, subject, expiresAt, familyId, null);
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant expiresAt, String familyId, List<String> roles) {
+	delegate.save(jti, subject, expiresAt, familyId, roles);
+	Sessions sessions = record(jti, subject, expiresAt, familyId);
+	if (sessions != null)
+	    surplus(sessions).forEach(oldest -> revoke(subject, oldest));
+    }
+
+    /**
+     * Saves several tokens and enforces the limit once per subject afterwards.
+     *
+     * @param tokens the tokens to save
+     */
+    @Override
+    public void saveAll(Collection<StoredRefreshToken> tokens) {
+	delegate.saveAll(tokens);
+	Map<String, Sessions> touched = new LinkedHashMap<>();
+	for (StoredRefreshToken t : tokens) {
+	    Sessions sessions = record(t.jti(), t.subject(), t.expiresAt(), t.familyId());
+	    if (sessions != null)
+		touched.put(t.subject(), sessions);
+	}
+	touched.forEach((subject, sessions) -> surplus(sessions).forEach(oldest -> revoke(subject, oldest)));
+    }
+
+    /**
+     * Appends a new session to its subject's line. Returns {@code null} for
+     * tokens of a session that is already known. If the line is purged
+     * concurrently, the session is recorded again in the subject's new line.
+     */
+    private Sessions record(String jti, String subject, Instant expiresAt, String familyId) {
+	if (subject == null)
+	    return null;
+	Session session = familyId != null ? new Session(familyId, true) : new Session(jti, false);
+	while (true) {
+	    Sessions sessions = bySubject.get(subject);
+	    if (sessions == null) {
+		sessions = bySubject.computeIfAbsent(subject, s -> new Sessions());
+		if (bySubject.size() > purgeThreshold)
+		    purge();
+	    }
+	    sessions.extend(expiresAt);
+	    // a family is saved again after a non-rotating refresh; it keeps its place
+	    if (!sessions.add(session))
+		return null;
+	    if (bySubject.get(subject) == sessions)
+		return sessions;
+	}
+    }
+
+    private List<Session> surplus(Sessions sessions) {
+	return sessions.surplus(maxSessionsPerSubject);
+    }
+
+    private void revoke(String subject, Session oldest) {
+	if (oldest.family())
+	    delegate.revokeFamily(oldest.key(), subject);
+	else
+	    delegate.revoke(oldest.key());
+	evicted(subject);
+    }
+
+    private CompletableFuture<Void> revokeAsync(String subject, Session oldest) {
+	CompletableFuture<Void> revocation = oldest.family() ? asyncDelegate.revokeFamilyAsync(oldest.key(), subject)
+		: asyncDelegate.revokeAsync(oldest.key());
+	return revocation.thenRun(() -> evicted(subject));
+    }
+
+    private void evicted(String subject) {
+	evicted.increment();
+	log.debug("✂️ Revoked oldest session of subject {} over the limit of {}", subject, maxSessionsPerSubject);
+    }
+
+    @Override
+    public boolean isActive(String jti) {
+	return delegate.isActive(jti);
+    }
+
+    @Override
+    public String subjectFor(String jti) {
+	return delegate.subjectFor(jti);
+    }
+
+    @Override
+    public StoredRefreshToken find(String jti) {
+	return delegate.find(jti);
+    }
+
+    @Override
+    public void revoke(String jti) {
+	forget(delegate.find(jti));
+	delegate.revoke(jti);
+    }
+
+    @Override
+    public void revokeAll(Collection<String> jtis) {
+	for (String jti : jtis) {
+	    forget(delegate.find(jti));
+	}
+	delegate.revokeAll(jtis);
+    }
+
+    @Override
+    public void revokeAllForSubject(String subject) {
+	delegate.revokeAllForSubject(subject);
+	bySubject.remove(subject);
+    }
+
+    @Override
+    public void revokeFamily(String familyId, String subject) {
+	delegate.revokeFamily(familyId, subject);
+	remove(subject, new Session(familyId, true));
+    }
+
+    @Override
+    public Map<String, Boolean> isActiveAll(Collection<String> jtis) {
+	return delegate.isActiveAll(jtis);
+    }
+
+    @Override
+    public void forEachToken(Consumer<StoredRefreshToken> action) {
+	delegate.forEachToken(action);
+    }
+
+    @Override
+    public RotationOutcome rotate(String oldJti, String newJti, String subject, Instant expiresAt,
+	    String familyId) {
+	RotationOutcome outcome = delegate.rotate(oldJti, newJti, subject, expiresAt, familyId);
+	rotated(outcome, oldJti, newJti, subject, expiresAt, familyId);
+	return outcome;
+    }
+
+    private void rotated(RotationOutcome outcome, String oldJti, String newJti, String subject, Instant expiresAt,
+	    String familyId) {
+	if (outcome != RotationOutcome.ROTATED)
+	    return;
+	Sessions sessions = bySubject.get(subject);
+	if (sessions != null) {
+	    sessions.extend(expiresAt);
+	    // a token without a family is its own session and changes its key
+	    if (familyId == null)
+		sessions.replace(new Session(oldJti, false), new Session(newJti, false));
+	}
+    }
+
+    // ---------- asynchronous ----------
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt) {
+	return saveAsync(jti, subject, expiresAt, null, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt, String familyId) {
+	return saveAsync(jti, subject, expiresAt, familyId, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt, String familyId,
+	    List<String> roles) {
+	return asyncDelegate.saveAsync(jti, subject, expiresAt, familyId, roles).thenCompose(v -> {
+	    Sessions sessions = record(jti, subject, expiresAt, familyId);
+	    if (sessions == null)
+		return CompletableFuture.completedFuture(null);
+	    return CompletableFuture.allOf(surplus(sessions).stream().map(oldest -> revokeAsync(subject, oldest))
+		    .toArray(CompletableFuture[]::new));
+	});
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isActiveAsync(String jti) {
+	return asyncDelegate.isActiveAsync(jti);
+    }
+
+    @Override
+    public CompletableFuture<String> subjectForAsync(String jti) {
+	return asyncDelegate.subjectForAsync(jti);
+    }
+
+    @Override
+    public CompletableFuture<StoredRefreshToken> findAsync(String jti) {
+	return asyncDelegate.findAsync(jti);
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeAsync(String jti) {
+	return asyncDelegate.findAsync(jti).thenCompose(token -> {
+	    forget(token);
+	    return asyncDelegate.revokeAsync(jti);
+	});
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeAllForSubjectAsync(String subject) {
+	return asyncDelegate.revokeAllForSubjectAsync(subject).thenRun(() -> bySubject.remove(subject));
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeFamilyAsync(String familyId, String subject) {
+	return asyncDelegate.revokeFamilyAsync(familyId, subject)
+		.thenRun(() -> remove(subject, new Session(familyId, true)));
+    }
+
+    @Override
+    public CompletableFuture<RotationOutcome> rotateAsync(String oldJti, String newJti, String subject,
+	    Instant expiresAt, String familyId) {
+	return asyncDelegate.rotateAsync(oldJti, newJti, subject, expiresAt, familyId).thenApply(outcome -> {
+	    rotated(outcome, oldJti, newJti, subject, expiresAt, familyId);
+	    return outcome;
+	});
+    }
+
+    /**
+     * Returns the number of sessions revoked because their subject exceeded
+     * the limit.
+     *
+     * @return the number of evicted sessions
+     */
+    public long getEvictedCount() {
+	return evicted.sum();
+    }
+
+    /**
+     * Returns the number of subjects with tracked sessions.
+     *
+     * @return the number of subjects
+     */
+    public int getTrackedSubjectCount() {
+	return bySubject.size();
+    }
+
+    /**
+     * Returns the decorated store.
+     *
+     * @return the store holding the tokens
+     */
+    public RefreshTokenStore getDelegate() {
+	return delegate;
+    }
+
+    /**
+     * Closes the delegate if it is {@link AutoCloseable}.
+     *
+     * @throws IllegalStateException if closing the delegate fails with a
+     *                               checked exception
+     */
+    @Override
+    public void close() {
+	if (delegate instanceof AutoCloseable closeable) {
+	    try {
+		closeable.close();
+	    } catch (RuntimeException e) {
+		throw e;
+	    } catch (Exception e) {
+		throw new IllegalStateException("Failed to close refresh token store", e);
+	    }
+	}
+    }
+
+    private void forget(StoredRefreshToken token) {
+	if (token != null)
+	    remove(token.subject(), token.familyId() != null ? new Session(token.familyId(), true)
+		    : new Session(token.jti(), false));
+    }
+
+    private void remove(String subject, Session session) {
+	if (subject == null || session.key() == null)
+	    return;
+	Sessions sessions = bySubject.get(subject);
+	if (sessions != null)
+	    sessions.remove(session);
+    }
+
+    /** Drops subjects whose sessions have all expired. */
+    private void purge() {
+	if (!purging.compareAndSet(false, true))
+	    return;
+	try {
+	    long nowMillis = System.currentTimeMillis();
+	    // only this line is removed; record() records again if it was using it
+	    bySubject.forEach((subject, sessions) -> {
+		if (sessions.latestExpiry.get() <= nowMillis)
+		    bySubject.remove(subject, sessions);
+	    });
+	    purgeThreshold = Math.max(MIN_PURGE_THRESHOLD, bySubject.size() * 2);
+	} finally {
+	    purging.set(false);
+	}
+    }
+
+    /** A token family, or a single token saved without one. */
+    private record Session(String key, boolean family) {
+    }
+
+    /** The sessions of a subject in the order of their first save. */
+    private static final class Sessions {
+	private final Set<Session> keys = new LinkedHashSet<>();
+	private final AtomicLong latestExpiry = new AtomicLong(Long.MIN_VALUE);
+
+	/** Appends a session, unless it is already known. */
+	synchronized boolean add(Session session) {
+	    return keys.add(session);
+	}
+
+	synchronized void remove(Session session) {
+	    keys.remove(session);
+	}
+
+	/** Moves a session to the end of the line under a new key. */
+	synchronized void replace(Session old, Session session) {
+	    if (keys.remove(old))
+		keys.add(session);
+	}
+
+	/** Removes and returns the sessions over the limit, oldest first. */
+	synchronized List<Session> surplus(int max) {
+	    List<Session> claimed = new ArrayList<>();
+	    Iterator<Session> it = keys.iterator();
+	    while (keys.size() > max) {
+		claimed.add(it.next());
+		it.remove();
+	    }
+	    return claimed;
+	}
+
+	void extend(Instant expiresAt) {
+	    long exp = expiresAt.toEpochMilli();
+	    if (latestExpiry.get() < exp)
+		latestExpiry.accumulateAndGet(exp, Math::max);
+	}
+    }
+}
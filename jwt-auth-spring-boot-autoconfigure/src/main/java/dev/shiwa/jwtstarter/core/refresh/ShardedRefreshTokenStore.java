@@ -0,0 +1,555 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.shiwa.jwtstarter.core.expiry.ExpiryIndex;
+import dev.shiwa.jwtstarter.core.expiry.ExpirySweeper;
+
+/**
+ * An in-memory {@link RefreshTokenStore} split into independent shards for
+ * many-core machines.
+ *
+ * <p>
+ * Each shard owns its maps, its {@link ExpiryIndex} and its counters, so maps
+ * are resized one shard at a time instead of all at once. Tokens are routed to
+ * a shard by the hash of their JTI, since lookups by JTI do not know the
+ * subject. Subjects are routed by their own hash to the shard holding their
+ * index (subject to active JTIs, family to current JTI), so
+ * {@link #revokeAllForSubject(String)} visits only the subject's tokens instead
+ * of filtering the whole store.
+ *
+ * <p>
+ * Token lookups are lock-free. Saves and index updates take the lock of the
+ * subject's shard, so a token is published and indexed in one step that
+ * {@link #revokeAllForSubject(String)} and
+ * {@link #revokeFamily(String, String)} cannot interleave with. How often that
+ * lock was already held is reported as contention in {@link #getShardStats()},
+ * together with each shard's size and operation count, to make skew visible.
+ * Rates are derived by sampling the counters.
+ *
+ * <p>
+ * Like {@link InMemoryRefreshTokenStore}, rotation keeps the old token as a
+ * consumed marker until it expires so that reuse is detected. Capacity limits
+ * and eviction policies are not supported.
+ */
+public class ShardedRefreshTokenStore implements RefreshTokenStore, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedRefreshTokenStore.class);
+
+    private final Shard[] shards;
+    private final int mask;
+    private final LongAdder evicted = new LongAdder();
+    private final ExpirySweeper sweeper;
+
+    /**
+     * Creates a sharded store with a background sweeper that evicts expired
+     * tokens.
+     *
+     * @param shardCount     the number of shards, rounded up to a power of two
+     * @param sweepInterval  the sweep tick; also used as bucket width of the
+     *                       expiry indexes
+     * @param sweepBatchSize the maximum number of tokens evicted per shard and
+     *                       tick
+     */
+    public ShardedRefreshTokenStore(int shardCount, Duration sweepInterval, int sweepBatchSize) {
+	if (sweepBatchSize <= 0)
+	    throw new IllegalArgumentException("sweepBatchSize must be > 0");
+
+	int n = shardCount <= 1 ? 1 : Integer.highestOneBit(shardCount - 1) << 1;
+	this.shards = new Shard[n];
+	this.mask = n - 1;
+	for (int i = 0; i < n; i++) {
+	    shards[i] = new Shard(sweepInterval.toMillis());
+	}
+
+	this.sweeper = new ExpirySweeper("sharded-refresh-token-sweeper", sweepInterval, () -> {
+	    int count = evictExpired(Instant.now(), sweepBatchSize);
+	    if (count > 0)
+		log.debug("🧹 Evicted {} expired refresh tokens, {} remaining", count, size());
+	});
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant exp) {
+	save(jti, subject, exp, null);
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant exp, String familyId) {
+	save(jti, subject, exp, familyId, null);
+    }
+
+    @Override
+    public void save(String jti, String subject, Instant exp, String familyId, List<String> roles) {
+	tokenShard(jti).operations.increment();
+	Shard home = subjectShard(subject);
+	Session foreign;
+	home.lock();
+	try {
+	    foreign = putLocked(jti, subject, exp, familyId, roles);
+	} finally {
+	    home.lock.unlock();
+	}
+	if (foreign != null)
+	    unindex(jti, foreign);
+    }
+
+    /**
+     * Saves several tokens, taking each affected subject shard's lock once
+     * per batch.
+     *
+     * @param tokens the tokens to save
+     */
+    @Override
+    public void saveAll(Collection<StoredRefreshToken> tokens) {
+	List<List<Runnable>> puts = perShard();
+	List<List<Runnable>> unindexes = perShard();
+	for (StoredRefreshToken t : tokens) {
+	    tokenShard(t.jti()).operations.increment();
+	    puts.get(subjectIndex(t.subject())).add(() -> {
+		Session foreign = putLocked(t.jti(), t.subject(), t.expiresAt(), t.familyId(), t.roles());
+		if (foreign != null)
+		    unindexes.get(subjectIndex(foreign.subject())).add(() -> unindexLocked(t.jti(), foreign));
+	    });
+	}
+	applyLocked(puts);
+	applyLocked(unindexes);
+    }
+
+    /**
+     * Revokes several tokens, taking each affected subject shard's lock once
+     * per batch.
+     *
+     * @param jtis the token identifiers to revoke
+     */
+    @Override
+    public void revokeAll(Collection<String> jtis) {
+	List<List<Runnable>> updates = perShard();
+	for (String jti : jtis) {
+	    Shard shard = tokenShard(jti);
+	    shard.operations.increment();
+	    Session session = shard.sessions.remove(jti);
+	    if (session != null && !session.consumed())
+		updates.get(subjectIndex(session.subject())).add(() -> unindexLocked(jti, session));
+	}
+	applyLocked(updates);
+    }
+
+    @Override
+    public Map<String, Boolean> isActiveAll(Collection<String> jtis) {
+	Instant now = Instant.now();
+	Map<String, Boolean> result = new HashMap<>(Math.max(16, jtis.size() * 4 / 3 + 1));
+	for (String jti : jtis) {
+	    Shard shard = tokenShard(jti);
+	    shard.operations.increment();
+	    Session session = shard.sessions.get(jti);
+	    result.put(jti, session != null && !session.consumed() && now.isBefore(session.expiresAt()));
+	}
+	return result;
+    }
+
+    @Override
+    public void forEachToken(Consumer<StoredRefreshToken> action) {
+	Instant now = Instant.now();
+	for (Shard shard : shards) {
+	    shard.sessions.forEach((jti, s) -> {
+		if (!s.consumed() && now.isBefore(s.expiresAt()))
+		    action.accept(new StoredRefreshToken(jti, s.subject(), s.expiresAt(), s.family(), s.roles()));
+	    });
+	}
+    }
+
+    @Override
+    public boolean isActive(String jti) {
+	Shard shard = tokenShard(jti);
+	shard.operations.increment();
+	Session session = shard.sessions.get(jti);
+	return session != null && !session.consumed() && Instant.now().isBefore(session.expiresAt());
+    }
+
+    @Override
+    public String subjectFor(String jti) {
+	Shard shard = tokenShard(jti);
+	shard.operations.increment();
+	Session session = shard.sessions.get(jti);
+	return session != null && !session.consumed() ? session.subject() : null;
+    }
+
+    /**
+     * Looks up a token, including a consumed marker of a rotated token.
+     *
+     * @param jti the token identifier
+     * @return the token, or {@code null} if it is unknown, revoked or expired
+     */
+    @Override
+    public StoredRefreshToken find(String jti) {
+	Shard shard = tokenShard(jti);
+	shard.operations.increment();
+	Session session = shard.sessions.get(jti);
+	if (session == null || !Instant.now().isBefore(session.expiresAt()))
+	    return null;
+	return new StoredRefreshToken(jti, session.subject(), session.expiresAt(), session.family(),
+		session.roles());
+    }
+
+    @Override
+    public void revoke(String jti) {
+	Shard shard = tokenShard(jti);
+	shard.operations.increment();
+	Session session = shard.sessions.remove(jti);
+	if (session != null && !session.consumed())
+	    unindex(jti, session);
+    }
+
+    /**
+     * Revokes the active tokens of a subject found in its shard's index.
+     * Consumed markers are kept, so later reuse is still detected.
+     *
+     * @param subject the subject whose refresh tokens should be revoked
+     */
+    @Override
+    public void revokeAllForSubject(String subject) {
+	Shard home = subjectShard(subject);
+	home.operations.increment();
+	Set<String> jtis;
+	home.lock();
+	try {
+	    jtis = home.subjects.remove(subject);
+	} finally {
+	    home.lock.unlock();
+	}
+	if (jtis == null)
+	    return;
+
+	Map<String, String> families = new HashMap<>();
+	for (String jti : jtis) {
+	    ConcurrentMap<String, Session> sessions = tokenShard(jti).sessions;
+	    Session session = sessions.get(jti);
+	    if (session != null && !session.consumed() && Objects.equals(session.subject(), subject)
+		    && sessions.remove(jti, session) && session.family() != null)
+		families.put(session.family(), jti);
+	}
+	if (families.isEmpty())
+	    return;
+
+	home.lock();
+	try {
+	    families.forEach(home.families::remove);
+	} finally {
+	    home.lock.unlock();
+	}
+    }
+
+    /**
+     * Consumes the old token with a compare-and-set on its map entry and saves
+     * the new one with the old token's roles. The old entry stays as a consumed
+     * marker until it expires. The new token replaces the old one in the index
+     * under the subject shard's lock; if the old token was revoked with its
+     * subject or family in the meantime, the new one is not saved.
+     */
+    @Override
+    public RotationOutcome rotate(String oldJti, String newJti, String subject, Instant expiresAt,
+	    String familyId) {
+	Shard shard = tokenShard(oldJti);
+	shard.operations.increment();
+	while (true) {
+	    Session current = shard.sessions.get(oldJti);
+	    if (current == null || !Objects.equals(current.subject(), subject))
+		return RotationOutcome.UNKNOWN;
+	    if (current.consumed())
+		return RotationOutcome.REUSED;
+	    if (!Instant.now().isBefore(current.expiresAt()))
+		return RotationOutcome.UNKNOWN;
+
+	    Session marker = new Session(current.subject(), current.expiresAt(), true, current.family(),
+		    current.roles());
+	    if (shard.sessions.replace(oldJti, current, marker)) {
+		String family = familyId != null ? familyId : current.family();
+		Shard home = subjectShard(subject);
+		Session foreign;
+		home.lock();
+		try {
+		    Set<String> jtis = home.subjects.get(subject);
+		    boolean revoked = jtis == null || !jtis.contains(oldJti) || current.family() != null
+			    && !oldJti.equals(home.families.get(current.family()));
+		    unindexLocked(oldJti, current);
+		    if (revoked)
+			return RotationOutcome.UNKNOWN;
+		    tokenShard(newJti).operations.increment();
+		    foreign = putLocked(newJti, subject, expiresAt, family, current.roles());
+		} finally {
+		    home.lock.unlock();
+		}
+		if (foreign != null)
+		    unindex(newJti, foreign);
+		return RotationOutcome.ROTATED;
+	    }
+	    // changed concurrently (rotated, revoked or re-saved): re-evaluate
+	}
+    }
+
+    /**
+     * Revokes the current token of a family, looked up in the subject's shard.
+     * Without a subject, every shard is searched.
+     *
+     * @param familyId the token family id
+     * @param subject  the subject owning the family, or {@code null}
+     */
+    @Override
+    public void revokeFamily(String familyId, String subject) {
+	if (subject == null) {
+	    for (Shard shard : shards) {
+		revokeFamily(shard, familyId);
+	    }
+	    return;
+	}
+	revokeFamily(subjectShard(subject), familyId);
+    }
+
+    private void revokeFamily(Shard shard, String familyId) {
+	shard.operations.increment();
+	String jti;
+	shard.lock();
+	try {
+	    jti = shard.families.remove(familyId);
+	} finally {
+	    shard.lock.unlock();
+	}
+	if (jti != null)
+	    revoke(jti);
+    }
+
+    /**
+     * Evicts up to {@code maxEntriesPerShard} tokens per shard that expired
+     * before {@code now}.
+     *
+     * @param now                the reference time
+     * @param maxEntriesPerShard the maximum number of index entries to process
+     *                           per shard
+     * @return the number of evicted tokens
+     */
+    public int evictExpired(Instant now, int maxEntriesPerShard) {
+	int count = 0;
+	for (Shard shard : shards) {
+	    count += shard.expiryIndex.pollExpired(now.toEpochMilli(), maxEntriesPerShard, (jti, expMillis) -> {
+		Session session = shard.sessions.get(jti);
+		if (session == null || session.expiresAt().isAfter(now) || !shard.sessions.remove(jti, session))
+		    return false;
+		if (!session.consumed())
+		    unindex(jti, session);
+		return true;
+	    });
+	}
+	evicted.add(count);
+	return count;
+    }
+
+    /**
+     * Returns the number of tokens currently held, including expired tokens and
+     * consumed markers that have not been evicted yet.
+     *
+     * @return the number of stored tokens
+     */
+    public int size() {
+	int size = 0;
+	for (Shard shard : shards) {
+	    size += shard.sessions.size();
+	}
+	return size;
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return the shard count, a power of two
+     */
+    public int getShardCount() {
+	return shards.length;
+    }
+
+    /**
+     * Returns the total number of expired tokens evicted since creation.
+     *
+     * @return the eviction count
+     */
+    public long getEvictedCount() {
+	return evicted.sum();
+    }
+
+    /**
+     * Returns a snapshot of every shard's statistics.
+     *
+     * @return one entry per shard, ordered by shard index
+     */
+    public List<ShardStats> getShardStats() {
+	List<ShardStats> stats = new ArrayList<>(shards.length);
+	for (int i = 0; i < shards.length; i++) {
+	    Shard shard = shards[i];
+	    int subjects;
+	    shard.lock.lock();
+	    try {
+		subjects = shard.subjects.size();
+	    } finally {
+		shard.lock.unlock();
+	    }
+	    stats.add(new ShardStats(i, shard.sessions.size(), subjects, shard.operations.sum(),
+		    shard.contended.sum()));
+	}
+	return stats;
+    }
+
+    /**
+     * Stops the background sweeper.
+     */
+    @Override
+    public void close() {
+	sweeper.close();
+    }
+
+    /**
+     * Stores and indexes a token. Requires the lock of the subject's shard.
+     * Unindexes a replaced session of a subject in the same shard and returns
+     * one of a subject in another shard, to be unindexed under that shard's
+     * lock.
+     */
+    private Session putLocked(String jti, String subject, Instant exp, String familyId, List<String> roles) {
+	Shard shard = tokenShard(jti);
+	Session previous = shard.sessions.put(jti, new Session(subject, exp, false, familyId, roles));
+	shard.expiryIndex.add(jti, exp.toEpochMilli());
+	Session foreign = null;
+	if (previous != null && !previous.consumed()) {
+	    if (subjectIndex(previous.subject()) == subjectIndex(subject))
+		unindexLocked(jti, previous);
+	    else
+		foreign = previous;
+	}
+	indexLocked(jti, subject, familyId);
+	return foreign;
+    }
+
+    private void unindex(String jti, Session session) {
+	Shard home = subjectShard(session.subject());
+	home.lock();
+	try {
+	    unindexLocked(jti, session);
+	} finally {
+	    home.lock.unlock();
+	}
+    }
+
+    /** Requires the lock of the subject's shard. */
+    private void indexLocked(String jti, String subject, String familyId) {
+	Shard home = subjectShard(subject);
+	home.subjects.computeIfAbsent(subject, k -> new HashSet<>(4)).add(jti);
+	if (familyId != null)
+	    home.families.put(familyId, jti);
+    }
+
+    /** Requires the lock of the session subject's shard. */
+    private void unindexLocked(String jti, Session session) {
+	Shard home = subjectShard(session.subject());
+	Set<String> jtis = home.subjects.get(session.subject());
+	if (jtis != null && jtis.remove(jti) && jtis.isEmpty())
+	    home.subjects.remove(session.subject());
+	if (session.family() != null)
+	    home.families.remove(session.family(), jti);
+    }
+
+    private List<List<Runnable>> perShard() {
+	List<List<Runnable>> updates = new ArrayList<>(shards.length);
+	for (int i = 0; i < shards.length; i++) {
+	    updates.add(new ArrayList<>());
+	}
+	return updates;
+    }
+
+    /** Runs each shard's index updates under a single acquisition of its lock. */
+    private void applyLocked(List<List<Runnable>> updates) {
+	for (int i = 0; i < shards.length; i++) {
+	    List<Runnable> shardUpdates = updates.get(i);
+	    if (shardUpdates.isEmpty())
+		continue;
+	    Shard shard = shards[i];
+	    shard.lock();
+	    try {
+		shardUpdates.forEach(Runnable::run);
+	    } finally {
+		shard.lock.unlock();
+	    }
+	}
+    }
+
+    private Shard tokenShard(String jti) {
+	return shards[spread(jti.hashCode()) & mask];
+    }
+
+    private Shard subjectShard(String subject) {
+	return shards[subjectIndex(subject)];
+    }
+
+    private int subjectIndex(String subject) {
+	return spread(Objects.hashCode(subject)) & mask;
+    }
+
+    private static int spread(int h) {
+	h *= 0x9E3779B9;
+	return h ^ (h >>> 16);
+    }
+
+    /**
+     * Statistics of a single shard.
+     *
+     * @param shard          the shard index
+     * @param tokens         the number of tokens held, including consumed
+     *                       markers
+     * @param subjects       the number of subjects indexed in this shard
+     * @param operations     the number of operations routed to this shard
+     * @param contendedLocks how often the shard's index lock was already held
+     */
+    public record ShardStats(int shard, int tokens, int subjects, long operations, long contendedLocks) {
+    }
+
+    private static final class Shard {
+	final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+	/** Subject to active JTIs; guarded by {@link #lock}. */
+	final Map<String, Set<String>> subjects = new HashMap<>();
+	/** Family to current JTI; guarded by {@link #lock}. */
+	final Map<String, String> families = new HashMap<>();
+	final ExpiryIndex<String> expiryIndex;
+	final ReentrantLock lock = new ReentrantLock();
+	final LongAdder operations = new LongAdder();
+	final LongAdder contended = new LongAdder();
+
+	Shard(long bucketMillis) {
+	    this.expiryIndex = new ExpiryIndex<>(bucketMillis);
+	}
+
+	void lock() {
+	    if (!lock.tryLock()) {
+		contended.increment();
+		lock.lock();
+	    }
+	}
+    }
+
+    private record Session(String subject, Instant expiresAt, boolean consumed, String family,
+	    List<String> roles) {
+    }
+}
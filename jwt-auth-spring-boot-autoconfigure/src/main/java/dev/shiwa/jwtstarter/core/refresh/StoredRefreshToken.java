@@ -0,0 +1,33 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A refresh token as held by a {@link RefreshTokenStore}, used by the bulk
+ * operations, {@link RefreshTokenStore#find(String)} and
+ * {@link RefreshTokenTransfer}.
+ *
+ * @param jti       the unique token identifier
+ * @param subject   the subject associated with the token
+ * @param expiresAt the expiration timestamp of the token, or {@code null} if
+ *                  the store does not report it
+ * @param familyId  the token family id, or {@code null}
+ * @param roles     the roles granted to access tokens issued for this token,
+ *                  or {@code null}
+ */
+public record StoredRefreshToken(String jti, String subject, Instant expiresAt, String familyId,
+	List<String> roles) {
+
+    /**
+     * Creates a token without roles.
+     *
+     * @param jti       the unique token identifier
+     * @param subject   the subject associated with the token
+     * @param expiresAt the expiration timestamp of the token
+     * @param familyId  the token family id, or {@code null}
+     */
+    public StoredRefreshToken(String jti, String subject, Instant expiresAt, String familyId) {
+	this(jti, subject, expiresAt, familyId, null);
+    }
+}
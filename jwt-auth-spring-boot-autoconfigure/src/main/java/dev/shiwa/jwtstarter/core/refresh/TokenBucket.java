@@ -0,0 +1,78 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ *
+ * <p>
+ * The bucket is kept as a single "theoretical arrival time" (the generic cell
+ * rate algorithm): the instant at which the bucket would be full again. Taking
+ * a permit advances it by one emission interval ({@code 1 / rate}), and a
+ * permit is denied while it lies more than {@code burst - 1} intervals in the
+ * future. The whole state is one {@link AtomicLong} updated by compare and
+ * set, so concurrent callers never block each other.
+ */
+public final class TokenBucket {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param permitsPerSecond the refill rate; must be positive
+     * @param burst            the capacity, i.e. the number of permits that can
+     *                         be taken at once; must be positive
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+	if (permitsPerSecond <= 0)
+	    throw new IllegalArgumentException("permitsPerSecond must be > 0");
+	if (burst <= 0)
+	    throw new IllegalArgumentException("burst must be > 0");
+	this.intervalNanos = Math.max(1, (long) (1_000_000_000L / permitsPerSecond));
+	this.toleranceNanos = intervalNanos * (burst - 1);
+	this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes a permit if one is available.
+     *
+     * @return {@code 0} if a permit was taken, otherwise the number of
+     *         milliseconds (at least 1) until the next permit is available
+     */
+    public long tryAcquire() {
+	return tryAcquire(System.nanoTime());
+    }
+
+    long tryAcquire(long nowNanos) {
+	while (true) {
+	    long current = fullAt.get();
+	    long start = current - nowNanos > 0 ? current : nowNanos;
+	    long waitNanos = start - nowNanos - toleranceNanos;
+	    if (waitNanos > 0)
+		return Math.max(1, (waitNanos + 999_999) / 1_000_000);
+	    if (fullAt.compareAndSet(current, start + intervalNanos))
+		return 0;
+	}
+    }
+
+    /**
+     * Returns a permit taken by {@link #tryAcquire()} that was not used, e.g.
+     * because another limit rejected the request.
+     */
+    public void release() {
+	fullAt.addAndGet(-intervalNanos);
+    }
+
+    /**
+     * Checks whether the bucket is full, i.e. whether forgetting it would make
+     * no difference.
+     *
+     * @return {@code true} if all permits are available
+     */
+    public boolean isFull() {
+	return fullAt.get() - System.nanoTime() <= 0;
+    }
+}
@@ -0,0 +1,61 @@
+package dev.shiwa.jwtstarter.core.refresh.eviction;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Evicts the token that has been saved or looked up least recently.
+ *
+ * <p>
+ * Recency is tracked with a global sequence number instead of a linked list, so
+ * updates only touch concurrent maps and never take a lock.
+ */
+public class LeastRecentlyRefreshedEvictionPolicy implements RefreshTokenEvictionPolicy {
+
+    private final ConcurrentSkipListMap<Long, String> byRecency = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Long> stamps = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+
+    @Override
+    public void recordSave(String jti, String subject, Instant expiresAt) {
+	touch(jti);
+    }
+
+    @Override
+    public void recordAccess(String jti) {
+	if (stamps.containsKey(jti))
+	    touch(jti);
+    }
+
+    @Override
+    public void recordRemoval(String jti, String subject) {
+	Long stamp = stamps.remove(jti);
+	if (stamp != null)
+	    byRecency.remove(stamp);
+    }
+
+    @Override
+    public String nextVictim(String subject, int size, int capacity) {
+	if (capacity <= 0 || size <= capacity)
+	    return null;
+
+	Map.Entry<Long, String> eldest;
+	while ((eldest = byRecency.pollFirstEntry()) != null) {
+	    if (stamps.remove(eldest.getValue(), eldest.getKey()))
+		return eldest.getValue();
+	}
+	return null;
+    }
+
+    private void touch(String jti) {
+	long stamp = clock.incrementAndGet();
+	byRecency.put(stamp, jti);
+	Long previous = stamps.put(jti, stamp);
+	if (previous != null)
+	    byRecency.remove(previous);
+    }
+}
@@ -0,0 +1,56 @@
+package dev.shiwa.jwtstarter.core.refresh.eviction;
+
+import java.time.Instant;
+
+/**
+ * Strategy deciding which refresh tokens are evicted when an in-memory store
+ * runs over its capacity.
+ *
+ * <p>
+ * The store reports every save, lookup and removal to the policy and asks for a
+ * victim after each save. Implementations must be thread-safe and should avoid
+ * global locks, as they sit on the hot path of every store operation.
+ */
+public interface RefreshTokenEvictionPolicy {
+
+    /**
+     * Records a newly saved token.
+     *
+     * @param jti       the token identifier
+     * @param subject   the subject owning the token
+     * @param expiresAt the expiration time of the token
+     */
+    void recordSave(String jti, String subject, Instant expiresAt);
+
+    /**
+     * Records a lookup of an active token (e.g. during a refresh).
+     *
+     * @param jti the token identifier
+     */
+    void recordAccess(String jti);
+
+    /**
+     * Records that a token left the store (revoked, expired or evicted).
+     *
+     * @param jti     the token identifier
+     * @param subject the subject owning the token
+     */
+    void recordRemoval(String jti, String subject);
+
+    /**
+     * Selects the next token to evict after a token of {@code subject} has been
+     * saved.
+     *
+     * <p>
+     * The store evicts the returned token, reports it via
+     * {@link #recordRemoval(String, String)} and asks again until {@code null} is
+     * returned.
+     *
+     * @param subject  the subject of the token that was just saved
+     * @param size     the current number of tokens in the store
+     * @param capacity the maximum number of tokens, or {@code 0} if unbounded
+     * @return the token identifier to evict, or {@code null} if nothing needs to
+     *         be evicted
+     */
+    String nextVictim(String subject, int size, int capacity);
+}
@@ -0,0 +1,62 @@
+package dev.shiwa.jwtstarter.core.refresh.eviction;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Evicts the token closest to its expiration first.
+ *
+ * <p>
+ * Those tokens have the least remaining value for the user, so evicting them
+ * causes the fewest forced re-logins.
+ */
+public class SoonestExpiryEvictionPolicy implements RefreshTokenEvictionPolicy {
+
+    private static final Comparator<Key> ORDER = Comparator.comparingLong(Key::expiresAtMillis)
+	    .thenComparingLong(Key::seq);
+
+    private final ConcurrentSkipListSet<Key> byExpiry = new ConcurrentSkipListSet<>(ORDER);
+    private final ConcurrentMap<String, Key> keys = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Override
+    public void recordSave(String jti, String subject, Instant expiresAt) {
+	Key key = new Key(jti, expiresAt.toEpochMilli(), sequence.incrementAndGet());
+	Key previous = keys.put(jti, key);
+	if (previous != null)
+	    byExpiry.remove(previous);
+	byExpiry.add(key);
+    }
+
+    @Override
+    public void recordAccess(String jti) {
+	// access does not change the expiry order
+    }
+
+    @Override
+    public void recordRemoval(String jti, String subject) {
+	Key key = keys.remove(jti);
+	if (key != null)
+	    byExpiry.remove(key);
+    }
+
+    @Override
+    public String nextVictim(String subject, int size, int capacity) {
+	if (capacity <= 0 || size <= capacity)
+	    return null;
+
+	Key key;
+	while ((key = byExpiry.pollFirst()) != null) {
+	    if (keys.remove(key.jti(), key))
+		return key.jti();
+	}
+	return null;
+    }
+
+    private record Key(String jti, long expiresAtMillis, long seq) {
+    }
+}
@@ -0,0 +1,80 @@
+package dev.shiwa.jwtstarter.core.refresh.eviction;
+
+import java.time.Instant;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of sessions per subject and evicts the subject's oldest
+ * session once the limit is exceeded.
+ *
+ * <p>
+ * The global capacity is still enforced by the wrapped policy, which is
+ * consulted whenever the subject is within its limit.
+ */
+public class SubjectSessionCapEvictionPolicy implements RefreshTokenEvictionPolicy {
+
+    private final int maxSessionsPerSubject;
+    private final RefreshTokenEvictionPolicy delegate;
+    private final ConcurrentMap<String, Sessions> bySubject = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new per-subject cap.
+     *
+     * @param maxSessionsPerSubject the maximum number of sessions per subject
+     * @param delegate              the policy enforcing the global capacity
+     */
+    public SubjectSessionCapEvictionPolicy(int maxSessionsPerSubject, RefreshTokenEvictionPolicy delegate) {
+	if (maxSessionsPerSubject <= 0)
+	    throw new IllegalArgumentException("maxSessionsPerSubject must be > 0");
+	this.maxSessionsPerSubject = maxSessionsPerSubject;
+	this.delegate = delegate;
+    }
+
+    @Override
+    public void recordSave(String jti, String subject, Instant expiresAt) {
+	bySubject.compute(subject, (s, sessions) -> {
+	    Sessions result = sessions != null ? sessions : new Sessions();
+	    result.jtis.addLast(jti);
+	    result.count.incrementAndGet();
+	    return result;
+	});
+	delegate.recordSave(jti, subject, expiresAt);
+    }
+
+    @Override
+    public void recordAccess(String jti) {
+	delegate.recordAccess(jti);
+    }
+
+    @Override
+    public void recordRemoval(String jti, String subject) {
+	bySubject.computeIfPresent(subject, (s, sessions) -> {
+	    if (sessions.jtis.remove(jti))
+		sessions.count.decrementAndGet();
+	    return sessions.jtis.isEmpty() ? null : sessions;
+	});
+	delegate.recordRemoval(jti, subject);
+    }
+
+    @Override
+    public String nextVictim(String subject, int size, int capacity) {
+	Sessions sessions = bySubject.get(subject);
+	if (sessions != null && sessions.count.get() > maxSessionsPerSubject) {
+	    String oldest = sessions.jtis.pollFirst();
+	    if (oldest != null) {
+		sessions.count.decrementAndGet();
+		return oldest;
+	    }
+	}
+	return delegate.nextVictim(subject, size, capacity);
+    }
+
+    private static final class Sessions {
+	private final Deque<String> jtis = new ConcurrentLinkedDeque<>();
+	private final AtomicInteger count = new AtomicInteger();
+    }
+}
@@ -0,0 +1,217 @@
+package dev.shiwa.jwtstarter.core.revocation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.shiwa.jwtstarter.core.expiry.ExpiryIndex;
+import dev.shiwa.jwtstarter.core.expiry.ExpirySweeper;
+
+/**
+ * In-memory denylist of revoked access tokens, keyed by their {@code jti}.
+ *
+ * <p>
+ * Lookups first consult a lock-free {@link BloomFilter}, which answers the
+ * common "not revoked" case without touching the exact set. Only filter hits
+ * (revoked tokens and roughly 1% false positives) fall through to the exact
+ * {@link ConcurrentHashMap}.
+ *
+ * <p>
+ * An entry is only needed until the revoked token expires on its own. Entries
+ * are registered in an {@link ExpiryIndex} and evicted by a background
+ * sweeper, which then rebuilds the filter from the remaining entries so that
+ * evicted tokens stop producing filter hits. Revocations arriving during a
+ * rebuild are added to both filters, so a lookup never misses a revocation.
+ *
+ * <p>
+ * With a {@link RevocationEventBus}, revocations are published to the other
+ * instances and theirs are applied locally.
+ *
+ * <p>
+ * Tokens of further issuers, verified by a {@code JwtVerifierRegistry}, are
+ * keyed by issuer and {@code jti}; the methods without an issuer address the
+ * application's own tokens.
+ */
+public class AccessTokenDenylist implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(AccessTokenDenylist.class);
+
+    private final ConcurrentMap<String, Long> entries = new ConcurrentHashMap<>();
+    private final ExpiryIndex<String> expiryIndex;
+    private final ExpirySweeper sweeper;
+    private final int sweepBatchSize;
+    private final int expectedEntries;
+    private final LongAdder filterHits = new LongAdder();
+    private final RevocationEventBus bus;
+
+    private volatile BloomFilter filter;
+    private volatile BloomFilter rebuilding;
+    private volatile int filterCapacity;
+
+    /**
+     * Creates a denylist with a background sweeper.
+     *
+     * @param expectedEntries the number of concurrently revoked tokens the filter
+     *                        is sized for; it grows on the next sweep if exceeded
+     * @param sweepInterval   the interval at which expired entries are evicted
+     * @param sweepBatchSize  the maximum number of entries evicted per tick
+     */
+    public AccessTokenDenylist(int expectedEntries, Duration sweepInterval, int sweepBatchSize) {
+	this(expectedEntries, sweepInterval, sweepBatchSize, null);
+    }
+
+    /**
+     * Creates a denylist with a background sweeper that shares revocations via
+     * the given bus.
+     *
+     * @param expectedEntries the number of concurrently revoked tokens the filter
+     *                        is sized for; it grows on the next sweep if exceeded
+     * @param sweepInterval   the interval at which expired entries are evicted
+     * @param sweepBatchSize  the maximum number of entries evicted per tick
+     * @param bus             the revocation event bus, or {@code null}
+     */
+    public AccessTokenDenylist(int expectedEntries, Duration sweepInterval, int sweepBatchSize,
+	    RevocationEventBus bus) {
+	this.bus = bus;
+	this.expectedEntries = Math.max(1, expectedEntries);
+	this.sweepBatchSize = sweepBatchSize;
+	this.expiryIndex = new ExpiryIndex<>(sweepInterval.toMillis());
+	this.filter = new BloomFilter(this.expectedEntries);
+	this.filterCapacity = this.expectedEntries;
+	this.sweeper = new ExpirySweeper("access-token-denylist-sweeper", sweepInterval,
+		() -> evictExpired(Instant.now()));
+	if (bus != null)
+	    bus.subscribe(event -> {
+		if (event.type() == RevocationEvent.Type.ACCESS_TOKEN)
+		    add(event.key(), event.millis());
+	    });
+    }
+
+    /**
+     * Revokes an access token until it expires.
+     *
+     * @param jti       the token identifier
+     * @param expiresAt the expiration timestamp of the token
+     */
+    public void revoke(String jti, Instant expiresAt) {
+	revoke(null, jti, expiresAt);
+    }
+
+    /**
+     * Revokes an access token of the given issuer until it expires.
+     *
+     * @param issuer    the issuer of the token, or {@code null} for the
+     *                  application's own tokens
+     * @param jti       the token identifier
+     * @param expiresAt the expiration timestamp of the token
+     */
+    public void revoke(String issuer, String jti, Instant expiresAt) {
+	String key = IssuerKeys.of(issuer, jti);
+	long exp = expiresAt.toEpochMilli();
+	if (add(key, exp) && bus != null)
+	    bus.publish(new RevocationEvent(RevocationEvent.Type.ACCESS_TOKEN, key, null, exp));
+    }
+
+    private boolean add(String jti, long exp) {
+	if (exp <= System.currentTimeMillis())
+	    return false;
+	entries.merge(jti, exp, Math::max);
+	expiryIndex.add(jti, exp);
+	// add to a filter being rebuilt before the current one, see rebuildFilter()
+	BloomFilter next = rebuilding;
+	if (next != null)
+	    next.add(jti);
+	filter.add(jti);
+	return true;
+    }
+
+    /**
+     * Checks whether an access token has been revoked.
+     *
+     * @param jti the token identifier, may be {@code null}
+     * @return {@code true} if the token is on the denylist
+     */
+    public boolean isRevoked(String jti) {
+	return isRevoked(null, jti);
+    }
+
+    /**
+     * Checks whether an access token of the given issuer has been revoked.
+     *
+     * @param issuer the issuer of the token, or {@code null} for the
+     *               application's own tokens
+     * @param jti    the token identifier, may be {@code null}
+     * @return {@code true} if the token is on the denylist
+     */
+    public boolean isRevoked(String issuer, String jti) {
+	if (jti == null)
+	    return false;
+	String key = IssuerKeys.of(issuer, jti);
+	if (!filter.mightContain(key))
+	    return false;
+	filterHits.increment();
+	return entries.containsKey(key);
+    }
+
+    /**
+     * Evicts entries whose token expired at or before the given instant and
+     * rebuilds the filter if anything was evicted or it is over capacity.
+     *
+     * @param now the reference time
+     * @return the number of evicted entries
+     */
+    public int evictExpired(Instant now) {
+	long nowMillis = now.toEpochMilli();
+	int evicted = expiryIndex.pollExpired(nowMillis, sweepBatchSize,
+		(jti, exp) -> exp <= nowMillis && entries.remove(jti, exp));
+	if (evicted > 0 || entries.size() > filterCapacity)
+	    rebuildFilter();
+	if (evicted > 0)
+	    log.debug("🧹 Evicted {} expired access tokens from the denylist", evicted);
+	return evicted;
+    }
+
+    /**
+     * Returns the number of revoked tokens that have not expired yet.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+	return entries.size();
+    }
+
+    /**
+     * Returns how many lookups passed the filter and had to consult the exact
+     * set.
+     *
+     * @return the number of filter hits
+     */
+    public long getFilterHitCount() {
+	return filterHits.sum();
+    }
+
+    /**
+     * Stops the background sweeper.
+     */
+    @Override
+    public void close() {
+	sweeper.close();
+    }
+
+    private void rebuildFilter() {
+	int capacity = Math.max(expectedEntries, entries.size() * 2);
+	BloomFilter rebuilt = new BloomFilter(capacity);
+	// a revocation that sees no rebuilding filter either precedes the copy
+	// loop or follows the swap, where 'filter' already is the rebuilt one
+	rebuilding = rebuilt;
+	entries.keySet().forEach(rebuilt::add);
+	filter = rebuilt;
+	rebuilding = null;
+	filterCapacity = capacity;
+    }
+}
@@ -0,0 +1,74 @@
+package dev.shiwa.jwtstarter.core.revocation;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free, cache-line blocked Bloom filter over strings.
+ *
+ * <p>
+ * All bits of a key lie in one 512-bit block, so a lookup touches a single
+ * cache line. Sized for roughly a 1% false positive rate at the expected
+ * number of entries. Bits are only ever set, so {@link #mightContain(String)}
+ * never misses a key added before the call started. Removal is not supported;
+ * the owner rebuilds the filter instead.
+ */
+final class BloomFilter {
+
+    private static final int HASHES = 7;
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int WORDS_PER_BLOCK = 8;
+
+    private final AtomicLongArray words;
+    private final int blocks;
+
+    /**
+     * Creates an empty filter.
+     *
+     * @param expectedEntries the number of entries the filter is sized for
+     */
+    BloomFilter(int expectedEntries) {
+	long bits = (long) Math.max(1, expectedEntries) * BITS_PER_ENTRY;
+	this.blocks = (int) Math.min(Integer.MAX_VALUE / WORDS_PER_BLOCK, Math.max(1, (bits + 511) >>> 9));
+	this.words = new AtomicLongArray(blocks * WORDS_PER_BLOCK);
+    }
+
+    void add(String key) {
+	long hash = hash(key);
+	int base = block(hash);
+	for (int i = 0; i < HASHES; i++) {
+	    int bit = (int) (hash >>> (i * 9)) & 511;
+	    int word = base + (bit >>> 6);
+	    long mask = 1L << bit;
+	    if ((words.get(word) & mask) == 0)
+		words.getAndAccumulate(word, mask, (a, b) -> a | b);
+	}
+    }
+
+    boolean mightContain(String key) {
+	long hash = hash(key);
+	int base = block(hash);
+	for (int i = 0; i < HASHES; i++) {
+	    int bit = (int) (hash >>> (i * 9)) & 511;
+	    if ((words.get(base + (bit >>> 6)) & (1L << bit)) == 0)
+		return false;
+	}
+	return true;
+    }
+
+    /** Picks the block from a second multiplicative mix of the hash. */
+    private int block(long hash) {
+	long h = hash * 0xC2B2AE3D27D4EB4FL;
+	return (int) ((h >>> 32) % blocks) * WORDS_PER_BLOCK;
+    }
+
+    /**
+     * Spreads {@link String#hashCode()}, which strings cache, to 64 bits
+     * (SplitMix64 finalizer).
+     */
+    private static long hash(String key) {
+	long h = key.hashCode() * 0x9E3779B97F4A7C15L;
+	h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+	h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+	return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,59 @@
+package dev.shiwa.jwtstarter.core.revocation;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * A {@link RevocationEventBus} connecting nodes within one JVM, mainly for
+ * tests. Events are delivered synchronously on the publishing thread.
+ *
+ * <pre>{@code
+ * InJvmRevocationEventBus node1 = new InJvmRevocationEventBus();
+ * InJvmRevocationEventBus node2 = new InJvmRevocationEventBus(node1);
+ * }</pre>
+ */
+public class InJvmRevocationEventBus implements RevocationEventBus {
+
+    private final List<InJvmRevocationEventBus> network;
+    private final List<Consumer<RevocationEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates the first node of a new network.
+     */
+    public InJvmRevocationEventBus() {
+	this.network = new CopyOnWriteArrayList<>();
+	network.add(this);
+    }
+
+    /**
+     * Creates a node joining the network of the given node.
+     *
+     * @param peer any node of the network to join
+     */
+    public InJvmRevocationEventBus(InJvmRevocationEventBus peer) {
+	this.network = peer.network;
+	network.add(this);
+    }
+
+    @Override
+    public void publish(RevocationEvent event) {
+	for (InJvmRevocationEventBus node : network) {
+	    if (node != this)
+		node.listeners.forEach(l -> l.accept(event));
+	}
+    }
+
+    @Override
+    public void subscribe(Consumer<RevocationEvent> listener) {
+	listeners.add(listener);
+    }
+
+    /**
+     * Leaves the network.
+     */
+    @Override
+    public void close() {
+	network.remove(this);
+    }
+}
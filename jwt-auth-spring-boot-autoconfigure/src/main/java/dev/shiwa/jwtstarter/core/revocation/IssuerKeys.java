@@ -0,0 +1,25 @@
+package dev.shiwa.jwtstarter.core.revocation;
+
+/**
+ * Qualifies revocation keys with the issuer of the token, so that equal token
+ * ids or subjects of different issuers are revoked independently.
+ */
+final class IssuerKeys {
+
+    private IssuerKeys() {
+    }
+
+    /**
+     * Returns the key of a token id or subject of the given issuer.
+     *
+     * @param issuer the issuer, or {@code null} for the application's own
+     *               tokens, whose keys are not qualified
+     * @param key    the token id or subject
+     * @return the qualified key
+     */
+    static String of(String issuer, String key) {
+	if (issuer == null || key == null)
+	    return key;
+	return issuer + '\u0000' + key;
+    }
+}
@@ -0,0 +1,33 @@
+package dev.shiwa.jwtstarter.core.revocation;
+
+/**
+ * A revocation that happened on one instance and is propagated to the others
+ * via a {@link RevocationEventBus}.
+ *
+ * <p>
+ * Applying an event is idempotent, so duplicated or replayed events are
+ * harmless.
+ *
+ * @param type    what was revoked
+ * @param key     the token id, subject or family id, depending on the type
+ * @param subject the subject owning the revoked token(s), may be {@code null}
+ * @param millis  the token expiry ({@link Type#ACCESS_TOKEN}) or the cutoff
+ *                ({@link Type#SUBJECT_EPOCH}) in epoch millis; {@code 0}
+ *                otherwise
+ */
+public record RevocationEvent(Type type, String key, String subject, long millis) {
+
+    /** Kinds of revocation events. */
+    public enum Type {
+	/** A single refresh token; {@code key} is its JTI. */
+	REFRESH_TOKEN,
+	/** All refresh tokens of a subject; {@code key} is the subject. */
+	REFRESH_SUBJECT,
+	/** A refresh token family; {@code key} is the family id. */
+	REFRESH_FAMILY,
+	/** A single access token; {@code key} is its JTI. */
+	ACCESS_TOKEN,
+	/** A subject revocation epoch; {@code key} is the subject. */
+	SUBJECT_EPOCH
+    }
+}
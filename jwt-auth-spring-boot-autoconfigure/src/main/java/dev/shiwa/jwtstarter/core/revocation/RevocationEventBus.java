@@ -0,0 +1,35 @@
+package dev.shiwa.jwtstarter.core.revocation;
+
+import java.util.function.Consumer;
+
+/**
+ * Broadcasts revocation events between application instances.
+ *
+ * <p>
+ * Each bus instance represents one node. Events published on a node are
+ * delivered to the listeners of all other nodes, but not to its own
+ * listeners, which already applied the revocation locally. Delivery is best
+ * effort and may be asynchronous; listeners must apply events idempotently.
+ */
+public interface RevocationEventBus extends AutoCloseable {
+
+    /**
+     * Publishes an event to all other nodes.
+     *
+     * @param event the event
+     */
+    void publish(RevocationEvent event);
+
+    /**
+     * Registers a listener for events published by other nodes.
+     *
+     * @param listener the listener
+     */
+    void subscribe(Consumer<RevocationEvent> listener);
+
+    /**
+     * Stops the bus. Pending events may be flushed.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,392 @@
+package dev.shiwa.jwtstarter.core.revocation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.locks.StampedLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.shiwa.jwtstarter.core.expiry.ExpiryIndex;
+import dev.shiwa.jwtstarter.core.expiry.ExpirySweeper;
+
+/**
+ * Per-subject revocation epochs: "every token of this subject issued before
+ * {@code T} is invalid".
+ *
+ * <p>
+ * This ends all sessions of a subject at once (e.g. "log out everywhere")
+ * without knowing the individual tokens. A check is a single hash lookup of
+ * the subject, compared against the token's {@code iat} claim.
+ *
+ * <p>
+ * The map is split into independently locked segments of open-addressing
+ * tables with parallel {@code String[]} keys and {@code long[]} cutoffs, so
+ * entries need no node objects or boxed values. Reads are optimistic
+ * ({@link StampedLock}) and do not block each other or writers.
+ *
+ * <p>
+ * An epoch is only needed until every token issued before it has expired, so
+ * entries are dropped {@code retention} (the access token TTL) after their
+ * cutoff by a background sweeper. Tokens are compared by their issue time in
+ * milliseconds where they carry one; since {@code iat} alone has second
+ * precision, tokens without it issued within the same second as the cutoff
+ * are rejected as well.
+ *
+ * <p>
+ * With a {@link RevocationEventBus}, epochs are published to the other
+ * instances and theirs are applied locally.
+ *
+ * <p>
+ * Subjects of further issuers, verified by a {@code JwtVerifierRegistry}, are
+ * keyed by issuer and subject; the methods without an issuer address the
+ * application's own subjects.
+ */
+public class SubjectRevocationEpochs implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SubjectRevocationEpochs.class);
+
+    private static final int SEGMENTS = 16;
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+    private static final int SWEEP_BATCH_SIZE = 10_000;
+
+    /** Marks a slot whose entry was removed; keeps probe chains intact. */
+    private static final String DELETED = new String("<deleted>");
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long retentionMillis;
+    private final ExpiryIndex<String> expiryIndex;
+    private final ExpirySweeper sweeper;
+    private final RevocationEventBus bus;
+
+    /**
+     * Creates an epoch map with a background sweeper.
+     *
+     * @param retention     how long an epoch is kept after its cutoff; must be
+     *                      at least the access token TTL
+     * @param sweepInterval the interval at which outdated epochs are dropped
+     */
+    public SubjectRevocationEpochs(Duration retention, Duration sweepInterval) {
+	this(retention, sweepInterval, null);
+    }
+
+    /**
+     * Creates an epoch map with a background sweeper that shares epochs via the
+     * given bus.
+     *
+     * @param retention     how long an epoch is kept after its cutoff; must be
+     *                      at least the access token TTL
+     * @param sweepInterval the interval at which outdated epochs are dropped
+     * @param bus           the revocation event bus, or {@code null}
+     */
+    public SubjectRevocationEpochs(Duration retention, Duration sweepInterval, RevocationEventBus bus) {
+	this.bus = bus;
+	for (int i = 0; i < SEGMENTS; i++) {
+	    segments[i] = new Segment();
+	}
+	this.retentionMillis = retention.toMillis();
+	this.expiryIndex = new ExpiryIndex<>(sweepInterval.toMillis());
+	this.sweeper = new ExpirySweeper("subject-revocation-sweeper", sweepInterval,
+		() -> evictExpired(Instant.now()));
+	if (bus != null)
+	    bus.subscribe(event -> {
+		if (event.type() == RevocationEvent.Type.SUBJECT_EPOCH)
+		    raise(event.key(), event.millis());
+	    });
+    }
+
+    /**
+     * Invalidates all tokens of a subject issued before the given instant.
+     * Moving an existing cutoff backwards has no effect.
+     *
+     * @param subject the subject
+     * @param cutoff  tokens issued before this instant are rejected
+     */
+    public void revokeIssuedBefore(String subject, Instant cutoff) {
+	revokeIssuedBefore(null, subject, cutoff);
+    }
+
+    /**
+     * Invalidates all tokens of a subject of the given issuer issued before the
+     * given instant.
+     *
+     * @param issuer  the issuer, or {@code null} for the application's own
+     *                subjects
+     * @param subject the subject
+     * @param cutoff  tokens issued before this instant are rejected
+     */
+    public void revokeIssuedBefore(String issuer, String subject, Instant cutoff) {
+	String key = IssuerKeys.of(issuer, subject);
+	long cutoffMillis = cutoff.toEpochMilli();
+	if (raise(key, cutoffMillis) && bus != null)
+	    bus.publish(new RevocationEvent(RevocationEvent.Type.SUBJECT_EPOCH, key, subject, cutoffMillis));
+    }
+
+    private boolean raise(String subject, long cutoffMillis) {
+	int hash = hash(subject);
+	if (!segmentFor(hash).raise(subject, hash, cutoffMillis))
+	    return false;
+	expiryIndex.add(subject, cutoffMillis + retentionMillis);
+	return true;
+    }
+
+    /**
+     * Checks whether a token has been revoked by its subject's epoch.
+     *
+     * @param subject  the token subject
+     * @param issuedAt the token's {@code iat}; tokens without one are treated
+     *                 as issued before any epoch
+     * @return {@code true} if the token was issued before the subject's cutoff
+     */
+    public boolean isRevoked(String subject, Date issuedAt) {
+	return isRevoked(null, subject, issuedAt);
+    }
+
+    /**
+     * Checks whether a token of the given issuer has been revoked by its
+     * subject's epoch, see {@link #isRevoked(String, Date)}.
+     *
+     * @param issuer   the issuer, or {@code null} for the application's own
+     *                 subjects
+     * @param subject  the token subject
+     * @param issuedAt the token's {@code iat}
+     * @return {@code true} if the token was issued before the subject's cutoff
+     */
+    public boolean isRevoked(String issuer, String subject, Date issuedAt) {
+	long cutoff = cutoff(IssuerKeys.of(issuer, subject));
+	if (cutoff == Long.MIN_VALUE)
+	    return false;
+	// iat is truncated to seconds, so the whole second of the cutoff counts
+	return issuedAt == null || issuedAt.getTime() / 1000 <= cutoff / 1000;
+    }
+
+    /**
+     * Checks whether a token with a millisecond issue time has been revoked by
+     * its subject's epoch. Unlike {@link #isRevoked(String, Date)}, tokens
+     * issued later within the second of the cutoff are accepted.
+     *
+     * @param subject        the token subject
+     * @param issuedAtMillis the token's issue time in epoch milliseconds
+     * @return {@code true} if the token was issued at or before the subject's
+     *         cutoff
+     */
+    public boolean isRevoked(String subject, long issuedAtMillis) {
+	return isRevoked(null, subject, issuedAtMillis);
+    }
+
+    /**
+     * Checks whether a token of the given issuer with a millisecond issue time
+     * has been revoked by its subject's epoch, see
+     * {@link #isRevoked(String, long)}.
+     *
+     * @param issuer         the issuer, or {@code null} for the application's
+     *                       own subjects
+     * @param subject        the token subject
+     * @param issuedAtMillis the token's issue time in epoch milliseconds
+     * @return {@code true} if the token was issued at or before the subject's
+     *         cutoff
+     */
+    public boolean isRevoked(String issuer, String subject, long issuedAtMillis) {
+	long cutoff = cutoff(IssuerKeys.of(issuer, subject));
+	return cutoff != Long.MIN_VALUE && issuedAtMillis <= cutoff;
+    }
+
+    /** Returns the subject's cutoff, or {@link Long#MIN_VALUE} if it has none. */
+    private long cutoff(String subject) {
+	if (subject == null)
+	    return Long.MIN_VALUE;
+	int hash = hash(subject);
+	return segmentFor(hash).get(subject, hash);
+    }
+
+    /**
+     * Drops epochs whose cutoff lies more than the retention before the given
+     * instant.
+     *
+     * @param now the reference time
+     * @return the number of dropped epochs
+     */
+    public int evictExpired(Instant now) {
+	long nowMillis = now.toEpochMilli();
+	int evicted = expiryIndex.pollExpired(nowMillis, SWEEP_BATCH_SIZE, (subject, exp) -> {
+	    int hash = hash(subject);
+	    return exp <= nowMillis && segmentFor(hash).remove(subject, hash, exp - retentionMillis);
+	});
+	if (evicted > 0)
+	    log.debug("🧹 Dropped {} outdated subject revocation epochs", evicted);
+	return evicted;
+    }
+
+    /**
+     * Returns the number of subjects with an epoch.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+	int size = 0;
+	for (Segment s : segments) {
+	    size += s.size();
+	}
+	return size;
+    }
+
+    /**
+     * Stops the background sweeper.
+     */
+    @Override
+    public void close() {
+	sweeper.close();
+    }
+
+    private Segment segmentFor(int hash) {
+	return segments[(hash >>> 28) & (SEGMENTS - 1)];
+    }
+
+    private static int hash(String subject) {
+	int h = subject.hashCode() * 0x9E3779B9;
+	return h ^ (h >>> 16);
+    }
+
+    private static final class Segment {
+	private final StampedLock lock = new StampedLock();
+	private volatile Table table = new Table(INITIAL_SEGMENT_CAPACITY);
+	private int size;
+	private int deleted;
+
+	/** Returns the cutoff, or {@link Long#MIN_VALUE} if absent. */
+	long get(String key, int hash) {
+	    long stamp = lock.tryOptimisticRead();
+	    long result = read(table, key, hash);
+	    if (lock.validate(stamp))
+		return result;
+
+	    stamp = lock.readLock();
+	    try {
+		return read(table, key, hash);
+	    } finally {
+		lock.unlockRead(stamp);
+	    }
+	}
+
+	/** Sets the cutoff unless a later one exists; returns whether it changed. */
+	boolean raise(String key, int hash, long cutoff) {
+	    long stamp = lock.writeLock();
+	    try {
+		if ((size + deleted + 1) * 4 > table.keys.length * 3)
+		    rehash();
+
+		Table t = table;
+		int firstDeleted = -1;
+		int i = hash & t.mask;
+		while (true) {
+		    String k = t.keys[i];
+		    if (k == null)
+			break;
+		    if (k == DELETED) {
+			if (firstDeleted < 0)
+			    firstDeleted = i;
+		    } else if (k.equals(key)) {
+			if (t.cutoffs[i] >= cutoff)
+			    return false;
+			t.cutoffs[i] = cutoff;
+			return true;
+		    }
+		    i = (i + 1) & t.mask;
+		}
+
+		if (firstDeleted >= 0) {
+		    i = firstDeleted;
+		    deleted--;
+		}
+		t.cutoffs[i] = cutoff;
+		t.keys[i] = key;
+		size++;
+		return true;
+	    } finally {
+		lock.unlockWrite(stamp);
+	    }
+	}
+
+	/** Removes the entry if its cutoff is still the given one. */
+	boolean remove(String key, int hash, long cutoff) {
+	    long stamp = lock.writeLock();
+	    try {
+		Table t = table;
+		int i = find(t, key, hash);
+		if (i < 0 || t.cutoffs[i] != cutoff)
+		    return false;
+		t.keys[i] = DELETED;
+		size--;
+		deleted++;
+		return true;
+	    } finally {
+		lock.unlockWrite(stamp);
+	    }
+	}
+
+	int size() {
+	    long stamp = lock.readLock();
+	    try {
+		return size;
+	    } finally {
+		lock.unlockRead(stamp);
+	    }
+	}
+
+	/** Rebuilds the table, dropping tombstones and growing it if needed. */
+	private void rehash() {
+	    Table old = table;
+	    int capacity = old.keys.length;
+	    while ((size + 1) * 2 > capacity) {
+		capacity <<= 1;
+	    }
+
+	    Table t = new Table(capacity);
+	    for (int i = 0; i < old.keys.length; i++) {
+		String k = old.keys[i];
+		if (k != null && k != DELETED) {
+		    int j = hash(k) & t.mask;
+		    while (t.keys[j] != null) {
+			j = (j + 1) & t.mask;
+		    }
+		    t.keys[j] = k;
+		    t.cutoffs[j] = old.cutoffs[i];
+		}
+	    }
+	    deleted = 0;
+	    table = t;
+	}
+
+	private static long read(Table t, String key, int hash) {
+	    int i = find(t, key, hash);
+	    return i >= 0 ? t.cutoffs[i] : Long.MIN_VALUE;
+	}
+
+	private static int find(Table t, String key, int hash) {
+	    int i = hash & t.mask;
+	    // bounded probe: an optimistic reader may observe a table being modified
+	    for (int n = 0; n <= t.mask; n++) {
+		String k = t.keys[i];
+		if (k == null)
+		    return -1;
+		if (k != DELETED && k.equals(key))
+		    return i;
+		i = (i + 1) & t.mask;
+	    }
+	    return -1;
+	}
+    }
+
+    private static final class Table {
+	final String[] keys;
+	final long[] cutoffs;
+	final int mask;
+
+	Table(int capacity) {
+	    keys = new String[capacity];
+	    cutoffs = new long[capacity];
+	    mask = capacity - 1;
+	}
+    }
+}
@@ -0,0 +1,350 @@
+package dev.shiwa.jwtstarter.core.revocation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link RevocationEventBus} sending events as UDP datagrams, either to a
+ * multicast group or to a static list of peers.
+ *
+ * <p>
+ * Published events are queued and sent by a single thread that waits
+ * {@code linger} after the first event for more to arrive and packs them into
+ * as few datagrams as possible (each below a typical MTU). Propagation
+ * therefore takes about {@code linger} plus the network latency. Every
+ * datagram carries the sender's node id, so nodes ignore their own multicast
+ * loopback, and an HMAC-SHA256 with a key derived from the shared secret, so
+ * events from outside the cluster are dropped.
+ *
+ * <p>
+ * The signed header also carries the send time and a per-sender sequence
+ * number. Datagrams older than {@value #MAX_AGE_MILLIS} ms, and datagrams
+ * whose sequence number was already seen, are dropped, so a captured
+ * datagram cannot be replayed later. The clocks of the instances must
+ * therefore agree within that age.
+ *
+ * <p>
+ * UDP is unreliable: events lost in transit are not retransmitted. Targets
+ * that are multicast addresses are joined on the default interface.
+ */
+public class UdpRevocationEventBus implements RevocationEventBus {
+
+    private static final Logger log = LoggerFactory.getLogger(UdpRevocationEventBus.class);
+
+    private static final int MAGIC = 0x4A525632; // "JRV2"
+    private static final int HEADER_SIZE = 4 + 16 + 8 + 8 + 2;
+    private static final long MAX_AGE_MILLIS = 30_000;
+    private static final byte[] KEY_LABEL = "jwt-auth revocation bus".getBytes(StandardCharsets.UTF_8);
+    private static final int MAC_SIZE = 32;
+    private static final int MAX_DATAGRAM_SIZE = 1400;
+    private static final RevocationEvent.Type[] TYPES = RevocationEvent.Type.values();
+
+    private final MulticastSocket socket;
+    private final List<InetSocketAddress> targets;
+    private final SecretKeySpec key;
+    private final Duration linger;
+    private final UUID nodeId = UUID.randomUUID();
+    private final BlockingQueue<RevocationEvent> queue = new LinkedBlockingQueue<>();
+    private final List<Consumer<RevocationEvent>> listeners = new CopyOnWriteArrayList<>();
+    private final Thread sender;
+    private volatile boolean running = true;
+    /** Sequence number of the next datagram; used by the sender thread only. */
+    private long sequence;
+    /** Replay windows of the other nodes; used by the receiver thread only. */
+    private final Map<UUID, ReplayWindow> peers = new HashMap<>();
+
+    /**
+     * Opens the socket and starts the sender and receiver threads.
+     *
+     * @param port    the local UDP port; {@code 0} picks a free port
+     * @param targets the multicast group and/or peers events are sent to
+     * @param secret  the shared secret the datagram signing key is derived from
+     * @param linger  how long to wait for more events before sending a batch
+     * @throws UncheckedIOException if the socket cannot be opened
+     */
+    public UdpRevocationEventBus(int port, List<InetSocketAddress> targets, byte[] secret, Duration linger) {
+	this.targets = List.copyOf(targets);
+	this.key = new SecretKeySpec(deriveKey(secret), "HmacSHA256");
+	this.linger = linger;
+	try {
+	    this.socket = new MulticastSocket(port);
+	    for (InetSocketAddress target : this.targets) {
+		if (target.getAddress().isMulticastAddress())
+		    socket.joinGroup(target, null);
+	    }
+	} catch (IOException e) {
+	    throw new UncheckedIOException("Cannot open revocation event socket on port " + port, e);
+	}
+
+	this.sender = start("revocation-bus-sender", this::sendLoop);
+	start("revocation-bus-receiver", this::receiveLoop);
+	log.info("📡 Revocation event bus listening on UDP port {}, sending to {}", socket.getLocalPort(),
+		this.targets);
+    }
+
+    @Override
+    public void publish(RevocationEvent event) {
+	if (running)
+	    queue.add(event);
+    }
+
+    @Override
+    public void subscribe(Consumer<RevocationEvent> listener) {
+	listeners.add(listener);
+    }
+
+    /**
+     * Returns the local UDP port.
+     *
+     * @return the port the bus receives on
+     */
+    public int getLocalPort() {
+	return socket.getLocalPort();
+    }
+
+    /**
+     * Sends pending events and stops both threads.
+     */
+    @Override
+    public void close() {
+	running = false;
+	try {
+	    sender.join(1_000 + linger.toMillis());
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+	socket.close();
+    }
+
+    // ---------- sending ----------
+
+    private void sendLoop() {
+	Mac mac = newMac();
+	List<RevocationEvent> batch = new ArrayList<>();
+	while (running || !queue.isEmpty()) {
+	    try {
+		RevocationEvent first = queue.poll(100, TimeUnit.MILLISECONDS);
+		if (first == null)
+		    continue;
+		if (running && !linger.isZero())
+		    Thread.sleep(linger.toMillis());
+		batch.add(first);
+		queue.drainTo(batch);
+		send(batch, mac);
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		return;
+	    } catch (IOException | RuntimeException e) {
+		log.warn("⚠️ Failed to send {} revocation events: {}", batch.size(), e.getMessage());
+	    } finally {
+		batch.clear();
+	    }
+	}
+    }
+
+    /** Packs the events into datagrams below {@link #MAX_DATAGRAM_SIZE}. */
+    private void send(List<RevocationEvent> events, Mac mac) throws IOException {
+	ByteArrayOutputStream body = new ByteArrayOutputStream(MAX_DATAGRAM_SIZE);
+	int count = 0;
+	for (RevocationEvent event : events) {
+	    byte[] encoded = encode(event);
+	    if (count > 0 && HEADER_SIZE + body.size() + encoded.length + MAC_SIZE > MAX_DATAGRAM_SIZE) {
+		sendDatagram(body.toByteArray(), count, mac);
+		body.reset();
+		count = 0;
+	    }
+	    body.write(encoded);
+	    count++;
+	}
+	if (count > 0)
+	    sendDatagram(body.toByteArray(), count, mac);
+    }
+
+    private void sendDatagram(byte[] body, int count, Mac mac) throws IOException {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + body.length + MAC_SIZE);
+	DataOutputStream out = new DataOutputStream(bytes);
+	out.writeInt(MAGIC);
+	out.writeLong(nodeId.getMostSignificantBits());
+	out.writeLong(nodeId.getLeastSignificantBits());
+	out.writeLong(System.currentTimeMillis());
+	out.writeLong(sequence++);
+	out.writeShort(count);
+	out.write(body);
+	out.write(mac.doFinal(bytes.toByteArray()));
+
+	byte[] data = bytes.toByteArray();
+	for (InetSocketAddress target : targets) {
+	    socket.send(new DatagramPacket(data, data.length, target));
+	}
+    }
+
+    private static byte[] encode(RevocationEvent event) throws IOException {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+	DataOutputStream out = new DataOutputStream(bytes);
+	out.writeByte(event.type().ordinal());
+	out.writeUTF(event.key());
+	out.writeUTF(event.subject() != null ? event.subject() : "");
+	out.writeLong(event.millis());
+	return bytes.toByteArray();
+    }
+
+    // ---------- receiving ----------
+
+    private void receiveLoop() {
+	Mac mac = newMac();
+	byte[] buffer = new byte[64 * 1024];
+	while (running) {
+	    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+	    try {
+		socket.receive(packet);
+	    } catch (IOException e) {
+		if (!running || socket.isClosed())
+		    return;
+		log.warn("⚠️ Failed to receive revocation events: {}", e.getMessage());
+		continue;
+	    }
+	    try {
+		receive(Arrays.copyOf(packet.getData(), packet.getLength()), mac);
+	    } catch (IOException | RuntimeException e) {
+		log.debug("Dropping malformed revocation datagram from {}: {}", packet.getSocketAddress(),
+			e.getMessage());
+	    }
+	}
+    }
+
+    private void receive(byte[] data, Mac mac) throws IOException {
+	if (data.length < HEADER_SIZE + MAC_SIZE)
+	    throw new IOException("Datagram too short");
+	int bodyEnd = data.length - MAC_SIZE;
+	mac.update(data, 0, bodyEnd);
+	if (!MessageDigest.isEqual(mac.doFinal(), Arrays.copyOfRange(data, bodyEnd, data.length)))
+	    throw new IOException("Invalid signature");
+
+	DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, bodyEnd));
+	if (in.readInt() != MAGIC)
+	    throw new IOException("Invalid magic");
+	UUID senderId = new UUID(in.readLong(), in.readLong());
+	if (senderId.equals(nodeId))
+	    return;
+	long sentAt = in.readLong();
+	long now = System.currentTimeMillis();
+	if (Math.abs(now - sentAt) > MAX_AGE_MILLIS)
+	    throw new IOException("Stale datagram sent at " + sentAt);
+	if (!replayWindow(senderId, now).accept(in.readLong()))
+	    throw new IOException("Replayed datagram");
+
+	int count = in.readUnsignedShort();
+	for (int i = 0; i < count; i++) {
+	    RevocationEvent.Type type = TYPES[in.readUnsignedByte()];
+	    String eventKey = in.readUTF();
+	    String subject = in.readUTF();
+	    RevocationEvent event = new RevocationEvent(type, eventKey, subject.isEmpty() ? null : subject,
+		    in.readLong());
+	    for (Consumer<RevocationEvent> listener : listeners) {
+		try {
+		    listener.accept(event);
+		} catch (RuntimeException e) {
+		    log.warn("⚠️ Failed to apply revocation event {}: {}", event, e.getMessage());
+		}
+	    }
+	}
+    }
+
+    /** Returns the sender's replay window, dropping those of silent senders. */
+    private ReplayWindow replayWindow(UUID senderId, long now) {
+	ReplayWindow window = peers.get(senderId);
+	if (window == null) {
+	    peers.values().removeIf(w -> now - w.lastSeen > MAX_AGE_MILLIS);
+	    window = new ReplayWindow();
+	    peers.put(senderId, window);
+	}
+	window.lastSeen = now;
+	return window;
+    }
+
+    /**
+     * Derives the signing key from the shared secret, so the bus never signs
+     * with the JWT secret itself even if both are the same.
+     */
+    private static byte[] deriveKey(byte[] secret) {
+	try {
+	    Mac mac = Mac.getInstance("HmacSHA256");
+	    mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+	    return mac.doFinal(KEY_LABEL);
+	} catch (GeneralSecurityException e) {
+	    throw new IllegalStateException("HmacSHA256 not available", e);
+	}
+    }
+
+    private Mac newMac() {
+	try {
+	    Mac mac = Mac.getInstance("HmacSHA256");
+	    mac.init(key);
+	    return mac;
+	} catch (GeneralSecurityException e) {
+	    throw new IllegalStateException("HmacSHA256 not available", e);
+	}
+    }
+
+    private static Thread start(String name, Runnable loop) {
+	Thread t = new Thread(loop, name);
+	t.setDaemon(true);
+	t.start();
+	return t;
+    }
+
+    /**
+     * The sequence numbers seen from one sender: the highest one and a bitmap
+     * of the 64 below it, so reordered datagrams are still accepted once.
+     */
+    private static final class ReplayWindow {
+	private long highest = -1;
+	private long seen;
+	private long lastSeen;
+
+	/** Records a sequence number; returns {@code false} if it was seen. */
+	boolean accept(long seq) {
+	    if (seq < 0)
+		return false;
+	    if (seq > highest) {
+		long shift = seq - highest;
+		seen = shift >= Long.SIZE ? 1 : seen << shift | 1;
+		highest = seq;
+		return true;
+	    }
+	    long offset = highest - seq;
+	    if (offset >= Long.SIZE || (seen & 1L << offset) != 0)
+		return false;
+	    seen |= 1L << offset;
+	    return true;
+	}
+    }
+}
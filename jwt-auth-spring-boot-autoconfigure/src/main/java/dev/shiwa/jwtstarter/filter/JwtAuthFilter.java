@@ -1,12 +1,20 @@
 package dev.shiwa.jwtstarter.filter;
 
 import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties;
-import dev.shiwa.jwtstarter.core.JwtTokenVerifier;
+import dev.shiwa.jwtstarter.core.AccessTokenRenewer;
+import dev.shiwa.jwtstarter.core.AccessTokenVerifier;
+import dev.shiwa.jwtstarter.core.JwtAuthentication;
+import dev.shiwa.jwtstarter.core.JwtTokenGenerator;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -27,13 +35,50 @@ import jakarta.servlet.http.HttpServletResponse;
  * <p>
  * Excluded paths can be configured via
  * {@link JwtAuthProperties#getExcludedPaths()}.
+ *
+ * <p>
+ * With an {@link AccessTokenRenewer} and a positive
+ * {@link JwtAuthProperties#getSlidingRefreshWindowMillis()}, an access token
+ * that is valid but expires within the window is answered with a new access
+ * token in the {@link JwtAuthProperties#getSlidingRefreshHeader()} response
+ * header, so active clients rarely need to call the refresh endpoint. Sliding
+ * stops once the session, counted from the issue time of the first token,
+ * reaches {@link JwtAuthProperties#getRefreshTtlMillis()}.
+ *
+ * <p>
+ * {@link JwtAuthProperties#getRouteRules()} are compiled into a
+ * {@link RouteAuthorizationTable} at construction. Requests whose token lacks
+ * the roles required for the path and method are rejected with HTTP 403, using
+ * the claims of the token that was just verified.
+ *
+ * <p>
+ * Exclusions and route rules are matched against the decoded path within the
+ * application (servlet path plus path info), without the context path.
+ * Request URIs that are not normalized, i.e. contain path parameters
+ * ({@code ;}), empty segments, {@code .} or {@code ..} segments, or encoded
+ * separators, are rejected with HTTP 400, so they cannot make a path look
+ * different to this filter than to the handler it reaches.
+ *
+ * <p>
+ * The token is parsed once per request. Its {@link JwtAuthentication} is
+ * stored in the request attribute {@link #AUTHENTICATION_ATTRIBUTE}, so
+ * handlers and interceptors can read subject and roles without parsing the
+ * token again.
  */
 public class JwtAuthFilter implements Filter {
 
+    /**
+     * Request attribute holding the {@link JwtAuthentication} of the verified
+     * token.
+     */
+    public static final String AUTHENTICATION_ATTRIBUTE = JwtAuthentication.class.getName();
+
     private static final Logger log = LoggerFactory.getLogger(JwtAuthFilter.class);
 
-    private final JwtTokenVerifier verifier;
+    private final AccessTokenVerifier verifier;
     private final JwtAuthProperties jwtAuthProperties;
+    private final AccessTokenRenewer renewer;
+    private final RouteAuthorizationTable routes;
 
     /**
      * Constructs the filter with the required verifier and configuration.
@@ -41,9 +86,24 @@ public class JwtAuthFilter implements Filter {
      * @param verifier          the token verifier to validate JWTs
      * @param jwtAuthProperties the configuration properties (e.g. excluded paths)
      */
-    public JwtAuthFilter(JwtTokenVerifier verifier, JwtAuthProperties jwtAuthProperties) {
+    public JwtAuthFilter(AccessTokenVerifier verifier, JwtAuthProperties jwtAuthProperties) {
+	this(verifier, jwtAuthProperties, null);
+    }
+
+    /**
+     * Constructs the filter with sliding refresh of access tokens.
+     *
+     * @param verifier          the token verifier to validate JWTs
+     * @param jwtAuthProperties the configuration properties (e.g. excluded paths)
+     * @param renewer           mints the replacement tokens, or {@code null} to
+     *                          disable sliding refresh
+     */
+    public JwtAuthFilter(AccessTokenVerifier verifier, JwtAuthProperties jwtAuthProperties,
+	    AccessTokenRenewer renewer) {
 	this.verifier = verifier;
 	this.jwtAuthProperties = jwtAuthProperties;
+	this.renewer = renewer;
+	this.routes = RouteAuthorizationTable.compile(jwtAuthProperties.getRouteRules());
     }
 
     /**
@@ -65,7 +125,12 @@ public class JwtAuthFilter implements Filter {
 	    throws IOException, ServletException {
 
 	HttpServletRequest http = (HttpServletRequest) request;
-	String path = http.getRequestURI();
+	String path = pathWithinApplication(http);
+	if (path == null) {
+	    log.warn("🚫 Rejected non-normalized request URI");
+	    ((HttpServletResponse) response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Non-normalized path");
+	    return;
+	}
 
 	for (String excluded : jwtAuthProperties.getExcludedPaths()) {
 	    if (path.matches(convertToRegex(excluded))) {
@@ -85,19 +150,98 @@ public class JwtAuthFilter implements Filter {
 
 	String token = authHeader.substring(7);
 
-	if (!verifier.isValid(token)) {
+	Claims claims = verifier.verify(token);
+	if (claims == null) {
 	    log.warn("❌ Invalid or expired token on path {}", http.getRequestURI());
 	    ((HttpServletResponse) response).sendError(HttpServletResponse.SC_UNAUTHORIZED, "Invalid JWT token");
 	    return;
 	}
 
+	JwtAuthentication authentication = JwtAuthentication.from(claims);
+	List<String> roles = authentication.getRoles();
+	if (!routes.isEmpty() && !routes.isAllowed(http.getMethod(), path, routes.roleMask(roles))) {
+	    log.warn("⛔ Missing role for {} {} (subject={}, issuer={})", http.getMethod(), path,
+		    authentication.getSubject(), authentication.getIssuer());
+	    ((HttpServletResponse) response).sendError(HttpServletResponse.SC_FORBIDDEN, "Insufficient role");
+	    return;
+	}
+	if (renewer != null && jwtAuthProperties.getSlidingRefreshWindowMillis() > 0)
+	    slide(claims, roles, (HttpServletResponse) response);
+
 	// Optional: Set attributes for downstream access
 	http.setAttribute("jwt", token);
+	http.setAttribute(AUTHENTICATION_ATTRIBUTE, authentication);
 
 	log.debug("✅ Request authorized: {}", http.getRequestURI());
 	chain.doFilter(request, response);
     }
 
+    /**
+     * Sets a new access token on the response if the verified token is an
+     * access token of the application's own issuer expiring within the sliding
+     * refresh window, and a new token would outlive it within the session
+     * limit. Tokens of further issuers are never renewed, since the new token
+     * would be signed as the application's own.
+     */
+    private void slide(Claims claims, List<String> roles, HttpServletResponse response) {
+	Date expiration = claims.getExpiration();
+	if (expiration == null || !"access".equals(claims.get("type", String.class)))
+	    return;
+	if (!Objects.equals(jwtAuthProperties.getIssuer(), claims.getIssuer()))
+	    return;
+	if (expiration.getTime() - System.currentTimeMillis() > jwtAuthProperties.getSlidingRefreshWindowMillis())
+	    return;
+	long authTime = authTimeOf(claims);
+	if (authTime + jwtAuthProperties.getRefreshTtlMillis() <= expiration.getTime())
+	    return;
+
+	response.setHeader(jwtAuthProperties.getSlidingRefreshHeader(),
+		renewer.renew(claims.getSubject(), roles, authTime));
+	log.debug("🔄 Sliding refresh for subject: {}", claims.getSubject());
+    }
+
+    /**
+     * Returns the decoded path within the application, or {@code null} if the
+     * request URI is not normalized.
+     */
+    private static String pathWithinApplication(HttpServletRequest request) {
+	String uri = request.getRequestURI();
+	if (uri == null || !isNormalized(uri))
+	    return null;
+	String servletPath = request.getServletPath();
+	if (servletPath == null)
+	    return uri;
+	String pathInfo = request.getPathInfo();
+	String path = pathInfo != null ? servletPath + pathInfo : servletPath;
+	return path.isEmpty() ? "/" : path;
+    }
+
+    private static boolean isNormalized(String uri) {
+	if (uri.indexOf(';') >= 0 || uri.indexOf('\\') >= 0 || uri.contains("//"))
+	    return false;
+	String lower = uri.toLowerCase(Locale.ROOT);
+	if (lower.contains("%2e") || lower.contains("%2f") || lower.contains("%3b") || lower.contains("%5c"))
+	    return false;
+	for (String segment : uri.split("/", -1)) {
+	    if (segment.equals(".") || segment.equals(".."))
+		return false;
+	}
+	return true;
+    }
+
+    /**
+     * Returns the session start of a token: its
+     * {@value JwtTokenGenerator#AUTH_TIME_MILLIS_CLAIM} claim if it was renewed,
+     * its issue time otherwise.
+     */
+    private static long authTimeOf(Claims claims) {
+	if (claims.get(JwtTokenGenerator.AUTH_TIME_MILLIS_CLAIM) instanceof Number millis)
+	    return millis.longValue();
+	if (claims.get(JwtTokenGenerator.ISSUED_AT_MILLIS_CLAIM) instanceof Number millis)
+	    return millis.longValue();
+	return claims.getIssuedAt() != null ? claims.getIssuedAt().getTime() : 0;
+    }
+
     /**
      * Converts an Ant-style wildcard pattern to a regular expression.
      *
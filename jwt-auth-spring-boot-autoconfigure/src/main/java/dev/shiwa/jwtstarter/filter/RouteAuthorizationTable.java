@@ -0,0 +1,248 @@
+package dev.shiwa.jwtstarter.filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties.RouteRule;
+
+/**
+ * Role requirements per path and HTTP method, compiled once from
+ * {@link RouteRule}s.
+ *
+ * <p>
+ * The rules are stored in a trie of path segments, and every role mentioned in
+ * a rule is assigned a bit. A rule's roles become a {@code long} bitmask, so
+ * checking a request is one walk down the trie and one bitwise AND against the
+ * token's role mask (see {@link #roleMask(Collection)}).
+ *
+ * <p>
+ * At each level, literal segments are tried before {@code *} and {@code *}
+ * before {@code **}, so the most specific rule wins. Of several rules for the
+ * same pattern and method, the first one is kept. Up to 64 distinct roles are
+ * supported.
+ */
+public final class RouteAuthorizationTable {
+
+    private static final RouteAuthorizationTable EMPTY = new RouteAuthorizationTable(new Node(), Map.of());
+
+    private final Node root;
+    private final Map<String, Long> roleBits;
+
+    private RouteAuthorizationTable(Node root, Map<String, Long> roleBits) {
+	this.root = root;
+	this.roleBits = roleBits;
+    }
+
+    /**
+     * Compiles the given rules.
+     *
+     * @param rules the rules, may be {@code null} or empty
+     * @return the compiled table
+     * @throws IllegalArgumentException if a pattern is invalid or the rules
+     *                                  mention more than 64 roles
+     */
+    public static RouteAuthorizationTable compile(List<RouteRule> rules) {
+	if (rules == null || rules.isEmpty())
+	    return EMPTY;
+
+	Map<String, Long> roleBits = new HashMap<>();
+	Node root = new Node();
+	for (RouteRule rule : rules) {
+	    long mask = 0;
+	    for (String role : rule.getRoles()) {
+		Long bit = roleBits.get(role);
+		if (bit == null) {
+		    if (roleBits.size() == Long.SIZE)
+			throw new IllegalArgumentException("Route rules support at most 64 distinct roles");
+		    bit = 1L << roleBits.size();
+		    roleBits.put(role, bit);
+		}
+		mask |= bit;
+	    }
+	    node(root, rule.getPattern()).add(rule.getMethods(), new Grant(mask, rule.isRequireAll()));
+	}
+	return new RouteAuthorizationTable(root, Map.copyOf(roleBits));
+    }
+
+    private static Node node(Node root, String pattern) {
+	if (pattern == null || !pattern.startsWith("/"))
+	    throw new IllegalArgumentException("Route pattern must start with '/': " + pattern);
+
+	List<String> segments = segments(pattern);
+	Node node = root;
+	for (int i = 0; i < segments.size(); i++) {
+	    String segment = segments.get(i);
+	    if (segment.equals("**")) {
+		if (i != segments.size() - 1)
+		    throw new IllegalArgumentException("'**' is only supported at the end of a pattern: " + pattern);
+		if (node.rest == null)
+		    node.rest = new Node();
+		return node.rest;
+	    }
+	    if (segment.equals("*")) {
+		if (node.any == null)
+		    node.any = new Node();
+		node = node.any;
+	    } else {
+		if (segment.contains("*"))
+		    throw new IllegalArgumentException("Wildcards must span a whole segment: " + pattern);
+		node = node.literals.computeIfAbsent(segment, s -> new Node());
+	    }
+	}
+	return node;
+    }
+
+    /**
+     * Returns whether requests matching a rule pattern can reach a filter
+     * mapped to a servlet URL pattern. Rules no mapping can reach never apply.
+     * Extension mappings ({@code *.ext}) are assumed to overlap every rule.
+     *
+     * @param rulePattern the pattern of a {@link RouteRule}
+     * @param urlPattern  a servlet URL pattern, e.g. {@code /api/*}
+     * @return {@code true} if some request path matches both patterns
+     */
+    public static boolean overlaps(String rulePattern, String urlPattern) {
+	if (urlPattern.equals("/") || urlPattern.equals("/*") || urlPattern.startsWith("*."))
+	    return true;
+
+	boolean prefix = urlPattern.endsWith("/*");
+	List<String> mapped = segments(prefix ? urlPattern.substring(0, urlPattern.length() - 2) : urlPattern);
+	List<String> rule = segments(rulePattern);
+	int i = 0;
+	for (; i < mapped.size() && i < rule.size(); i++) {
+	    String segment = rule.get(i);
+	    if (segment.equals("**"))
+		return true;
+	    if (!segment.equals("*") && !segment.equals(mapped.get(i)))
+		return false;
+	}
+	if (i < mapped.size())
+	    return false;
+	// a prefix mapping also covers every longer path
+	return prefix || i == rule.size() || rule.get(i).equals("**");
+    }
+
+    /**
+     * Returns whether the table holds no rules.
+     *
+     * @return {@code true} if every request is allowed
+     */
+    public boolean isEmpty() {
+	return this == EMPTY;
+    }
+
+    /**
+     * Computes the mask of a token's roles. Roles not mentioned by any rule are
+     * ignored.
+     *
+     * @param roles the roles of the token, may be {@code null}
+     * @return the role mask
+     */
+    public long roleMask(Collection<String> roles) {
+	if (roles == null)
+	    return 0;
+	long mask = 0;
+	for (String role : roles) {
+	    Long bit = roleBits.get(role);
+	    if (bit != null)
+		mask |= bit;
+	}
+	return mask;
+    }
+
+    /**
+     * Checks whether a request is allowed for a token with the given roles.
+     * Requests matching no rule are allowed.
+     *
+     * @param method   the HTTP method
+     * @param path     the request path
+     * @param roleMask the token's role mask, see {@link #roleMask(Collection)}
+     * @return {@code true} if the request is allowed
+     */
+    public boolean isAllowed(String method, String path, long roleMask) {
+	if (this == EMPTY)
+	    return true;
+	Grant grant = match(root, segments(path), 0, method.toUpperCase(Locale.ROOT));
+	return grant == null || grant.allows(roleMask);
+    }
+
+    private static Grant match(Node node, List<String> segments, int i, String method) {
+	if (i == segments.size()) {
+	    Grant grant = node.grant(method);
+	    // a trailing '**' also matches no segment at all
+	    return grant != null || node.rest == null ? grant : node.rest.grant(method);
+	}
+
+	Node literal = node.literals.get(segments.get(i));
+	if (literal != null) {
+	    Grant grant = match(literal, segments, i + 1, method);
+	    if (grant != null)
+		return grant;
+	}
+	if (node.any != null) {
+	    Grant grant = match(node.any, segments, i + 1, method);
+	    if (grant != null)
+		return grant;
+	}
+	return node.rest != null ? node.rest.grant(method) : null;
+    }
+
+    private static List<String> segments(String path) {
+	List<String> segments = new ArrayList<>(8);
+	int start = 0;
+	int length = path.length();
+	while (start < length) {
+	    int end = path.indexOf('/', start);
+	    if (end < 0)
+		end = length;
+	    if (end > start)
+		segments.add(path.substring(start, end));
+	    start = end + 1;
+	}
+	return segments;
+    }
+
+    /** The roles a rule requires, as a bitmask. */
+    private record Grant(long mask, boolean requireAll) {
+
+	boolean allows(long roleMask) {
+	    if (mask == 0)
+		return true;
+	    return requireAll ? (roleMask & mask) == mask : (roleMask & mask) != 0;
+	}
+    }
+
+    private static final class Node {
+	final Map<String, Node> literals = new HashMap<>();
+	Node any;
+	Node rest;
+	Grant anyMethod;
+	Map<String, Grant> byMethod;
+
+	void add(List<String> methods, Grant grant) {
+	    if (methods == null || methods.isEmpty()) {
+		if (anyMethod == null)
+		    anyMethod = grant;
+		return;
+	    }
+	    if (byMethod == null)
+		byMethod = new HashMap<>();
+	    for (String method : methods) {
+		byMethod.putIfAbsent(method.toUpperCase(Locale.ROOT), grant);
+	    }
+	}
+
+	Grant grant(String method) {
+	    if (byMethod != null) {
+		Grant grant = byMethod.get(method);
+		if (grant != null)
+		    return grant;
+	    }
+	    return anyMethod;
+	}
+    }
+}
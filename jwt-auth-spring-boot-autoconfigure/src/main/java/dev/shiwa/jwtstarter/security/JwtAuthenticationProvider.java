@@ -0,0 +1,51 @@
+package dev.shiwa.jwtstarter.security;
+
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+
+import dev.shiwa.jwtstarter.core.AccessTokenVerifier;
+import dev.shiwa.jwtstarter.core.JwtAuthentication;
+import io.jsonwebtoken.Claims;
+
+/**
+ * {@link AuthenticationProvider} for {@link JwtAuthenticationToken}s.
+ *
+ * <p>
+ * Verifies the token once with {@link AccessTokenVerifier#verify(String)} and
+ * maps its roles to authorities with {@link RoleAuthorities}, so tokens of the
+ * same role profile share one authority list.
+ */
+public class JwtAuthenticationProvider implements AuthenticationProvider {
+
+    private final AccessTokenVerifier verifier;
+    private final RoleAuthorities authorities;
+
+    /**
+     * Creates the provider.
+     *
+     * @param verifier    the token verifier
+     * @param authorities maps token roles to authorities
+     */
+    public JwtAuthenticationProvider(AccessTokenVerifier verifier, RoleAuthorities authorities) {
+	this.verifier = verifier;
+	this.authorities = authorities;
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+	String token = ((JwtAuthenticationToken) authentication).getCredentials();
+	Claims claims = verifier.verify(token);
+	if (claims == null)
+	    throw new BadCredentialsException("Invalid JWT token");
+
+	JwtAuthentication principal = JwtAuthentication.from(claims);
+	return new JwtAuthenticationToken(principal, token, authorities.authoritiesFor(principal.getRoles()));
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+	return JwtAuthenticationToken.class.isAssignableFrom(authentication);
+    }
+}
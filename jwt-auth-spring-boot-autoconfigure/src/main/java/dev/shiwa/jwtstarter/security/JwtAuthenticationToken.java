@@ -0,0 +1,100 @@
+package dev.shiwa.jwtstarter.security;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+
+import dev.shiwa.jwtstarter.core.JwtAuthentication;
+
+/**
+ * Spring Security {@link org.springframework.security.core.Authentication} for
+ * a bearer token.
+ *
+ * <p>
+ * Before authentication it only holds the raw token. Once authenticated by
+ * {@link JwtAuthenticationProvider}, its principal is the
+ * {@link JwtAuthentication} of the verified token and its name the token
+ * subject.
+ *
+ * <p>
+ * The authorities are kept as given instead of being copied, so tokens of the
+ * same role profile share the list cached by {@link RoleAuthorities}.
+ */
+public class JwtAuthenticationToken extends AbstractAuthenticationToken {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String token;
+    private final JwtAuthentication principal;
+    private final List<GrantedAuthority> authorities;
+
+    /**
+     * Creates an unauthenticated token.
+     *
+     * @param token the raw bearer token
+     */
+    public JwtAuthenticationToken(String token) {
+	super(List.of());
+	this.token = token;
+	this.principal = null;
+	this.authorities = List.of();
+    }
+
+    /**
+     * Creates an authenticated token.
+     *
+     * @param principal   the authentication information of the verified token
+     * @param token       the raw bearer token
+     * @param authorities the immutable authorities granted by the token's roles
+     */
+    public JwtAuthenticationToken(JwtAuthentication principal, String token, List<GrantedAuthority> authorities) {
+	super(List.of());
+	this.token = token;
+	this.principal = principal;
+	this.authorities = authorities;
+	setAuthenticated(true);
+    }
+
+    @Override
+    public Collection<GrantedAuthority> getAuthorities() {
+	return authorities;
+    }
+
+    /**
+     * Returns the raw bearer token.
+     *
+     * @return the token
+     */
+    @Override
+    public String getCredentials() {
+	return token;
+    }
+
+    /**
+     * Returns the authentication information of the verified token.
+     *
+     * @return the principal, or {@code null} before authentication
+     */
+    @Override
+    public JwtAuthentication getPrincipal() {
+	return principal;
+    }
+
+    /**
+     * Returns the subject of the verified token. Subjects are only unique per
+     * issuer; see {@link JwtAuthentication#getIssuer()}.
+     *
+     * @return the subject, or an empty string before authentication
+     */
+    @Override
+    public String getName() {
+	return principal != null ? principal.getSubject() : "";
+    }
+
+    @Override
+    public void eraseCredentials() {
+	// the token is kept; it is needed to forward the request downstream
+    }
+}
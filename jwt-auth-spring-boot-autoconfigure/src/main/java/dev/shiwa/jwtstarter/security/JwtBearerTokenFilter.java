@@ -0,0 +1,101 @@
+package dev.shiwa.jwtstarter.security;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextHolderStrategy;
+import org.springframework.security.web.AuthenticationEntryPoint;
+import org.springframework.security.web.authentication.HttpStatusEntryPoint;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import dev.shiwa.jwtstarter.filter.JwtAuthFilter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Spring Security filter authenticating requests with a bearer token.
+ *
+ * <p>
+ * Requests without an {@code Authorization: Bearer} header pass through
+ * unauthenticated, leaving the decision to the authorization rules of the
+ * security filter chain. Otherwise the token is authenticated once as a
+ * {@link JwtAuthenticationToken} and stored in the {@link SecurityContext}.
+ * The {@link dev.shiwa.jwtstarter.core.JwtAuthentication} is also stored in
+ * the {@link JwtAuthFilter#AUTHENTICATION_ATTRIBUTE} request attribute, so the
+ * MVC integration does not parse the token again. Invalid tokens are answered
+ * by the entry point, by default with HTTP 401.
+ *
+ * <p>
+ * Add the filter to the security filter chain:
+ *
+ * <pre>{@code
+ * http.addFilterBefore(jwtBearerTokenFilter, UsernamePasswordAuthenticationFilter.class);
+ * }</pre>
+ */
+public class JwtBearerTokenFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtBearerTokenFilter.class);
+
+    private final AuthenticationManager authenticationManager;
+    private final AuthenticationEntryPoint entryPoint;
+    private final SecurityContextHolderStrategy contextHolder = SecurityContextHolder
+	    .getContextHolderStrategy();
+
+    /**
+     * Creates a filter answering invalid tokens with HTTP 401.
+     *
+     * @param authenticationManager authenticates {@link JwtAuthenticationToken}s
+     */
+    public JwtBearerTokenFilter(AuthenticationManager authenticationManager) {
+	this(authenticationManager, new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED));
+    }
+
+    /**
+     * Creates a filter.
+     *
+     * @param authenticationManager authenticates {@link JwtAuthenticationToken}s
+     * @param entryPoint            answers requests with an invalid token
+     */
+    public JwtBearerTokenFilter(AuthenticationManager authenticationManager, AuthenticationEntryPoint entryPoint) {
+	this.authenticationManager = authenticationManager;
+	this.entryPoint = entryPoint;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+	    throws ServletException, IOException {
+	String authHeader = request.getHeader("Authorization");
+	if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+	    chain.doFilter(request, response);
+	    return;
+	}
+
+	Authentication authentication;
+	try {
+	    authentication = authenticationManager.authenticate(new JwtAuthenticationToken(authHeader.substring(7)));
+	} catch (AuthenticationException e) {
+	    contextHolder.clearContext();
+	    log.warn("❌ Invalid or expired token on path {}", request.getRequestURI());
+	    entryPoint.commence(request, response, e);
+	    return;
+	}
+
+	SecurityContext context = contextHolder.createEmptyContext();
+	context.setAuthentication(authentication);
+	contextHolder.setContext(context);
+	if (authentication instanceof JwtAuthenticationToken jwt)
+	    request.setAttribute(JwtAuthFilter.AUTHENTICATION_ATTRIBUTE, jwt.getPrincipal());
+
+	log.debug("✅ Request authenticated: {}", request.getRequestURI());
+	chain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,83 @@
+package dev.shiwa.jwtstarter.security;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * Maps token roles to Spring Security authorities.
+ *
+ * <p>
+ * Tokens of the same role profile carry equal role lists, so the authority
+ * list created for a role list is cached and handed out to every further
+ * request with the same roles. The lists are immutable and shared, which saves
+ * creating a {@link SimpleGrantedAuthority} per role and request.
+ *
+ * <p>
+ * Role lists are signed by the issuer, so the number of distinct lists is
+ * bounded by the role profiles in use; as a safeguard, lists beyond
+ * {@code maxEntries} are mapped without being cached.
+ */
+public class RoleAuthorities {
+
+    private final String prefix;
+    private final int maxEntries;
+    private final ConcurrentMap<List<String>, List<GrantedAuthority>> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a mapping.
+     *
+     * @param prefix     prefix of the authority names, e.g. {@code ROLE_}
+     * @param maxEntries the maximum number of cached role lists
+     */
+    public RoleAuthorities(String prefix, int maxEntries) {
+	if (maxEntries < 0)
+	    throw new IllegalArgumentException("maxEntries must be >= 0");
+	this.prefix = prefix != null ? prefix : "";
+	this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the authorities for the given roles.
+     *
+     * @param roles the roles of a token, may be {@code null}
+     * @return an immutable, possibly shared list of authorities
+     */
+    public List<GrantedAuthority> authoritiesFor(List<String> roles) {
+	if (roles == null || roles.isEmpty())
+	    return List.of();
+
+	List<GrantedAuthority> authorities = cache.get(roles);
+	if (authorities != null)
+	    return authorities;
+
+	authorities = map(roles);
+	if (cache.size() >= maxEntries)
+	    return authorities;
+	// the key is copied so that later changes to the caller's list do not matter
+	List<GrantedAuthority> existing = cache.putIfAbsent(List.copyOf(roles), authorities);
+	return existing != null ? existing : authorities;
+    }
+
+    /**
+     * Returns the number of cached role lists.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+	return cache.size();
+    }
+
+    private List<GrantedAuthority> map(List<String> roles) {
+	List<GrantedAuthority> authorities = new ArrayList<>(roles.size());
+	for (String role : roles) {
+	    authorities.add(new SimpleGrantedAuthority(role.startsWith(prefix) ? role : prefix + role));
+	}
+	return Collections.unmodifiableList(authorities);
+    }
+}
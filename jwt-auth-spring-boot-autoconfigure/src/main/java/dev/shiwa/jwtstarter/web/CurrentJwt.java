@@ -0,0 +1,33 @@
+package dev.shiwa.jwtstarter.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import dev.shiwa.jwtstarter.core.JwtAuthentication;
+
+/**
+ * Binds a handler method parameter to the {@link JwtAuthentication} of the
+ * current request.
+ *
+ * <p>
+ * Parameters of type {@link JwtAuthentication} are bound without the
+ * annotation as well; it is only needed to make the parameter optional.
+ *
+ * @see CurrentJwtArgumentResolver
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface CurrentJwt {
+
+    /**
+     * Whether a valid token is required. If {@code false}, the parameter is
+     * {@code null} for requests without one.
+     *
+     * @return {@code true} if the request must carry a valid token
+     */
+    boolean required() default true;
+}
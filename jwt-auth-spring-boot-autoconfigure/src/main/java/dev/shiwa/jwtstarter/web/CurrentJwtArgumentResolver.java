@@ -0,0 +1,64 @@
+package dev.shiwa.jwtstarter.web;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+import dev.shiwa.jwtstarter.core.AccessTokenVerifier;
+import dev.shiwa.jwtstarter.core.JwtAuthentication;
+import dev.shiwa.jwtstarter.core.error.JwtAuthException;
+import dev.shiwa.jwtstarter.core.error.JwtErrorCode;
+import dev.shiwa.jwtstarter.filter.JwtAuthFilter;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Resolves handler method parameters of type {@link JwtAuthentication},
+ * optionally annotated with {@link CurrentJwt}.
+ *
+ * <p>
+ * The parameter receives the instance {@link JwtAuthFilter} stored when it
+ * verified the token, so handlers no longer parse the {@code Authorization}
+ * header themselves. If the filter did not run for the request, the token is
+ * verified once and the result is shared with {@link RoleCheckInterceptor}
+ * and further parameters of the same request.
+ *
+ * <p>
+ * A required parameter without a valid token fails with a
+ * {@link JwtAuthException} with code {@link JwtErrorCode#NOT_AUTHENTICATED},
+ * which {@link JwtAuthExceptionResolver} answers with HTTP 401. Use
+ * {@code @CurrentJwt(required = false)} to receive {@code null} instead.
+ */
+public class CurrentJwtArgumentResolver implements HandlerMethodArgumentResolver {
+
+    private final AccessTokenVerifier verifier;
+
+    /**
+     * Creates the resolver.
+     *
+     * @param verifier verifies the token of requests the filter did not handle
+     */
+    public CurrentJwtArgumentResolver(AccessTokenVerifier verifier) {
+	this.verifier = verifier;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+	return JwtAuthentication.class.isAssignableFrom(parameter.getParameterType());
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+	    NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+	HttpServletRequest request = webRequest.getNativeRequest(HttpServletRequest.class);
+	JwtAuthentication authentication = request != null ? RequestAuthentication.resolve(request, verifier) : null;
+	if (authentication != null)
+	    return authentication;
+
+	CurrentJwt annotation = parameter.getParameterAnnotation(CurrentJwt.class);
+	if (annotation != null && !annotation.required())
+	    return null;
+	throw new JwtAuthException(JwtErrorCode.NOT_AUTHENTICATED, "No valid JWT token in request");
+    }
+}
@@ -0,0 +1,65 @@
+package dev.shiwa.jwtstarter.web;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+import org.springframework.web.servlet.ModelAndView;
+
+import dev.shiwa.jwtstarter.core.error.JwtAuthException;
+import dev.shiwa.jwtstarter.core.error.JwtErrorCode;
+import dev.shiwa.jwtstarter.core.error.RefreshThrottledException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Answers a {@link JwtAuthException} thrown by a handler, e.g. by
+ * {@link CurrentJwtArgumentResolver}, with the status of its
+ * {@link JwtErrorCode} instead of HTTP 500.
+ *
+ * <p>
+ * Token and authentication errors become 401, {@code REFRESH_DISABLED} 400 and
+ * {@code REFRESH_THROTTLED} 429 with a {@code Retry-After} header. It is
+ * registered after Spring's own resolvers, so an application's
+ * {@code @ExceptionHandler} for {@link JwtAuthException} still takes
+ * precedence.
+ */
+public class JwtAuthExceptionResolver implements HandlerExceptionResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtAuthExceptionResolver.class);
+
+    @Override
+    public ModelAndView resolveException(HttpServletRequest request, HttpServletResponse response, Object handler,
+	    Exception ex) {
+	if (!(ex instanceof JwtAuthException jwtException))
+	    return null;
+
+	try {
+	    // Retry-After is given in whole seconds
+	    if (jwtException instanceof RefreshThrottledException throttled)
+		response.setHeader(HttpHeaders.RETRY_AFTER,
+			String.valueOf((throttled.getRetryAfterMillis() + 999) / 1000));
+	    response.sendError(status(jwtException.getErrorCode()), jwtException.getErrorCode().name());
+	} catch (IOException e) {
+	    log.warn("❌ Could not send error response for {}", jwtException.getErrorCode(), e);
+	}
+	return new ModelAndView();
+    }
+
+    /**
+     * Returns the HTTP status for an error code.
+     *
+     * @param code the error code
+     * @return the HTTP status code
+     */
+    private static int status(JwtErrorCode code) {
+	return switch (code) {
+	case REFRESH_DISABLED -> HttpServletResponse.SC_BAD_REQUEST;
+	case REFRESH_THROTTLED -> HttpStatus.TOO_MANY_REQUESTS.value();
+	default -> HttpServletResponse.SC_UNAUTHORIZED;
+	};
+    }
+}
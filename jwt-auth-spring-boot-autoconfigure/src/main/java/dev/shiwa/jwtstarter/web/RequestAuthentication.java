@@ -0,0 +1,41 @@
+package dev.shiwa.jwtstarter.web;
+
+import dev.shiwa.jwtstarter.core.AccessTokenVerifier;
+import dev.shiwa.jwtstarter.core.JwtAuthentication;
+import dev.shiwa.jwtstarter.filter.JwtAuthFilter;
+import io.jsonwebtoken.Claims;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Looks up the {@link JwtAuthentication} of a request.
+ */
+final class RequestAuthentication {
+
+    private RequestAuthentication() {
+    }
+
+    /**
+     * Returns the authentication stored by {@link JwtAuthFilter}. If the filter
+     * did not run for the request, the bearer token is verified once and the
+     * result is stored in the same attribute.
+     *
+     * @return the authentication, or {@code null} if the request carries no
+     *         valid token
+     */
+    static JwtAuthentication resolve(HttpServletRequest request, AccessTokenVerifier verifier) {
+	Object attribute = request.getAttribute(JwtAuthFilter.AUTHENTICATION_ATTRIBUTE);
+	if (attribute instanceof JwtAuthentication authentication)
+	    return authentication;
+
+	String authHeader = request.getHeader("Authorization");
+	if (authHeader == null || !authHeader.startsWith("Bearer "))
+	    return null;
+	Claims claims = verifier.verify(authHeader.substring(7));
+	if (claims == null)
+	    return null;
+
+	JwtAuthentication authentication = JwtAuthentication.from(claims);
+	request.setAttribute(JwtAuthFilter.AUTHENTICATION_ATTRIBUTE, authentication);
+	return authentication;
+    }
+}
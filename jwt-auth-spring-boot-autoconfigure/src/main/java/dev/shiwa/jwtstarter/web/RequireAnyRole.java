@@ -0,0 +1,29 @@
+package dev.shiwa.jwtstarter.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Restricts a handler method, or all handler methods of a controller, to
+ * tokens holding <em>at least one</em> of the given roles.
+ *
+ * <p>
+ * Enforced by {@link RoleCheckInterceptor}. An annotation on the method
+ * replaces one on the controller class. Combined with {@link RequireRoles},
+ * both conditions must hold.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface RequireAnyRole {
+
+    /**
+     * The roles of which the token must hold at least one.
+     *
+     * @return the accepted roles
+     */
+    String[] value();
+}
@@ -0,0 +1,30 @@
+package dev.shiwa.jwtstarter.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Restricts a handler method, or all handler methods of a controller, to
+ * tokens holding <em>all</em> of the given roles.
+ *
+ * <p>
+ * Enforced by {@link RoleCheckInterceptor}. An annotation on the method
+ * replaces one on the controller class.
+ *
+ * @see RequireAnyRole
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface RequireRoles {
+
+    /**
+     * The roles the token must hold.
+     *
+     * @return the required roles
+     */
+    String[] value();
+}
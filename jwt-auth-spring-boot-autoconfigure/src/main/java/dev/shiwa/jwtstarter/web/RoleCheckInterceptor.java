@@ -0,0 +1,128 @@
+package dev.shiwa.jwtstarter.web;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import dev.shiwa.jwtstarter.core.AccessTokenVerifier;
+import dev.shiwa.jwtstarter.core.JwtAuthentication;
+import dev.shiwa.jwtstarter.filter.JwtAuthFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Enforces {@link RequireRoles} and {@link RequireAnyRole} on handler methods.
+ *
+ * <p>
+ * The annotations are looked up once per handler method by
+ * {@link #resolve(Collection)}, which runs when the application context has
+ * started, and kept in an immutable map keyed by {@link Method}. A request
+ * costs one map lookup and a role check against the {@link JwtAuthentication}
+ * that {@link JwtAuthFilter} stored on the request; the token is parsed here
+ * only if the filter did not run. Handler methods registered after startup are
+ * resolved on their first request.
+ *
+ * <p>
+ * Requests without a valid token are answered with HTTP 401, requests whose
+ * token lacks the roles with HTTP 403.
+ */
+public class RoleCheckInterceptor implements HandlerInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(RoleCheckInterceptor.class);
+
+    private static final RoleRequirement NONE = new RoleRequirement(List.of(), new String[0]);
+
+    private final AccessTokenVerifier verifier;
+    private volatile Map<Method, RoleRequirement> requirements = Map.of();
+    private final ConcurrentMap<Method, RoleRequirement> lateRequirements = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the interceptor.
+     *
+     * @param verifier verifies the token of requests the filter did not handle
+     */
+    public RoleCheckInterceptor(AccessTokenVerifier verifier) {
+	this.verifier = verifier;
+    }
+
+    /**
+     * Resolves the role annotations of the given handler methods, replacing
+     * any previously resolved ones.
+     *
+     * @param handlerMethods the handler methods of the application
+     */
+    public void resolve(Collection<HandlerMethod> handlerMethods) {
+	Map<Method, RoleRequirement> resolved = new HashMap<>();
+	for (HandlerMethod handlerMethod : handlerMethods) {
+	    resolved.putIfAbsent(handlerMethod.getMethod(),
+		    requirementOf(handlerMethod.getMethod(), handlerMethod.getBeanType()));
+	}
+	requirements = Map.copyOf(resolved);
+	lateRequirements.clear();
+	log.debug("🔐 Resolved role requirements of {} handler methods", resolved.size());
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+	    throws Exception {
+	if (!(handler instanceof HandlerMethod handlerMethod))
+	    return true;
+
+	RoleRequirement requirement = requirements.get(handlerMethod.getMethod());
+	if (requirement == null)
+	    requirement = lateRequirements.computeIfAbsent(handlerMethod.getMethod(),
+		    m -> requirementOf(m, handlerMethod.getBeanType()));
+	if (requirement == NONE)
+	    return true;
+
+	JwtAuthentication authentication = RequestAuthentication.resolve(request, verifier);
+	if (authentication == null) {
+	    log.warn("❌ Invalid or missing token for {}", request.getRequestURI());
+	    response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Invalid JWT token");
+	    return false;
+	}
+	if (!requirement.isSatisfiedBy(authentication)) {
+	    log.warn("⛔ Missing role for {} (subject={}, issuer={})", request.getRequestURI(),
+		    authentication.getSubject(), authentication.getIssuer());
+	    response.sendError(HttpServletResponse.SC_FORBIDDEN, "Insufficient role");
+	    return false;
+	}
+	return true;
+    }
+
+    private static RoleRequirement requirementOf(Method method, Class<?> beanType) {
+	RequireRoles all = AnnotatedElementUtils.findMergedAnnotation(method, RequireRoles.class);
+	if (all == null)
+	    all = AnnotatedElementUtils.findMergedAnnotation(beanType, RequireRoles.class);
+	RequireAnyRole any = AnnotatedElementUtils.findMergedAnnotation(method, RequireAnyRole.class);
+	if (any == null)
+	    any = AnnotatedElementUtils.findMergedAnnotation(beanType, RequireAnyRole.class);
+
+	if (all == null && any == null)
+	    return NONE;
+	return new RoleRequirement(all != null ? List.of(all.value()) : List.of(),
+		any != null ? any.value() : new String[0]);
+    }
+
+    /** The roles a handler method requires. */
+    private record RoleRequirement(List<String> all, String[] any) {
+
+	boolean isSatisfiedBy(JwtAuthentication authentication) {
+	    for (String role : all) {
+		if (!authentication.hasRole(role))
+		    return false;
+	    }
+	    return any.length == 0 || authentication.hasAnyRole(any);
+	}
+    }
+}
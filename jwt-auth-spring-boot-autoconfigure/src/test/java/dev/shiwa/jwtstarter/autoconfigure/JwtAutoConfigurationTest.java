@@ -0,0 +1,98 @@
+package dev.shiwa.jwtstarter.autoconfigure;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import dev.shiwa.jwtstarter.core.refresh.CachingRefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.InMemoryRefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.RefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.SessionCapRefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.ShardedRefreshTokenStore;
+
+class JwtAutoConfigurationTest {
+
+    private final ApplicationContextRunner runner = new ApplicationContextRunner()
+	    .withConfiguration(AutoConfigurations.of(JwtAutoConfiguration.class))
+	    .withPropertyValues("jwt.auth.secret=0123456789abcdef0123456789abcdef");
+
+    @Test
+    void opaqueTokens_withCompactStore_failAtStartup() {
+	runner.withPropertyValues("jwt.auth.refresh-token-format=OPAQUE", "jwt.auth.refresh-store-type=COMPACT")
+		.run(context -> assertThat(context).hasFailed().getFailure().rootCause()
+			.hasMessageContaining("refreshTokenFormat=OPAQUE"));
+    }
+
+    @Test
+    void opaqueTokens_withShardedStore_start() {
+	runner.withPropertyValues("jwt.auth.refresh-token-format=OPAQUE", "jwt.auth.refresh-store-type=SHARDED")
+		.run(context -> assertThat(context).getBean(RefreshTokenStore.class)
+			.isInstanceOf(ShardedRefreshTokenStore.class));
+    }
+
+    @Test
+    void sessionCap_wrapsCachingStore() {
+	runner.withPropertyValues("jwt.auth.max-sessions-per-subject=3", "jwt.auth.refresh-store-cache-enabled=true")
+		.run(context -> {
+		    RefreshTokenStore store = context.getBean(RefreshTokenStore.class);
+		    assertThat(store).isInstanceOf(SessionCapRefreshTokenStore.class);
+		    RefreshTokenStore cached = ((SessionCapRefreshTokenStore) store).getDelegate();
+		    assertThat(cached).isInstanceOf(CachingRefreshTokenStore.class);
+		    assertThat(((CachingRefreshTokenStore) cached).getDelegate())
+			    .isInstanceOf(InMemoryRefreshTokenStore.class);
+		});
+    }
+
+    @Test
+    void sessionCap_wrapsUserSuppliedStore() {
+	runner.withUserConfiguration(CustomStoreConfiguration.class)
+		.withPropertyValues("jwt.auth.max-sessions-per-subject=3").run(context -> {
+		    RefreshTokenStore store = context.getBean(RefreshTokenStore.class);
+		    assertThat(store).isInstanceOf(SessionCapRefreshTokenStore.class);
+		    assertThat(((SessionCapRefreshTokenStore) store).getDelegate())
+			    .isSameAs(context.getBean(CustomStoreConfiguration.class).store);
+		});
+    }
+
+    @Test
+    void sessionCap_keepsStoreDeclaredWithConcreteType() {
+	runner.withUserConfiguration(ConcreteStoreConfiguration.class)
+		.withPropertyValues("jwt.auth.max-sessions-per-subject=3").run(context -> {
+		    assertThat(context).hasNotFailed();
+		    assertThat(context.getBean(InMemoryRefreshTokenStore.class))
+			    .isSameAs(context.getBean(ConcreteStoreConfiguration.class).store);
+		});
+    }
+
+    @Test
+    void sessionCap_disabledByDefault() {
+	runner.run(context -> assertThat(context).getBean(RefreshTokenStore.class)
+		.isInstanceOf(InMemoryRefreshTokenStore.class));
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    static class CustomStoreConfiguration {
+
+	final InMemoryRefreshTokenStore store = new InMemoryRefreshTokenStore();
+
+	@Bean
+	RefreshTokenStore refreshTokenStore() {
+	    return store;
+	}
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    static class ConcreteStoreConfiguration {
+
+	final InMemoryRefreshTokenStore store = new InMemoryRefreshTokenStore();
+
+	@Bean
+	InMemoryRefreshTokenStore refreshTokenStore() {
+	    return store;
+	}
+    }
+}
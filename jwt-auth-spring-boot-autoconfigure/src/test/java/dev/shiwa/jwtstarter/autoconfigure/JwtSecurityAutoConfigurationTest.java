@@ -0,0 +1,93 @@
+package dev.shiwa.jwtstarter.autoconfigure;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+import dev.shiwa.jwtstarter.filter.JwtAuthFilter;
+import dev.shiwa.jwtstarter.security.JwtBearerTokenFilter;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+
+class JwtSecurityAutoConfigurationTest {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+    private static final String TENANT_SECRET = "tenant-a-secret-value-that-is-long-enough";
+
+    private final WebApplicationContextRunner runner = new WebApplicationContextRunner()
+	    .withConfiguration(AutoConfigurations.of(JwtAutoConfiguration.class, JwtSecurityAutoConfiguration.class))
+	    .withPropertyValues("jwt.auth.secret=" + SECRET);
+
+    @Test
+    void userDetailsServiceLoginKeepsWorking() {
+	runner.withUserConfiguration(UserDetailsConfiguration.class).run(context -> {
+	    assertThat(context).hasSingleBean(JwtBearerTokenFilter.class);
+	    assertThat(context).doesNotHaveBean(AuthenticationProvider.class);
+
+	    Authentication result = context.getBean(AuthenticationConfiguration.class).getAuthenticationManager()
+		    .authenticate(UsernamePasswordAuthenticationToken.unauthenticated("alice", "secret"));
+
+	    assertThat(result.isAuthenticated()).isTrue();
+	    assertThat(result.getName()).isEqualTo("alice");
+	});
+    }
+
+    @Test
+    void configuredIssuers_areAcceptedByTheBearerTokenFilter() {
+	runner.withPropertyValues("jwt.auth.issuer=own-app", "jwt.auth.issuers[0].issuer=tenant-a",
+		"jwt.auth.issuers[0].secret=" + TENANT_SECRET).run(context -> {
+		    JwtBearerTokenFilter filter = context.getBean(JwtBearerTokenFilter.class);
+
+		    assertThat(authenticate(filter, token("tenant-a", TENANT_SECRET))).isEqualTo(200);
+		    assertThat(authenticate(filter, token("own-app", SECRET))).isEqualTo(200);
+		    assertThat(authenticate(filter, token("tenant-b", TENANT_SECRET))).isEqualTo(401);
+		});
+    }
+
+    private static int authenticate(JwtBearerTokenFilter filter, String token) throws Exception {
+	MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api");
+	request.addHeader("Authorization", "Bearer " + token);
+	MockHttpServletResponse response = new MockHttpServletResponse();
+	filter.doFilter(request, response, new MockFilterChain());
+	if (response.getStatus() == 200)
+	    assertThat(request.getAttribute(JwtAuthFilter.AUTHENTICATION_ATTRIBUTE)).isNotNull();
+	return response.getStatus();
+    }
+
+    private static String token(String issuer, String secret) {
+	return Jwts.builder().setSubject("alice").setIssuer(issuer)
+		.setExpiration(new Date(System.currentTimeMillis() + 60_000))
+		.signWith(Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS256)
+		.compact();
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @EnableWebSecurity
+    static class UserDetailsConfiguration {
+
+	@Bean
+	UserDetailsService userDetailsService() {
+	    return new InMemoryUserDetailsManager(
+		    User.withUsername("alice").password("{noop}secret").roles("USER").build());
+	}
+    }
+}
@@ -0,0 +1,111 @@
+package dev.shiwa.jwtstarter.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties;
+import io.jsonwebtoken.Claims;
+
+class AccessTokenRenewerTest {
+
+    private static final long AUTH_TIME = System.currentTimeMillis();
+
+    @Test
+    void sharesTokenPerSubjectAndRoles() {
+	JwtTokenGenerator generator = mock(JwtTokenGenerator.class);
+	AtomicInteger minted = new AtomicInteger();
+	when(generator.generateAccessToken(anyString(), any(), anyLong(), anyLong()))
+		.thenAnswer(inv -> "token-" + minted.incrementAndGet());
+	AccessTokenRenewer renewer = new AccessTokenRenewer(generator, 60_000);
+
+	String first = renewer.renew("alice", List.of("USER"), AUTH_TIME);
+
+	assertEquals(first, renewer.renew("alice", List.of("USER"), AUTH_TIME));
+	assertNotEquals(first, renewer.renew("alice", List.of("ADMIN"), AUTH_TIME));
+	assertNotEquals(first, renewer.renew("bob", List.of("USER"), AUTH_TIME));
+	verify(generator, times(3)).generateAccessToken(anyString(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void mintsAgainOnceCachedTokenExpired() throws InterruptedException {
+	JwtTokenGenerator generator = mock(JwtTokenGenerator.class);
+	AtomicInteger minted = new AtomicInteger();
+	when(generator.generateAccessToken(anyString(), any(), anyLong(), anyLong()))
+		.thenAnswer(inv -> "token-" + minted.incrementAndGet());
+	AccessTokenRenewer renewer = new AccessTokenRenewer(generator, 20);
+
+	String first = renewer.renew("alice", List.of("USER"), AUTH_TIME);
+	Thread.sleep(40);
+
+	assertNotEquals(first, renewer.renew("alice", List.of("USER"), AUTH_TIME));
+    }
+
+    @Test
+    void concurrentRenewalsShareOneSigning() throws Exception {
+	JwtTokenGenerator generator = mock(JwtTokenGenerator.class);
+	AtomicInteger minted = new AtomicInteger();
+	when(generator.generateAccessToken(anyString(), any(), anyLong(), anyLong())).thenAnswer(inv -> {
+	    Thread.sleep(50);
+	    return "token-" + minted.incrementAndGet();
+	});
+	AccessTokenRenewer renewer = new AccessTokenRenewer(generator, 60_000);
+
+	ExecutorService pool = Executors.newFixedThreadPool(8);
+	try {
+	    CountDownLatch start = new CountDownLatch(1);
+	    List<Future<String>> results = new ArrayList<>();
+	    for (int i = 0; i < 8; i++) {
+		results.add(pool.submit(() -> {
+		    start.await();
+		    return renewer.renew("alice", List.of("USER"), AUTH_TIME);
+		}));
+	    }
+	    start.countDown();
+	    for (Future<String> result : results) {
+		assertEquals("token-1", result.get());
+	    }
+	} finally {
+	    pool.shutdownNow();
+	}
+	assertEquals(1, minted.get());
+    }
+
+    @Test
+    void renewedTokensCarrySessionStartAndEndWithIt() {
+	JwtAuthProperties props = new JwtAuthProperties();
+	props.setSecret("a-very-long-and-secure-secret-value-here-1234");
+	props.setAccessTtlMillis(60_000);
+	props.setRefreshTtlMillis(120_000);
+	AccessTokenRenewer renewer = new AccessTokenRenewer(new JwtTokenGenerator(props), 1_000);
+	long authTime = System.currentTimeMillis() - 100_000;
+
+	Claims claims = new JwtTokenVerifier(props).parse(renewer.renew("alice", List.of("USER"), authTime));
+
+	assertEquals(authTime, claims.get(JwtTokenGenerator.AUTH_TIME_MILLIS_CLAIM, Long.class));
+	assertTrue(claims.getExpiration().getTime() <= authTime + 120_000);
+    }
+
+    @Test
+    void rejectsNegativeCacheDuration() {
+	assertThrows(IllegalArgumentException.class, () -> new AccessTokenRenewer(mock(JwtTokenGenerator.class), -1));
+    }
+}
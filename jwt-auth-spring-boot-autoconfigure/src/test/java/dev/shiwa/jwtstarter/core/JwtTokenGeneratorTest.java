@@ -6,7 +6,9 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.crypto.SecretKey;
 
@@ -62,4 +64,30 @@ class JwtTokenGeneratorTest {
 	assertTrue(tokenRoles.contains("USER"));
 	assertTrue(tokenRoles.contains("ADMIN"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void ttlJitter_shortensLifetimesWithinRatio() {
+	props.setTtlJitterRatio(0.2);
+	props.setRefreshTtlMillis(1_000_000);
+	Set<Long> ttls = new HashSet<>();
+	for (int i = 0; i < 100; i++) {
+	    long access = generator.accessTtlMillis();
+	    long refresh = generator.refreshTtlMillis();
+	    assertTrue(access > 3600000 * 0.8 - 1 && access <= 3600000, "access TTL " + access);
+	    assertTrue(refresh > 1_000_000 * 0.8 - 1 && refresh <= 1_000_000, "refresh TTL " + refresh);
+	    ttls.add(access);
+	}
+	assertTrue(ttls.size() > 1, "TTLs should be spread");
+
+	long expiresAt = System.currentTimeMillis() + 120_000;
+	Claims claims = Jwts.parserBuilder().setSigningKey(secretKey).build()
+		.parseClaimsJws(generator.generateAccessToken("alice", List.of("USER"), expiresAt)).getBody();
+	assertEquals(expiresAt / 1000, claims.getExpiration().getTime() / 1000);
+    }
+
+    @Test
+    void ttlJitter_disabledByDefault() {
+	assertEquals(3600000, generator.accessTtlMillis());
+	assertEquals(props.getRefreshTtlMillis(), generator.refreshTtlMillis());
+    }
+}
@@ -2,10 +2,13 @@ package dev.shiwa.jwtstarter.core;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.Date;
 import java.util.List;
 
@@ -16,6 +19,9 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties;
+import dev.shiwa.jwtstarter.core.revocation.AccessTokenDenylist;
+import dev.shiwa.jwtstarter.core.revocation.SubjectRevocationEpochs;
+import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
@@ -63,6 +69,7 @@ class JwtTokenVerifierTest {
 	JwtAuthentication auth = verifier.parseToken(token);
 
 	assertEquals("user123", auth.getSubject());
+	assertEquals(ISSUER, auth.getIssuer());
 	assertEquals(List.of("ROLE_USER"), auth.getRoles());
 	assertTrue(auth.getExpiration().isAfter(now));
     }
@@ -106,6 +113,17 @@ class JwtTokenVerifierTest {
 	assertFalse(verifier.isValid(null));
     }
 
+    @Test
+    void verify_shouldReturnClaimsOfValidTokenOnly() {
+	Instant now = Instant.now();
+	String valid = generateToken("user123", List.of("ROLE_USER"), now, now.plusSeconds(3600), ISSUER);
+	String foreign = generateToken("user123", List.of("ROLE_USER"), now, now.plusSeconds(3600), "other");
+
+	assertEquals("user123", verifier.verify(valid).getSubject());
+	assertNull(verifier.verify(foreign));
+	assertNull(verifier.verify(null));
+    }
+
     @Test
     void parseToken_shouldStripBearerPrefix() {
 	Instant now = Instant.now();
@@ -115,4 +133,46 @@ class JwtTokenVerifierTest {
 	JwtAuthentication auth = verifier.parseToken(bearerToken);
 	assertEquals("subject", auth.getSubject());
     }
-}
\ No newline at end of file
+
+    @Test
+    void revokedToken_isRejected() {
+	Instant now = Instant.now();
+	Instant exp = now.plusSeconds(3600);
+	String token = Jwts.builder().setSubject("user123").setId("jti-1").setIssuedAt(Date.from(now))
+		.setExpiration(Date.from(exp)).setIssuer(ISSUER).signWith(key, SignatureAlgorithm.HS256).compact();
+
+	try (AccessTokenDenylist denylist = new AccessTokenDenylist(100, Duration.ofMinutes(1), 100)) {
+	    JwtTokenVerifier denyingVerifier = new JwtTokenVerifier(mockProps, denylist);
+	    assertTrue(denyingVerifier.isValid(token));
+
+	    denylist.revoke("jti-1", exp);
+
+	    assertFalse(denyingVerifier.isValid(token));
+	    assertThrows(JwtException.class, () -> denyingVerifier.parseToken(token));
+	}
+    }
+
+    /** Tokens issued later in the second of an epoch cutoff stay valid */
+    @Test
+    void epochs_compareMillisecondIssueTime() {
+	Instant cutoff = Instant.now().truncatedTo(ChronoUnit.SECONDS).plusMillis(500);
+	Instant exp = cutoff.plusSeconds(3600);
+	String before = Jwts.builder().setSubject("user123").setIssuedAt(Date.from(cutoff))
+		.claim(JwtTokenGenerator.ISSUED_AT_MILLIS_CLAIM, cutoff.toEpochMilli() - 100)
+		.setExpiration(Date.from(exp)).setIssuer(ISSUER).signWith(key, SignatureAlgorithm.HS256).compact();
+	String after = Jwts.builder().setSubject("user123").setIssuedAt(Date.from(cutoff))
+		.claim(JwtTokenGenerator.ISSUED_AT_MILLIS_CLAIM, cutoff.toEpochMilli() + 100)
+		.setExpiration(Date.from(exp)).setIssuer(ISSUER).signWith(key, SignatureAlgorithm.HS256).compact();
+	String secondsOnly = generateToken("user123", List.of(), cutoff.plusMillis(100), exp, ISSUER);
+
+	try (SubjectRevocationEpochs epochs = new SubjectRevocationEpochs(Duration.ofMinutes(5),
+		Duration.ofMinutes(1))) {
+	    JwtTokenVerifier epochVerifier = new JwtTokenVerifier(mockProps, null, epochs);
+	    epochs.revokeIssuedBefore("user123", cutoff);
+
+	    assertFalse(epochVerifier.isValid(before));
+	    assertTrue(epochVerifier.isValid(after));
+	    assertFalse(epochVerifier.isValid(secondsOnly));
+	}
+    }
+}
@@ -0,0 +1,160 @@
+package dev.shiwa.jwtstarter.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties;
+import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties.IssuerProfile;
+import dev.shiwa.jwtstarter.core.revocation.AccessTokenDenylist;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+
+class JwtVerifierRegistryTest {
+
+    private static final String SECRET_A = "tenant-a-secret-value-that-is-long-enough";
+    private static final String KEY_B1 = "tenant-b-key-one-value-that-is-long-enough";
+    private static final String KEY_B2 = "tenant-b-key-two-value-that-is-long-enough";
+    private static final String SECRET_OWN = "own-app-secret-value-that-is-long-enough";
+
+    private List<IssuerProfile> profiles;
+    private JwtVerifierRegistry registry;
+
+    @BeforeEach
+    void setup() {
+	IssuerProfile a = new IssuerProfile();
+	a.setIssuer("tenant-a");
+	a.setSecret(SECRET_A);
+	IssuerProfile b = new IssuerProfile();
+	b.setIssuer("tenant-b");
+	b.setKeys(Map.of("k1", KEY_B1, "k2", KEY_B2));
+	profiles = List.of(a, b);
+	registry = new JwtVerifierRegistry(profiles);
+    }
+
+    private static String token(String issuer, String kid, String secret) {
+	return token(issuer, kid, secret, "jti-1");
+    }
+
+    private static String token(String issuer, String kid, String secret, String jti) {
+	JwtBuilder builder = Jwts.builder().setSubject("alice").setIssuer(issuer).setId(jti)
+		.setExpiration(new Date(System.currentTimeMillis() + 60_000))
+		.signWith(Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS256);
+	if (kid != null)
+	    builder.setHeaderParam("kid", kid);
+	return builder.compact();
+    }
+
+    @Test
+    void dispatchesByIssuerAndKeyId() {
+	Claims claims = registry.verify("Bearer " + token("tenant-a", null, SECRET_A));
+	assertNotNull(claims);
+	assertEquals("alice", claims.getSubject());
+	assertEquals("tenant-a", JwtAuthentication.from(claims).getIssuer());
+
+	assertTrue(registry.isValid(token("tenant-b", "k1", KEY_B1)));
+	assertTrue(registry.isValid(token("tenant-b", "k2", KEY_B2)));
+	assertEquals(1, registry.getVerifiedCount("tenant-a"));
+	assertEquals(2, registry.getVerifiedCount("tenant-b"));
+    }
+
+    @Test
+    void rejectsTokenSignedWithAnotherTenantsKey() {
+	assertFalse(registry.isValid(token("tenant-a", null, KEY_B1)));
+	assertFalse(registry.isValid(token("tenant-b", "k1", KEY_B2)));
+
+	assertEquals(1, registry.getRejectedCount("tenant-a"));
+	assertEquals(1, registry.getRejectedCount("tenant-b"));
+    }
+
+    @Test
+    void rejectsUnknownIssuerAndKeyId() {
+	assertNull(registry.verify(token("tenant-c", null, SECRET_A)));
+	assertNull(registry.verify("not-a-token"));
+	assertNull(registry.verify(token("tenant-b", "k3", KEY_B1)));
+	assertNull(registry.verify(token("tenant-b", null, KEY_B1)));
+
+	assertEquals(2, registry.getUnknownIssuerCount());
+	assertEquals(2, registry.getRejectedCount("tenant-b"));
+    }
+
+    @Test
+    void primaryVerifierAcceptsOwnTokens() {
+	JwtVerifierRegistry withPrimary = new JwtVerifierRegistry(profiles, "own-app",
+		new JwtTokenVerifier(ownProperties()), null, null);
+
+	assertTrue(withPrimary.isValid(token("own-app", null, SECRET_OWN)));
+	assertTrue(withPrimary.isValid(token("tenant-a", null, SECRET_A)));
+	assertFalse(withPrimary.isValid(token("own-app", null, SECRET_A)));
+	assertFalse(withPrimary.isValid(token(null, null, SECRET_OWN)));
+	assertEquals(1, withPrimary.getVerifiedCount("own-app"));
+    }
+
+    @Test
+    void revocationsOfOneIssuerDoNotAffectAnother() {
+	Instant exp = Instant.now().plusSeconds(60);
+	try (AccessTokenDenylist denylist = new AccessTokenDenylist(100, Duration.ofMinutes(1), 100)) {
+	    JwtVerifierRegistry scoped = new JwtVerifierRegistry(profiles, "own-app",
+		    new JwtTokenVerifier(ownProperties(), denylist, null), denylist, null);
+	    String own = token("own-app", null, SECRET_OWN, "shared");
+	    String a = token("tenant-a", null, SECRET_A, "shared");
+	    String b = token("tenant-b", "k1", KEY_B1, "shared");
+
+	    denylist.revoke("shared", exp);
+	    assertFalse(scoped.isValid(own));
+	    assertTrue(scoped.isValid(a));
+	    assertTrue(scoped.isValid(b));
+
+	    denylist.revoke("tenant-a", "shared", exp);
+	    assertFalse(scoped.isValid(a));
+	    assertTrue(scoped.isValid(b));
+	}
+    }
+
+    private static JwtAuthProperties ownProperties() {
+	JwtAuthProperties props = new JwtAuthProperties();
+	props.setIssuer("own-app");
+	props.setSecret(SECRET_OWN);
+	return props;
+    }
+
+    @Test
+    void rejectsInvalidProfiles() {
+	IssuerProfile noIssuer = new IssuerProfile();
+	noIssuer.setSecret(SECRET_A);
+	assertThrows(IllegalArgumentException.class, () -> new JwtVerifierRegistry(List.of(noIssuer)));
+
+	IssuerProfile shortKey = new IssuerProfile();
+	shortKey.setIssuer("tenant-a");
+	shortKey.setSecret("short");
+	assertThrows(IllegalArgumentException.class, () -> new JwtVerifierRegistry(List.of(shortKey)));
+    }
+
+    @Test
+    void stringFieldReadsTopLevelMembersOnly() {
+	String json = "{ \"sub\" : \"x\\\"iss\\\":\\\"evil\", \"nested\": {\"iss\": \"inner\"}, \"n\": [1, {\"a\": 2}],"
+		+ " \"iss\":\"tenant-\\u0061\" }";
+
+	assertEquals("tenant-a", JwtVerifierRegistry.stringField(json, "iss"));
+	assertNull(JwtVerifierRegistry.stringField(json, "kid"));
+	assertNull(JwtVerifierRegistry.stringField("{\"iss\": 5}", "iss"));
+	assertNull(JwtVerifierRegistry.stringField("{\"iss\": \"unterminated", "iss"));
+	assertNull(JwtVerifierRegistry.stringField("[]", "iss"));
+    }
+}
@@ -0,0 +1,189 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class CachingRefreshTokenStoreTest {
+
+    private final CountingStore remote = new CountingStore();
+    private CachingRefreshTokenStore store = new CachingRefreshTokenStore(remote, 100, Duration.ofMinutes(1));
+
+    @AfterEach
+    void tearDown() throws Exception {
+	store.close();
+    }
+
+    @Test
+    void repeatedLookupsAreServedFromCache() {
+	remote.save("jti-1", "alice", Instant.now().plusSeconds(60));
+
+	for (int i = 0; i < 10; i++) {
+	    assertTrue(store.isActive("jti-1"));
+	    assertEquals("alice", store.subjectFor("jti-1"));
+	}
+
+	assertEquals(2, remote.reads.get());
+	assertEquals(18, store.getHitCount());
+	assertEquals(0.9, store.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void savedTokenIsCached() {
+	store.save("jti-1", "alice", Instant.now().plusSeconds(60), "fam-1");
+
+	assertTrue(store.isActive("jti-1"));
+	assertEquals("alice", store.subjectFor("jti-1"));
+	assertEquals(0, remote.reads.get());
+    }
+
+    @Test
+    void localRevocationWinsImmediately() {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("a1", "alice", exp);
+	store.save("a2", "alice", exp);
+	store.save("b1", "bob", exp, "fam-b");
+	remote.save("c1", "carol", exp);
+	assertTrue(store.isActive("c1")); // cached without subject
+
+	store.revoke("a1");
+	store.revokeFamily("fam-b", "bob");
+	store.revokeAllForSubject("carol");
+
+	assertFalse(store.isActive("a1"));
+	assertNull(store.subjectFor("a1"));
+	assertTrue(store.isActive("a2"));
+	assertFalse(store.isActive("b1"));
+	assertFalse(store.isActive("c1"));
+    }
+
+    @Test
+    void rotationUpdatesCache() {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("old", "alice", exp, "fam");
+
+	assertEquals(RotationOutcome.ROTATED, store.rotate("old", "new", "alice", exp, "fam"));
+
+	int reads = remote.reads.get();
+	assertFalse(store.isActive("old"));
+	assertTrue(store.isActive("new"));
+	assertEquals(reads, remote.reads.get());
+    }
+
+    /** The opaque refresh path: find, then rotate, then find the successor */
+    @Test
+    void lookupsBeforeRotationAreServedFromCache() {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("old", "alice", exp, "fam", List.of("ADMIN"));
+
+	StoredRefreshToken found = store.find("old");
+	assertEquals("alice", found.subject());
+	assertEquals(List.of("ADMIN"), found.roles());
+	assertEquals(RotationOutcome.ROTATED, store.rotate("old", "new", "alice", exp, "fam"));
+	assertEquals(List.of("ADMIN"), store.find("new").roles());
+
+	assertEquals(0, remote.reads.get());
+    }
+
+    @Test
+    void foundTokenIsCached() {
+	remote.save("jti-1", "alice", Instant.now().plusSeconds(60), "fam");
+
+	assertEquals("fam", store.find("jti-1").familyId());
+	assertEquals("fam", store.findAsync("jti-1").join().familyId());
+	assertEquals(1, remote.reads.get());
+    }
+
+    /** Inactive tokens are found in the delegate, which may report reuse */
+    @Test
+    void rotatedOrRevokedTokensAreLookedUpInDelegate() {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("old", "alice", exp, "fam");
+	store.save("gone", "alice", exp);
+	store.rotate("old", "new", "alice", exp, "fam");
+	store.revoke("gone");
+
+	assertEquals("alice", store.find("old").subject());
+	assertEquals(RotationOutcome.REUSED, store.rotate("old", "other", "alice", exp, "fam"));
+	assertNull(store.find("gone"));
+	assertEquals(2, remote.reads.get());
+    }
+
+    /** A revocation the cache does not see is picked up after the window */
+    @Test
+    void remoteRevocationIsVisibleAfterSafetyWindow() throws Exception {
+	store = new CachingRefreshTokenStore(remote, 100, Duration.ofMillis(50));
+	store.save("jti-1", "alice", Instant.now().plusSeconds(60));
+	remote.revoke("jti-1");
+	assertTrue(store.isActive("jti-1"));
+
+	Thread.sleep(100);
+
+	assertFalse(store.isActive("jti-1"));
+    }
+
+    @Test
+    void invalidationHookDropsEntries() {
+	store.save("jti-1", "alice", Instant.now().plusSeconds(60));
+	remote.revoke("jti-1");
+
+	store.invalidate("jti-1");
+
+	assertFalse(store.isActive("jti-1"));
+    }
+
+    @Test
+    void cacheIsBounded() {
+	store = new CachingRefreshTokenStore(remote, 100, Duration.ofMinutes(1));
+	Instant exp = Instant.now().plusSeconds(60);
+	for (int i = 0; i < 1_000; i++) {
+	    store.save("jti-" + i, "alice", exp);
+	}
+
+	assertTrue(store.size() <= 100);
+	assertTrue(store.isActive("jti-0"));
+    }
+
+    @Test
+    void asyncLookupsUseCache() {
+	remote.save("jti-1", "alice", Instant.now().plusSeconds(60));
+
+	assertTrue(store.isActiveAsync("jti-1").join());
+	assertTrue(store.isActiveAsync("jti-1").join());
+	store.revokeAsync("jti-1").join();
+
+	assertFalse(store.isActiveAsync("jti-1").join());
+	assertEquals(1, remote.reads.get());
+    }
+
+    private static final class CountingStore extends InMemoryRefreshTokenStore {
+	final AtomicInteger reads = new AtomicInteger();
+
+	@Override
+	public boolean isActive(String jti) {
+	    reads.incrementAndGet();
+	    return super.isActive(jti);
+	}
+
+	@Override
+	public String subjectFor(String jti) {
+	    reads.incrementAndGet();
+	    return super.subjectFor(jti);
+	}
+
+	@Override
+	public StoredRefreshToken find(String jti) {
+	    reads.incrementAndGet();
+	    return super.find(jti);
+	}
+    }
+}
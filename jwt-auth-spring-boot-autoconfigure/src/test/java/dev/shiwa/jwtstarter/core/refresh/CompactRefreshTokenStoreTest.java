@@ -0,0 +1,169 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CompactRefreshTokenStoreTest {
+
+    private CompactRefreshTokenStore store;
+
+    @BeforeEach
+    void setUp() {
+	store = new CompactRefreshTokenStore(4, null);
+    }
+
+    @Test
+    void saveLookupAndRevoke_uuidJti() {
+	String jti = UUID.randomUUID().toString();
+	store.save(jti, "alice", Instant.now().plusSeconds(60));
+
+	assertTrue(store.isActive(jti));
+	assertEquals("alice", store.subjectFor(jti));
+
+	store.revoke(jti);
+
+	assertFalse(store.isActive(jti));
+	assertNull(store.subjectFor(jti));
+    }
+
+    @Test
+    void saveLookupAndRevoke_nonUuidJti() {
+	store.save("custom-jti-42", "bob", Instant.now().plusSeconds(60));
+
+	assertTrue(store.isActive("custom-jti-42"));
+	assertEquals("bob", store.subjectFor("custom-jti-42"));
+	assertFalse(store.isActive("custom-jti-43"));
+    }
+
+    @Test
+    void expiredToken_isNotActive() {
+	String jti = UUID.randomUUID().toString();
+	store.save(jti, "alice", Instant.now().minusSeconds(5));
+
+	assertFalse(store.isActive(jti));
+	assertEquals(1, store.evictExpired(Instant.now()));
+	assertEquals(0, store.size());
+    }
+
+    /** Many inserts force resizes; all entries must remain reachable */
+    @Test
+    void growsAndKeepsAllEntries() {
+	Instant exp = Instant.now().plus(Duration.ofHours(1));
+	List<String> jtis = new ArrayList<>();
+	for (int i = 0; i < 10_000; i++) {
+	    String jti = UUID.randomUUID().toString();
+	    jtis.add(jti);
+	    store.save(jti, "user-" + (i % 100), exp);
+	}
+
+	assertEquals(10_000, store.size());
+	for (String jti : jtis) {
+	    assertTrue(store.isActive(jti));
+	}
+    }
+
+    /** Removed slots must not break probe chains of entries behind them */
+    @Test
+    void revokeAllForSubject_keepsOtherEntriesReachable() {
+	Instant exp = Instant.now().plus(Duration.ofHours(1));
+	List<String> alice = new ArrayList<>();
+	List<String> bob = new ArrayList<>();
+	for (int i = 0; i < 500; i++) {
+	    String a = UUID.randomUUID().toString();
+	    String b = UUID.randomUUID().toString();
+	    alice.add(a);
+	    bob.add(b);
+	    store.save(a, "alice", exp);
+	    store.save(b, "bob", exp);
+	}
+
+	store.revokeAllForSubject("alice");
+
+	assertEquals(500, store.size());
+	alice.forEach(jti -> assertFalse(store.isActive(jti)));
+	bob.forEach(jti -> assertTrue(store.isActive(jti)));
+    }
+
+    @Test
+    void resave_updatesExpiryInPlace() {
+	String jti = UUID.randomUUID().toString();
+	store.save(jti, "alice", Instant.now().minusSeconds(5));
+	store.save(jti, "alice", Instant.now().plusSeconds(60));
+
+	assertTrue(store.isActive(jti));
+	assertEquals(1, store.size());
+    }
+
+    @Test
+    void rotate_consumesOldTokenOnce() {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("jti-1", "alice", exp);
+
+	assertEquals(RotationOutcome.ROTATED, store.rotate("jti-1", "jti-2", "alice", exp));
+	assertEquals(RotationOutcome.REUSED, store.rotate("jti-1", "jti-3", "alice", exp));
+	assertEquals(RotationOutcome.UNKNOWN, store.rotate("jti-2", "jti-4", "mallory", exp));
+
+	assertTrue(store.isActive("jti-2"));
+	assertFalse(store.isActive("jti-1"));
+	assertNull(store.subjectFor("jti-1"));
+	assertFalse(store.isActive("jti-3"));
+    }
+
+    @Test
+    void rotate_reportsExpiredOrUnsavedTokensAsUnknown() {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("expired", "alice", Instant.now().minusSeconds(5));
+
+	assertEquals(RotationOutcome.UNKNOWN, store.rotate("expired", "jti-1", "alice", exp));
+	assertEquals(RotationOutcome.UNKNOWN, store.rotate("never-saved", "jti-2", "alice", exp));
+	assertFalse(store.isActive("jti-1"));
+    }
+
+    /** Consumed markers survive resizes and are evicted once expired */
+    @Test
+    void consumedTokens_surviveResizeUntilExpiry() {
+	Instant soon = Instant.now().plusSeconds(1);
+	store.save("jti-1", "alice", soon);
+	store.rotate("jti-1", "jti-2", "alice", soon);
+	for (int i = 0; i < 10_000; i++) {
+	    store.save(UUID.randomUUID().toString(), "bob", Instant.now().plusSeconds(60));
+	}
+
+	assertEquals(RotationOutcome.REUSED, store.rotate("jti-1", "jti-3", "alice", soon));
+	assertEquals(2, store.evictExpired(soon.plusSeconds(1)));
+	assertEquals(RotationOutcome.UNKNOWN, store.rotate("jti-1", "jti-3", "alice", soon));
+    }
+
+    @Test
+    void evictExpired_releasesSubjectsWithoutSessions() {
+	Instant exp = Instant.now().plusSeconds(60);
+	for (int i = 0; i < 100; i++) {
+	    store.save("jti-" + i, "user-" + i, i < 90 ? Instant.now().minusSeconds(1) : exp);
+	}
+	assertEquals(100, store.getSubjectCount());
+
+	store.evictExpired(Instant.now());
+
+	assertEquals(10, store.getSubjectCount());
+	assertEquals("user-95", store.subjectFor("jti-95"));
+
+	// released ids are reused without mixing up subjects
+	store.save("jti-new", "carol", exp);
+	assertEquals("carol", store.subjectFor("jti-new"));
+	assertEquals("user-95", store.subjectFor("jti-95"));
+	store.revokeAllForSubject("carol");
+	assertTrue(store.isActive("jti-95"));
+	assertFalse(store.isActive("jti-new"));
+    }
+}
@@ -0,0 +1,329 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import dev.shiwa.jwtstarter.core.refresh.eviction.LeastRecentlyRefreshedEvictionPolicy;
+import dev.shiwa.jwtstarter.core.refresh.eviction.SoonestExpiryEvictionPolicy;
+import dev.shiwa.jwtstarter.core.refresh.eviction.SubjectSessionCapEvictionPolicy;
+
+class InMemoryRefreshTokenStoreTest {
+
+    private InMemoryRefreshTokenStore store;
+
+    @BeforeEach
+    void setUp() {
+	store = new InMemoryRefreshTokenStore();
+    }
+
+    @AfterEach
+    void tearDown() {
+	store.close();
+    }
+
+    @Test
+    void saveAndRevoke() {
+	store.save("jti-1", "alice", Instant.now().plusSeconds(60));
+
+	assertTrue(store.isActive("jti-1"));
+	assertEquals("alice", store.subjectFor("jti-1"));
+
+	store.revoke("jti-1");
+
+	assertFalse(store.isActive("jti-1"));
+	assertNull(store.subjectFor("jti-1"));
+    }
+
+    @Test
+    void revokeAllForSubject_onlyRemovesThatSubject() {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("a1", "alice", exp);
+	store.save("a2", "alice", exp);
+	store.save("b1", "bob", exp);
+
+	store.revokeAllForSubject("alice");
+
+	assertFalse(store.isActive("a1"));
+	assertFalse(store.isActive("a2"));
+	assertTrue(store.isActive("b1"));
+    }
+
+    /** Expired tokens are removed by the sweep, active ones stay */
+    @Test
+    void evictExpired_removesOnlyExpiredTokens() {
+	Instant now = Instant.now();
+	store.save("old-1", "alice", now.minus(Duration.ofMinutes(10)));
+	store.save("old-2", "bob", now.minus(Duration.ofMinutes(5)));
+	store.save("fresh", "carol", now.plus(Duration.ofMinutes(10)));
+
+	int evicted = store.evictExpired(now, 100);
+
+	assertEquals(2, evicted);
+	assertEquals(1, store.size());
+	assertEquals(2, store.getEvictedCount());
+	assertTrue(store.isActive("fresh"));
+    }
+
+    @Test
+    void evictExpired_respectsBatchSize() {
+	Instant past = Instant.now().minus(Duration.ofHours(1));
+	for (int i = 0; i < 10; i++) {
+	    store.save("jti-" + i, "alice", past);
+	}
+
+	assertEquals(4, store.evictExpired(Instant.now(), 4));
+	assertEquals(6, store.size());
+	assertEquals(6, store.evictExpired(Instant.now(), 100));
+	assertEquals(0, store.size());
+    }
+
+    /** A jti that was re-saved with a later expiry must survive the old index entry */
+    @Test
+    void evictExpired_skipsRenewedToken() {
+	Instant now = Instant.now();
+	store.save("jti", "alice", now.minus(Duration.ofMinutes(10)));
+	store.save("jti", "alice", now.plus(Duration.ofMinutes(10)));
+
+	assertEquals(0, store.evictExpired(now, 100));
+	assertTrue(store.isActive("jti"));
+    }
+
+    @Test
+    void backgroundSweeper_evictsExpiredTokens() throws InterruptedException {
+	store = new InMemoryRefreshTokenStore(Duration.ofMillis(20), 100);
+	store.save("jti", "alice", Instant.now().minusSeconds(1));
+
+	long deadline = System.currentTimeMillis() + 2_000;
+	while (store.size() > 0 && System.currentTimeMillis() < deadline) {
+	    Thread.sleep(10);
+	}
+
+	assertEquals(0, store.size());
+	assertEquals(1, store.getEvictedCount());
+    }
+
+    /** Over capacity, the token closest to expiry is dropped */
+    @Test
+    void bounded_soonestExpiry_evictsTokenExpiringFirst() {
+	store = new InMemoryRefreshTokenStore(Duration.ofMinutes(1), 100, 2, new SoonestExpiryEvictionPolicy());
+	Instant now = Instant.now();
+	store.save("late", "alice", now.plus(Duration.ofHours(3)));
+	store.save("soon", "bob", now.plus(Duration.ofHours(1)));
+	store.save("middle", "carol", now.plus(Duration.ofHours(2)));
+
+	assertEquals(2, store.size());
+	assertFalse(store.isActive("soon"));
+	assertTrue(store.isActive("late"));
+	assertTrue(store.isActive("middle"));
+	assertEquals(1, store.getOverflowCount());
+    }
+
+    /** Over capacity, the token used least recently is dropped */
+    @Test
+    void bounded_leastRecentlyRefreshed_evictsIdleToken() {
+	store = new InMemoryRefreshTokenStore(Duration.ofMinutes(1), 100, 2,
+		new LeastRecentlyRefreshedEvictionPolicy());
+	Instant exp = Instant.now().plus(Duration.ofHours(1));
+	store.save("first", "alice", exp);
+	store.save("second", "bob", exp);
+	assertTrue(store.isActive("first"));
+
+	store.save("third", "carol", exp);
+
+	assertTrue(store.isActive("first"));
+	assertFalse(store.isActive("second"));
+	assertTrue(store.isActive("third"));
+	assertEquals(1, store.getOverflowCount());
+    }
+
+    /** A subject over its session cap loses its oldest session, others are untouched */
+    @Test
+    void bounded_subjectSessionCap_evictsOldestSessionOfSubject() {
+	store = new InMemoryRefreshTokenStore(Duration.ofMinutes(1), 100, 0,
+		new SubjectSessionCapEvictionPolicy(2, new SoonestExpiryEvictionPolicy()));
+	Instant exp = Instant.now().plus(Duration.ofHours(1));
+	store.save("b1", "bob", exp);
+	store.save("a1", "alice", exp);
+	store.save("a2", "alice", exp);
+	store.save("a3", "alice", exp);
+
+	assertFalse(store.isActive("a1"));
+	assertTrue(store.isActive("a2"));
+	assertTrue(store.isActive("a3"));
+	assertTrue(store.isActive("b1"));
+	assertEquals(1, store.getOverflowCount());
+    }
+
+    @Test
+    void rotate_consumesOldTokenAndReportsReuse() {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("jti-1", "alice", exp);
+
+	assertEquals(RotationOutcome.ROTATED, store.rotate("jti-1", "jti-2", "alice", exp));
+	assertFalse(store.isActive("jti-1"));
+	assertNull(store.subjectFor("jti-1"));
+	assertTrue(store.isActive("jti-2"));
+
+	assertEquals(RotationOutcome.REUSED, store.rotate("jti-1", "jti-3", "alice", exp));
+	assertFalse(store.isActive("jti-3"));
+	assertEquals(RotationOutcome.UNKNOWN, store.rotate("never-saved", "jti-4", "alice", exp));
+	assertEquals(RotationOutcome.UNKNOWN, store.rotate("jti-2", "jti-5", "mallory", exp));
+    }
+
+    /** Of many concurrent rotations of the same token exactly one wins */
+    @Test
+    void rotate_concurrent_exactlyOneSucceeds() throws Exception {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("jti-0", "alice", exp);
+
+	ExecutorService pool = Executors.newFixedThreadPool(8);
+	List<Callable<RotationOutcome>> tasks = new ArrayList<>();
+	for (int i = 0; i < 32; i++) {
+	    String newJti = "jti-new-" + i;
+	    tasks.add(() -> store.rotate("jti-0", newJti, "alice", exp));
+	}
+	int rotated = 0;
+	for (Future<RotationOutcome> f : pool.invokeAll(tasks)) {
+	    if (f.get() == RotationOutcome.ROTATED)
+		rotated++;
+	    else
+		assertEquals(RotationOutcome.REUSED, f.get());
+	}
+	pool.shutdown();
+
+	assertEquals(1, rotated);
+    }
+
+    /** Consumed markers disappear with the token's expiry */
+    @Test
+    void rotate_consumedMarkerIsEvictedOnExpiry() {
+	Instant now = Instant.now();
+	store.save("jti-1", "alice", now.plusSeconds(1));
+	store.rotate("jti-1", "jti-2", "alice", now.plus(Duration.ofHours(1)));
+
+	assertEquals(2, store.size());
+	assertEquals(1, store.evictExpired(now.plus(Duration.ofMinutes(5)), 100));
+	assertEquals(1, store.size());
+    }
+
+    /** Consumed markers do not count against the capacity */
+    @Test
+    void bounded_rotationKeepsLiveSessionsWithinCapacity() {
+	store = new InMemoryRefreshTokenStore(Duration.ofMinutes(1), 100, 2, new SoonestExpiryEvictionPolicy());
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("a", "alice", exp);
+	store.save("b", "bob", exp);
+
+	store.rotate("a", "a2", "alice", exp.plusSeconds(1));
+
+	assertTrue(store.isActive("a2"));
+	assertTrue(store.isActive("b"));
+	assertEquals(0, store.getOverflowCount());
+    }
+
+    /** Revoking a family only ends its current token, other logins stay active */
+    @Test
+    void revokeFamily_revokesOnlyCurrentTokenOfFamily() {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("phone-1", "alice", exp, "phone");
+	store.save("laptop-1", "alice", exp, "laptop");
+	assertEquals(RotationOutcome.ROTATED, store.rotate("phone-1", "phone-2", "alice", exp, "phone"));
+
+	store.revokeFamily("phone", "alice");
+
+	assertFalse(store.isActive("phone-2"));
+	assertTrue(store.isActive("laptop-1"));
+	assertEquals(RotationOutcome.REUSED, store.rotate("phone-1", "phone-3", "alice", exp, "phone"));
+    }
+
+    /** A family revoked while its token is rotated never keeps the new token */
+    @Test
+    void revokeFamily_concurrentWithRotation_neverLeavesNewToken() throws Exception {
+	Instant exp = Instant.now().plusSeconds(60);
+	ExecutorService pool = Executors.newFixedThreadPool(2);
+	for (int i = 0; i < 2_000; i++) {
+	    String family = "fam-" + i;
+	    store.save(family + "-1", "alice", exp, family);
+
+	    Future<RotationOutcome> rotation = pool
+		    .submit(() -> store.rotate(family + "-1", family + "-2", "alice", exp, family));
+	    Future<?> revocation = pool.submit(() -> store.revokeFamily(family, "alice"));
+	    rotation.get();
+	    revocation.get();
+
+	    assertFalse(store.isActive(family + "-2"), family);
+	}
+	pool.shutdown();
+    }
+
+    @Test
+    void bulkOperations() {
+	Instant exp = Instant.now().plusSeconds(60);
+	List<StoredRefreshToken> tokens = new ArrayList<>();
+	for (int i = 0; i < 1_000; i++) {
+	    tokens.add(new StoredRefreshToken("jti-" + i, "user-" + (i % 10), exp, "fam-" + i));
+	}
+	store.saveAll(tokens);
+	store.revokeAll(List.of("jti-0", "jti-1", "unknown"));
+
+	Map<String, Boolean> active = store.isActiveAll(List.of("jti-0", "jti-2", "unknown"));
+
+	assertEquals(Map.of("jti-0", false, "jti-2", true, "unknown", false), active);
+	assertEquals(998, store.size());
+	store.revokeFamily("fam-2", "user-2");
+	assertFalse(store.isActive("jti-2"));
+    }
+
+    /** A bounded store enforces its capacity once per batch */
+    @Test
+    void bounded_saveAll_enforcesCapacity() {
+	try (InMemoryRefreshTokenStore bounded = new InMemoryRefreshTokenStore(Duration.ofMinutes(1), 100, 10,
+		new SoonestExpiryEvictionPolicy())) {
+	    Instant now = Instant.now();
+	    List<StoredRefreshToken> tokens = new ArrayList<>();
+	    for (int i = 0; i < 50; i++) {
+		tokens.add(new StoredRefreshToken("jti-" + i, "alice", now.plusSeconds(60 + i), null));
+	    }
+
+	    bounded.saveAll(tokens);
+
+	    assertEquals(10, bounded.size());
+	    assertEquals(40, bounded.getOverflowCount());
+	    assertTrue(bounded.isActive("jti-49"));
+	    assertFalse(bounded.isActive("jti-0"));
+	}
+    }
+
+    @Test
+    void find_returnsRolesAndRotationCarriesThemOver() {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("jti-1", "alice", exp, "fam-1", List.of("ADMIN", "USER"));
+
+	StoredRefreshToken found = store.find("jti-1");
+	assertEquals(new StoredRefreshToken("jti-1", "alice", exp, "fam-1", List.of("ADMIN", "USER")), found);
+
+	assertEquals(RotationOutcome.ROTATED, store.rotate("jti-1", "jti-2", "alice", exp, null));
+	assertEquals(List.of("ADMIN", "USER"), store.find("jti-2").roles());
+	assertEquals("fam-1", store.find("jti-2").familyId());
+
+	// the consumed marker is still found, so a second rotation reports reuse
+	assertEquals("alice", store.find("jti-1").subject());
+	assertNull(store.find("unknown"));
+    }
+}
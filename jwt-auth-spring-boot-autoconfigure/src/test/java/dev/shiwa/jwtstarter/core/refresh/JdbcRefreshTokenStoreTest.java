@@ -0,0 +1,216 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class JdbcRefreshTokenStoreTest {
+
+    private JdbcDataSource dataSource;
+    private JdbcRefreshTokenStore store;
+
+    @BeforeEach
+    void setUp() {
+	dataSource = new JdbcDataSource();
+	dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+	store = new JdbcRefreshTokenStore(dataSource, "jwt_refresh_token", Duration.ofMillis(1), null);
+	store.initializeSchema();
+    }
+
+    @AfterEach
+    void tearDown() {
+	store.close();
+    }
+
+    @Test
+    void saveLookupAndRevoke() {
+	store.save("jti-1", "alice", Instant.now().plusSeconds(60));
+
+	assertTrue(store.isActive("jti-1"));
+	assertEquals("alice", store.subjectFor("jti-1"));
+
+	store.revoke("jti-1");
+
+	assertFalse(store.isActive("jti-1"));
+	assertNull(store.subjectFor("jti-1"));
+    }
+
+    @Test
+    void resave_replacesRow() {
+	store.save("jti-1", "alice", Instant.now().minusSeconds(5));
+	store.save("jti-1", "alice", Instant.now().plusSeconds(60));
+
+	assertTrue(store.isActive("jti-1"));
+    }
+
+    /** A jti saved twice in one group commit keeps the last row */
+    @Test
+    void saveAll_withDuplicateJtis_keepsLastSave() {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.saveAll(List.of(new StoredRefreshToken("jti-1", "alice", exp, null),
+		new StoredRefreshToken("jti-2", "alice", exp, null),
+		new StoredRefreshToken("jti-1", "bob", exp, null)));
+
+	assertEquals("bob", store.subjectFor("jti-1"));
+	assertEquals("alice", store.subjectFor("jti-2"));
+    }
+
+    @Test
+    void revokeAllForSubject_onlyRemovesThatSubject() {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("a1", "alice", exp);
+	store.save("a2", "alice", exp);
+	store.save("b1", "bob", exp);
+
+	store.revokeAllForSubject("alice");
+
+	assertFalse(store.isActive("a1"));
+	assertFalse(store.isActive("a2"));
+	assertTrue(store.isActive("b1"));
+    }
+
+    @Test
+    void purgeExpired_deletesOnlyExpiredRows() {
+	store.save("old-1", "alice", Instant.now().minusSeconds(5));
+	store.save("old-2", "bob", Instant.now().minusSeconds(5));
+	store.save("new", "alice", Instant.now().plusSeconds(60));
+
+	assertFalse(store.isActive("old-1"));
+	assertEquals(2, store.purgeExpired(Instant.now()));
+	assertTrue(store.isActive("new"));
+    }
+
+    /** Concurrent writes are coalesced into batches without losing any */
+    @Test
+    void concurrentSaves_areAllCommitted() throws InterruptedException {
+	Instant exp = Instant.now().plusSeconds(60);
+	List<String> jtis = new ArrayList<>();
+	for (int i = 0; i < 500; i++) {
+	    jtis.add(UUID.randomUUID().toString());
+	}
+
+	ExecutorService pool = Executors.newFixedThreadPool(8);
+	jtis.forEach(jti -> pool.execute(() -> store.save(jti, "alice", exp)));
+	pool.shutdown();
+	assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+
+	jtis.forEach(jti -> assertTrue(store.isActive(jti)));
+    }
+
+    @Test
+    void initializeSchema_isIdempotent() {
+	store.save("jti-1", "alice", Instant.now().plusSeconds(60));
+	store.initializeSchema();
+
+	assertTrue(store.isActive("jti-1"));
+    }
+
+    @Test
+    void rejectsInvalidTableName() {
+	assertThrows(IllegalArgumentException.class,
+		() -> new JdbcRefreshTokenStore(dataSource, "t; DROP TABLE users", Duration.ZERO, null));
+    }
+
+    @Test
+    void rotate_consumesOldTokenOnce() {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("jti-1", "alice", exp);
+
+	assertEquals(RotationOutcome.ROTATED, store.rotate("jti-1", "jti-2", "alice", exp));
+	assertEquals(RotationOutcome.REUSED, store.rotate("jti-1", "jti-3", "alice", exp));
+
+	assertFalse(store.isActive("jti-1"));
+	assertTrue(store.isActive("jti-2"));
+	assertFalse(store.isActive("jti-3"));
+    }
+
+    @Test
+    void revokeFamily_deletesOnlyThatFamily() {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("p1", "alice", exp, "phone");
+	store.save("l1", "alice", exp, "laptop");
+	assertEquals(RotationOutcome.ROTATED, store.rotate("p1", "p2", "alice", exp, "phone"));
+
+	store.revokeFamily("phone", "alice");
+
+	assertFalse(store.isActive("p2"));
+	assertTrue(store.isActive("l1"));
+    }
+
+    @Test
+    void bulkOperations() {
+	Instant exp = Instant.now().plusSeconds(60);
+	List<StoredRefreshToken> tokens = new ArrayList<>();
+	for (int i = 0; i < 1_200; i++) {
+	    tokens.add(new StoredRefreshToken("jti-" + i, "user-" + (i % 10), exp, i == 5 ? "fam" : null));
+	}
+	store.saveAll(tokens);
+	store.revokeAll(List.of("jti-0", "jti-1"));
+
+	List<String> jtis = new ArrayList<>();
+	for (int i = 0; i < 1_200; i++) {
+	    jtis.add("jti-" + i);
+	}
+	Map<String, Boolean> active = store.isActiveAll(jtis);
+
+	assertEquals(1_200, active.size());
+	assertEquals(1_198, active.values().stream().filter(Boolean::booleanValue).count());
+	assertFalse(active.get("jti-0"));
+
+	List<StoredRefreshToken> exported = new ArrayList<>();
+	store.forEachToken(exported::add);
+	assertEquals(1_198, exported.size());
+	assertTrue(exported.contains(new StoredRefreshToken("jti-5", "user-5", Instant.ofEpochMilli(exp.toEpochMilli()),
+		"fam")));
+    }
+
+    @Test
+    void find_returnsRolesAndRotationCarriesThemOver() {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("jti-1", "alice", exp, "fam-1", List.of("ADMIN", "USER"));
+
+	StoredRefreshToken found = store.find("jti-1");
+	assertEquals("alice", found.subject());
+	assertEquals(exp.toEpochMilli(), found.expiresAt().toEpochMilli());
+	assertEquals("fam-1", found.familyId());
+	assertEquals(List.of("ADMIN", "USER"), found.roles());
+
+	assertEquals(RotationOutcome.ROTATED, store.rotate("jti-1", "jti-2", "alice", exp, null));
+	assertNull(store.find("jti-1"));
+	assertEquals(List.of("ADMIN", "USER"), store.find("jti-2").roles());
+	assertEquals("fam-1", store.find("jti-2").familyId());
+	assertEquals(RotationOutcome.REUSED, store.rotate("jti-1", "jti-3", "alice", exp, null));
+    }
+
+    @Test
+    void initializeSchema_addsRolesColumnToExistingTable() throws Exception {
+	try (var c = dataSource.getConnection(); var st = c.createStatement()) {
+	    st.execute("CREATE TABLE legacy_token (jti VARCHAR(255) NOT NULL PRIMARY KEY,"
+		    + " subject VARCHAR(255) NOT NULL, expires_at BIGINT NOT NULL, family_id VARCHAR(64))");
+	}
+	try (JdbcRefreshTokenStore legacy = new JdbcRefreshTokenStore(dataSource, "legacy_token", Duration.ZERO,
+		null)) {
+	    legacy.initializeSchema();
+	    legacy.save("jti-1", "alice", Instant.now().plusSeconds(60), null, List.of("USER"));
+
+	    assertEquals(List.of("USER"), legacy.find("jti-1").roles());
+	}
+    }
+}
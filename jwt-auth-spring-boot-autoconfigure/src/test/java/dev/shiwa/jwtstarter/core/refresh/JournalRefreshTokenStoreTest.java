@@ -0,0 +1,292 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalRefreshTokenStoreTest {
+
+    private static final Duration SWEEP = Duration.ofMinutes(1);
+
+    @TempDir
+    Path dir;
+
+    private JournalRefreshTokenStore open(int compactionThreshold) {
+	return new JournalRefreshTokenStore(dir.resolve("rt"), compactionThreshold, SWEEP, 1_000);
+    }
+
+    @Test
+    void saveLookupAndRevoke() {
+	try (JournalRefreshTokenStore store = open(1_000)) {
+	    store.save("jti-1", "alice", Instant.now().plusSeconds(60));
+
+	    assertTrue(store.isActive("jti-1"));
+	    assertEquals("alice", store.subjectFor("jti-1"));
+
+	    store.revoke("jti-1");
+
+	    assertFalse(store.isActive("jti-1"));
+	    assertNull(store.subjectFor("jti-1"));
+	}
+    }
+
+    /** Saves, revocations and expirations are replayed from the journal */
+    @Test
+    void reopen_replaysJournal() {
+	Instant exp = Instant.now().plus(Duration.ofHours(1));
+	try (JournalRefreshTokenStore store = open(1_000)) {
+	    store.save("a1", "alice", exp);
+	    store.save("a2", "alice", exp);
+	    store.save("b1", "bob", exp);
+	    store.save("b2", "bob", exp);
+	    store.save("old", "carol", Instant.now().minusSeconds(1));
+	    store.revoke("b2");
+	    store.revokeAllForSubject("alice");
+	}
+
+	try (JournalRefreshTokenStore store = open(1_000)) {
+	    assertEquals(1, store.size());
+	    assertEquals("bob", store.subjectFor("b1"));
+	    assertFalse(store.isActive("a1"));
+	    assertFalse(store.isActive("a2"));
+	    assertFalse(store.isActive("b2"));
+	    assertFalse(store.isActive("old"));
+	}
+    }
+
+    /** Crossing the threshold writes a snapshot that is loaded on restart */
+    @Test
+    void compaction_writesSnapshotAndTruncatesJournal() throws IOException {
+	Instant exp = Instant.now().plus(Duration.ofHours(1));
+	List<String> jtis = new ArrayList<>();
+
+	try (JournalRefreshTokenStore store = open(100)) {
+	    for (int i = 0; i < 250; i++) {
+		String jti = UUID.randomUUID().toString();
+		jtis.add(jti);
+		store.save(jti, "user-" + (i % 10), exp);
+	    }
+	    store.revoke(jtis.get(0));
+	}
+
+	assertTrue(Files.exists(dir.resolve("rt.snapshot")));
+	assertTrue(Files.size(dir.resolve("rt.journal")) < Files.size(dir.resolve("rt.snapshot")));
+
+	try (JournalRefreshTokenStore store = open(100)) {
+	    assertEquals(249, store.size());
+	    assertFalse(store.isActive(jtis.get(0)));
+	    jtis.subList(1, jtis.size()).forEach(jti -> assertTrue(store.isActive(jti)));
+	}
+    }
+
+    /** A failed compaction leaves the journal complete and writes unaffected */
+    @Test
+    void failedCompaction_keepsWritesDurable() throws IOException {
+	Instant exp = Instant.now().plus(Duration.ofHours(1));
+	Files.createDirectories(dir.resolve("rt.snapshot.tmp").resolve("blocker"));
+	try (JournalRefreshTokenStore store = open(10)) {
+	    for (int i = 0; i < 50; i++) {
+		store.save("jti-" + i, "alice", exp);
+	    }
+	}
+
+	assertFalse(Files.exists(dir.resolve("rt.snapshot")));
+	try (JournalRefreshTokenStore store = open(10)) {
+	    assertEquals(50, store.size());
+	}
+    }
+
+    /** An operation that cannot be journaled fails alone, not its batch */
+    @Test
+    void oversizedRecord_isRejectedAlone() {
+	Instant exp = Instant.now().plus(Duration.ofHours(1));
+	List<StoredRefreshToken> tokens = List.of(new StoredRefreshToken("jti-1", "alice", exp, null),
+		new StoredRefreshToken("jti-2", "x".repeat(70_000), exp, null),
+		new StoredRefreshToken("jti-3", "bob", exp, null));
+	try (JournalRefreshTokenStore store = open(1_000)) {
+	    assertThrows(IllegalArgumentException.class, () -> store.saveAll(tokens));
+
+	    assertTrue(store.isActive("jti-1"));
+	    assertFalse(store.isActive("jti-2"));
+	    assertTrue(store.isActive("jti-3"));
+	}
+	try (JournalRefreshTokenStore store = open(1_000)) {
+	    assertEquals(2, store.size());
+	}
+    }
+
+    /** A partially written record at the end of the journal is dropped */
+    @Test
+    void reopen_discardsTornTail() throws IOException {
+	try (JournalRefreshTokenStore store = open(1_000)) {
+	    store.save("jti-1", "alice", Instant.now().plus(Duration.ofHours(1)));
+	    store.save("jti-2", "bob", Instant.now().plus(Duration.ofHours(1)));
+	}
+
+	Path journal = dir.resolve("rt.journal");
+	try (RandomAccessFile raf = new RandomAccessFile(journal.toFile(), "rw")) {
+	    raf.setLength(raf.length() - 3);
+	}
+
+	try (JournalRefreshTokenStore store = open(1_000)) {
+	    assertTrue(store.isActive("jti-1"));
+	    assertFalse(store.isActive("jti-2"));
+	    store.save("jti-3", "carol", Instant.now().plus(Duration.ofHours(1)));
+	}
+
+	try (JournalRefreshTokenStore store = open(1_000)) {
+	    assertEquals(2, store.size());
+	    assertTrue(store.isActive("jti-3"));
+	}
+    }
+
+    /** Concurrent writers are group-committed without losing records */
+    @Test
+    void concurrentSaves_areAllDurable() throws InterruptedException {
+	Instant exp = Instant.now().plus(Duration.ofHours(1));
+	List<String> jtis = new ArrayList<>();
+	for (int i = 0; i < 400; i++) {
+	    jtis.add(UUID.randomUUID().toString());
+	}
+
+	try (JournalRefreshTokenStore store = open(10_000)) {
+	    ExecutorService pool = Executors.newFixedThreadPool(8);
+	    jtis.forEach(jti -> pool.execute(() -> store.save(jti, "alice", exp)));
+	    pool.shutdown();
+	    assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+	}
+
+	try (JournalRefreshTokenStore store = open(10_000)) {
+	    assertEquals(400, store.size());
+	    jtis.forEach(jti -> assertTrue(store.isActive(jti)));
+	}
+    }
+
+    /** Rotations are replayed, and consumed tokens are still detected as reused */
+    @Test
+    void rotate_isReplayedAfterRestart() {
+	Instant exp = Instant.now().plus(Duration.ofHours(1));
+	try (JournalRefreshTokenStore store = open(1_000)) {
+	    store.save("jti-1", "alice", exp);
+	    assertEquals(RotationOutcome.ROTATED, store.rotate("jti-1", "jti-2", "alice", exp));
+	    assertEquals(RotationOutcome.REUSED, store.rotate("jti-1", "jti-3", "alice", exp));
+	}
+
+	try (JournalRefreshTokenStore store = open(1_000)) {
+	    assertFalse(store.isActive("jti-1"));
+	    assertTrue(store.isActive("jti-2"));
+	    assertFalse(store.isActive("jti-3"));
+	    assertEquals(RotationOutcome.REUSED, store.rotate("jti-1", "jti-4", "alice", exp));
+	}
+    }
+
+    /** Rotations see the writes queued before them in the same batch */
+    @Test
+    void asyncBatch_decidesRotationsAgainstEarlierWrites() {
+	Instant exp = Instant.now().plus(Duration.ofHours(1));
+	try (JournalRefreshTokenStore store = open(1_000)) {
+	    store.save("jti-0", "alice", exp, "old");
+	    CompletableFuture<Void> saved = store.saveAsync("jti-1", "alice", exp, "fam", List.of("ADMIN"));
+	    CompletableFuture<RotationOutcome> first = store.rotateAsync("jti-1", "jti-2", "alice", exp, "fam");
+	    CompletableFuture<RotationOutcome> second = store.rotateAsync("jti-1", "jti-3", "alice", exp, "fam");
+	    store.revokeFamilyAsync("old", "alice");
+	    CompletableFuture<RotationOutcome> revoked = store.rotateAsync("jti-0", "jti-4", "alice", exp, "old");
+	    saved.join();
+
+	    assertEquals(RotationOutcome.ROTATED, first.join());
+	    assertEquals(RotationOutcome.REUSED, second.join());
+	    assertEquals(RotationOutcome.UNKNOWN, revoked.join());
+	    assertEquals(List.of("ADMIN"), store.find("jti-2").roles());
+	    assertFalse(store.isActive("jti-3"));
+	    assertFalse(store.isActive("jti-4"));
+	}
+
+	try (JournalRefreshTokenStore store = open(1_000)) {
+	    assertTrue(store.isActive("jti-2"));
+	    assertFalse(store.isActive("jti-0"));
+	    assertEquals(List.of("ADMIN"), store.find("jti-2").roles());
+	}
+    }
+
+    /** Families survive journal replay and compaction */
+    @Test
+    void revokeFamily_afterRestart() {
+	Instant exp = Instant.now().plus(Duration.ofHours(1));
+	try (JournalRefreshTokenStore store = open(3)) {
+	    store.save("p1", "alice", exp, "phone");
+	    store.save("l1", "alice", exp, "laptop");
+	    store.rotate("p1", "p2", "alice", exp, "phone");
+	    store.save("t1", "alice", exp, "tablet");
+	}
+	try (JournalRefreshTokenStore store = open(3)) {
+	    store.revokeFamily("phone", "alice");
+	    store.revokeFamily("tablet", "alice");
+	}
+	try (JournalRefreshTokenStore store = open(3)) {
+	    assertFalse(store.isActive("p2"));
+	    assertFalse(store.isActive("t1"));
+	    assertTrue(store.isActive("l1"));
+	}
+    }
+
+    @Test
+    void bulkOperations_areJournaled() {
+	Instant exp = Instant.now().plus(Duration.ofHours(1));
+	List<StoredRefreshToken> tokens = new ArrayList<>();
+	for (int i = 0; i < 10_000; i++) {
+	    tokens.add(new StoredRefreshToken("jti-" + i, "alice", exp, null));
+	}
+	try (JournalRefreshTokenStore store = open(100_000)) {
+	    store.saveAll(tokens);
+	    store.revokeAll(List.of("jti-0", "jti-1"));
+	}
+
+	try (JournalRefreshTokenStore store = open(100_000)) {
+	    assertEquals(9_998, store.size());
+	    assertEquals(Map.of("jti-0", false, "jti-9999", true), store.isActiveAll(List.of("jti-0", "jti-9999")));
+	}
+    }
+
+    @Test
+    void roles_surviveRestartAndRotation() {
+	Instant exp = Instant.now().plus(Duration.ofHours(1));
+	try (JournalRefreshTokenStore store = open(100_000)) {
+	    store.save("jti-1", "alice", exp, "fam", List.of("ADMIN"));
+	    store.rotate("jti-1", "jti-2", "alice", exp, "fam");
+	    store.save("jti-3", "bob", exp);
+	}
+
+	try (JournalRefreshTokenStore store = open(100_000)) {
+	    assertEquals(List.of("ADMIN"), store.find("jti-2").roles());
+	    assertNull(store.find("jti-3").roles());
+	}
+	// compaction writes the roles into the snapshot
+	try (JournalRefreshTokenStore store = open(1)) {
+	    store.save("jti-4", "carol", exp, null, List.of("USER", "AUDITOR"));
+	}
+	try (JournalRefreshTokenStore store = open(100_000)) {
+	    assertEquals(List.of("ADMIN"), store.find("jti-2").roles());
+	    assertEquals(List.of("USER", "AUDITOR"), store.find("jti-4").roles());
+	}
+    }
+}
@@ -0,0 +1,182 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedRefreshTokenStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void saveLookupAndRevoke() {
+	try (MappedRefreshTokenStore store = new MappedRefreshTokenStore(dir.resolve("rt.db"), 16)) {
+	    store.save("jti-1", "alice", Instant.now().plusSeconds(60));
+
+	    assertTrue(store.isActive("jti-1"));
+	    assertEquals("alice", store.subjectFor("jti-1"));
+
+	    store.revoke("jti-1");
+
+	    assertFalse(store.isActive("jti-1"));
+	    assertNull(store.subjectFor("jti-1"));
+	}
+    }
+
+    /** Sessions survive a restart, expired ones are dropped on load */
+    @Test
+    void reopen_restoresActiveSessionsAndSkipsExpired() {
+	Path file = dir.resolve("rt.db");
+	String active = UUID.randomUUID().toString();
+	String expired = UUID.randomUUID().toString();
+
+	try (MappedRefreshTokenStore store = new MappedRefreshTokenStore(file, 16)) {
+	    store.save(active, "alice", Instant.now().plus(Duration.ofHours(1)));
+	    store.save(expired, "bob", Instant.now().minusSeconds(1));
+	}
+
+	try (MappedRefreshTokenStore store = new MappedRefreshTokenStore(file, 16)) {
+	    assertEquals(1, store.size());
+	    assertTrue(store.isActive(active));
+	    assertEquals("alice", store.subjectFor(active));
+	    assertNull(store.subjectFor(expired));
+	}
+    }
+
+    @Test
+    void growsBeyondInitialCapacity() {
+	Path file = dir.resolve("rt.db");
+	List<String> jtis = new ArrayList<>();
+	Instant exp = Instant.now().plus(Duration.ofHours(1));
+
+	try (MappedRefreshTokenStore store = new MappedRefreshTokenStore(file, 16)) {
+	    for (int i = 0; i < 5_000; i++) {
+		String jti = UUID.randomUUID().toString();
+		jtis.add(jti);
+		store.save(jti, "user-" + (i % 50), exp);
+	    }
+	    assertEquals(5_000, store.size());
+	}
+
+	try (MappedRefreshTokenStore store = new MappedRefreshTokenStore(file, 16)) {
+	    assertEquals(5_000, store.size());
+	    jtis.forEach(jti -> assertTrue(store.isActive(jti)));
+	}
+    }
+
+    @Test
+    void revokeAllForSubject_onlyRemovesThatSubject() {
+	try (MappedRefreshTokenStore store = new MappedRefreshTokenStore(dir.resolve("rt.db"), 16)) {
+	    Instant exp = Instant.now().plusSeconds(60);
+	    store.save("a1", "alice", exp);
+	    store.save("a2", "alice", exp);
+	    store.save("b1", "bob", exp);
+
+	    store.revokeAllForSubject("alice");
+
+	    assertFalse(store.isActive("a1"));
+	    assertFalse(store.isActive("a2"));
+	    assertTrue(store.isActive("b1"));
+	}
+    }
+
+    /** A slot with a broken checksum (torn write) is skipped on load */
+    @Test
+    void reopen_skipsCorruptSlots() throws IOException {
+	Path file = dir.resolve("rt.db");
+	try (MappedRefreshTokenStore store = new MappedRefreshTokenStore(file, 16)) {
+	    store.save("jti-1", "alice", Instant.now().plus(Duration.ofHours(1)));
+	}
+
+	try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+	    for (long off = 64; off < raf.length(); off += MappedRefreshTokenStore.SLOT_SIZE) {
+		raf.seek(off);
+		if (raf.readByte() == 1) {
+		    raf.seek(off + 35); // inside the subject
+		    raf.writeByte('X');
+		}
+	    }
+	}
+
+	try (MappedRefreshTokenStore store = new MappedRefreshTokenStore(file, 16)) {
+	    assertEquals(0, store.size());
+	    assertFalse(store.isActive("jti-1"));
+	}
+    }
+
+    @Test
+    void save_rejectsOversizedSubject() {
+	try (MappedRefreshTokenStore store = new MappedRefreshTokenStore(dir.resolve("rt.db"), 16)) {
+	    String subject = "x".repeat(MappedRefreshTokenStore.MAX_SUBJECT_BYTES + 1);
+	    assertThrows(IllegalArgumentException.class,
+		    () -> store.save("jti", subject, Instant.now().plusSeconds(60)));
+	}
+    }
+
+    @Test
+    void rotate_consumesOldTokenOnce() {
+	try (MappedRefreshTokenStore store = new MappedRefreshTokenStore(dir.resolve("rt.db"), 16)) {
+	    Instant exp = Instant.now().plusSeconds(60);
+	    store.save("jti-1", "alice", exp);
+
+	    assertEquals(RotationOutcome.ROTATED, store.rotate("jti-1", "jti-2", "alice", exp));
+	    assertEquals(RotationOutcome.REUSED, store.rotate("jti-1", "jti-3", "alice", exp));
+
+	    assertFalse(store.isActive("jti-1"));
+	    assertTrue(store.isActive("jti-2"));
+	}
+    }
+
+    /** A rotation whose save fails must not lose the old session */
+    @Test
+    void rotate_keepsOldTokenIfSaveFails() throws IOException {
+	Path file = dir.resolve("rt.db");
+	try (MappedRefreshTokenStore store = new MappedRefreshTokenStore(file, 16)) {
+	    Instant exp = Instant.now().plusSeconds(60);
+	    store.save("jti-0", "alice", exp);
+	    // a non-empty directory in place of the temp file makes growing fail
+	    Files.createDirectories(file.resolveSibling("rt.db.tmp").resolve("blocker"));
+	    fillUntilGrowthFails(store, exp);
+
+	    assertThrows(UncheckedIOException.class, () -> store.rotate("jti-0", "jti-new", "alice", exp));
+
+	    assertTrue(store.isActive("jti-0"));
+	    assertFalse(store.isActive("jti-new"));
+	}
+    }
+
+    private static void fillUntilGrowthFails(MappedRefreshTokenStore store, Instant exp) {
+	for (int i = 1; i < 1_000; i++) {
+	    try {
+		store.save("jti-" + i, "bob", exp);
+	    } catch (UncheckedIOException e) {
+		return;
+	    }
+	}
+	throw new AssertionError("store never had to grow");
+    }
+
+    @Test
+    void rejectsCapacityBeyondMappableSize() {
+	assertThrows(IllegalArgumentException.class, () -> new MappedRefreshTokenStore(dir.resolve("rt.db"),
+		MappedRefreshTokenStore.MAX_CAPACITY + 1));
+	assertTrue(MappedRefreshTokenStore.MAX_CAPACITY * (long) MappedRefreshTokenStore.SLOT_SIZE < Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,39 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class OpaqueRefreshTokensTest {
+
+    @Test
+    void generate_returnsDistinctWellFormedTokens() {
+	String a = OpaqueRefreshTokens.generate();
+	String b = OpaqueRefreshTokens.generate();
+
+	assertEquals(OpaqueRefreshTokens.TOKEN_LENGTH, a.length());
+	assertTrue(OpaqueRefreshTokens.isWellFormed(a));
+	assertNotEquals(a, b);
+    }
+
+    @Test
+    void key_isStableSha256() {
+	String token = OpaqueRefreshTokens.generate();
+
+	assertEquals(OpaqueRefreshTokens.key(token), OpaqueRefreshTokens.key(token));
+	assertNotEquals(token, OpaqueRefreshTokens.key(token));
+	// SHA-256 of "abc" in unpadded base64url
+	assertEquals("ungWv48Bz-pBQUDeXa4iI7ADYaOWF3qctBD_YfIAFa0", OpaqueRefreshTokens.key("abc"));
+    }
+
+    @Test
+    void isWellFormed_rejectsOtherShapes() {
+	assertFalse(OpaqueRefreshTokens.isWellFormed(null));
+	assertFalse(OpaqueRefreshTokens.isWellFormed(""));
+	assertFalse(OpaqueRefreshTokens.isWellFormed("eyJhbGciOiJIUzI1NiJ9.eyJzdWIiOiJhIn0.sig"));
+	assertFalse(OpaqueRefreshTokens.isWellFormed("a".repeat(42) + "="));
+    }
+}
@@ -0,0 +1,77 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import dev.shiwa.jwtstarter.core.error.RefreshThrottledException;
+
+class RefreshAdmissionTest {
+
+    @Test
+    void unlimitedAdmissionOnlyCounts() {
+	RefreshAdmission admission = new RefreshAdmission(0, 0, 0, 0);
+	for (int i = 0; i < 1000; i++) {
+	    admission.acquire("alice");
+	}
+	assertEquals(1000, admission.getAdmittedCount());
+	assertEquals(0, admission.getTrackedSubjectCount());
+    }
+
+    @Test
+    void globalLimitSheds() {
+	RefreshAdmission admission = new RefreshAdmission(0.001, 2, 0, 0);
+	admission.acquire("alice");
+	admission.acquire("bob");
+
+	RefreshThrottledException ex = assertThrows(RefreshThrottledException.class, () -> admission.acquire("carol"));
+	assertTrue(ex.getRetryAfterMillis() > 0);
+	assertEquals(1, admission.getGlobalRejectedCount());
+    }
+
+    @Test
+    void subjectLimitIsPerSubject() {
+	RefreshAdmission admission = new RefreshAdmission(0, 0, 0.001, 1);
+	admission.acquire("alice");
+	admission.acquire("bob");
+
+	assertThrows(RefreshThrottledException.class, () -> admission.acquire("alice"));
+	assertEquals(2, admission.getAdmittedCount());
+	assertEquals(1, admission.getSubjectRejectedCount());
+	assertEquals(2, admission.getTrackedSubjectCount());
+    }
+
+    @Test
+    void subjectRejection_takesNoGlobalPermit() {
+	RefreshAdmission admission = new RefreshAdmission(0.001, 2, 0.001, 1);
+	admission.acquire("alice");
+	assertThrows(RefreshThrottledException.class, () -> admission.acquire("alice"));
+	assertThrows(RefreshThrottledException.class, () -> admission.acquire("alice"));
+
+	admission.acquire("bob");
+	assertEquals(0, admission.getGlobalRejectedCount());
+	assertEquals(2, admission.getSubjectRejectedCount());
+    }
+
+    @Test
+    void globalRejection_returnsSubjectPermit() {
+	RefreshAdmission admission = new RefreshAdmission(0.001, 1, 0.001, 1);
+	admission.acquire("alice");
+	assertThrows(RefreshThrottledException.class, () -> admission.acquire("bob"));
+	assertThrows(RefreshThrottledException.class, () -> admission.acquire("bob"));
+
+	assertEquals(2, admission.getGlobalRejectedCount());
+	assertEquals(0, admission.getSubjectRejectedCount());
+    }
+
+    @Test
+    void fullSubjectBucketsArePurged() {
+	RefreshAdmission admission = new RefreshAdmission(0, 0, 1_000_000, 1);
+	for (int i = 0; i < 5000; i++) {
+	    admission.acquire("user-" + i);
+	}
+	assertTrue(admission.getTrackedSubjectCount() < 5000);
+    }
+}
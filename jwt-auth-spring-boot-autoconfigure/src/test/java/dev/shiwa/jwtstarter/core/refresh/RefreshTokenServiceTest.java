@@ -7,7 +7,19 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,6 +29,8 @@ import dev.shiwa.jwtstarter.core.JwtTokenGenerator;
 import dev.shiwa.jwtstarter.core.JwtTokenVerifier;
 import dev.shiwa.jwtstarter.core.error.JwtAuthException;
 import dev.shiwa.jwtstarter.core.error.JwtErrorCode;
+import dev.shiwa.jwtstarter.core.error.RefreshThrottledException;
+import dev.shiwa.jwtstarter.core.revocation.SubjectRevocationEpochs;
 
 class RefreshTokenServiceTest {
 
@@ -86,6 +100,25 @@ class RefreshTokenServiceTest {
 	assertEquals(JwtErrorCode.REFRESH_REUSE_DETECTED, ex.getErrorCode());
     }
 
+    /** Without reuse detection, a consumed token is just an invalid one */
+    @Test
+    void refresh_reuseWithoutDetection_throwsInvalidToken() {
+	props.setReuseDetection(false);
+	String subject = "user1";
+	String refresh0 = generator.generateRefreshToken(subject);
+	var c0 = verifier.parse(refresh0);
+	store.save(c0.getId(), subject, c0.getExpiration().toInstant());
+
+	var t1 = service.refresh(bearer(refresh0));
+
+	JwtAuthException ex = assertThrows(JwtAuthException.class, () -> service.refresh(bearer(refresh0)));
+	assertEquals(JwtErrorCode.INVALID_TOKEN, ex.getErrorCode());
+	CompletionException async = assertThrows(CompletionException.class,
+		() -> service.refreshAsync(bearer(refresh0)).join());
+	assertEquals(JwtErrorCode.INVALID_TOKEN, ((JwtAuthException) async.getCause()).getErrorCode());
+	assertTrue(store.isActive(verifier.parse(t1.refreshToken()).getId()));
+    }
+
     /** Wrong type: access token used at refresh endpoint should throw */
     @Test
     void refresh_withAccessToken_throwsInvalidTokenType() {
@@ -135,4 +168,396 @@ class RefreshTokenServiceTest {
 	assertFalse(store.isActive(c0.getId()));
 	assertTrue(store.isActive(c1.getId()));
     }
-}
\ No newline at end of file
+
+    /** Async happy path rotates like the synchronous flow */
+    @Test
+    void refreshAsync_validToken_rotatesAndReturnsNewTokens() {
+	String subject = "frank";
+	String refresh0 = generator.generateRefreshToken(subject);
+	var c0 = verifier.parse(refresh0);
+	store.save(c0.getId(), subject, c0.getExpiration().toInstant());
+
+	var result = service.refreshAsync(bearer(refresh0)).join();
+
+	assertFalse(store.isActive(c0.getId()));
+	assertTrue(store.isActive(verifier.parse(result.refreshToken()).getId()));
+    }
+
+    /** Async reuse detection completes exceptionally and revokes the subject */
+    @Test
+    void refreshAsync_reuseOldToken_failsWithReuseDetected() {
+	String subject = "grace";
+	String refresh0 = generator.generateRefreshToken(subject);
+	var c0 = verifier.parse(refresh0);
+	store.save(c0.getId(), subject, c0.getExpiration().toInstant());
+
+	var t1 = service.refreshAsync(bearer(refresh0)).join();
+
+	CompletionException ex = assertThrows(CompletionException.class,
+		() -> service.refreshAsync(bearer(refresh0)).join());
+	assertEquals(JwtErrorCode.REFRESH_REUSE_DETECTED, ((JwtAuthException) ex.getCause()).getErrorCode());
+	assertFalse(store.isActive(verifier.parse(t1.refreshToken()).getId()));
+    }
+
+    /** Revoking the old jti and saving the new one are issued concurrently */
+    @Test
+    void refreshAsync_issuesRevokeAndSaveConcurrently() {
+	List<String> calls = new ArrayList<>();
+	List<CompletableFuture<Void>> pending = new ArrayList<>();
+	AsyncRefreshTokenStore async = new ExecutorAsyncRefreshTokenStore(store, Runnable::run);
+	AsyncRefreshTokenStore deferred = new AsyncRefreshTokenStore() {
+	    @Override
+	    public CompletableFuture<Void> saveAsync(String jti, String subject, Instant expiresAt) {
+		calls.add("save");
+		return defer();
+	    }
+
+	    @Override
+	    public CompletableFuture<Boolean> isActiveAsync(String jti) {
+		return async.isActiveAsync(jti);
+	    }
+
+	    @Override
+	    public CompletableFuture<String> subjectForAsync(String jti) {
+		return async.subjectForAsync(jti);
+	    }
+
+	    @Override
+	    public CompletableFuture<Void> revokeAsync(String jti) {
+		calls.add("revoke");
+		return defer();
+	    }
+
+	    @Override
+	    public CompletableFuture<Void> revokeAllForSubjectAsync(String subject) {
+		return async.revokeAllForSubjectAsync(subject);
+	    }
+
+	    private CompletableFuture<Void> defer() {
+		CompletableFuture<Void> f = new CompletableFuture<>();
+		pending.add(f);
+		return f;
+	    }
+	};
+	service = new RefreshTokenService(verifier, generator, store, deferred, props);
+
+	String refresh0 = generator.generateRefreshToken("heidi");
+	var c0 = verifier.parse(refresh0);
+	store.save(c0.getId(), "heidi", c0.getExpiration().toInstant());
+
+	CompletableFuture<RefreshTokenService.Tokens> result = service.refreshAsync(bearer(refresh0));
+
+	assertEquals(2, calls.size(), "both writes must be in flight before either completes");
+	assertFalse(result.isDone());
+	pending.forEach(f -> f.complete(null));
+	assertNotNull(result.join().refreshToken());
+    }
+
+    /** Concurrent refreshes with the same token: exactly one is served */
+    @Test
+    void refresh_concurrentSameToken_onlyOneSucceeds() throws Exception {
+	String subject = "ivan";
+	String refresh0 = generator.generateRefreshToken(subject);
+	var c0 = verifier.parse(refresh0);
+	store.save(c0.getId(), subject, c0.getExpiration().toInstant());
+
+	ExecutorService pool = Executors.newFixedThreadPool(8);
+	List<Callable<RefreshTokenService.Tokens>> tasks = new ArrayList<>();
+	for (int i = 0; i < 16; i++) {
+	    tasks.add(() -> service.refresh(bearer(refresh0)));
+	}
+	int succeeded = 0;
+	for (Future<RefreshTokenService.Tokens> f : pool.invokeAll(tasks)) {
+	    try {
+		f.get();
+		succeeded++;
+	    } catch (ExecutionException e) {
+		assertEquals(JwtErrorCode.REFRESH_REUSE_DETECTED, ((JwtAuthException) e.getCause()).getErrorCode());
+	    }
+	}
+	pool.shutdown();
+
+	assertEquals(1, succeeded);
+    }
+
+    /** A token unknown to the store is invalid but does not revoke other sessions */
+    @Test
+    void refresh_unknownToken_throwsInvalidWithoutRevokingSessions() {
+	String subject = "judy";
+	String other = generator.generateRefreshToken(subject);
+	var co = verifier.parse(other);
+	store.save(co.getId(), subject, co.getExpiration().toInstant());
+
+	String unknown = generator.generateRefreshToken(subject);
+
+	JwtAuthException ex = assertThrows(JwtAuthException.class, () -> service.refresh(bearer(unknown)));
+	assertEquals(JwtErrorCode.INVALID_TOKEN, ex.getErrorCode());
+	assertTrue(store.isActive(co.getId()));
+    }
+
+    /** Reuse revokes the family of the reused token, not the other logins */
+    @Test
+    void refresh_reuse_revokesOnlyThatFamily() {
+	String subject = "kim";
+	String phone = generator.generateRefreshToken(subject);
+	String laptop = generator.generateRefreshToken(subject);
+	for (String rt : List.of(phone, laptop)) {
+	    var c = verifier.parse(rt);
+	    store.save(c.getId(), subject, c.getExpiration().toInstant(),
+		    c.get(JwtTokenGenerator.FAMILY_CLAIM, String.class));
+	}
+
+	var rotated = service.refresh(bearer(phone));
+	var rc = verifier.parse(rotated.refreshToken());
+	assertEquals(verifier.parse(phone).get(JwtTokenGenerator.FAMILY_CLAIM, String.class),
+		rc.get(JwtTokenGenerator.FAMILY_CLAIM, String.class));
+
+	JwtAuthException ex = assertThrows(JwtAuthException.class, () -> service.refresh(bearer(phone)));
+	assertEquals(JwtErrorCode.REFRESH_REUSE_DETECTED, ex.getErrorCode());
+
+	assertFalse(store.isActive(rc.getId()));
+	assertTrue(store.isActive(verifier.parse(laptop).getId()));
+    }
+
+    /** Reuse also invalidates access tokens issued so far via revocation epochs */
+    @Test
+    void refresh_reuse_revokesAccessTokensWithEpochs() {
+	try (SubjectRevocationEpochs epochs = new SubjectRevocationEpochs(Duration.ofMinutes(5),
+		Duration.ofMinutes(1))) {
+	    service = new RefreshTokenService(verifier, generator, store, AsyncRefreshTokenStore.of(store, Runnable::run),
+		    props, epochs);
+	    JwtTokenVerifier epochVerifier = new JwtTokenVerifier(props, null, epochs);
+
+	    String subject = "leo";
+	    String access = generator.generateAccessToken(subject, List.of("USER"));
+	    String refresh0 = generator.generateRefreshToken(subject);
+	    var c = verifier.parse(refresh0);
+	    store.save(c.getId(), subject, c.getExpiration().toInstant());
+	    service.refresh(bearer(refresh0));
+	    assertTrue(epochVerifier.isValid(access));
+
+	    assertThrows(JwtAuthException.class, () -> service.refresh(bearer(refresh0)));
+
+	    assertFalse(epochVerifier.isValid(access));
+	}
+    }
+
+    /** Opaque refresh tokens are looked up by their hash and carry the roles */
+    @Test
+    void opaque_issueAndRefresh_keepRoles() {
+	props.setRefreshTokenFormat(JwtAuthProperties.RefreshTokenFormat.OPAQUE);
+	List<String> roles = List.of("ADMIN", "USER");
+
+	var login = service.issue("olga", roles);
+	assertEquals(OpaqueRefreshTokens.TOKEN_LENGTH, login.refreshToken().length());
+	assertTrue(store.isActive(OpaqueRefreshTokens.key(login.refreshToken())));
+	assertFalse(store.isActive(login.refreshToken()), "the store only holds the hash");
+
+	var refreshed = service.refresh(login.refreshToken());
+
+	assertEquals(roles, verifier.parse(refreshed.accessToken()).get("roles", List.class));
+	assertEquals("olga", verifier.parse(refreshed.accessToken()).getSubject());
+	assertFalse(store.isActive(OpaqueRefreshTokens.key(login.refreshToken())));
+	StoredRefreshToken next = store.find(OpaqueRefreshTokens.key(refreshed.refreshToken()));
+	assertEquals(roles, next.roles());
+	assertEquals(store.find(OpaqueRefreshTokens.key(login.refreshToken())).familyId(), next.familyId());
+    }
+
+    /** Reusing a rotated opaque token revokes its family */
+    @Test
+    void opaque_reuse_revokesFamily() {
+	props.setRefreshTokenFormat(JwtAuthProperties.RefreshTokenFormat.OPAQUE);
+	var phone = service.issue("pia", List.of("USER"));
+	var laptop = service.issue("pia", List.of("USER"));
+
+	var rotated = service.refresh(bearer(phone.refreshToken()));
+	JwtAuthException ex = assertThrows(JwtAuthException.class, () -> service.refresh(phone.refreshToken()));
+
+	assertEquals(JwtErrorCode.REFRESH_REUSE_DETECTED, ex.getErrorCode());
+	assertFalse(store.isActive(OpaqueRefreshTokens.key(rotated.refreshToken())));
+	assertTrue(store.isActive(OpaqueRefreshTokens.key(laptop.refreshToken())));
+    }
+
+    /** Malformed, unknown and JWT refresh tokens are rejected in opaque mode */
+    @Test
+    void opaque_rejectsUnknownAndMalformedTokens() {
+	props.setRefreshTokenFormat(JwtAuthProperties.RefreshTokenFormat.OPAQUE);
+
+	for (String token : List.of(OpaqueRefreshTokens.generate(), "short", generator.generateRefreshToken("x"))) {
+	    JwtAuthException ex = assertThrows(JwtAuthException.class, () -> service.refresh(token));
+	    assertEquals(JwtErrorCode.INVALID_TOKEN, ex.getErrorCode());
+	}
+    }
+
+    /** The asynchronous refresh supports opaque tokens as well */
+    @Test
+    void opaque_refreshAsync_rotates() {
+	props.setRefreshTokenFormat(JwtAuthProperties.RefreshTokenFormat.OPAQUE);
+	var login = service.issue("quinn", List.of("USER"));
+
+	var refreshed = service.refreshAsync(login.refreshToken()).join();
+
+	assertEquals(List.of("USER"), verifier.parse(refreshed.accessToken()).get("roles", List.class));
+	assertTrue(store.isActive(OpaqueRefreshTokens.key(refreshed.refreshToken())));
+	CompletionException ex = assertThrows(CompletionException.class,
+		() -> service.refreshAsync(login.refreshToken()).join());
+	assertEquals(JwtErrorCode.REFRESH_REUSE_DETECTED, ((JwtAuthException) ex.getCause()).getErrorCode());
+    }
+
+    /** issue() starts a family in JWT mode too */
+    @Test
+    void issue_jwt_savesRefreshTokenWithFamily() {
+	var login = service.issue("rosa", List.of("USER"));
+
+	var claims = verifier.parse(login.refreshToken());
+	assertTrue(store.isActive(claims.getId()));
+	assertEquals(claims.get(JwtTokenGenerator.FAMILY_CLAIM, String.class), store.find(claims.getId()).familyId());
+    }
+
+    /** Within the grace window, concurrent duplicates share one refresh */
+    @Test
+    void graceWindow_concurrentDuplicates_shareOneResult() throws Exception {
+	props.setRefreshGraceWindowMillis(5_000);
+	String subject = "sam";
+	String refresh0 = generator.generateRefreshToken(subject);
+	var c0 = verifier.parse(refresh0);
+	store.save(c0.getId(), subject, c0.getExpiration().toInstant());
+
+	ExecutorService pool = Executors.newFixedThreadPool(8);
+	List<Callable<RefreshTokenService.Tokens>> tasks = new ArrayList<>();
+	for (int i = 0; i < 16; i++) {
+	    String presented = i % 2 == 0 ? bearer(refresh0) : refresh0;
+	    tasks.add(() -> service.refresh(presented));
+	}
+	Set<String> refreshTokens = new HashSet<>();
+	for (Future<RefreshTokenService.Tokens> f : pool.invokeAll(tasks)) {
+	    refreshTokens.add(f.get().refreshToken());
+	}
+	pool.shutdown();
+
+	assertEquals(1, refreshTokens.size());
+	assertTrue(store.isActive(verifier.parse(refreshTokens.iterator().next()).getId()));
+    }
+
+    /** A retry after the grace window is treated as reuse again */
+    @Test
+    void graceWindow_retryAfterWindow_isReuse() throws Exception {
+	props.setRefreshGraceWindowMillis(500);
+	String subject = "tara";
+	String refresh0 = generator.generateRefreshToken(subject);
+	var c0 = verifier.parse(refresh0);
+	store.save(c0.getId(), subject, c0.getExpiration().toInstant());
+
+	var first = service.refresh(bearer(refresh0));
+	assertEquals(first, service.refresh(bearer(refresh0)));
+	assertEquals(first, service.refreshAsync(refresh0).join());
+
+	Thread.sleep(600);
+	JwtAuthException ex = assertThrows(JwtAuthException.class, () -> service.refresh(bearer(refresh0)));
+	assertEquals(JwtErrorCode.REFRESH_REUSE_DETECTED, ex.getErrorCode());
+    }
+
+    /** Failed refreshes are not kept for the window */
+    @Test
+    void graceWindow_failuresAreNotCached() {
+	props.setRefreshGraceWindowMillis(5_000);
+	String subject = "uma";
+	String refresh0 = generator.generateRefreshToken(subject);
+
+	JwtAuthException ex = assertThrows(JwtAuthException.class, () -> service.refresh(bearer(refresh0)));
+	assertEquals(JwtErrorCode.INVALID_TOKEN, ex.getErrorCode());
+
+	var c0 = verifier.parse(refresh0);
+	store.save(c0.getId(), subject, c0.getExpiration().toInstant());
+	assertNotNull(service.refreshAsync(bearer(refresh0)).join().refreshToken());
+    }
+
+    @Test
+    void refresh_overSubjectLimit_isThrottledWithRetryAfter() {
+	RefreshAdmission admission = new RefreshAdmission(0, 0, 0.001, 2);
+	service = new RefreshTokenService(verifier, generator, store, AsyncRefreshTokenStore.of(store, Runnable::run),
+		props, null, admission);
+	String refresh = service.issue("alice", List.of("USER")).refreshToken();
+	refresh = service.refresh(refresh).refreshToken();
+	refresh = service.refresh(refresh).refreshToken();
+	String third = refresh;
+
+	RefreshThrottledException ex = assertThrows(RefreshThrottledException.class, () -> service.refresh(third));
+	assertEquals(JwtErrorCode.REFRESH_THROTTLED, ex.getErrorCode());
+	assertTrue(ex.getRetryAfterMillis() > 0);
+	// the throttled token was not consumed and other subjects are unaffected
+	assertTrue(store.isActive(verifier.parse(third).getId()));
+	service.refresh(service.issue("bob", List.of("USER")).refreshToken());
+	assertEquals(3, admission.getAdmittedCount());
+	assertEquals(1, admission.getSubjectRejectedCount());
+    }
+
+    @Test
+    void refreshAsync_overGlobalLimit_failsWithThrottled() {
+	RefreshAdmission admission = new RefreshAdmission(0.001, 1, 0, 0);
+	service = new RefreshTokenService(verifier, generator, store, AsyncRefreshTokenStore.of(store, Runnable::run),
+		props, null, admission);
+	service.refreshAsync(service.issue("alice", List.of("USER")).refreshToken()).join();
+
+	CompletableFuture<RefreshTokenService.Tokens> throttled = service
+		.refreshAsync(service.issue("bob", List.of("USER")).refreshToken());
+	ExecutionException ex = assertThrows(ExecutionException.class, throttled::get);
+	assertTrue(ex.getCause() instanceof RefreshThrottledException);
+	assertEquals(1, admission.getGlobalRejectedCount());
+    }
+
+    @Test
+    void refresh_withForgedTokens_takesNoGlobalPermit() {
+	RefreshAdmission admission = new RefreshAdmission(0.001, 1, 0, 0);
+	service = new RefreshTokenService(verifier, generator, store, AsyncRefreshTokenStore.of(store, Runnable::run),
+		props, null, admission);
+	for (int i = 0; i < 3; i++) {
+	    assertThrows(JwtAuthException.class, () -> service.refresh("forged"));
+	}
+
+	assertNotNull(service.refresh(service.issue("alice", List.of("USER")).refreshToken()).refreshToken());
+	assertEquals(0, admission.getGlobalRejectedCount());
+    }
+
+    @Test
+    void refresh_opaqueOverSubjectLimit_takesNoGlobalPermit() {
+	props.setRefreshTokenFormat(JwtAuthProperties.RefreshTokenFormat.OPAQUE);
+	RefreshAdmission admission = new RefreshAdmission(0.001, 2, 0.001, 1);
+	service = new RefreshTokenService(verifier, generator, store, AsyncRefreshTokenStore.of(store, Runnable::run),
+		props, null, admission);
+	String refresh = service.refresh(service.issue("alice", List.of("USER")).refreshToken()).refreshToken();
+	for (int i = 0; i < 3; i++) {
+	    assertThrows(RefreshThrottledException.class, () -> service.refresh(refresh));
+	    assertThrows(ExecutionException.class, () -> service.refreshAsync(refresh).get());
+	}
+
+	assertNotNull(service.refresh(service.issue("bob", List.of("USER")).refreshToken()).refreshToken());
+	assertEquals(0, admission.getGlobalRejectedCount());
+    }
+
+    @Test
+    void refresh_withMalformedOpaqueTokens_takesNoGlobalPermit() {
+	props.setRefreshTokenFormat(JwtAuthProperties.RefreshTokenFormat.OPAQUE);
+	RefreshAdmission admission = new RefreshAdmission(0.001, 1, 0, 0);
+	service = new RefreshTokenService(verifier, generator, store, AsyncRefreshTokenStore.of(store, Runnable::run),
+		props, null, admission);
+	for (int i = 0; i < 3; i++) {
+	    assertThrows(JwtAuthException.class, () -> service.refresh("forged"));
+	    assertThrows(ExecutionException.class, () -> service.refreshAsync("forged").get());
+	}
+
+	assertNotNull(service.refresh(service.issue("alice", List.of("USER")).refreshToken()).refreshToken());
+	assertEquals(0, admission.getGlobalRejectedCount());
+    }
+
+    @Test
+    void refresh_withTtlJitter_reportsActualAccessExpiry() {
+	props.setTtlJitterRatio(0.5);
+	String refresh = service.issue("alice", List.of("USER")).refreshToken();
+
+	RefreshTokenService.Tokens tokens = service.refresh(refresh);
+
+	long exp = verifier.parse(tokens.accessToken()).getExpiration().getTime();
+	assertEquals(exp / 1000, tokens.accessTokenExpiresAtMillis() / 1000);
+    }
+}
@@ -0,0 +1,84 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class RefreshTokenTransferTest {
+
+    @Test
+    void exportAndImport_movesSessionsBetweenStores() throws IOException {
+	Instant exp = Instant.now().plusSeconds(60);
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	try (InMemoryRefreshTokenStore source = new InMemoryRefreshTokenStore()) {
+	    for (int i = 0; i < 2_500; i++) {
+		source.save("jti-" + i, "user-" + (i % 7), exp, i % 2 == 0 ? "fam-" + i : null);
+	    }
+	    source.save("expired", "alice", Instant.now().minusSeconds(1));
+	    source.rotate("jti-0", "jti-rotated", "user-0", exp, "fam-0");
+
+	    assertEquals(2_500, RefreshTokenTransfer.export(source, bytes));
+	}
+
+	try (ShardedRefreshTokenStore target = new ShardedRefreshTokenStore(8, Duration.ofMinutes(1), 100)) {
+	    long imported = RefreshTokenTransfer.importInto(new ByteArrayInputStream(bytes.toByteArray()), target,
+		    1_000);
+
+	    assertEquals(2_500, imported);
+	    assertTrue(target.isActive("jti-2499"));
+	    assertTrue(target.isActive("jti-rotated"));
+	    assertFalse(target.isActive("jti-0"));
+	    assertFalse(target.isActive("expired"));
+
+	    target.revokeFamily("fam-2", "user-2");
+	    assertFalse(target.isActive("jti-2"));
+	}
+    }
+
+    @Test
+    void importInto_rejectsForeignData() {
+	try (InMemoryRefreshTokenStore target = new InMemoryRefreshTokenStore()) {
+	    assertThrows(IOException.class, () -> RefreshTokenTransfer
+		    .importInto(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5 }), target, 10));
+	}
+    }
+
+    @Test
+    void export_requiresEnumerableStore() {
+	try (CompactRefreshTokenStore source = new CompactRefreshTokenStore(4, Duration.ofMinutes(1))) {
+	    assertThrows(UnsupportedOperationException.class,
+		    () -> RefreshTokenTransfer.export(source, new ByteArrayOutputStream()));
+	}
+    }
+
+    @Test
+    void exportAndImport_keepsRoles() throws IOException {
+	Instant exp = Instant.now().plusSeconds(60);
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	try (InMemoryRefreshTokenStore source = new InMemoryRefreshTokenStore()) {
+	    source.save("with-roles", "alice", exp, null, List.of("ADMIN", "USER"));
+	    source.save("no-roles", "bob", exp, null, List.of());
+	    source.save("unknown-roles", "carol", exp);
+	    RefreshTokenTransfer.export(source, bytes);
+	}
+
+	try (InMemoryRefreshTokenStore target = new InMemoryRefreshTokenStore()) {
+	    RefreshTokenTransfer.importInto(new ByteArrayInputStream(bytes.toByteArray()), target, 10);
+
+	    assertEquals(List.of("ADMIN", "USER"), target.find("with-roles").roles());
+	    assertEquals(List.of(), target.find("no-roles").roles());
+	    assertNull(target.find("unknown-roles").roles());
+	}
+    }
+}
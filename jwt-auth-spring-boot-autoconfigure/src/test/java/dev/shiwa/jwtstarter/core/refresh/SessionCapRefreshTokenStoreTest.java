@@ -0,0 +1,193 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class SessionCapRefreshTokenStoreTest {
+
+    private final InMemoryRefreshTokenStore inner = new InMemoryRefreshTokenStore();
+    private final SessionCapRefreshTokenStore store = new SessionCapRefreshTokenStore(inner, 2);
+
+    private static Instant inAnHour() {
+	return Instant.now().plusSeconds(3600);
+    }
+
+    @Test
+    void oldestSessionIsRevokedOnceLimitIsExceeded() {
+	store.save("a1", "alice", inAnHour(), "fa");
+	store.save("b1", "alice", inAnHour(), "fb");
+	store.save("c1", "alice", inAnHour(), "fc");
+
+	assertFalse(store.isActive("a1"));
+	assertTrue(store.isActive("b1"));
+	assertTrue(store.isActive("c1"));
+	assertEquals(1, store.getEvictedCount());
+    }
+
+    @Test
+    void rotationKeepsTheSessionsPlace() {
+	store.save("a1", "alice", inAnHour(), "fa");
+	store.save("b1", "alice", inAnHour(), "fb");
+	assertEquals(RotationOutcome.ROTATED, store.rotate("a1", "a2", "alice", inAnHour(), "fa"));
+
+	store.save("c1", "alice", inAnHour(), "fc");
+
+	// fa was logged in first, so it goes although it was refreshed last
+	assertFalse(store.isActive("a2"));
+	assertTrue(store.isActive("b1"));
+	assertTrue(store.isActive("c1"));
+    }
+
+    @Test
+    void tokensWithoutFamilyAreSessionsOfTheirOwn() {
+	store.save("a1", "alice", inAnHour());
+	store.save("b1", "alice", inAnHour());
+	assertEquals(RotationOutcome.ROTATED, store.rotate("a1", "a2", "alice", inAnHour()));
+
+	store.save("c1", "alice", inAnHour());
+
+	assertFalse(store.isActive("b1"));
+	assertTrue(store.isActive("a2"));
+	assertTrue(store.isActive("c1"));
+    }
+
+    @Test
+    void revokedSessionsDoNotCount() {
+	store.save("a1", "alice", inAnHour(), "fa");
+	store.save("b1", "alice", inAnHour(), "fb");
+	store.revokeFamily("fb", "alice");
+	store.save("c1", "alice", inAnHour(), "fc");
+
+	assertTrue(store.isActive("a1"));
+	assertTrue(store.isActive("c1"));
+
+	store.revoke("c1");
+	store.save("d1", "alice", inAnHour(), "fd");
+	assertTrue(store.isActive("a1"));
+	assertEquals(0, store.getEvictedCount());
+    }
+
+    @Test
+    void limitIsPerSubject() {
+	store.save("a1", "alice", inAnHour(), "fa");
+	store.save("b1", "alice", inAnHour(), "fb");
+	store.save("c1", "bob", inAnHour(), "fc");
+	store.save("d1", "bob", inAnHour(), "fd");
+
+	assertTrue(store.isActive("a1"));
+	assertTrue(store.isActive("c1"));
+	assertEquals(2, store.getTrackedSubjectCount());
+
+	store.revokeAllForSubject("bob");
+	assertEquals(1, store.getTrackedSubjectCount());
+	assertFalse(store.isActive("d1"));
+    }
+
+    @Test
+    void saveAllEnforcesLimitPerSubject() {
+	Instant exp = inAnHour();
+	store.saveAll(List.of(new StoredRefreshToken("a1", "alice", exp, "fa"),
+		new StoredRefreshToken("b1", "alice", exp, "fb"), new StoredRefreshToken("c1", "alice", exp, "fc")));
+
+	assertFalse(store.isActive("a1"));
+	assertTrue(store.isActive("b1"));
+	assertTrue(store.isActive("c1"));
+    }
+
+    @Test
+    void concurrentLoginsKeepExactlyTheLimit() throws Exception {
+	SessionCapRefreshTokenStore capped = new SessionCapRefreshTokenStore(inner, 5);
+	ExecutorService pool = Executors.newFixedThreadPool(8);
+	try {
+	    CountDownLatch start = new CountDownLatch(1);
+	    List<Future<?>> results = new ArrayList<>();
+	    for (int t = 0; t < 8; t++) {
+		int thread = t;
+		results.add(pool.submit(() -> {
+		    start.await();
+		    for (int i = 0; i < 200; i++) {
+			String id = thread + "-" + i;
+			capped.save("jti-" + id, "shared", inAnHour(), "family-" + id);
+		    }
+		    return null;
+		}));
+	    }
+	    start.countDown();
+	    for (Future<?> result : results) {
+		result.get();
+	    }
+	} finally {
+	    pool.shutdownNow();
+	}
+
+	assertEquals(5, inner.size());
+	assertEquals(1595, capped.getEvictedCount());
+    }
+
+    @Test
+    void concurrentSavesOfOneFamilyCountOnce() throws Exception {
+	store.save("a1", "alice", inAnHour(), "fa");
+	ExecutorService pool = Executors.newFixedThreadPool(8);
+	try {
+	    for (int round = 0; round < 200; round++) {
+		String family = "fb-" + round;
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> results = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+		    String jti = family + "-" + t;
+		    results.add(pool.submit(() -> {
+			start.await();
+			store.save(jti, "alice", inAnHour(), family);
+			return null;
+		    }));
+		}
+		start.countDown();
+		for (Future<?> result : results) {
+		    result.get();
+		}
+		store.revokeFamily(family, "alice");
+	    }
+	} finally {
+	    pool.shutdownNow();
+	}
+
+	assertTrue(store.isActive("a1"));
+	assertEquals(0, store.getEvictedCount());
+    }
+
+    @Test
+    void asyncViewEnforcesTheLimit() {
+	store.saveAsync("a1", "alice", inAnHour(), "fa").join();
+	store.saveAsync("b1", "alice", inAnHour(), "fb").join();
+	assertEquals(RotationOutcome.ROTATED, store.rotateAsync("a1", "a2", "alice", inAnHour(), "fa").join());
+	store.saveAsync("c1", "alice", inAnHour(), "fc").join();
+
+	assertFalse(store.isActive("a2"));
+	assertTrue(store.isActive("b1"));
+	assertTrue(store.isActive("c1"));
+	assertEquals(1, store.getEvictedCount());
+
+	// a session revoked through the async view no longer counts
+	store.revokeFamilyAsync("fb", "alice").join();
+	store.saveAsync("d1", "alice", inAnHour(), "fd").join();
+	assertTrue(store.isActive("c1"));
+	assertEquals(1, store.getEvictedCount());
+    }
+
+    @Test
+    void rejectsNonPositiveLimit() {
+	assertThrows(IllegalArgumentException.class, () -> new SessionCapRefreshTokenStore(inner, 0));
+    }
+}
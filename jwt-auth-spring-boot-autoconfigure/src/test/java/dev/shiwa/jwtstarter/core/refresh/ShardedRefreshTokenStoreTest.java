@@ -0,0 +1,213 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import dev.shiwa.jwtstarter.core.refresh.ShardedRefreshTokenStore.ShardStats;
+
+class ShardedRefreshTokenStoreTest {
+
+    private final ShardedRefreshTokenStore store = new ShardedRefreshTokenStore(16, Duration.ofMinutes(1), 1_000);
+
+    @AfterEach
+    void tearDown() {
+	store.close();
+    }
+
+    @Test
+    void saveAndRevoke() {
+	store.save("jti-1", "alice", Instant.now().plusSeconds(60));
+
+	assertTrue(store.isActive("jti-1"));
+	assertEquals("alice", store.subjectFor("jti-1"));
+
+	store.revoke("jti-1");
+
+	assertFalse(store.isActive("jti-1"));
+	assertNull(store.subjectFor("jti-1"));
+    }
+
+    @Test
+    void revokeAllForSubject_onlyRemovesThatSubject() {
+	Instant exp = Instant.now().plusSeconds(60);
+	for (int i = 0; i < 100; i++) {
+	    store.save("a-" + i, "alice", exp);
+	    store.save("b-" + i, "bob", exp);
+	}
+
+	store.revokeAllForSubject("alice");
+
+	for (int i = 0; i < 100; i++) {
+	    assertFalse(store.isActive("a-" + i));
+	    assertTrue(store.isActive("b-" + i));
+	}
+	assertEquals(100, store.size());
+    }
+
+    @Test
+    void rotate_consumesOldTokenAndReportsReuse() {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("jti-1", "alice", exp);
+
+	assertEquals(RotationOutcome.ROTATED, store.rotate("jti-1", "jti-2", "alice", exp));
+	assertFalse(store.isActive("jti-1"));
+	assertTrue(store.isActive("jti-2"));
+	assertEquals(RotationOutcome.REUSED, store.rotate("jti-1", "jti-3", "alice", exp));
+	assertEquals(RotationOutcome.UNKNOWN, store.rotate("never-saved", "jti-4", "alice", exp));
+	assertEquals(RotationOutcome.UNKNOWN, store.rotate("jti-2", "jti-5", "mallory", exp));
+
+	// the consumed marker survives revoking the subject
+	store.revokeAllForSubject("alice");
+	assertFalse(store.isActive("jti-2"));
+	assertEquals(RotationOutcome.REUSED, store.rotate("jti-1", "jti-6", "alice", exp));
+    }
+
+    @Test
+    void rotate_concurrent_exactlyOneSucceeds() throws Exception {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("jti-0", "alice", exp);
+
+	List<Callable<RotationOutcome>> tasks = new ArrayList<>();
+	for (int i = 0; i < 16; i++) {
+	    String newJti = "jti-new-" + i;
+	    tasks.add(() -> store.rotate("jti-0", newJti, "alice", exp));
+	}
+	ExecutorService pool = Executors.newFixedThreadPool(8);
+	int rotated = 0;
+	try {
+	    for (Future<RotationOutcome> f : pool.invokeAll(tasks)) {
+		if (f.get() == RotationOutcome.ROTATED)
+		    rotated++;
+	    }
+	} finally {
+	    pool.shutdown();
+	}
+
+	assertEquals(1, rotated);
+    }
+
+    @Test
+    void revokeFamily_revokesOnlyCurrentTokenOfFamily() {
+	Instant exp = Instant.now().plusSeconds(60);
+	store.save("phone-1", "alice", exp, "phone");
+	store.save("laptop-1", "alice", exp, "laptop");
+	assertEquals(RotationOutcome.ROTATED, store.rotate("phone-1", "phone-2", "alice", exp, "phone"));
+
+	store.revokeFamily("phone", "alice");
+
+	assertFalse(store.isActive("phone-2"));
+	assertTrue(store.isActive("laptop-1"));
+
+	store.revokeFamily("laptop", null);
+	assertFalse(store.isActive("laptop-1"));
+    }
+
+    @Test
+    void evictExpired_removesOnlyExpiredTokens() {
+	Instant now = Instant.now();
+	store.save("expired", "alice", now.minus(Duration.ofMinutes(5)));
+	store.save("active", "alice", now.plusSeconds(60));
+
+	assertEquals(1, store.evictExpired(now, 100));
+
+	assertEquals(1, store.size());
+	assertTrue(store.isActive("active"));
+	assertEquals(1, store.getEvictedCount());
+    }
+
+    @Test
+    void shardStats_reportPerShardSizesAndOperations() {
+	Instant exp = Instant.now().plusSeconds(60);
+	for (int i = 0; i < 1_000; i++) {
+	    store.save("jti-" + i, "user-" + (i % 50), exp);
+	    store.isActive("jti-" + i);
+	}
+
+	List<ShardStats> stats = store.getShardStats();
+
+	assertEquals(16, stats.size());
+	assertEquals(1_000, stats.stream().mapToInt(ShardStats::tokens).sum());
+	assertEquals(50, stats.stream().mapToInt(ShardStats::subjects).sum());
+	assertEquals(2_000, stats.stream().mapToLong(ShardStats::operations).sum());
+	assertTrue(stats.stream().allMatch(s -> s.tokens() > 0));
+    }
+
+    @Test
+    void shardCountIsRoundedToPowerOfTwo() {
+	try (ShardedRefreshTokenStore s = new ShardedRefreshTokenStore(12, Duration.ofMinutes(1), 1)) {
+	    assertEquals(16, s.getShardCount());
+	}
+    }
+
+    @Test
+    void bulkOperations_keepSubjectIndexConsistent() {
+	Instant exp = Instant.now().plusSeconds(60);
+	List<StoredRefreshToken> tokens = new ArrayList<>();
+	for (int i = 0; i < 1_000; i++) {
+	    tokens.add(new StoredRefreshToken("jti-" + i, "user-" + (i % 10), exp, null));
+	}
+	store.saveAll(tokens);
+	store.revokeAll(List.of("jti-0", "jti-1"));
+
+	assertEquals(Map.of("jti-0", false, "jti-2", true), store.isActiveAll(List.of("jti-0", "jti-2")));
+
+	store.revokeAllForSubject("user-2");
+	assertFalse(store.isActive("jti-2"));
+	assertTrue(store.isActive("jti-3"));
+	assertEquals(898, store.size());
+	assertEquals(9, store.getShardStats().stream().mapToInt(ShardStats::subjects).sum());
+    }
+
+    /** A rotation racing a family revocation never leaves the new token active */
+    @Test
+    void revokeFamily_concurrentWithRotation_neverLeavesNewToken() throws Exception {
+	Instant exp = Instant.now().plusSeconds(60);
+	ExecutorService pool = Executors.newFixedThreadPool(2);
+	for (int i = 0; i < 2_000; i++) {
+	    String family = "fam-" + i;
+	    store.save(family + "-1", "alice", exp, family);
+
+	    Future<RotationOutcome> rotation = pool
+		    .submit(() -> store.rotate(family + "-1", family + "-2", "alice", exp, family));
+	    Future<?> revocation = pool.submit(() -> store.revokeFamily(family, "alice"));
+	    rotation.get();
+	    revocation.get();
+
+	    assertFalse(store.isActive(family + "-2"), family);
+	}
+	pool.shutdown();
+    }
+
+    /** A save racing a subject revocation is either revoked or indexed */
+    @Test
+    void revokeAllForSubject_concurrentWithSave_neverLeavesUnindexedToken() throws Exception {
+	Instant exp = Instant.now().plusSeconds(60);
+	ExecutorService pool = Executors.newFixedThreadPool(2);
+	for (int i = 0; i < 2_000; i++) {
+	    String subject = "user-" + i;
+	    Future<?> save = pool.submit(() -> store.save(subject + "-jti", subject, exp, null));
+	    Future<?> revocation = pool.submit(() -> store.revokeAllForSubject(subject));
+	    save.get();
+	    revocation.get();
+
+	    store.revokeAllForSubject(subject);
+	    assertFalse(store.isActive(subject + "-jti"), subject);
+	}
+	pool.shutdown();
+    }
+}
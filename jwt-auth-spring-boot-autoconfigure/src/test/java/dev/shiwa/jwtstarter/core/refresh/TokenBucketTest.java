@@ -0,0 +1,90 @@
+package dev.shiwa.jwtstarter.core.refresh;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+
+    @Test
+    void admitsBurstThenRefillsAtRate() {
+	TokenBucket bucket = new TokenBucket(10, 3); // one permit per 100 ms
+	long now = System.nanoTime();
+
+	assertEquals(0, bucket.tryAcquire(now));
+	assertEquals(0, bucket.tryAcquire(now));
+	assertEquals(0, bucket.tryAcquire(now));
+	assertEquals(100, bucket.tryAcquire(now));
+
+	assertEquals(0, bucket.tryAcquire(now + 100_000_000L));
+	assertEquals(100, bucket.tryAcquire(now + 100_000_000L));
+	assertEquals(50, bucket.tryAcquire(now + 150_000_000L));
+    }
+
+    @Test
+    void isFullOnlyAfterRefill() {
+	TokenBucket bucket = new TokenBucket(1000, 5);
+	assertTrue(bucket.isFull());
+	bucket.tryAcquire();
+	assertFalse(bucket.isFull());
+    }
+
+    @Test
+    void releaseReturnsAPermit() {
+	TokenBucket bucket = new TokenBucket(10, 2);
+	long now = System.nanoTime();
+
+	assertEquals(0, bucket.tryAcquire(now));
+	assertEquals(0, bucket.tryAcquire(now));
+	assertEquals(100, bucket.tryAcquire(now));
+
+	bucket.release();
+	assertEquals(0, bucket.tryAcquire(now));
+	assertEquals(100, bucket.tryAcquire(now));
+    }
+
+    @Test
+    void concurrentCallersTakeExactlyTheBurst() throws Exception {
+	TokenBucket bucket = new TokenBucket(0.001, 50);
+	ExecutorService pool = Executors.newFixedThreadPool(8);
+	try {
+	    CountDownLatch start = new CountDownLatch(1);
+	    List<Future<Integer>> results = new ArrayList<>();
+	    for (int t = 0; t < 8; t++) {
+		results.add(pool.submit(() -> {
+		    start.await();
+		    int admitted = 0;
+		    for (int i = 0; i < 100; i++) {
+			if (bucket.tryAcquire() == 0)
+			    admitted++;
+		    }
+		    return admitted;
+		}));
+	    }
+	    start.countDown();
+	    int total = 0;
+	    for (Future<Integer> result : results) {
+		total += result.get();
+	    }
+	    assertEquals(50, total);
+	} finally {
+	    pool.shutdownNow();
+	}
+    }
+
+    @Test
+    void rejectsInvalidArguments() {
+	assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+	assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0));
+    }
+}
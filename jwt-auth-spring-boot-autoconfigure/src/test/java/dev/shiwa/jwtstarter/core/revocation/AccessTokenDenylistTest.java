@@ -0,0 +1,88 @@
+package dev.shiwa.jwtstarter.core.revocation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class AccessTokenDenylistTest {
+
+    private final AccessTokenDenylist denylist = new AccessTokenDenylist(1_000, Duration.ofSeconds(1), 10_000);
+
+    @AfterEach
+    void tearDown() {
+	denylist.close();
+    }
+
+    @Test
+    void revokedTokenIsDenied() {
+	denylist.revoke("jti-1", Instant.now().plusSeconds(60));
+
+	assertTrue(denylist.isRevoked("jti-1"));
+	assertFalse(denylist.isRevoked("jti-2"));
+	assertFalse(denylist.isRevoked(null));
+    }
+
+    @Test
+    void revocationsAreKeyedByIssuer() {
+	denylist.revoke("issuer-a", "jti-1", Instant.now().plusSeconds(60));
+
+	assertTrue(denylist.isRevoked("issuer-a", "jti-1"));
+	assertFalse(denylist.isRevoked("issuer-b", "jti-1"));
+	assertFalse(denylist.isRevoked("jti-1"));
+    }
+
+    @Test
+    void alreadyExpiredTokenIsIgnored() {
+	denylist.revoke("jti-1", Instant.now().minusSeconds(1));
+
+	assertEquals(0, denylist.size());
+	assertFalse(denylist.isRevoked("jti-1"));
+    }
+
+    @Test
+    void evictExpired_dropsEntriesAndRebuildsFilter() {
+	Instant now = Instant.now();
+	denylist.revoke("short", now.plusSeconds(5));
+	denylist.revoke("long", now.plusSeconds(3600));
+
+	assertEquals(1, denylist.evictExpired(now.plusSeconds(10)));
+
+	assertEquals(1, denylist.size());
+	assertFalse(denylist.isRevoked("short"));
+	assertTrue(denylist.isRevoked("long"));
+    }
+
+    /** Most lookups of non-revoked tokens are answered by the filter alone */
+    @Test
+    void filterAnswersNonRevokedTokens() {
+	Instant exp = Instant.now().plusSeconds(60);
+	for (int i = 0; i < 1_000; i++) {
+	    denylist.revoke(UUID.randomUUID().toString(), exp);
+	}
+	for (int i = 0; i < 10_000; i++) {
+	    assertFalse(denylist.isRevoked(UUID.randomUUID().toString()));
+	}
+	assertTrue(denylist.getFilterHitCount() < 500, "false positives: " + denylist.getFilterHitCount());
+    }
+
+    /** The filter grows once more tokens are revoked than it was sized for */
+    @Test
+    void filterGrowsBeyondExpectedEntries() {
+	Instant exp = Instant.now().plusSeconds(60);
+	for (int i = 0; i < 5_000; i++) {
+	    denylist.revoke("jti-" + i, exp);
+	}
+	denylist.evictExpired(Instant.now());
+
+	for (int i = 0; i < 5_000; i++) {
+	    assertTrue(denylist.isRevoked("jti-" + i));
+	}
+    }
+}
@@ -0,0 +1,201 @@
+package dev.shiwa.jwtstarter.core.revocation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import dev.shiwa.jwtstarter.core.refresh.AsyncRefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.InMemoryRefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.ReplicatingRefreshTokenStore;
+
+class RevocationEventBusTest {
+
+    private static final byte[] SECRET = "test-secret-test-secret-test-secret".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void inJvm_propagatesAccessTokenRevocations() {
+	InJvmRevocationEventBus bus1 = new InJvmRevocationEventBus();
+	InJvmRevocationEventBus bus2 = new InJvmRevocationEventBus(bus1);
+	try (AccessTokenDenylist node1 = new AccessTokenDenylist(100, Duration.ofMinutes(1), 100, bus1);
+		AccessTokenDenylist node2 = new AccessTokenDenylist(100, Duration.ofMinutes(1), 100, bus2)) {
+	    node1.revoke("jti-1", Instant.now().plusSeconds(60));
+
+	    assertTrue(node1.isRevoked("jti-1"));
+	    assertTrue(node2.isRevoked("jti-1"));
+	}
+    }
+
+    @Test
+    void inJvm_propagatesSubjectEpochs() {
+	InJvmRevocationEventBus bus1 = new InJvmRevocationEventBus();
+	InJvmRevocationEventBus bus2 = new InJvmRevocationEventBus(bus1);
+	try (SubjectRevocationEpochs node1 = new SubjectRevocationEpochs(Duration.ofMinutes(5), Duration.ofMinutes(1),
+		bus1);
+		SubjectRevocationEpochs node2 = new SubjectRevocationEpochs(Duration.ofMinutes(5),
+			Duration.ofMinutes(1), bus2)) {
+	    Instant cutoff = Instant.now();
+	    node1.revokeIssuedBefore("alice", cutoff);
+
+	    assertTrue(node2.isRevoked("alice", Date.from(cutoff.minusSeconds(60))));
+	    assertFalse(node2.isRevoked("bob", Date.from(cutoff.minusSeconds(60))));
+	}
+    }
+
+    @Test
+    void inJvm_propagatesRefreshTokenRevocations() throws Exception {
+	InJvmRevocationEventBus bus1 = new InJvmRevocationEventBus();
+	InJvmRevocationEventBus bus2 = new InJvmRevocationEventBus(bus1);
+	try (ReplicatingRefreshTokenStore node1 = new ReplicatingRefreshTokenStore(new InMemoryRefreshTokenStore(),
+		bus1);
+		ReplicatingRefreshTokenStore node2 = new ReplicatingRefreshTokenStore(new InMemoryRefreshTokenStore(),
+			bus2)) {
+	    Instant exp = Instant.now().plusSeconds(60);
+	    for (ReplicatingRefreshTokenStore node : List.of(node1, node2)) {
+		node.save("a1", "alice", exp);
+		node.save("a2", "alice", exp);
+		node.save("b1", "bob", exp, "fam-b");
+		node.save("c1", "carol", exp);
+	    }
+
+	    node1.revoke("c1");
+	    node1.revokeAllForSubject("alice");
+	    node2.revokeFamily("fam-b", "bob");
+
+	    for (ReplicatingRefreshTokenStore node : List.of(node1, node2)) {
+		assertFalse(node.isActive("a1"));
+		assertFalse(node.isActive("a2"));
+		assertFalse(node.isActive("b1"));
+		assertFalse(node.isActive("c1"));
+	    }
+	}
+    }
+
+    /** Asynchronous revocations use the delegate's async view and are published too */
+    @Test
+    void inJvm_propagatesAsyncRefreshTokenRevocations() {
+	InJvmRevocationEventBus bus1 = new InJvmRevocationEventBus();
+	InJvmRevocationEventBus bus2 = new InJvmRevocationEventBus(bus1);
+	try (ReplicatingRefreshTokenStore node1 = new ReplicatingRefreshTokenStore(new InMemoryRefreshTokenStore(),
+		bus1);
+		ReplicatingRefreshTokenStore node2 = new ReplicatingRefreshTokenStore(new InMemoryRefreshTokenStore(),
+			bus2)) {
+	    assertSame(node1, AsyncRefreshTokenStore.of(node1, r -> {
+		throw new AssertionError("executor must not be used");
+	    }));
+	    Instant exp = Instant.now().plusSeconds(60);
+	    for (ReplicatingRefreshTokenStore node : List.of(node1, node2)) {
+		node.saveAsync("a1", "alice", exp).join();
+		node.saveAsync("b1", "bob", exp, "fam-b").join();
+	    }
+
+	    node1.revokeAllForSubjectAsync("alice").join();
+	    node1.revokeFamilyAsync("fam-b", "bob").join();
+
+	    assertFalse(node2.isActive("a1"));
+	    assertFalse(node2.isActive("b1"));
+	}
+    }
+
+    @Test
+    void inJvm_doesNotDeliverToPublisherOrClosedNodes() {
+	InJvmRevocationEventBus bus1 = new InJvmRevocationEventBus();
+	InJvmRevocationEventBus bus2 = new InJvmRevocationEventBus(bus1);
+	InJvmRevocationEventBus bus3 = new InJvmRevocationEventBus(bus2);
+	List<RevocationEvent> received1 = new ArrayList<>();
+	List<RevocationEvent> received3 = new ArrayList<>();
+	bus1.subscribe(received1::add);
+	bus3.subscribe(received3::add);
+	bus3.close();
+
+	bus1.publish(new RevocationEvent(RevocationEvent.Type.REFRESH_TOKEN, "jti", null, 0));
+	bus2.publish(new RevocationEvent(RevocationEvent.Type.REFRESH_TOKEN, "jti", null, 0));
+
+	assertEquals(1, received1.size());
+	assertTrue(received3.isEmpty());
+    }
+
+    @Test
+    void udp_deliversBatchedEventsToPeers() throws Exception {
+	try (UdpRevocationEventBus bus1 = new UdpRevocationEventBus(0, List.of(), SECRET, Duration.ofMillis(5));
+		UdpRevocationEventBus bus2 = new UdpRevocationEventBus(0,
+			List.of(new InetSocketAddress("127.0.0.1", bus1.getLocalPort())), SECRET,
+			Duration.ofMillis(5))) {
+	    int events = 200; // more than fit into one datagram
+	    CountDownLatch latch = new CountDownLatch(events);
+	    List<RevocationEvent> received = new CopyOnWriteArrayList<>();
+	    bus1.subscribe(e -> {
+		received.add(e);
+		latch.countDown();
+	    });
+
+	    for (int i = 0; i < events; i++) {
+		bus2.publish(new RevocationEvent(RevocationEvent.Type.ACCESS_TOKEN, "jti-" + i, null, i));
+	    }
+
+	    assertTrue(latch.await(5, TimeUnit.SECONDS));
+	    assertEquals(new RevocationEvent(RevocationEvent.Type.ACCESS_TOKEN, "jti-7", null, 7), received.get(7));
+	}
+    }
+
+    /** A captured datagram is applied once, however often it is sent again */
+    @Test
+    void udp_dropsReplayedDatagrams() throws Exception {
+	try (DatagramSocket capture = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+		UdpRevocationEventBus bus1 = new UdpRevocationEventBus(0, List.of(), SECRET, Duration.ZERO);
+		UdpRevocationEventBus bus2 = new UdpRevocationEventBus(0,
+			List.of(new InetSocketAddress("127.0.0.1", capture.getLocalPort())), SECRET, Duration.ZERO)) {
+	    List<RevocationEvent> received = new CopyOnWriteArrayList<>();
+	    CountDownLatch first = new CountDownLatch(1);
+	    bus1.subscribe(e -> {
+		received.add(e);
+		first.countDown();
+	    });
+
+	    bus2.publish(new RevocationEvent(RevocationEvent.Type.REFRESH_SUBJECT, "alice", "alice", 0));
+	    capture.setSoTimeout(5_000);
+	    DatagramPacket packet = new DatagramPacket(new byte[2048], 2048);
+	    capture.receive(packet);
+
+	    InetSocketAddress target = new InetSocketAddress("127.0.0.1", bus1.getLocalPort());
+	    for (int i = 0; i < 3; i++) {
+		capture.send(new DatagramPacket(packet.getData(), packet.getLength(), target));
+	    }
+
+	    assertTrue(first.await(5, TimeUnit.SECONDS));
+	    Thread.sleep(200);
+	    assertEquals(1, received.size());
+	}
+    }
+
+    @Test
+    void udp_dropsDatagramsWithWrongSecret() throws Exception {
+	try (UdpRevocationEventBus bus1 = new UdpRevocationEventBus(0, List.of(), SECRET, Duration.ZERO);
+		UdpRevocationEventBus bus2 = new UdpRevocationEventBus(0,
+			List.of(new InetSocketAddress("127.0.0.1", bus1.getLocalPort())),
+			"other-secret".getBytes(StandardCharsets.UTF_8), Duration.ZERO)) {
+	    CountDownLatch latch = new CountDownLatch(1);
+	    bus1.subscribe(e -> latch.countDown());
+
+	    bus2.publish(new RevocationEvent(RevocationEvent.Type.ACCESS_TOKEN, "jti", null, 0));
+
+	    assertFalse(latch.await(300, TimeUnit.MILLISECONDS));
+	}
+    }
+}
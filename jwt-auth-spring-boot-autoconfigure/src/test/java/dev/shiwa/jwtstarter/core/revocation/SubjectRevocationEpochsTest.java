@@ -0,0 +1,103 @@
+package dev.shiwa.jwtstarter.core.revocation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SubjectRevocationEpochsTest {
+
+    private final SubjectRevocationEpochs epochs = new SubjectRevocationEpochs(Duration.ofMinutes(5),
+	    Duration.ofSeconds(1));
+
+    @AfterEach
+    void tearDown() {
+	epochs.close();
+    }
+
+    @Test
+    void tokensIssuedBeforeCutoffAreRevoked() {
+	Instant cutoff = Instant.parse("2025-01-01T12:00:00.500Z");
+	epochs.revokeIssuedBefore("alice", cutoff);
+
+	assertTrue(epochs.isRevoked("alice", Date.from(cutoff.minusSeconds(60))));
+	assertTrue(epochs.isRevoked("alice", Date.from(Instant.parse("2025-01-01T12:00:00Z"))));
+	assertFalse(epochs.isRevoked("alice", Date.from(Instant.parse("2025-01-01T12:00:01Z"))));
+	assertFalse(epochs.isRevoked("bob", Date.from(cutoff.minusSeconds(60))));
+	assertTrue(epochs.isRevoked("alice", null));
+    }
+
+    @Test
+    void millisecondIssueTimesAreComparedExactly() {
+	Instant cutoff = Instant.parse("2025-01-01T12:00:00.500Z");
+	epochs.revokeIssuedBefore("alice", cutoff);
+
+	assertTrue(epochs.isRevoked("alice", cutoff.toEpochMilli() - 1));
+	assertTrue(epochs.isRevoked("alice", cutoff.toEpochMilli()));
+	assertFalse(epochs.isRevoked("alice", cutoff.toEpochMilli() + 1));
+	assertFalse(epochs.isRevoked("bob", cutoff.toEpochMilli() - 1));
+	assertFalse(epochs.isRevoked(null, cutoff.toEpochMilli() - 1));
+    }
+
+    @Test
+    void cutoffsAreKeyedByIssuer() {
+	Instant cutoff = Instant.parse("2025-01-01T12:00:00Z");
+	epochs.revokeIssuedBefore("issuer-a", "alice", cutoff);
+
+	assertTrue(epochs.isRevoked("issuer-a", "alice", cutoff.toEpochMilli() - 1));
+	assertFalse(epochs.isRevoked("issuer-b", "alice", cutoff.toEpochMilli() - 1));
+	assertFalse(epochs.isRevoked("alice", cutoff.toEpochMilli() - 1));
+    }
+
+    @Test
+    void cutoffOnlyMovesForward() {
+	Instant cutoff = Instant.parse("2025-01-01T12:00:00Z");
+	epochs.revokeIssuedBefore("alice", cutoff);
+	epochs.revokeIssuedBefore("alice", cutoff.minusSeconds(3600));
+
+	assertTrue(epochs.isRevoked("alice", Date.from(cutoff.minusSeconds(60))));
+    }
+
+    @Test
+    void evictExpired_dropsEpochsOlderThanRetention() {
+	Instant now = Instant.now();
+	epochs.revokeIssuedBefore("alice", now.minusSeconds(600));
+	epochs.revokeIssuedBefore("bob", now);
+
+	assertEquals(1, epochs.evictExpired(now.plusSeconds(2)));
+	assertEquals(1, epochs.size());
+	assertFalse(epochs.isRevoked("alice", Date.from(now.minusSeconds(900))));
+	assertTrue(epochs.isRevoked("bob", Date.from(now.minusSeconds(60))));
+    }
+
+    /** A raised cutoff keeps the entry beyond the first cutoff's retention */
+    @Test
+    void evictExpired_keepsRaisedEpoch() {
+	Instant now = Instant.now();
+	epochs.revokeIssuedBefore("alice", now.minusSeconds(600));
+	epochs.revokeIssuedBefore("alice", now);
+
+	assertEquals(0, epochs.evictExpired(now.plusSeconds(2)));
+	assertTrue(epochs.isRevoked("alice", Date.from(now.minusSeconds(60))));
+    }
+
+    /** Tables grow and keep all entries across rehashes */
+    @Test
+    void manySubjects() {
+	Instant cutoff = Instant.now();
+	for (int i = 0; i < 5_000; i++) {
+	    epochs.revokeIssuedBefore("user-" + i, cutoff);
+	}
+
+	assertEquals(5_000, epochs.size());
+	for (int i = 0; i < 5_000; i++) {
+	    assertTrue(epochs.isRevoked("user-" + i, Date.from(cutoff.minusSeconds(60))));
+	}
+    }
+}
@@ -1,8 +1,10 @@
 package dev.shiwa.jwtstarter.filter;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -14,10 +16,18 @@ import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.web.MockHttpServletRequest;
 
 import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties;
+import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties.IssuerProfile;
+import dev.shiwa.jwtstarter.core.AccessTokenRenewer;
+import dev.shiwa.jwtstarter.core.JwtAuthentication;
+import dev.shiwa.jwtstarter.core.JwtTokenGenerator;
 import dev.shiwa.jwtstarter.core.JwtTokenVerifier;
+import dev.shiwa.jwtstarter.core.JwtVerifierRegistry;
 import dev.shiwa.jwtstarter.filter.JwtAuthFilter;
+import io.jsonwebtoken.Jwts;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -39,6 +49,7 @@ class JwtAuthFilterTest {
 	props = new JwtAuthProperties();
 	props.setExcludedPaths(List.of("/public/*"));
 	props.setSecret("a-very-long-and-secure-secret-value-here-1234");
+	props.setIssuer("test-issuer");
 	request = mock(HttpServletRequest.class);
 	response = mock(HttpServletResponse.class);
 	chain = mock(FilterChain.class);
@@ -72,7 +83,7 @@ class JwtAuthFilterTest {
     void shouldRejectInvalidToken() throws ServletException, IOException {
 	when(request.getRequestURI()).thenReturn("/api/data");
 	when(request.getHeader("Authorization")).thenReturn("Bearer invalidtoken");
-	when(verifier.isValid("invalidtoken")).thenReturn(false);
+	when(verifier.verify("invalidtoken")).thenReturn(null);
 
 	filter.doFilter(request, response, chain);
 
@@ -84,12 +95,199 @@ class JwtAuthFilterTest {
     void shouldAcceptValidToken() throws ServletException, IOException {
 	when(request.getRequestURI()).thenReturn("/api/data");
 	when(request.getHeader("Authorization")).thenReturn("Bearer validtoken");
-	when(verifier.isValid("validtoken")).thenReturn(true);
+	when(verifier.verify("validtoken")).thenReturn(Jwts.claims().setSubject("alice"));
 
 	filter.doFilter(request, response, chain);
 
 	verify(chain).doFilter(request, response);
 	verify(response, never()).sendError(anyInt(), anyString());
 	verify(request).setAttribute("jwt", "validtoken");
+	ArgumentCaptor<JwtAuthentication> authentication = ArgumentCaptor.forClass(JwtAuthentication.class);
+	verify(request).setAttribute(eq(JwtAuthFilter.AUTHENTICATION_ATTRIBUTE), authentication.capture());
+	assertEquals("alice", authentication.getValue().getSubject());
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldReturnRenewedTokenWithinSlidingWindow() throws ServletException, IOException {
+	props.setAccessTtlMillis(60_000);
+	props.setSlidingRefreshWindowMillis(120_000);
+	JwtTokenGenerator generator = new JwtTokenGenerator(props);
+	JwtTokenVerifier realVerifier = new JwtTokenVerifier(props);
+	filter = new JwtAuthFilter(realVerifier, props, new AccessTokenRenewer(generator, 1_000));
+	String token = generator.generateAccessToken("alice", List.of("USER"));
+	when(request.getRequestURI()).thenReturn("/api/data");
+	when(request.getHeader("Authorization")).thenReturn("Bearer " + token);
+
+	filter.doFilter(request, response, chain);
+
+	ArgumentCaptor<String> renewed = ArgumentCaptor.forClass(String.class);
+	verify(response).setHeader(eq("X-Access-Token"), renewed.capture());
+	verify(chain).doFilter(request, response);
+	assertEquals("alice", realVerifier.parseToken(renewed.getValue()).getSubject());
+	assertEquals(List.of("USER"), realVerifier.parseToken(renewed.getValue()).getRoles());
+    }
+
+    @Test
+    void shouldNotRenewTokenOutsideSlidingWindow() throws ServletException, IOException {
+	props.setAccessTtlMillis(60_000);
+	props.setSlidingRefreshWindowMillis(10_000);
+	JwtTokenGenerator generator = new JwtTokenGenerator(props);
+	filter = new JwtAuthFilter(new JwtTokenVerifier(props), props, new AccessTokenRenewer(generator, 1_000));
+	String token = generator.generateAccessToken("alice", List.of("USER"));
+	when(request.getRequestURI()).thenReturn("/api/data");
+	when(request.getHeader("Authorization")).thenReturn("Bearer " + token);
+
+	filter.doFilter(request, response, chain);
+
+	verify(response, never()).setHeader(anyString(), anyString());
+	verify(chain).doFilter(request, response);
+    }
+
+    @Test
+    void shouldNotRenewTokenPastSessionLimit() throws ServletException, IOException {
+	props.setAccessTtlMillis(60_000);
+	props.setRefreshTtlMillis(120_000);
+	props.setSlidingRefreshWindowMillis(120_000);
+	JwtTokenGenerator generator = new JwtTokenGenerator(props);
+	filter = new JwtAuthFilter(new JwtTokenVerifier(props), props, new AccessTokenRenewer(generator, 1_000));
+	long now = System.currentTimeMillis();
+	String token = generator.generateAccessToken("alice", List.of("USER"), now + 30_000, now - 100_000);
+	when(request.getRequestURI()).thenReturn("/api/data");
+	when(request.getHeader("Authorization")).thenReturn("Bearer " + token);
+
+	filter.doFilter(request, response, chain);
+
+	verify(response, never()).setHeader(anyString(), anyString());
+	verify(chain).doFilter(request, response);
+    }
+
+    @Test
+    void shouldNotRenewTokenOfFurtherIssuer() throws ServletException, IOException {
+	props.setAccessTtlMillis(60_000);
+	props.setSlidingRefreshWindowMillis(120_000);
+	JwtAuthProperties tenant = new JwtAuthProperties();
+	tenant.setIssuer("tenant-a");
+	tenant.setSecret("tenant-a-secret-value-that-is-long-enough");
+	tenant.setAccessTtlMillis(60_000);
+	IssuerProfile profile = new IssuerProfile();
+	profile.setIssuer(tenant.getIssuer());
+	profile.setSecret(tenant.getSecret());
+	JwtVerifierRegistry registry = new JwtVerifierRegistry(List.of(profile), props.getIssuer(),
+		new JwtTokenVerifier(props), null, null);
+	filter = new JwtAuthFilter(registry, props, new AccessTokenRenewer(new JwtTokenGenerator(props), 1_000));
+	String token = new JwtTokenGenerator(tenant).generateAccessToken("alice", List.of("ADMIN"));
+	when(request.getRequestURI()).thenReturn("/api/data");
+	when(request.getHeader("Authorization")).thenReturn("Bearer " + token);
+
+	filter.doFilter(request, response, chain);
+
+	verify(response, never()).setHeader(anyString(), anyString());
+	verify(chain).doFilter(request, response);
+    }
+
+    @Test
+    void shouldRejectInvalidTokenWithSlidingRefresh() throws ServletException, IOException {
+	props.setSlidingRefreshWindowMillis(10_000);
+	filter = new JwtAuthFilter(new JwtTokenVerifier(props), props,
+		new AccessTokenRenewer(new JwtTokenGenerator(props), 1_000));
+	when(request.getRequestURI()).thenReturn("/api/data");
+	when(request.getHeader("Authorization")).thenReturn("Bearer invalidtoken");
+
+	filter.doFilter(request, response, chain);
+
+	verify(response).sendError(HttpServletResponse.SC_UNAUTHORIZED, "Invalid JWT token");
+	verify(chain, never()).doFilter(any(), any());
+    }
+
+    @Test
+    void shouldEnforceRouteRulesFromVerifiedToken() throws ServletException, IOException {
+	JwtAuthProperties.RouteRule rule = new JwtAuthProperties.RouteRule();
+	rule.setPattern("/api/admin/**");
+	rule.setRoles(List.of("ADMIN"));
+	props.setRouteRules(List.of(rule));
+	props.setAccessTtlMillis(60_000);
+	JwtTokenGenerator generator = new JwtTokenGenerator(props);
+	filter = new JwtAuthFilter(new JwtTokenVerifier(props), props);
+	when(request.getRequestURI()).thenReturn("/api/admin/users");
+	when(request.getMethod()).thenReturn("GET");
+	when(request.getHeader("Authorization"))
+		.thenReturn("Bearer " + generator.generateAccessToken("bob", List.of("USER")));
+
+	filter.doFilter(request, response, chain);
+
+	verify(response).sendError(HttpServletResponse.SC_FORBIDDEN, "Insufficient role");
+	verify(chain, never()).doFilter(any(), any());
+    }
+
+    @Test
+    void shouldPassRequestWithRequiredRole() throws ServletException, IOException {
+	JwtAuthProperties.RouteRule rule = new JwtAuthProperties.RouteRule();
+	rule.setPattern("/api/admin/**");
+	rule.setRoles(List.of("ADMIN"));
+	props.setRouteRules(List.of(rule));
+	props.setAccessTtlMillis(60_000);
+	JwtTokenGenerator generator = new JwtTokenGenerator(props);
+	filter = new JwtAuthFilter(new JwtTokenVerifier(props), props);
+	when(request.getRequestURI()).thenReturn("/api/admin/users");
+	when(request.getMethod()).thenReturn("GET");
+	when(request.getHeader("Authorization"))
+		.thenReturn("Bearer " + generator.generateAccessToken("alice", List.of("ADMIN", "USER")));
+
+	filter.doFilter(request, response, chain);
+
+	verify(chain).doFilter(request, response);
+	verify(response, never()).sendError(anyInt(), anyString());
+    }
+
+    @Test
+    void shouldRejectNonNormalizedPaths() throws ServletException, IOException {
+	for (String uri : List.of("/admin;x=1/users", "/public/../admin/users", "/public//x", "/admin%2fusers")) {
+	    HttpServletResponse rejected = mock(HttpServletResponse.class);
+	    MockHttpServletRequest http = new MockHttpServletRequest("GET", uri);
+
+	    filter.doFilter(http, rejected, chain);
+
+	    verify(rejected).sendError(HttpServletResponse.SC_BAD_REQUEST, "Non-normalized path");
+	}
+	verify(chain, never()).doFilter(any(), any());
+	verifyNoInteractions(verifier);
+    }
+
+    @Test
+    void shouldMatchRouteRulesAgainstDecodedPath() throws ServletException, IOException {
+	String token = adminRuleFilter();
+	MockHttpServletRequest http = new MockHttpServletRequest("GET", "/%61dmin/users");
+	http.setServletPath("/admin/users");
+	http.addHeader("Authorization", "Bearer " + token);
+
+	filter.doFilter(http, response, chain);
+
+	verify(response).sendError(HttpServletResponse.SC_FORBIDDEN, "Insufficient role");
+	verify(chain, never()).doFilter(any(), any());
+    }
+
+    @Test
+    void shouldMatchRouteRulesWithinContextPath() throws ServletException, IOException {
+	String token = adminRuleFilter();
+	MockHttpServletRequest http = new MockHttpServletRequest("GET", "/app/admin/users");
+	http.setContextPath("/app");
+	http.setServletPath("/admin/users");
+	http.addHeader("Authorization", "Bearer " + token);
+
+	filter.doFilter(http, response, chain);
+
+	verify(response).sendError(HttpServletResponse.SC_FORBIDDEN, "Insufficient role");
+	verify(chain, never()).doFilter(any(), any());
+    }
+
+    /** Configures a rule requiring ADMIN for /admin/** and returns a USER token */
+    private String adminRuleFilter() {
+	JwtAuthProperties.RouteRule rule = new JwtAuthProperties.RouteRule();
+	rule.setPattern("/admin/**");
+	rule.setRoles(List.of("ADMIN"));
+	props.setRouteRules(List.of(rule));
+	props.setAccessTtlMillis(60_000);
+	filter = new JwtAuthFilter(new JwtTokenVerifier(props), props);
+	return new JwtTokenGenerator(props).generateAccessToken("bob", List.of("USER"));
+    }
+}
@@ -0,0 +1,108 @@
+package dev.shiwa.jwtstarter.filter;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties.RouteRule;
+
+class RouteAuthorizationTableTest {
+
+    private static RouteRule rule(String pattern, List<String> methods, String... roles) {
+	RouteRule rule = new RouteRule();
+	rule.setPattern(pattern);
+	rule.setMethods(methods);
+	rule.setRoles(List.of(roles));
+	return rule;
+    }
+
+    @Test
+    void emptyTableAllowsEverything() {
+	RouteAuthorizationTable table = RouteAuthorizationTable.compile(List.of());
+
+	assertTrue(table.isEmpty());
+	assertTrue(table.isAllowed("GET", "/api/admin", 0));
+    }
+
+    @Test
+    void rulesRequireAnyOfTheirRoles() {
+	RouteAuthorizationTable table = RouteAuthorizationTable
+		.compile(List.of(rule("/api/reports/**", List.of(), "ADMIN", "AUDITOR")));
+
+	assertTrue(table.isAllowed("GET", "/api/reports/2024", table.roleMask(List.of("AUDITOR"))));
+	assertFalse(table.isAllowed("GET", "/api/reports/2024", table.roleMask(List.of("USER"))));
+	assertFalse(table.isAllowed("GET", "/api/reports", table.roleMask(null)));
+	assertTrue(table.isAllowed("GET", "/api/other", 0));
+    }
+
+    @Test
+    void requireAllNeedsEveryRole() {
+	RouteRule rule = rule("/api/billing", List.of(), "ADMIN", "FINANCE");
+	rule.setRequireAll(true);
+	RouteAuthorizationTable table = RouteAuthorizationTable.compile(List.of(rule));
+
+	assertFalse(table.isAllowed("GET", "/api/billing", table.roleMask(List.of("ADMIN"))));
+	assertTrue(table.isAllowed("GET", "/api/billing", table.roleMask(List.of("ADMIN", "FINANCE", "USER"))));
+    }
+
+    @Test
+    void methodSpecificRulesTakePrecedence() {
+	RouteAuthorizationTable table = RouteAuthorizationTable.compile(List.of(
+		rule("/api/orders/*", List.of("DELETE"), "ADMIN"), rule("/api/orders/*", List.of(), "USER")));
+	long user = table.roleMask(List.of("USER"));
+
+	assertTrue(table.isAllowed("GET", "/api/orders/42", user));
+	assertFalse(table.isAllowed("delete", "/api/orders/42", user));
+	assertTrue(table.isAllowed("DELETE", "/api/orders/42", table.roleMask(List.of("ADMIN"))));
+    }
+
+    @Test
+    void mostSpecificPatternWins() {
+	RouteAuthorizationTable table = RouteAuthorizationTable
+		.compile(List.of(rule("/api/**", List.of(), "USER"), rule("/api/*/public", List.of()),
+			rule("/api/admin/**", List.of(), "ADMIN")));
+	long user = table.roleMask(List.of("USER"));
+
+	assertTrue(table.isAllowed("GET", "/api/orders", user));
+	assertFalse(table.isAllowed("GET", "/api/admin/users", user));
+	assertFalse(table.isAllowed("GET", "/api/admin", user));
+	assertTrue(table.isAllowed("GET", "/api/docs/public", 0));
+	assertFalse(table.isAllowed("GET", "/api/docs/private", 0));
+	assertTrue(table.isAllowed("GET", "//api//orders/", user));
+    }
+
+    @Test
+    void rulesOverlapServletMappings() {
+	assertTrue(RouteAuthorizationTable.overlaps("/api/admin/**", "/api/*"));
+	assertTrue(RouteAuthorizationTable.overlaps("/api/*/orders", "/api/v1/*"));
+	assertTrue(RouteAuthorizationTable.overlaps("/**", "/api/*"));
+	assertTrue(RouteAuthorizationTable.overlaps("/admin", "/*"));
+	assertTrue(RouteAuthorizationTable.overlaps("/admin/*", "/admin/users"));
+	assertTrue(RouteAuthorizationTable.overlaps("/admin/**", "/admin"));
+
+	assertFalse(RouteAuthorizationTable.overlaps("/admin/**", "/api/*"));
+	assertFalse(RouteAuthorizationTable.overlaps("/api", "/api/v1/*"));
+	assertFalse(RouteAuthorizationTable.overlaps("/admin/*", "/admin"));
+    }
+
+    @Test
+    void rejectsInvalidRules() {
+	assertThrows(IllegalArgumentException.class,
+		() -> RouteAuthorizationTable.compile(List.of(rule("api/x", List.of()))));
+	assertThrows(IllegalArgumentException.class,
+		() -> RouteAuthorizationTable.compile(List.of(rule("/api/**/x", List.of()))));
+	assertThrows(IllegalArgumentException.class,
+		() -> RouteAuthorizationTable.compile(List.of(rule("/api/user*", List.of()))));
+
+	List<RouteRule> tooManyRoles = new ArrayList<>();
+	for (int i = 0; i < 65; i++) {
+	    tooManyRoles.add(rule("/r" + i, List.of(), "ROLE_" + i));
+	}
+	assertThrows(IllegalArgumentException.class, () -> RouteAuthorizationTable.compile(tooManyRoles));
+    }
+}
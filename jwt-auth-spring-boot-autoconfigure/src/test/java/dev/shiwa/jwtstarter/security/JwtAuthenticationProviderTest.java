@@ -0,0 +1,71 @@
+package dev.shiwa.jwtstarter.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties;
+import dev.shiwa.jwtstarter.core.JwtTokenGenerator;
+import dev.shiwa.jwtstarter.core.JwtTokenVerifier;
+
+class JwtAuthenticationProviderTest {
+
+    private JwtTokenGenerator generator;
+    private JwtAuthenticationProvider provider;
+
+    @BeforeEach
+    void setup() {
+	JwtAuthProperties props = new JwtAuthProperties();
+	props.setSecret("a-very-long-and-secure-secret-value-here-1234");
+	props.setIssuer("test-issuer");
+	props.setAccessTtlMillis(60_000);
+	generator = new JwtTokenGenerator(props);
+	provider = new JwtAuthenticationProvider(new JwtTokenVerifier(props), new RoleAuthorities("ROLE_", 16));
+    }
+
+    @Test
+    void authenticatesValidToken() {
+	String token = generator.generateAccessToken("alice", List.of("USER", "ADMIN"));
+
+	Authentication result = provider.authenticate(new JwtAuthenticationToken(token));
+
+	assertTrue(result.isAuthenticated());
+	assertEquals("alice", result.getName());
+	assertEquals(token, result.getCredentials());
+	assertEquals(List.of("USER", "ADMIN"), ((JwtAuthenticationToken) result).getPrincipal().getRoles());
+	assertTrue(result.getAuthorities().contains(new SimpleGrantedAuthority("ROLE_ADMIN")));
+    }
+
+    @Test
+    void tokensOfSameRoleProfileShareAuthorities() {
+	Authentication first = provider
+		.authenticate(new JwtAuthenticationToken(generator.generateAccessToken("alice", List.of("USER"))));
+	Authentication second = provider
+		.authenticate(new JwtAuthenticationToken(generator.generateAccessToken("bob", List.of("USER"))));
+
+	assertSame(first.getAuthorities(), second.getAuthorities());
+    }
+
+    @Test
+    void rejectsInvalidToken() {
+	assertThrows(BadCredentialsException.class,
+		() -> provider.authenticate(new JwtAuthenticationToken("not.a.token")));
+    }
+
+    @Test
+    void supportsOnlyJwtAuthenticationTokens() {
+	assertTrue(provider.supports(JwtAuthenticationToken.class));
+	assertFalse(provider.supports(UsernamePasswordAuthenticationToken.class));
+    }
+}
@@ -0,0 +1,85 @@
+package dev.shiwa.jwtstarter.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import dev.shiwa.jwtstarter.core.JwtAuthentication;
+import dev.shiwa.jwtstarter.filter.JwtAuthFilter;
+
+class JwtBearerTokenFilterTest {
+
+    private AuthenticationManager manager;
+    private JwtBearerTokenFilter filter;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+    private MockFilterChain chain;
+
+    @BeforeEach
+    void setup() {
+	manager = mock(AuthenticationManager.class);
+	filter = new JwtBearerTokenFilter(manager);
+	request = new MockHttpServletRequest("GET", "/api/data");
+	response = new MockHttpServletResponse();
+	chain = new MockFilterChain();
+    }
+
+    @AfterEach
+    void clearContext() {
+	SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void requestWithoutTokenPassesUnauthenticated() throws Exception {
+	filter.doFilter(request, response, chain);
+
+	assertSame(request, chain.getRequest());
+	assertNull(SecurityContextHolder.getContext().getAuthentication());
+	verify(manager, never()).authenticate(any());
+    }
+
+    @Test
+    void validTokenIsStoredInSecurityContextAndRequest() throws Exception {
+	JwtAuthentication principal = new JwtAuthentication("alice", List.of("USER"), Instant.now(),
+		Instant.now().plusSeconds(60));
+	JwtAuthenticationToken authenticated = new JwtAuthenticationToken(principal, "token", List.of());
+	when(manager.authenticate(any())).thenReturn(authenticated);
+	request.addHeader("Authorization", "Bearer token");
+
+	filter.doFilter(request, response, chain);
+
+	assertSame(request, chain.getRequest());
+	assertSame(authenticated, SecurityContextHolder.getContext().getAuthentication());
+	assertSame(principal, request.getAttribute(JwtAuthFilter.AUTHENTICATION_ATTRIBUTE));
+    }
+
+    @Test
+    void invalidTokenIsRejectedWith401() throws Exception {
+	when(manager.authenticate(any())).thenThrow(new BadCredentialsException("Invalid JWT token"));
+	request.addHeader("Authorization", "Bearer invalid");
+
+	filter.doFilter(request, response, chain);
+
+	assertEquals(401, response.getStatus());
+	assertNull(chain.getRequest());
+	assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+}
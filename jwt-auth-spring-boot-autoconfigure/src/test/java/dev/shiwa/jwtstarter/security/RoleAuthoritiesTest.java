@@ -0,0 +1,52 @@
+package dev.shiwa.jwtstarter.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+class RoleAuthoritiesTest {
+
+    @Test
+    void mapsRolesToPrefixedAuthorities() {
+	RoleAuthorities authorities = new RoleAuthorities("ROLE_", 16);
+
+	assertEquals(List.of(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN")),
+		authorities.authoritiesFor(List.of("USER", "ROLE_ADMIN")));
+	assertTrue(authorities.authoritiesFor(null).isEmpty());
+    }
+
+    @Test
+    void equalRoleListsShareOneImmutableList() {
+	RoleAuthorities authorities = new RoleAuthorities("ROLE_", 16);
+	List<String> roles = new ArrayList<>(List.of("USER", "ADMIN"));
+
+	List<GrantedAuthority> first = authorities.authoritiesFor(roles);
+	roles.add("AUDITOR");
+	List<GrantedAuthority> second = authorities.authoritiesFor(List.of("USER", "ADMIN"));
+
+	assertSame(first, second);
+	assertEquals(1, authorities.size());
+	assertThrows(UnsupportedOperationException.class, () -> first.add(new SimpleGrantedAuthority("X")));
+    }
+
+    @Test
+    void stopsCachingAtMaxEntries() {
+	RoleAuthorities authorities = new RoleAuthorities("", 1);
+
+	authorities.authoritiesFor(List.of("USER"));
+	List<GrantedAuthority> uncached = authorities.authoritiesFor(List.of("ADMIN"));
+
+	assertEquals(1, authorities.size());
+	assertEquals(List.of(new SimpleGrantedAuthority("ADMIN")), uncached);
+	assertNotSame(uncached, authorities.authoritiesFor(List.of("ADMIN")));
+    }
+}
@@ -0,0 +1,102 @@
+package dev.shiwa.jwtstarter.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.MethodParameter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import dev.shiwa.jwtstarter.core.JwtAuthentication;
+import dev.shiwa.jwtstarter.core.JwtTokenVerifier;
+import dev.shiwa.jwtstarter.core.error.JwtAuthException;
+import dev.shiwa.jwtstarter.core.error.JwtErrorCode;
+import dev.shiwa.jwtstarter.filter.JwtAuthFilter;
+import io.jsonwebtoken.Jwts;
+
+class CurrentJwtArgumentResolverTest {
+
+    static class SampleController {
+
+	public void handle(JwtAuthentication plain, @CurrentJwt(required = false) JwtAuthentication optional,
+		String other) {
+	}
+    }
+
+    private JwtTokenVerifier verifier;
+    private CurrentJwtArgumentResolver resolver;
+    private MockHttpServletRequest request;
+
+    @BeforeEach
+    void setup() {
+	verifier = mock(JwtTokenVerifier.class);
+	resolver = new CurrentJwtArgumentResolver(verifier);
+	request = new MockHttpServletRequest("GET", "/api/me");
+    }
+
+    private static MethodParameter parameter(int index) throws NoSuchMethodException {
+	return new MethodParameter(SampleController.class.getMethod("handle", JwtAuthentication.class,
+		JwtAuthentication.class, String.class), index);
+    }
+
+    private Object resolve(int index) throws NoSuchMethodException {
+	return resolver.resolveArgument(parameter(index), null, new ServletWebRequest(request), null);
+    }
+
+    @Test
+    void supportsJwtAuthenticationParameters() throws NoSuchMethodException {
+	assertTrue(resolver.supportsParameter(parameter(0)));
+	assertTrue(resolver.supportsParameter(parameter(1)));
+	assertFalse(resolver.supportsParameter(parameter(2)));
+    }
+
+    @Test
+    void injectsAuthenticationOfFilter() throws NoSuchMethodException {
+	JwtAuthentication authentication = new JwtAuthentication("alice", List.of("USER"), Instant.now(),
+		Instant.now().plusSeconds(60));
+	request.setAttribute(JwtAuthFilter.AUTHENTICATION_ATTRIBUTE, authentication);
+
+	assertSame(authentication, resolve(0));
+	verify(verifier, never()).verify(anyString());
+    }
+
+    @Test
+    void parsesTokenOnceIfFilterDidNotRun() throws NoSuchMethodException {
+	when(verifier.verify("token")).thenReturn(Jwts.claims().setSubject("bob"));
+	request.addHeader("Authorization", "Bearer token");
+
+	JwtAuthentication first = (JwtAuthentication) resolve(0);
+	JwtAuthentication second = (JwtAuthentication) resolve(1);
+
+	assertEquals("bob", first.getSubject());
+	assertSame(first, second);
+	verify(verifier, times(1)).verify("token");
+    }
+
+    @Test
+    void missingTokenFailsForRequiredParameter() {
+	JwtAuthException ex = assertThrows(JwtAuthException.class, () -> resolve(0));
+
+	assertEquals(JwtErrorCode.NOT_AUTHENTICATED, ex.getErrorCode());
+    }
+
+    @Test
+    void missingTokenResolvesOptionalParameterToNull() throws NoSuchMethodException {
+	assertNull(resolve(1));
+    }
+}
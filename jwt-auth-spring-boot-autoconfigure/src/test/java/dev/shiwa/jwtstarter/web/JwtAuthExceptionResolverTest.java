@@ -0,0 +1,53 @@
+package dev.shiwa.jwtstarter.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.ModelAndView;
+
+import dev.shiwa.jwtstarter.core.error.JwtAuthException;
+import dev.shiwa.jwtstarter.core.error.JwtErrorCode;
+import dev.shiwa.jwtstarter.core.error.RefreshThrottledException;
+
+class JwtAuthExceptionResolverTest {
+
+    private final JwtAuthExceptionResolver resolver = new JwtAuthExceptionResolver();
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    private ModelAndView resolve(Exception ex) {
+	return resolver.resolveException(new MockHttpServletRequest("GET", "/api/me"), response, null, ex);
+    }
+
+    @Test
+    void missingAuthenticationIsUnauthorized() {
+	assertNotNull(resolve(new JwtAuthException(JwtErrorCode.NOT_AUTHENTICATED, "No valid JWT token in request")));
+
+	assertEquals(401, response.getStatus());
+	assertEquals("NOT_AUTHENTICATED", response.getErrorMessage());
+    }
+
+    @Test
+    void throttledRefreshCarriesRetryAfter() {
+	assertNotNull(resolve(new RefreshThrottledException("Too many refreshes", 1_500)));
+
+	assertEquals(429, response.getStatus());
+	assertEquals("2", response.getHeader("Retry-After"));
+    }
+
+    @Test
+    void disabledRefreshIsBadRequest() {
+	resolve(new JwtAuthException(JwtErrorCode.REFRESH_DISABLED, "Refresh disabled"));
+
+	assertEquals(400, response.getStatus());
+    }
+
+    @Test
+    void otherExceptionsAreLeftToFurtherResolvers() {
+	assertNull(resolve(new IllegalStateException()));
+	assertEquals(200, response.getStatus());
+    }
+}
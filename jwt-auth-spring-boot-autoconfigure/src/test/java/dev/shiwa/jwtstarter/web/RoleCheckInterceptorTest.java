@@ -0,0 +1,175 @@
+package dev.shiwa.jwtstarter.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import dev.shiwa.jwtstarter.autoconfigure.JwtAuthProperties;
+import dev.shiwa.jwtstarter.core.JwtAuthentication;
+import dev.shiwa.jwtstarter.core.JwtTokenGenerator;
+import dev.shiwa.jwtstarter.core.JwtTokenVerifier;
+import dev.shiwa.jwtstarter.core.refresh.InMemoryRefreshTokenStore;
+import dev.shiwa.jwtstarter.core.refresh.RefreshTokenService;
+import dev.shiwa.jwtstarter.core.refresh.RefreshTokenService.Tokens;
+import dev.shiwa.jwtstarter.filter.JwtAuthFilter;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+
+class RoleCheckInterceptorTest {
+
+    @RequireAnyRole({ "USER", "ADMIN" })
+    static class SampleController {
+
+	public void open() {
+	}
+
+	@RequireRoles({ "ADMIN", "AUDITOR" })
+	public void audit() {
+	}
+
+	@RequireAnyRole("SUPPORT")
+	public void support() {
+	}
+    }
+
+    private JwtTokenVerifier verifier;
+    private RoleCheckInterceptor interceptor;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setup() throws NoSuchMethodException {
+	verifier = mock(JwtTokenVerifier.class);
+	interceptor = new RoleCheckInterceptor(verifier);
+	interceptor.resolve(List.of(handler("open"), handler("audit"), handler("support")));
+	request = new MockHttpServletRequest("GET", "/api/sample");
+	response = new MockHttpServletResponse();
+    }
+
+    private static HandlerMethod handler(String name) throws NoSuchMethodException {
+	return new HandlerMethod(new SampleController(), SampleController.class.getMethod(name));
+    }
+
+    private void authenticate(String... roles) {
+	request.setAttribute(JwtAuthFilter.AUTHENTICATION_ATTRIBUTE,
+		new JwtAuthentication("alice", List.of(roles), Instant.now(), Instant.now().plusSeconds(60)));
+    }
+
+    @Test
+    void classLevelAnnotationAppliesToUnannotatedMethods() throws Exception {
+	authenticate("USER");
+	assertTrue(interceptor.preHandle(request, response, handler("open")));
+
+	authenticate("GUEST");
+	assertFalse(interceptor.preHandle(request, response, handler("open")));
+	assertEquals(403, response.getStatus());
+    }
+
+    @Test
+    void rolesAreKeptAfterRefresh() throws Exception {
+	JwtAuthProperties props = new JwtAuthProperties();
+	props.setSecret("a-very-long-and-secure-secret-value-here-1234");
+	props.setIssuer("test-issuer");
+	props.setAccessTtlMillis(60_000);
+	props.setRefreshEnabled(true);
+	props.setRefreshRotate(true);
+	JwtTokenVerifier realVerifier = new JwtTokenVerifier(props);
+	RefreshTokenService service = new RefreshTokenService(realVerifier, new JwtTokenGenerator(props),
+		new InMemoryRefreshTokenStore(), props);
+	RoleCheckInterceptor real = new RoleCheckInterceptor(realVerifier);
+	real.resolve(List.of(handler("audit")));
+
+	Tokens login = service.issue("alice", List.of("ADMIN", "AUDITOR"));
+	Tokens refreshed = service.refresh("Bearer " + login.refreshToken());
+	request.addHeader("Authorization", "Bearer " + refreshed.accessToken());
+
+	assertTrue(real.preHandle(request, response, handler("audit")));
+	assertEquals(200, response.getStatus());
+    }
+
+    @Test
+    void refreshTokenGrantsNoRoles() throws Exception {
+	JwtAuthProperties props = new JwtAuthProperties();
+	props.setSecret("a-very-long-and-secure-secret-value-here-1234");
+	props.setIssuer("test-issuer");
+	props.setRefreshEnabled(true);
+	JwtTokenVerifier realVerifier = new JwtTokenVerifier(props);
+	RefreshTokenService service = new RefreshTokenService(realVerifier, new JwtTokenGenerator(props),
+		new InMemoryRefreshTokenStore(), props);
+	RoleCheckInterceptor real = new RoleCheckInterceptor(realVerifier);
+	real.resolve(List.of(handler("audit")));
+
+	request.addHeader("Authorization",
+		"Bearer " + service.issue("alice", List.of("ADMIN", "AUDITOR")).refreshToken());
+
+	assertFalse(real.preHandle(request, response, handler("audit")));
+    }
+
+    @Test
+    void requireRolesNeedsEveryRole() throws Exception {
+	authenticate("USER", "ADMIN");
+	assertFalse(interceptor.preHandle(request, response, handler("audit")));
+	assertEquals(403, response.getStatus());
+
+	authenticate("USER", "ADMIN", "AUDITOR");
+	assertTrue(interceptor.preHandle(request, new MockHttpServletResponse(), handler("audit")));
+    }
+
+    @Test
+    void methodAnnotationReplacesClassAnnotationOfSameType() throws Exception {
+	authenticate("SUPPORT");
+	assertTrue(interceptor.preHandle(request, response, handler("support")));
+
+	authenticate("USER");
+	assertFalse(interceptor.preHandle(request, new MockHttpServletResponse(), handler("support")));
+    }
+
+    @Test
+    void usesAuthenticationOfFilterWithoutParsing() throws Exception {
+	authenticate("ADMIN");
+
+	assertTrue(interceptor.preHandle(request, response, handler("open")));
+	verify(verifier, never()).verify(anyString());
+    }
+
+    @Test
+    void parsesTokenOnceIfFilterDidNotRun() throws Exception {
+	Claims claims = Jwts.claims().setSubject("bob");
+	claims.put("roles", List.of("USER"));
+	when(verifier.verify("token")).thenReturn(claims);
+	request.addHeader("Authorization", "Bearer token");
+
+	assertTrue(interceptor.preHandle(request, response, handler("open")));
+	assertTrue(interceptor.preHandle(request, response, handler("open")));
+
+	verify(verifier, times(1)).verify("token");
+	assertEquals("bob", ((JwtAuthentication) request.getAttribute(JwtAuthFilter.AUTHENTICATION_ATTRIBUTE))
+		.getSubject());
+    }
+
+    @Test
+    void rejectsRequestWithoutTokenWith401() throws Exception {
+	assertFalse(interceptor.preHandle(request, response, handler("open")));
+	assertEquals(401, response.getStatus());
+    }
+
+    @Test
+    void ignoresNonHandlerMethods() throws Exception {
+	assertTrue(interceptor.preHandle(request, response, new Object()));
+    }
+}